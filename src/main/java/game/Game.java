@@ -9,6 +9,7 @@ import ija.ija2024.tool.common.ToolEnvironment;
 import ija.ija2024.tool.common.ToolField;
 import json.GameSerializer;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents the main game logic and model for the grid-based light puzzle game.
@@ -29,7 +30,7 @@ import java.util.*;
  * @author Alina Paliienko (xpaliia00)
  */
 public class Game implements ToolEnvironment, Observable.Observer {
-    private static long nextId = 1;
+    private static final AtomicLong nextId = new AtomicLong(1);
     private final long gameId;
     private final int rows;
     private final int cols;
@@ -42,6 +43,18 @@ public class Game implements ToolEnvironment, Observable.Observer {
     private boolean isPower = false;
 
     private int moveCount = 0;
+    private int hintsUsed = 0;
+
+    /** Sides indexed by ordinal; the opposite of side {@code i} is {@code (i + 2) % 4}. */
+    private static final Side[] SIDES = Side.values();
+    /** Cells reached by the current propagation are marked with its generation. */
+    private final int[] reached;
+    private final int[] pending;
+    private int generation;
+    private int bulbCount;
+    private int litBulbs;
+    /** False after the board was changed without a propagation, e.g., while nodes are created. */
+    private boolean lightCounted;
     private Position lastTurnedNode;
     private final Stack<Position> undoStack = new Stack<>();
     private final Stack<Position> redoStack = new Stack<>();
@@ -52,21 +65,24 @@ public class Game implements ToolEnvironment, Observable.Observer {
     /**
      * Private constructor, which creates a new game instance with the specified number of rows and columns.
      *
-     * @param rows the number of rows in the game grid
-     * @param cols the number of columns in the game grid
+     * @param rows       the number of rows in the game grid
+     * @param cols       the number of columns in the game grid
+     * @param persistent true to save the game to the {@code data/} directory, false to keep its state in memory only
      */
-    private Game(int rows, int cols) {
-        this.gameId = nextId++;
+    private Game(int rows, int cols, boolean persistent) {
+        this.gameId = nextId.getAndIncrement();
         this.rows = rows;
         this.cols = cols;
         this.nodes = new GameNode[rows][cols];
-        this.serializer = new GameSerializer();
+        this.reached = new int[rows * cols];
+        this.pending = new int[rows * cols];
+        this.serializer = persistent ? new GameSerializer() : GameSerializer.inMemory();
         for (int r = 1; r <= rows; r++) {
             for (int c = 1; c <= cols; c++) {
                 this.nodes[r - 1][c - 1] = new GameNode(new Position(r, c));
             }
         }
-        this.logger = new GameLogger(gameId);
+        this.logger = new GameLogger(gameId, rows, cols);
     }
 
     /**
@@ -78,12 +94,23 @@ public class Game implements ToolEnvironment, Observable.Observer {
      * @return a new Game instance
      */
     public static Game create(int rows, int cols) {
+        return create(rows, cols, true);
+    }
+
+    /**
+     * Creates a new empty game that is optionally never saved, e.g., a board received over the network.
+     *
+     * @param rows       the number of rows in the game grid
+     * @param cols       the number of columns in the game grid
+     * @param persistent true to save the game to the {@code data/} directory like {@link #create(int, int)}
+     * @return a new Game instance
+     */
+    public static Game create(int rows, int cols, boolean persistent) {
 
         if (rows <= 0 || cols <= 0) {
             throw new IllegalArgumentException("Invalid game size.");
         }
-        //return new Game(rows, cols);
-        Game g = new Game(rows, cols);
+        Game g = new Game(rows, cols, persistent);
         g.clearHistory();
         return g;
     }
@@ -93,97 +120,119 @@ public class Game implements ToolEnvironment, Observable.Observer {
      * This method should be called after the game is set up with nodes and connections.
      */
     public void init() {
-        GameNode powerNode = null;
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < cols; c++) {
-                if (nodes[r][c].isPower()) {
-                    powerNode = nodes[r][c];
-                    break;
-                }
-            }
-            if (powerNode != null) break;
-        }
-        if (powerNode == null) return;
-
-        propagateLight(powerNode);
+        updatePowerPropagation();
     }
 
     /**
      * Propagates light from the starting node to all connected nodes.
-     * This method uses a depth-first search (DFS) algorithm to traverse the grid.
+     * The grid is traversed depth-first with an explicit stack of cell indexes, so a propagation
+     * allocates nothing; cells are marked with the propagation's generation instead of a fresh
+     * visited array.
      *
      * @param start the starting node from which to propagate light
+     * @return the number of bulbs lit
      */
-    private void propagateLight(GameNode start) {
-        boolean[][] visited = new boolean[rows][cols];
-        dfs(start.getPosition(), visited);
-    }
-
-    /**
-     * Depth-first search (DFS) algorithm to propagate light from the given position.
-     *
-     * @param pos     the current position in the grid
-     * @param visited a 2D array to track visited nodes
-     */
-    private void dfs(Position pos, boolean[][] visited) {
-        int r = pos.getRow() - 1;
-        int c = pos.getCol() - 1;
-
-        if (r < 0 || r >= rows || c < 0 || c >= cols || visited[r][c]) return;
-        GameNode node = nodes[r][c];
-        visited[r][c] = true;
-
-        node.setLit(true);
+    private int propagateLight(GameNode start) {
+        if (++generation == 0) {
+            Arrays.fill(reached, 0);
+            generation = 1;
+        }
+        int lit = 0;
+        int top = 0;
+        int first = (start.getPosition().getRow() - 1) * cols + start.getPosition().getCol() - 1;
+        reached[first] = generation;
+        pending[top++] = first;
+        while (top > 0) {
+            int cell = pending[--top];
+            int r = cell / cols;
+            int c = cell % cols;
+            GameNode node = nodes[r][c];
+            node.setLit(true);
+            if (node.isBulb()) lit++;
+
+            for (Side side : SIDES) {
+                if (!node.containsConnector(side)) continue;
+                int nr = r, nc = c;
+                switch (side) {
+                    case NORTH -> nr--;
+                    case SOUTH -> nr++;
+                    case EAST -> nc++;
+                    case WEST -> nc--;
+                }
+                if (nr < 0 || nr >= rows || nc < 0 || nc >= cols) continue;
+                int next = nr * cols + nc;
+                if (reached[next] == generation) continue;
 
-        for (Side side : Side.values()) {
-            if (!node.containsConnector(side)) continue;
-
-            Position neighborPos = switch (side) {
-                case NORTH -> new Position(pos.getRow() - 1, pos.getCol());
-                case SOUTH -> new Position(pos.getRow() + 1, pos.getCol());
-                case EAST -> new Position(pos.getRow(), pos.getCol() + 1);
-                case WEST -> new Position(pos.getRow(), pos.getCol() - 1);
-            };
-
-            int nr = neighborPos.getRow() - 1;
-            int nc = neighborPos.getCol() - 1;
-
-            if (nr < 0 || nr >= rows || nc < 0 || nc >= cols) continue;
-
-            GameNode neighbor = nodes[nr][nc];
-            Side opposite = switch (side) {
-                case NORTH -> Side.SOUTH;
-                case SOUTH -> Side.NORTH;
-                case EAST -> Side.WEST;
-                case WEST -> Side.EAST;
-            };
-
-            if (neighbor.containsConnector(opposite)) {
-                dfs(neighborPos, visited);
+                if (nodes[nr][nc].containsConnector(SIDES[(side.ordinal() + 2) % 4])) {
+                    reached[next] = generation;
+                    pending[top++] = next;
+                }
             }
         }
+        return lit;
     }
 
     /**
      * Updates the power propagation in the game.
      * This method is called when a node changes its state (e.g., when a bulb is turned on/off).
      * It resets all nodes to unlit and then propagates light from the power node.
+     * The numbers of bulbs and lit bulbs are counted on the way, so {@link #checkWin()} needs no scan.
      */
     public void updatePowerPropagation() {
+        GameNode power = null;
+        int bulbs = 0;
         for (int r = 0; r < rows; r++) {
             for (int c = 0; c < cols; c++) {
-                nodes[r][c].setLit(false);
+                GameNode node = nodes[r][c];
+                node.setLit(false);
+                if (node.isBulb()) bulbs++;
+                if (power == null && node.isPower()) power = node;
             }
         }
+        bulbCount = bulbs;
+        litBulbs = power != null ? propagateLight(power) : 0;
+        lightCounted = true;
+    }
 
+    /**
+     * Counts the bulbs and lit bulbs from the nodes' current state, for boards that were changed
+     * without a propagation.
+     */
+    private void countBulbs() {
+        int bulbs = 0;
+        int lit = 0;
         for (int r = 0; r < rows; r++) {
             for (int c = 0; c < cols; c++) {
-                if (nodes[r][c].isPower()) {
-                    propagateLight(nodes[r][c]);
-                    return;
+                GameNode node = nodes[r][c];
+                if (node.isBulb()) {
+                    bulbs++;
+                    if (node.light()) lit++;
                 }
             }
         }
+        bulbCount = bulbs;
+        litBulbs = lit;
+        lightCounted = true;
+    }
+
+    /**
+     * Returns the number of bulbs on the board.
+     *
+     * @return the bulb count
+     */
+    public int bulbCount() {
+        if (!lightCounted) countBulbs();
+        return bulbCount;
+    }
+
+    /**
+     * Returns the number of bulbs lit by the power node.
+     *
+     * @return the lit bulb count
+     */
+    public int litBulbs() {
+        if (!lightCounted) countBulbs();
+        return litBulbs;
     }
 
     /**
@@ -248,6 +297,7 @@ public class Game implements ToolEnvironment, Observable.Observer {
 
         GameNode node = this.node(p);
         node.setBulb(s);
+        lightCounted = false;
         node.addObserver(this);
         nodes[p.getRow() - 1][p.getCol() - 1] = node;
         return node;
@@ -276,6 +326,7 @@ public class Game implements ToolEnvironment, Observable.Observer {
 
         GameNode node = this.node(p);
         node.setPower(sides);
+        lightCounted = false;
         node.addObserver(this);
         nodes[p.getRow() - 1][p.getCol() - 1] = node;
         this.isPower = true;
@@ -301,6 +352,7 @@ public class Game implements ToolEnvironment, Observable.Observer {
 
         GameNode node = this.node(p);
         node.setLink(sides);
+        lightCounted = false;
         node.addObserver(this);
         nodes[p.getRow() - 1][p.getCol() - 1] = node;
         return node;
@@ -315,6 +367,18 @@ public class Game implements ToolEnvironment, Observable.Observer {
      * @return a new Game instance with the specified size
      */
     public static Game generate(int rows, int cols) {
+        return generate(rows, cols, true);
+    }
+
+    /**
+     * Generates a new game that is optionally never saved, e.g., a board hosted by the multiplayer server.
+     *
+     * @param rows       the number of rows in the game grid
+     * @param cols       the number of columns in the game grid
+     * @param persistent true to save the game to the {@code data/} directory like {@link #generate(int, int)}
+     * @return a new Game instance with the specified size
+     */
+    public static Game generate(int rows, int cols, boolean persistent) {
         if (rows <= 0 || cols <= 0)
             throw new IllegalArgumentException("Invalid game size.");
 
@@ -322,7 +386,7 @@ public class Game implements ToolEnvironment, Observable.Observer {
         int attempt = 0;
 
         while (attempt < maxAttempts) {
-            Game game = new Game(rows, cols);
+            Game game = new Game(rows, cols, persistent);
             Random random = new Random();
 
             // Set power to random position
@@ -356,6 +420,7 @@ public class Game implements ToolEnvironment, Observable.Observer {
                 game.clearHistory();
                 return game;
             }
+            game.close();
 
             attempt++;
         }
@@ -474,20 +539,15 @@ public class Game implements ToolEnvironment, Observable.Observer {
 
     /**
      * Checks if the player has won the game.
-     * This method iterates through all nodes and checks if all bulbs are lit.
+     * The lit bulbs are counted by every propagation, so the check takes constant time.
      *
      * @return true if the player has won, false otherwise
      */
     public boolean checkWin() {
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < cols; c++) {
-                GameNode node = nodes[r][c];
-                if (node.isBulb() && !node.light()) {
-                    return false;
-                }
-            }
+        if (litBulbs() != bulbCount) {
+            return false;
         }
-        logger.log("Player WON the game!");
+        logger.won();
         return true;
     }
 
@@ -568,7 +628,7 @@ public class Game implements ToolEnvironment, Observable.Observer {
             Position pos = changed.getPosition();
             undoStack.push(pos);
             lastTurnedNode = pos;
-            logger.log("TURN at the position: " + pos.getRow() + "," + pos.getCol());
+            logger.turn(pos);
         }
 
         if (!suppressRecording) {
@@ -597,7 +657,7 @@ public class Game implements ToolEnvironment, Observable.Observer {
         redoStack.push(last);
         serializer.serialize(this, moveCount);
 
-        logger.log("UNDO at the position: " + last.getRow() + "," + last.getCol());
+        logger.undo(last);
 
         return true;
     }
@@ -644,7 +704,7 @@ public class Game implements ToolEnvironment, Observable.Observer {
         undoStack.push(next);
         serializer.serialize(this, moveCount);
 
-        logger.log("REDO at the position: " + next.getRow() + "," + next.getCol());
+        logger.redo(next);
 
         return true;
     }
@@ -692,6 +752,23 @@ public class Game implements ToolEnvironment, Observable.Observer {
         return sb.toString();
     }
 
+    /**
+     * Suppresses or resumes logging of this game's moves, e.g., while its history is replayed.
+     *
+     * @param suppressed true to stop logging
+     */
+    public void setLoggingSuppressed(boolean suppressed) {
+        logger.setSuppressed(suppressed);
+    }
+
+    /**
+     * Ends the game session: writes the closing entry of the game log.
+     * Should be called when the game is discarded; calling it again has no effect.
+     */
+    public void close() {
+        logger.close();
+    }
+
     /**
      * Clears the undo/redo history and resets move count.
      */
@@ -701,6 +778,26 @@ public class Game implements ToolEnvironment, Observable.Observer {
         moveCount = 0;
     }
 
+    /**
+     * Returns the moves that can be undone, in the order they were played.
+     *
+     * @return a copy of the undo history
+     */
+    public List<Position> getUndoHistory() {
+        return new ArrayList<>(undoStack);
+    }
+
+    /**
+     * Returns the moves that can be redone, the next one first, as {@link #loadHistory(List, List)} takes them.
+     *
+     * @return a copy of the redo history
+     */
+    public List<Position> getRedoHistory() {
+        List<Position> redo = new ArrayList<>(redoStack);
+        Collections.reverse(redo);
+        return redo;
+    }
+
     /**
      * Loads undo and redo history into the game.
      *
@@ -716,6 +813,39 @@ public class Game implements ToolEnvironment, Observable.Observer {
         }
     }
 
+    /**
+     * Records that the player opened the hint window. The count is stored with the save.
+     */
+    public void recordHintUsed() {
+        hintsUsed++;
+    }
+
+    /**
+     * Hints used getter
+     *
+     * @return how many times the player opened the hint window in this game
+     */
+    public int getHintsUsed() {
+        return hintsUsed;
+    }
+
+    /**
+     * Hints used setter, used when a game is restored from a save.
+     *
+     * @param hintsUsed how many times the hint window was opened before
+     */
+    public void setHintsUsed(int hintsUsed) {
+        this.hintsUsed = hintsUsed;
+    }
+
+    /**
+     * Marks the current board as the initial layout written to the save file.
+     * Used when a game is restored from a save, before any history is replayed.
+     */
+    public void markInitialBoard() {
+        this.serializer.captureInitialBoard(this);
+    }
+
     /**
      * Sets the fixed ID for the save file to ensure consistent serialization.
      *
@@ -8,6 +8,8 @@ import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
+import json.ArchiveEntry;
+import json.ArchiveQuery;
 import json.GameArchive;
 import java.io.IOException;
 import java.time.LocalDate;
@@ -32,17 +34,16 @@ public class ArchiveController {
      * <p>
      * For each date, a header is created, followed by a list of buttons representing individual games.
      * Games and dates are sorted in descending (newest-first) order.
+     * The dates come from the archive index, so the save files are not opened.
      * </p>
      */
     public void showGames() {
         contentBox.getChildren().clear();
 
-        Map<LocalDate, List<Integer>> grouped = new HashMap<>();
-        for (Integer gameId : GameArchive.listSavedGameIds()) {
-            LocalDate date = GameArchive.getGameDate(gameId);
-            if (date == null) continue;
-
-            grouped.computeIfAbsent(date, d -> new ArrayList<>()).add(gameId);
+        GameArchive.syncIndex();
+        Map<LocalDate, List<Integer>> grouped = new LinkedHashMap<>();
+        for (ArchiveEntry entry : GameArchive.query(ArchiveQuery.all()).getEntries()) {
+            grouped.computeIfAbsent(entry.getDate(), d -> new ArrayList<>()).add(entry.getId());
         }
 
         List<LocalDate> sortedDates = new ArrayList<>(grouped.keySet());
@@ -59,6 +59,7 @@ public class GameArchiveController {
         GridHelper.loadImages();
 
         GameDeserializer deserializer = GameArchive.load(gameId);
+        if (this.game != null) this.game.close();
         this.game = deserializer.getGame();
         this.boardSize = game.rows();
         this.cellSize = 400 / boardSize;
@@ -138,6 +138,7 @@ public class GameBoardController {
      */
     private void createGameBoard() {
         if(!fromArchive) {
+            if (this.game != null) this.game.close();
             this.game = Game.generate(boardSize, boardSize);
             this.game.randomizeRotations();
         }
@@ -246,6 +247,7 @@ public class GameBoardController {
                 hintsStage.show();
                 hintsStage.setOnCloseRequest(e -> closeHintsAndCenterMain());
                 this.hints_on = true;
+                game.recordHintUsed();
             } catch (IOException e) {
                 e.printStackTrace();
             }
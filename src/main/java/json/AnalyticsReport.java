@@ -0,0 +1,157 @@
+package json;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregated statistics over the saved games, grouped by board size.
+ * Produced by {@link ArchiveAnalytics}.
+ *
+ * @author Alina Paliienko (xpaliia00)
+ */
+public class AnalyticsReport {
+
+    /**
+     * Statistics of all saves with one board size.
+     * Instances are filled by a single thread and then merged, so they are not thread-safe.
+     */
+    public static class SizeStats {
+        private long games;
+        private long completed;
+        private long totalMoves;
+        private long movesToWin;
+        private long totalDurationMillis;
+        private long gamesWithHints;
+        private long totalHints;
+
+        void add(int moves, boolean won, long durationMillis, int hints) {
+            games++;
+            totalMoves += moves;
+            totalDurationMillis += durationMillis;
+            if (won) {
+                completed++;
+                movesToWin += moves;
+            }
+            if (hints > 0) {
+                gamesWithHints++;
+                totalHints += hints;
+            }
+        }
+
+        void merge(SizeStats other) {
+            games += other.games;
+            completed += other.completed;
+            totalMoves += other.totalMoves;
+            movesToWin += other.movesToWin;
+            totalDurationMillis += other.totalDurationMillis;
+            gamesWithHints += other.gamesWithHints;
+            totalHints += other.totalHints;
+        }
+
+        /** @return the number of saves */
+        public long getGames() { return games; }
+
+        /** @return the number of won games */
+        public long getCompleted() { return completed; }
+
+        /** @return the share of won games between 0 and 1 */
+        public double getCompletionRate() { return games == 0 ? 0 : (double) completed / games; }
+
+        /** @return the average number of moves over all saves */
+        public double getAverageMoves() { return games == 0 ? 0 : (double) totalMoves / games; }
+
+        /** @return the average number of moves of won games */
+        public double getAverageMovesToWin() { return completed == 0 ? 0 : (double) movesToWin / completed; }
+
+        /** @return the average play time in seconds */
+        public double getAverageDurationSeconds() { return games == 0 ? 0 : totalDurationMillis / 1000.0 / games; }
+
+        /** @return the share of games in which the hint window was opened at least once */
+        public double getHintUsageRate() { return games == 0 ? 0 : (double) gamesWithHints / games; }
+
+        /** @return the average number of hint window openings per game */
+        public double getAverageHints() { return games == 0 ? 0 : (double) totalHints / games; }
+    }
+
+    private final Map<String, SizeStats> bySize;
+    private final long filesRead;
+    private final long failedFiles;
+    private final long elapsedNanos;
+
+    /**
+     * Constructs a report.
+     *
+     * @param bySize       statistics keyed by board size (e.g., {@code "5x5"})
+     * @param filesRead    number of save files processed
+     * @param failedFiles  number of save files that could not be decoded
+     * @param elapsedNanos wall-clock time of the analysis
+     */
+    AnalyticsReport(Map<String, SizeStats> bySize, long filesRead, long failedFiles, long elapsedNanos) {
+        TreeMap<String, SizeStats> sorted = new TreeMap<>((a, b) -> {
+            int cmp = Integer.compare(cells(a), cells(b));
+            return cmp != 0 ? cmp : a.compareTo(b);
+        });
+        sorted.putAll(bySize);
+        this.bySize = Collections.unmodifiableMap(sorted);
+        this.filesRead = filesRead;
+        this.failedFiles = failedFiles;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    private static int cells(String size) {
+        String[] parts = size.split("x");
+        return Integer.parseInt(parts[0]) * Integer.parseInt(parts[1]);
+    }
+
+    /**
+     * Returns the statistics grouped by board size, from the smallest board.
+     *
+     * @return an unmodifiable map keyed by {@code "<rows>x<cols>"}
+     */
+    public Map<String, SizeStats> getBySize() { return bySize; }
+
+    /**
+     * Returns the number of save files processed.
+     *
+     * @return the file count
+     */
+    public long getFilesRead() { return filesRead; }
+
+    /**
+     * Returns the number of save files that could not be decoded.
+     *
+     * @return the failure count
+     */
+    public long getFailedFiles() { return failedFiles; }
+
+    /**
+     * Returns the throughput of the analysis.
+     *
+     * @return processed save files per second
+     */
+    public double getFilesPerSecond() {
+        return elapsedNanos == 0 ? 0 : filesRead * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    /**
+     * Formats the report as a plain text table.
+     *
+     * @return the report text
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-7s %8s %7s %9s %10s %9s %7s%n",
+                "size", "games", "won%", "avgMoves", "movesToWin", "avgSecs", "hints%"));
+        for (Map.Entry<String, SizeStats> e : bySize.entrySet()) {
+            SizeStats s = e.getValue();
+            sb.append(String.format("%-7s %8d %6.1f%% %9.1f %10.1f %9.1f %6.1f%%%n",
+                    e.getKey(), s.getGames(), 100 * s.getCompletionRate(), s.getAverageMoves(),
+                    s.getAverageMovesToWin(), s.getAverageDurationSeconds(), 100 * s.getHintUsageRate()));
+        }
+        sb.append(String.format("%d files (%d failed) in %.2f s, %.0f files/s%n",
+                filesRead, failedFiles, elapsedNanos / 1e9, getFilesPerSecond()));
+        return sb.toString();
+    }
+}
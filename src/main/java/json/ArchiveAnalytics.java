@@ -0,0 +1,185 @@
+package json;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Headless analytics over all saved games, e.g., the average number of moves to win per board size
+ * or how often players open the hint window.
+ * <p>
+ * Save files are streamed from the directory through a two-stage pipeline: virtual threads read
+ * the files (I/O bound) and hand the bytes to a fork-join pool that decodes them (CPU bound).
+ * Only the metadata fields of each save are decoded; no {@code Game} is built. Every worker
+ * aggregates into its own accumulator and the accumulators are merged at the end, so the workers
+ * never contend on shared state. The number of files in flight is bounded, so memory use does not
+ * depend on the size of the archive.
+ * </p>
+ *
+ * <p>Can be run from the command line: {@code ArchiveAnalytics [dataDirectory] [threads]}.</p>
+ *
+ * @author Alina Paliienko (xpaliia00)
+ */
+public class ArchiveAnalytics {
+    private static final Pattern SAVE_NAME = Pattern.compile("\\d+\\.json");
+    private static final int IN_FLIGHT_PER_WORKER = 64;
+
+    private ArchiveAnalytics() {
+    }
+
+    /**
+     * Per-worker statistics, keyed by {@code rows << 16 | cols}.
+     */
+    private static class Accumulator {
+        final Map<Integer, AnalyticsReport.SizeStats> bySize = new HashMap<>();
+    }
+
+    /**
+     * Analyzes all saves in the given directory using all available processors.
+     *
+     * @param dataDirectory the directory with the save files
+     * @return the aggregated report
+     * @throws IOException if the directory cannot be listed
+     */
+    public static AnalyticsReport analyze(Path dataDirectory) throws IOException {
+        return analyze(dataDirectory, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Analyzes all saves in the given directory.
+     *
+     * @param dataDirectory the directory with the save files
+     * @param parallelism   the number of threads decoding saves
+     * @return the aggregated report
+     * @throws IOException if the directory cannot be listed
+     */
+    public static AnalyticsReport analyze(Path dataDirectory, int parallelism) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        long start = System.nanoTime();
+
+        ConcurrentLinkedQueue<Accumulator> accumulators = new ConcurrentLinkedQueue<>();
+        ThreadLocal<Accumulator> local = ThreadLocal.withInitial(() -> {
+            Accumulator acc = new Accumulator();
+            accumulators.add(acc);
+            return acc;
+        });
+        LongAdder filesRead = new LongAdder();
+        LongAdder failed = new LongAdder();
+
+        Semaphore inFlight = new Semaphore(parallelism * IN_FLIGHT_PER_WORKER);
+        Phaser pending = new Phaser(1);
+        ForkJoinPool decoders = new ForkJoinPool(parallelism);
+
+        try (ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor();
+             DirectoryStream<Path> files = Files.newDirectoryStream(dataDirectory, "*.json")) {
+            for (Path file : files) {
+                if (!SAVE_NAME.matcher(file.getFileName().toString()).matches()) continue;
+
+                inFlight.acquireUninterruptibly();
+                pending.register();
+                readers.execute(() -> {
+                    byte[] data;
+                    try {
+                        data = Files.readAllBytes(file);
+                    } catch (IOException e) {
+                        failed.increment();
+                        filesRead.increment();
+                        inFlight.release();
+                        pending.arriveAndDeregister();
+                        return;
+                    }
+                    decoders.execute(() -> {
+                        try {
+                            if (!decode(data, local.get())) {
+                                failed.increment();
+                            }
+                            filesRead.increment();
+                        } finally {
+                            inFlight.release();
+                            pending.arriveAndDeregister();
+                        }
+                    });
+                });
+            }
+            pending.arriveAndAwaitAdvance();
+        } finally {
+            decoders.shutdown();
+        }
+
+        Map<String, AnalyticsReport.SizeStats> merged = new HashMap<>();
+        for (Accumulator acc : accumulators) {
+            for (Map.Entry<Integer, AnalyticsReport.SizeStats> e : acc.bySize.entrySet()) {
+                String size = (e.getKey() >> 16) + "x" + (e.getKey() & 0xFFFF);
+                merged.computeIfAbsent(size, k -> new AnalyticsReport.SizeStats()).merge(e.getValue());
+            }
+        }
+        return new AnalyticsReport(merged, filesRead.sum(), failed.sum(), System.nanoTime() - start);
+    }
+
+    /**
+     * Decodes the metadata of one save and adds it to the accumulator.
+     * The board and history arrays are skipped without being materialized.
+     *
+     * @param data the raw save file
+     * @param acc  the accumulator of the current worker
+     * @return false if the save could not be decoded
+     */
+    private static boolean decode(byte[] data, Accumulator acc) {
+        try (JsonReader json = new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(data), StandardCharsets.UTF_8))) {
+            long timestamp = 0;
+            long startedAt = -1;
+            int rows = 0, cols = 0, moves = 0, hints = 0;
+            boolean completed = false;
+
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "timestamp" -> timestamp = json.nextLong();
+                    case "startedAt" -> startedAt = json.nextLong();
+                    case "rows" -> rows = json.nextInt();
+                    case "cols" -> cols = json.nextInt();
+                    case "moveNumber" -> moves = json.nextInt();
+                    case "completed" -> completed = json.nextBoolean();
+                    case "hintsUsed" -> hints = json.nextInt();
+                    default -> json.skipValue();
+                }
+            }
+            json.endObject();
+
+            if (rows <= 0 || cols <= 0) return false;
+            long duration = startedAt < 0 ? 0 : Math.max(0, timestamp - startedAt);
+            acc.bySize.computeIfAbsent((rows << 16) | cols, k -> new AnalyticsReport.SizeStats())
+                    .add(moves, completed, duration, hints);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Prints the report for a save directory to standard output.
+     *
+     * @param args optional data directory (default {@code data}) and number of threads
+     * @throws IOException if the directory cannot be listed
+     */
+    public static void main(String[] args) throws IOException {
+        Path dir = Paths.get(args.length > 0 ? args[0] : "data");
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        System.out.print(analyze(dir, threads));
+    }
+}
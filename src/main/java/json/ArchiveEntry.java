@@ -0,0 +1,111 @@
+package json;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Immutable summary of one saved game as kept in the archive index.
+ * <p>
+ * Holds only the metadata needed to filter and sort saves (dates, board size,
+ * move count, completion status), so that queries never have to open the save files.
+ * </p>
+ *
+ * @author Alina Paliienko (xpaliia00)
+ */
+public class ArchiveEntry {
+    private final int id;
+    private final long timestamp;
+    private final long startedAt;
+    private final int rows;
+    private final int cols;
+    private final int moveCount;
+    private final boolean completed;
+
+    /**
+     * Constructs a new index entry.
+     *
+     * @param id        the numeric ID of the save
+     * @param timestamp the time of the last save (milliseconds since epoch)
+     * @param startedAt the time of the first save (milliseconds since epoch)
+     * @param rows      number of rows of the board
+     * @param cols      number of columns of the board
+     * @param moveCount number of moves recorded in the save
+     * @param completed whether all bulbs were lit when the game was saved
+     */
+    public ArchiveEntry(int id, long timestamp, long startedAt, int rows, int cols, int moveCount, boolean completed) {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.startedAt = startedAt;
+        this.rows = rows;
+        this.cols = cols;
+        this.moveCount = moveCount;
+        this.completed = completed;
+    }
+
+    /**
+     * Returns the ID of the save (e.g., {@code 3} for {@code "3.json"}).
+     *
+     * @return the save ID
+     */
+    public int getId() { return id; }
+
+    /**
+     * Returns the time of the last save.
+     *
+     * @return milliseconds since epoch
+     */
+    public long getTimestamp() { return timestamp; }
+
+    /**
+     * Returns the time of the first save of the game.
+     *
+     * @return milliseconds since epoch
+     */
+    public long getStartedAt() { return startedAt; }
+
+    /**
+     * Returns the number of rows of the board.
+     *
+     * @return the row count
+     */
+    public int getRows() { return rows; }
+
+    /**
+     * Returns the number of columns of the board.
+     *
+     * @return the column count
+     */
+    public int getCols() { return cols; }
+
+    /**
+     * Returns the number of moves recorded in the save.
+     *
+     * @return the move count
+     */
+    public int getMoveCount() { return moveCount; }
+
+    /**
+     * Returns whether all bulbs were lit at the time of the last save.
+     *
+     * @return true if the game was won
+     */
+    public boolean isCompleted() { return completed; }
+
+    /**
+     * Returns how long the game was played, measured between its first and last save.
+     *
+     * @return the duration in milliseconds
+     */
+    public long getDurationMillis() { return Math.max(0, timestamp - startedAt); }
+
+    /**
+     * Returns the date (without time) of the last save in the system time zone.
+     *
+     * @return the save date
+     */
+    public LocalDate getDate() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()).toLocalDate();
+    }
+}
@@ -0,0 +1,418 @@
+package json;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Secondary indexes over the saved games, used to answer {@link ArchiveQuery} requests
+ * without opening the save files.
+ * <p>
+ * The index is kept in memory and persisted as an append-only log of fixed-size binary records
+ * in {@code data/archive.idx}. Every save written by {@link GameSerializer} appends one record,
+ * deletions append a tombstone, and the log is compacted when it grows much larger than the
+ * number of live entries. If the log is missing it is rebuilt by scanning the save files once.
+ * </p>
+ *
+ * <p>
+ * Besides the primary map by ID, entries are indexed by save time, board size and move count,
+ * and a query is evaluated starting from the most selective of these indexes.
+ * </p>
+ *
+ * @author Alina Paliienko (xpaliia00)
+ */
+class ArchiveIndex {
+    static final String INDEX_FILE_NAME = "archive.idx";
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    // op(1) + id(4) + timestamp(8) + startedAt(8) + rows(2) + cols(2) + moves(4) + completed(1)
+    private static final int RECORD_SIZE = 30;
+
+    private static ArchiveIndex shared;
+
+    private final Path dataDirectory;
+    private final Path indexFile;
+
+    private final Map<Integer, ArchiveEntry> byId = new HashMap<>();
+    private final TreeMap<Long, Set<Integer>> byTimestamp = new TreeMap<>();
+    private final Map<Integer, Set<Integer>> bySize = new HashMap<>();
+    private final TreeMap<Integer, Set<Integer>> byMoves = new TreeMap<>();
+
+    private boolean loaded = false;
+    private int logRecords = 0;
+
+    /**
+     * Creates an index over the save files in the given directory.
+     *
+     * @param dataDirectory the directory containing the save files
+     */
+    ArchiveIndex(Path dataDirectory) {
+        this.dataDirectory = dataDirectory;
+        this.indexFile = dataDirectory.resolve(INDEX_FILE_NAME);
+    }
+
+    /**
+     * Returns the index over the default {@code data/} directory.
+     *
+     * @return the shared index instance
+     */
+    static synchronized ArchiveIndex shared() {
+        if (shared == null) {
+            shared = new ArchiveIndex(Paths.get("data"));
+        }
+        return shared;
+    }
+
+    /**
+     * Adds or replaces the entry of one save and appends it to the index log.
+     *
+     * @param entry the new entry
+     */
+    synchronized void put(ArchiveEntry entry) {
+        ensureLoaded();
+        appendRecord(PUT, entry);
+        apply(entry);
+        compactIfStale();
+    }
+
+    /**
+     * Adds or replaces the entries of many saves with a single append to the index log.
+     *
+     * @param entries the new entries
+     */
+    synchronized void putAll(Collection<ArchiveEntry> entries) {
+        ensureLoaded();
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE * entries.size());
+        for (ArchiveEntry e : entries) {
+            encode(buf, PUT, e);
+        }
+        append(buf.array());
+        logRecords += entries.size();
+        for (ArchiveEntry e : entries) {
+            apply(e);
+        }
+        compactIfStale();
+    }
+
+    /**
+     * Removes the entry of a deleted save.
+     *
+     * @param id the ID of the save
+     */
+    synchronized void remove(int id) {
+        ensureLoaded();
+        ArchiveEntry old = byId.get(id);
+        if (old == null) return;
+        appendRecord(REMOVE, old);
+        unapply(old);
+        compactIfStale();
+    }
+
+    /**
+     * Returns the entry of the given save, if indexed.
+     *
+     * @param id the ID of the save
+     * @return the entry or {@code null}
+     */
+    synchronized ArchiveEntry get(int id) {
+        ensureLoaded();
+        return byId.get(id);
+    }
+
+    /**
+     * Evaluates the query against the index.
+     *
+     * @param q the query
+     * @return the requested page of matching entries
+     */
+    synchronized ArchivePage query(ArchiveQuery q) {
+        ensureLoaded();
+
+        List<ArchiveEntry> matches = new ArrayList<>();
+        for (Integer id : candidates(q)) {
+            ArchiveEntry e = byId.get(id);
+            if (q.matches(e)) {
+                matches.add(e);
+            }
+        }
+        matches.sort(q.comparator());
+
+        int from = Math.min(q.offset, matches.size());
+        int to = (int) Math.min((long) from + q.limit, matches.size());
+        return new ArchivePage(matches.subList(from, to), matches.size(), from);
+    }
+
+    /**
+     * Brings the index in line with the save files on disk: saves that are not indexed
+     * are read once, and entries of saves that no longer exist are removed.
+     */
+    synchronized void sync() {
+        ensureLoaded();
+        Set<Integer> onDisk = new HashSet<>(listSaveIds());
+        for (Integer id : new ArrayList<>(byId.keySet())) {
+            if (!onDisk.contains(id)) {
+                remove(id);
+            }
+        }
+        for (Integer id : onDisk) {
+            if (!byId.containsKey(id)) {
+                ArchiveEntry e = readEntry(id);
+                if (e != null) put(e);
+            }
+        }
+    }
+
+    /**
+     * Drops the in-memory state and the log and rebuilds both from the save files.
+     */
+    synchronized void rebuild() {
+        clear();
+        for (Integer id : listSaveIds()) {
+            ArchiveEntry e = readEntry(id);
+            if (e != null) apply(e);
+        }
+        compact();
+        loaded = true;
+    }
+
+    /**
+     * Selects the smallest set of candidate IDs using the secondary index that best fits the query.
+     *
+     * @param q the query
+     * @return the IDs that may match the query
+     */
+    private Collection<Integer> candidates(ArchiveQuery q) {
+        if (q.rows >= 0) {
+            return bySize.getOrDefault(sizeKey(q.rows, q.cols), Set.of());
+        }
+        if (q.fromTimestamp != Long.MIN_VALUE || q.toTimestamp != Long.MAX_VALUE) {
+            return flatten(byTimestamp.subMap(q.fromTimestamp, true, q.toTimestamp, false).values());
+        }
+        if (q.minMoves > 0 || q.maxMoves != Integer.MAX_VALUE) {
+            return flatten(byMoves.subMap(q.minMoves, true, q.maxMoves, true).values());
+        }
+        return byId.keySet();
+    }
+
+    private static List<Integer> flatten(Collection<Set<Integer>> buckets) {
+        List<Integer> ids = new ArrayList<>();
+        for (Set<Integer> bucket : buckets) {
+            ids.addAll(bucket);
+        }
+        return ids;
+    }
+
+    /**
+     * Loads the index log on first use, or rebuilds the index if the log disappeared
+     * (e.g., because the {@code data/} directory was cleaned).
+     */
+    private void ensureLoaded() {
+        if (loaded && Files.exists(indexFile)) return;
+        if (Files.exists(indexFile)) {
+            load();
+        } else {
+            rebuild();
+        }
+    }
+
+    /**
+     * Replays the index log into memory and compacts it if it contains too many stale records.
+     */
+    private void load() {
+        clear();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException eof) {
+                    break;
+                }
+                ArchiveEntry e = new ArchiveEntry(in.readInt(), in.readLong(), in.readLong(),
+                        in.readShort(), in.readShort(), in.readInt(), in.readBoolean());
+                logRecords++;
+                if (op == PUT) {
+                    apply(e);
+                } else if (op == REMOVE) {
+                    ArchiveEntry old = byId.get(e.getId());
+                    if (old != null) unapply(old);
+                }
+            }
+        } catch (EOFException e) {
+            // Truncated last record (e.g., the process was killed while appending); ignore it
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read archive index " + indexFile, e);
+        }
+        loaded = true;
+        compactIfStale();
+    }
+
+    /**
+     * Compacts the index log if it contains too many stale records, e.g., after many saves of the same game.
+     */
+    private void compactIfStale() {
+        if (logRecords > 2 * byId.size() + 64) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the index log so that it contains exactly one record per live entry.
+     */
+    private void compact() {
+        if (!Files.isDirectory(dataDirectory)) {
+            logRecords = 0;
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE * byId.size());
+        for (ArchiveEntry e : byId.values()) {
+            encode(buf, PUT, e);
+        }
+        try {
+            Path tmp = dataDirectory.resolve(INDEX_FILE_NAME + ".tmp");
+            Files.write(tmp, buf.array());
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write archive index " + indexFile, e);
+        }
+        logRecords = byId.size();
+    }
+
+    private void appendRecord(byte op, ArchiveEntry e) {
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE);
+        encode(buf, op, e);
+        append(buf.array());
+        logRecords++;
+    }
+
+    private void append(byte[] records) {
+        try {
+            Files.createDirectories(dataDirectory);
+            Files.write(indexFile, records, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not update archive index " + indexFile, ex);
+        }
+    }
+
+    private static void encode(ByteBuffer buf, byte op, ArchiveEntry e) {
+        buf.put(op)
+                .putInt(e.getId())
+                .putLong(e.getTimestamp())
+                .putLong(e.getStartedAt())
+                .putShort((short) e.getRows())
+                .putShort((short) e.getCols())
+                .putInt(e.getMoveCount())
+                .put((byte) (e.isCompleted() ? 1 : 0));
+    }
+
+    private void apply(ArchiveEntry e) {
+        ArchiveEntry old = byId.put(e.getId(), e);
+        if (old != null) {
+            unindex(old);
+        }
+        byTimestamp.computeIfAbsent(e.getTimestamp(), k -> new HashSet<>()).add(e.getId());
+        bySize.computeIfAbsent(sizeKey(e.getRows(), e.getCols()), k -> new HashSet<>()).add(e.getId());
+        byMoves.computeIfAbsent(e.getMoveCount(), k -> new HashSet<>()).add(e.getId());
+    }
+
+    private void unapply(ArchiveEntry e) {
+        byId.remove(e.getId());
+        unindex(e);
+    }
+
+    private void unindex(ArchiveEntry e) {
+        removeFrom(byTimestamp, e.getTimestamp(), e.getId());
+        removeFrom(bySize, sizeKey(e.getRows(), e.getCols()), e.getId());
+        removeFrom(byMoves, e.getMoveCount(), e.getId());
+    }
+
+    private static <K> void removeFrom(Map<K, Set<Integer>> index, K key, int id) {
+        Set<Integer> bucket = index.get(key);
+        if (bucket != null && bucket.remove(id) && bucket.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private void clear() {
+        byId.clear();
+        byTimestamp.clear();
+        bySize.clear();
+        byMoves.clear();
+        logRecords = 0;
+        loaded = false;
+    }
+
+    private static int sizeKey(int rows, int cols) {
+        return (rows << 16) | cols;
+    }
+
+    /**
+     * Lists the IDs of all save files in the data directory.
+     *
+     * @return the save IDs, or an empty list if the directory does not exist
+     */
+    private List<Integer> listSaveIds() {
+        if (!Files.isDirectory(dataDirectory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dataDirectory)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.matches("\\d+\\.json"))
+                    .map(n -> Integer.valueOf(n.substring(0, n.length() - 5)))
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list saved games in " + dataDirectory, e);
+        }
+    }
+
+    /**
+     * Reads the index entry of one save file. Only the metadata fields are decoded;
+     * the board and history arrays are skipped without being materialized.
+     *
+     * @param id the ID of the save
+     * @return the entry, or {@code null} if the file is not a valid save
+     */
+    private ArchiveEntry readEntry(int id) {
+        Path file = dataDirectory.resolve(id + ".json");
+        try (InputStream in = Files.newInputStream(file);
+             Reader reader = new InputStreamReader(new BufferedInputStream(in));
+             JsonReader json = new JsonReader(reader)) {
+            long timestamp = 0;
+            long startedAt = -1;
+            int rows = 0, cols = 0, moves = 0;
+            boolean completed = false;
+
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "timestamp" -> timestamp = json.nextLong();
+                    case "startedAt" -> startedAt = json.nextLong();
+                    case "rows" -> rows = json.nextInt();
+                    case "cols" -> cols = json.nextInt();
+                    case "moveNumber" -> moves = json.nextInt();
+                    case "completed" -> completed = json.nextBoolean();
+                    default -> json.skipValue();
+                }
+            }
+            json.endObject();
+
+            if (rows <= 0 || cols <= 0) return null;
+            return new ArchiveEntry(id, timestamp, startedAt < 0 ? timestamp : startedAt,
+                    rows, cols, moves, completed);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+}
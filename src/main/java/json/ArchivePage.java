@@ -0,0 +1,55 @@
+package json;
+
+import java.util.List;
+
+/**
+ * One page of the result of an {@link ArchiveQuery}.
+ *
+ * @author Alina Paliienko (xpaliia00)
+ */
+public class ArchivePage {
+    private final List<ArchiveEntry> entries;
+    private final int totalMatches;
+    private final int offset;
+
+    /**
+     * Constructs a result page.
+     *
+     * @param entries      the entries on this page, in result order
+     * @param totalMatches the number of saves matching the query across all pages
+     * @param offset       the position of the first entry within the whole result
+     */
+    ArchivePage(List<ArchiveEntry> entries, int totalMatches, int offset) {
+        this.entries = List.copyOf(entries);
+        this.totalMatches = totalMatches;
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the entries on this page.
+     *
+     * @return an unmodifiable list of entries
+     */
+    public List<ArchiveEntry> getEntries() { return entries; }
+
+    /**
+     * Returns the number of saves matching the query across all pages.
+     *
+     * @return the total match count
+     */
+    public int getTotalMatches() { return totalMatches; }
+
+    /**
+     * Returns the position of the first entry of this page within the whole result.
+     *
+     * @return the page offset
+     */
+    public int getOffset() { return offset; }
+
+    /**
+     * Checks whether more matching saves follow this page.
+     *
+     * @return true if there is a next page
+     */
+    public boolean hasMore() { return offset + entries.size() < totalMatches; }
+}
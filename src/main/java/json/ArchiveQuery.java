@@ -0,0 +1,237 @@
+package json;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Comparator;
+
+/**
+ * Describes a query over the saved games in the archive.
+ * <p>
+ * A query is built by chaining filter methods onto {@link #all()}; unset filters match every save.
+ * The result is sorted by one {@link SortKey} and cut into a page with {@link #page(int, int)}.
+ * Queries are evaluated by {@link GameArchive#query(ArchiveQuery)} against the archive index,
+ * without opening the save files.
+ * </p>
+ *
+ * <pre>{@code
+ * ArchivePage page = GameArchive.query(ArchiveQuery.all()
+ *         .boardSize(5, 5)
+ *         .completed(true)
+ *         .sortBy(ArchiveQuery.SortKey.MOVES, false)
+ *         .page(0, 20));
+ * }</pre>
+ *
+ * @author Alina Paliienko (xpaliia00)
+ */
+public class ArchiveQuery {
+
+    /**
+     * Attributes the query result can be sorted by.
+     */
+    public enum SortKey {
+        /** Time of the last save. */
+        DATE(Comparator.comparingLong(ArchiveEntry::getTimestamp)),
+        /** Number of board cells. */
+        SIZE(Comparator.comparingInt(e -> e.getRows() * e.getCols())),
+        /** Number of recorded moves. */
+        MOVES(Comparator.comparingInt(ArchiveEntry::getMoveCount)),
+        /** Time between the first and the last save. */
+        DURATION(Comparator.comparingLong(ArchiveEntry::getDurationMillis)),
+        /** Save ID. */
+        ID(Comparator.comparingInt(ArchiveEntry::getId));
+
+        private final Comparator<ArchiveEntry> comparator;
+
+        SortKey(Comparator<ArchiveEntry> comparator) {
+            this.comparator = comparator.thenComparingInt(ArchiveEntry::getId);
+        }
+    }
+
+    long fromTimestamp = Long.MIN_VALUE;
+    long toTimestamp = Long.MAX_VALUE;
+    int rows = -1;
+    int cols = -1;
+    int minMoves = 0;
+    int maxMoves = Integer.MAX_VALUE;
+    Boolean completed = null;
+    long minDuration = 0;
+    long maxDuration = Long.MAX_VALUE;
+    SortKey sortKey = SortKey.DATE;
+    boolean descending = true;
+    int offset = 0;
+    int limit = Integer.MAX_VALUE;
+
+    private ArchiveQuery() {
+    }
+
+    /**
+     * Creates a query matching every save, sorted from the newest, without paging.
+     *
+     * @return a new query
+     */
+    public static ArchiveQuery all() {
+        return new ArchiveQuery();
+    }
+
+    /**
+     * Restricts the result to saves last written within the given time range.
+     *
+     * @param fromMillis inclusive start (milliseconds since epoch)
+     * @param toMillis   exclusive end (milliseconds since epoch)
+     * @return this query
+     * @throws IllegalArgumentException if the range ends before it starts
+     */
+    public ArchiveQuery savedBetween(long fromMillis, long toMillis) {
+        if (fromMillis > toMillis) {
+            throw new IllegalArgumentException("Invalid time range: from=" + fromMillis + ", to=" + toMillis);
+        }
+        this.fromTimestamp = fromMillis;
+        this.toTimestamp = toMillis;
+        return this;
+    }
+
+    /**
+     * Restricts the result to saves last written on the given days (system time zone).
+     *
+     * @param from the first day, inclusive
+     * @param to   the last day, inclusive
+     * @return this query
+     * @throws IllegalArgumentException if the last day is before the first one
+     */
+    public ArchiveQuery savedBetween(LocalDate from, LocalDate to) {
+        ZoneId zone = ZoneId.systemDefault();
+        return savedBetween(from.atStartOfDay(zone).toInstant().toEpochMilli(),
+                to.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli());
+    }
+
+    /**
+     * Restricts the result to boards of the given size.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     * @return this query
+     */
+    public ArchiveQuery boardSize(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        return this;
+    }
+
+    /**
+     * Restricts the result to saves with a move count in the given range.
+     *
+     * @param min the minimum move count, inclusive
+     * @param max the maximum move count, inclusive
+     * @return this query
+     * @throws IllegalArgumentException if the maximum is below the minimum
+     */
+    public ArchiveQuery moves(int min, int max) {
+        if (min > max) {
+            throw new IllegalArgumentException("Invalid move range: min=" + min + ", max=" + max);
+        }
+        this.minMoves = min;
+        this.maxMoves = max;
+        return this;
+    }
+
+    /**
+     * Restricts the result to won or unfinished games.
+     *
+     * @param completed true for won games, false for unfinished ones
+     * @return this query
+     */
+    public ArchiveQuery completed(boolean completed) {
+        this.completed = completed;
+        return this;
+    }
+
+    /**
+     * Restricts the result to games played for a time in the given range.
+     *
+     * @param minMillis the minimum duration, inclusive
+     * @param maxMillis the maximum duration, inclusive
+     * @return this query
+     * @throws IllegalArgumentException if the maximum is below the minimum
+     */
+    public ArchiveQuery duration(long minMillis, long maxMillis) {
+        if (minMillis > maxMillis) {
+            throw new IllegalArgumentException("Invalid duration range: min=" + minMillis + ", max=" + maxMillis);
+        }
+        this.minDuration = minMillis;
+        this.maxDuration = maxMillis;
+        return this;
+    }
+
+    /**
+     * Sets the order of the result.
+     *
+     * @param key        the attribute to sort by
+     * @param descending true to sort from the largest value
+     * @return this query
+     */
+    public ArchiveQuery sortBy(SortKey key, boolean descending) {
+        this.sortKey = key;
+        this.descending = descending;
+        return this;
+    }
+
+    /**
+     * Selects one page of the sorted result.
+     *
+     * @param offset the number of matching saves to skip
+     * @param limit  the maximum number of saves to return
+     * @return this query
+     */
+    public ArchiveQuery page(int offset, int limit) {
+        if (offset < 0 || limit <= 0) {
+            throw new IllegalArgumentException("Invalid page: offset=" + offset + ", limit=" + limit);
+        }
+        this.offset = offset;
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Returns a copy of this query selecting its whole sorted result, leaving this query's paging as it is.
+     *
+     * @return a new query with the same filters and order
+     */
+    ArchiveQuery unpaged() {
+        ArchiveQuery copy = new ArchiveQuery();
+        copy.fromTimestamp = fromTimestamp;
+        copy.toTimestamp = toTimestamp;
+        copy.rows = rows;
+        copy.cols = cols;
+        copy.minMoves = minMoves;
+        copy.maxMoves = maxMoves;
+        copy.completed = completed;
+        copy.minDuration = minDuration;
+        copy.maxDuration = maxDuration;
+        copy.sortKey = sortKey;
+        copy.descending = descending;
+        return copy;
+    }
+
+    /**
+     * Checks whether the entry satisfies all filters of this query.
+     *
+     * @param e the index entry
+     * @return true if the entry belongs to the result
+     */
+    boolean matches(ArchiveEntry e) {
+        return e.getTimestamp() >= fromTimestamp && e.getTimestamp() < toTimestamp
+                && (rows < 0 || (e.getRows() == rows && e.getCols() == cols))
+                && e.getMoveCount() >= minMoves && e.getMoveCount() <= maxMoves
+                && (completed == null || e.isCompleted() == completed)
+                && e.getDurationMillis() >= minDuration && e.getDurationMillis() <= maxDuration;
+    }
+
+    /**
+     * Returns the comparator defining the order of the result.
+     *
+     * @return the comparator for the selected sort key and direction
+     */
+    Comparator<ArchiveEntry> comparator() {
+        return descending ? sortKey.comparator.reversed() : sortKey.comparator;
+    }
+}
@@ -0,0 +1,404 @@
+package json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming bulk export and import of the saved games in the {@code data/} directory.
+ * <p>
+ * The whole archive, or the result of an {@link ArchiveQuery}, is written to a single stream
+ * instead of thousands of small files. Two formats are supported:
+ * </p>
+ * <ul>
+ *     <li>{@link Format#NDJSON} – one line {@code {"id":3,"save":{...}}} per save,</li>
+ *     <li>{@link Format#BINARY} – a gzip-compressed stream of {@code (id, length, save)} records.</li>
+ * </ul>
+ *
+ * <p>
+ * Every exported save is self-contained: a board kept in the {@link BoardStore} is embedded again.
+ * Import assigns new IDs from one block after the highest existing ID and writes the saves,
+ * their board references and index entries in batches. Both directions hold at most one batch
+ * in memory, independently of the size of the archive.
+ * </p>
+ *
+ * <p>Can be run from the command line: {@code ArchiveTransfer export|import <file> [ndjson|binary]}.</p>
+ *
+ * @author Alina Paliienko (xpaliia00)
+ */
+public class ArchiveTransfer {
+    /** Supported stream formats. */
+    public enum Format { NDJSON, BINARY }
+
+    private static final Path DATA_DIRECTORY = Paths.get("data");
+    private static final byte[] BINARY_MAGIC = {'L', 'B', 'A', '1'};
+    private static final int BATCH_SIZE = 500;
+    private static final int BOARD_CACHE_SIZE = 64;
+
+    private static final Gson COMPACT = new Gson();
+    private static final Gson PRETTY = new GsonBuilder().setPrettyPrinting().create();
+
+    private ArchiveTransfer() {
+    }
+
+    /**
+     * Exports all saves in the archive.
+     *
+     * @param out    the target stream (not closed)
+     * @param format the stream format
+     * @return the transfer statistics
+     * @throws IOException if a save cannot be read or the stream cannot be written
+     */
+    public static TransferStats exportArchive(OutputStream out, Format format) throws IOException {
+        long start = System.nanoTime();
+        CountingOutputStream counted = new CountingOutputStream(out);
+        long records = 0;
+        try (RecordWriter writer = openWriter(counted, format);
+             DirectoryStream<Path> files = Files.newDirectoryStream(DATA_DIRECTORY, "*.json")) {
+            BoardCache boards = new BoardCache();
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!name.matches("\\d+\\.json")) continue;
+                int id = Integer.parseInt(name.substring(0, name.length() - 5));
+                writer.write(id, selfContained(file, boards));
+                records++;
+            }
+        }
+        return new TransferStats(records, counted.count, System.nanoTime() - start);
+    }
+
+    /**
+     * Exports the saves matching a query, in the query's order. The query's paging is ignored
+     * and left as it is; the whole result is read from the index once.
+     *
+     * @param out    the target stream (not closed)
+     * @param query  the saves to export
+     * @param format the stream format
+     * @return the transfer statistics
+     * @throws IOException if a save cannot be read or the stream cannot be written
+     */
+    public static TransferStats exportQuery(OutputStream out, ArchiveQuery query, Format format) throws IOException {
+        long start = System.nanoTime();
+        CountingOutputStream counted = new CountingOutputStream(out);
+        long records = 0;
+        try (RecordWriter writer = openWriter(counted, format)) {
+            BoardCache boards = new BoardCache();
+            for (ArchiveEntry entry : GameArchive.query(query.unpaged()).getEntries()) {
+                Path file = DATA_DIRECTORY.resolve(entry.getId() + ".json");
+                if (!Files.exists(file)) continue;
+                writer.write(entry.getId(), selfContained(file, boards));
+                records++;
+            }
+        }
+        return new TransferStats(records, counted.count, System.nanoTime() - start);
+    }
+
+    /**
+     * Imports saves from a stream produced by one of the export methods.
+     * Each save gets a new ID; boards are deduplicated through the {@link BoardStore}.
+     *
+     * @param in     the source stream (not closed)
+     * @param format the stream format
+     * @return the transfer statistics
+     * @throws IOException if the stream is malformed or the saves cannot be written
+     */
+    public static TransferStats importArchive(InputStream in, Format format) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(DATA_DIRECTORY);
+        CountingInputStream counted = new CountingInputStream(in);
+        RecordReader reader = openReader(counted, format);
+
+        int nextId = GameArchive.listSavedGameIds().stream().mapToInt(Integer::intValue).max().orElse(0) + 1;
+        List<JsonObject> batch = new ArrayList<>(BATCH_SIZE);
+        long records = 0;
+        JsonObject save;
+        while ((save = reader.next()) != null) {
+            batch.add(save);
+            if (batch.size() == BATCH_SIZE) {
+                writeBatch(batch, nextId);
+                nextId += batch.size();
+                batch.clear();
+            }
+            records++;
+        }
+        writeBatch(batch, nextId);
+        return new TransferStats(records, counted.count, System.nanoTime() - start);
+    }
+
+    /**
+     * Writes one batch of imported saves, then registers their boards and index entries
+     * with one update per distinct board and one index append for the whole batch.
+     *
+     * @param batch   the saves to write
+     * @param firstId the ID of the first save of the batch
+     * @throws IOException if a save cannot be written
+     */
+    private static void writeBatch(List<JsonObject> batch, int firstId) throws IOException {
+        if (batch.isEmpty()) return;
+        Map<String, List<Integer>> refs = new HashMap<>();
+        Map<String, String> boards = new HashMap<>();
+        List<ArchiveEntry> entries = new ArrayList<>(batch.size());
+
+        int id = firstId;
+        for (JsonObject save : batch) {
+            int rows = save.get("rows").getAsInt();
+            int cols = save.get("cols").getAsInt();
+            JsonElement nodes = save.remove("initialNodes");
+            if (nodes != null && nodes.isJsonArray()) {
+                String hash = BoardStore.hashBoard(rows, cols, nodes.getAsJsonArray());
+                save.addProperty("boardHash", hash);
+                refs.computeIfAbsent(hash, h -> new ArrayList<>()).add(id);
+                boards.computeIfAbsent(hash, h -> {
+                    JsonObject board = new JsonObject();
+                    board.addProperty("rows", rows);
+                    board.addProperty("cols", cols);
+                    board.add("initialNodes", nodes);
+                    return PRETTY.toJson(board);
+                });
+            }
+            Files.writeString(DATA_DIRECTORY.resolve(id + ".json"), PRETTY.toJson(save) + System.lineSeparator());
+
+            long timestamp = getLong(save, "timestamp", 0);
+            entries.add(new ArchiveEntry(id, timestamp, getLong(save, "startedAt", timestamp), rows, cols,
+                    (int) getLong(save, "moveNumber", 0),
+                    save.has("completed") && save.get("completed").getAsBoolean()));
+            id++;
+        }
+
+        for (Map.Entry<String, List<Integer>> e : refs.entrySet()) {
+            BoardStore.shared().retainAll(e.getKey(), e.getValue(), boards.get(e.getKey()));
+        }
+        ArchiveIndex.shared().putAll(entries);
+    }
+
+    private static long getLong(JsonObject obj, String name, long fallback) {
+        JsonElement value = obj.get(name);
+        return value == null || value.isJsonNull() ? fallback : value.getAsLong();
+    }
+
+    /**
+     * Reads a save file and embeds its board if the board is kept in the board store.
+     *
+     * @param file   the save file
+     * @param boards recently used boards
+     * @return the self-contained save
+     * @throws IOException if the save or its board cannot be read
+     */
+    private static JsonObject selfContained(Path file, BoardCache boards) throws IOException {
+        JsonObject save;
+        try (Reader reader = Files.newBufferedReader(file)) {
+            save = JsonParser.parseReader(reader).getAsJsonObject();
+        }
+        if (!save.has("initialNodes") && save.has("boardHash")) {
+            save.add("initialNodes", boards.get(save.remove("boardHash").getAsString()));
+        }
+        return save;
+    }
+
+    /**
+     * Small LRU cache of board node arrays, so that saves sharing a board read it only once.
+     */
+    private static final class BoardCache {
+        /** Boards in access order, the least recently used first. */
+        private final Map<String, JsonArray> boards = new LinkedHashMap<>(16, 0.75f, true);
+
+        JsonArray get(String hash) throws IOException {
+            JsonArray nodes = boards.get(hash);
+            if (nodes == null) {
+                nodes = JsonParser.parseString(BoardStore.shared().read(hash))
+                        .getAsJsonObject().getAsJsonArray("initialNodes");
+                boards.put(hash, nodes);
+                if (boards.size() > BOARD_CACHE_SIZE) {
+                    Iterator<String> eldest = boards.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+            return nodes;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Stream formats
+    // ---------------------------------------------------------------------------------------------
+
+    private interface RecordWriter extends Closeable {
+        void write(int id, JsonObject save) throws IOException;
+    }
+
+    private interface RecordReader {
+        JsonObject next() throws IOException;
+    }
+
+    private static RecordWriter openWriter(OutputStream out, Format format) throws IOException {
+        if (format == Format.NDJSON) {
+            Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            return new RecordWriter() {
+                @Override
+                public void write(int id, JsonObject save) throws IOException {
+                    w.write("{\"id\":");
+                    w.write(Integer.toString(id));
+                    w.write(",\"save\":");
+                    COMPACT.toJson(save, w);
+                    w.write("}\n");
+                }
+
+                @Override
+                public void close() throws IOException {
+                    w.flush();
+                }
+            };
+        }
+        GZIPOutputStream gzip = new GZIPOutputStream(new NonClosingOutputStream(out), 1 << 16);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(gzip, 1 << 16));
+        data.write(BINARY_MAGIC);
+        return new RecordWriter() {
+            @Override
+            public void write(int id, JsonObject save) throws IOException {
+                byte[] bytes = COMPACT.toJson(save).getBytes(StandardCharsets.UTF_8);
+                data.writeInt(id);
+                data.writeInt(bytes.length);
+                data.write(bytes);
+            }
+
+            @Override
+            public void close() throws IOException {
+                data.close();
+            }
+        };
+    }
+
+    private static RecordReader openReader(InputStream in, Format format) throws IOException {
+        if (format == Format.NDJSON) {
+            BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            return () -> {
+                String line;
+                do {
+                    line = r.readLine();
+                    if (line == null) return null;
+                } while (line.isBlank());
+                return JsonParser.parseString(line).getAsJsonObject().getAsJsonObject("save");
+            };
+        }
+        DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in, 1 << 16), 1 << 16));
+        byte[] magic = data.readNBytes(BINARY_MAGIC.length);
+        if (!Arrays.equals(magic, BINARY_MAGIC)) {
+            throw new IOException("Not a binary archive stream");
+        }
+        return () -> {
+            try {
+                data.readInt(); // original ID, a new one is assigned on import
+            } catch (EOFException eof) {
+                return null;
+            }
+            int length = data.readInt();
+            if (length < 0) {
+                throw new IOException("Invalid record length " + length);
+            }
+            byte[] bytes = data.readNBytes(length);
+            if (bytes.length < length) {
+                throw new EOFException("Stream ended inside a record");
+            }
+            return JsonParser.parseString(new String(bytes, StandardCharsets.UTF_8)).getAsJsonObject();
+        };
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
+    /**
+     * Exports or imports the {@code data/} directory from the command line.
+     *
+     * @param args {@code export|import <file> [ndjson|binary]}
+     * @throws IOException if the transfer fails
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: ArchiveTransfer export|import <file> [ndjson|binary]");
+            System.exit(2);
+        }
+        Format format = args.length > 2 ? Format.valueOf(args[2].toUpperCase()) : Format.NDJSON;
+        Path file = Paths.get(args[1]);
+        TransferStats stats;
+        if (args[0].equals("export")) {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+                stats = exportArchive(out, format);
+            }
+        } else {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                stats = importArchive(in, format);
+            }
+        }
+        System.out.println(args[0] + ": " + stats);
+    }
+}
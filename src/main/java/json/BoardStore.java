@@ -0,0 +1,285 @@
+package json;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store of initial board layouts shared by saved games.
+ * <p>
+ * Each distinct layout is written once as {@code board_<hash>.json} next to the save files,
+ * where the hash is derived from the board content. Saves reference the layout by its hash
+ * instead of embedding it, so games played on the same board (e.g., all participants of a
+ * multiplayer match or games started from a pre-generated puzzle) store it only once.
+ * </p>
+ *
+ * <p>
+ * Every layout has a reference file {@code board_<hash>.refs} listing the IDs of the saves
+ * using it. When the last reference is released the layout is deleted;
+ * {@link #collectGarbage()} recomputes all references from the save files.
+ * </p>
+ *
+ * @author Alina Paliienko (xpaliia00)
+ */
+public class BoardStore {
+    private static final String PREFIX = "board_";
+    private static final String BOARD_SUFFIX = ".json";
+    private static final String REFS_SUFFIX = ".refs";
+
+    private static BoardStore shared;
+
+    private final Path directory;
+
+    /**
+     * Creates a store keeping its files in the given directory.
+     *
+     * @param directory the directory with the save files
+     */
+    public BoardStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the store for the default {@code data/} directory.
+     *
+     * @return the shared store instance
+     */
+    public static synchronized BoardStore shared() {
+        if (shared == null) {
+            shared = new BoardStore(Paths.get("data"));
+        }
+        return shared;
+    }
+
+    /**
+     * Computes the content hash of a board from its canonical description.
+     *
+     * @param canonical a string describing the board layout unambiguously
+     * @return the hash as 32 hexadecimal characters
+     */
+    public static String hash(String canonical) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Computes the content hash of a board given as the JSON array of its initial nodes
+     * (the {@code "initialNodes"} field of a save).
+     *
+     * @param rows  number of rows
+     * @param cols  number of columns
+     * @param nodes the initial nodes
+     * @return the board hash
+     */
+    public static String hashBoard(int rows, int cols, JsonArray nodes) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(rows).append('x').append(cols);
+        for (JsonElement el : nodes) {
+            JsonObject n = el.getAsJsonObject();
+            sb.append(';').append(n.get("row").getAsInt()).append(',').append(n.get("col").getAsInt()).append(',')
+                    .append(flag(n, "isPower") ? 'P' : flag(n, "isBulb") ? 'B' : flag(n, "isLink") ? 'L' : 'E');
+            for (JsonElement side : n.getAsJsonArray("connectors")) {
+                sb.append(side.getAsString().charAt(0));
+            }
+        }
+        return hash(sb.toString());
+    }
+
+    private static boolean flag(JsonObject node, String name) {
+        JsonElement value = node.get(name);
+        return value != null && value.getAsBoolean();
+    }
+
+    /**
+     * Stores the board if it is not stored yet and records that the given save references it.
+     *
+     * @param hash      the content hash of the board
+     * @param saveId    the ID of the referencing save
+     * @param boardJson the board in JSON form, written only if the board is new
+     */
+    public void retain(String hash, int saveId, String boardJson) {
+        retainAll(hash, List.of(saveId), boardJson);
+    }
+
+    /**
+     * Stores the board if it is not stored yet and records that all given saves reference it.
+     * The reference file is rewritten once, which makes bulk imports linear in the number of saves.
+     *
+     * @param hash      the content hash of the board
+     * @param saveIds   the IDs of the referencing saves
+     * @param boardJson the board in JSON form, written only if the board is new
+     */
+    public synchronized void retainAll(String hash, Collection<Integer> saveIds, String boardJson) {
+        Path board = boardFile(hash);
+        try {
+            Files.createDirectories(directory);
+            if (!Files.exists(board)) {
+                writeAtomically(board, boardJson);
+            }
+            Set<Integer> refs = readRefs(hash);
+            if (refs.addAll(saveIds)) {
+                writeRefs(hash, refs);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store board " + hash, e);
+        }
+    }
+
+    /**
+     * Removes the reference of the given save and deletes the board if nothing references it anymore.
+     *
+     * @param hash   the content hash of the board
+     * @param saveId the ID of the save that no longer uses the board
+     */
+    public synchronized void release(String hash, int saveId) {
+        try {
+            Set<Integer> refs = readRefs(hash);
+            if (!refs.remove(saveId)) return;
+            if (refs.isEmpty()) {
+                Files.deleteIfExists(boardFile(hash));
+                Files.deleteIfExists(refsFile(hash));
+            } else {
+                writeRefs(hash, refs);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not release board " + hash, e);
+        }
+    }
+
+    /**
+     * Reads the stored board.
+     *
+     * @param hash the content hash of the board
+     * @return the board in JSON form
+     * @throws IOException if the board is not stored or cannot be read
+     */
+    public String read(String hash) throws IOException {
+        return Files.readString(boardFile(hash));
+    }
+
+    /**
+     * Returns the number of saves referencing the board.
+     *
+     * @param hash the content hash of the board
+     * @return the reference count
+     */
+    public synchronized int referenceCount(String hash) {
+        try {
+            return readRefs(hash).size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read references of board " + hash, e);
+        }
+    }
+
+    /**
+     * Recomputes the references of all boards from the save files, rewrites the reference files
+     * and deletes boards no save references.
+     *
+     * @return the number of deleted boards
+     */
+    public synchronized int collectGarbage() {
+        if (!Files.isDirectory(directory)) return 0;
+
+        Map<String, Set<Integer>> refs = new HashMap<>();
+        List<String> stored = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                String name = p.getFileName().toString();
+                if (name.matches("\\d+\\.json")) {
+                    String hash = readBoardHash(p);
+                    if (hash != null) {
+                        int id = Integer.parseInt(name.substring(0, name.length() - BOARD_SUFFIX.length()));
+                        refs.computeIfAbsent(hash, h -> new TreeSet<>()).add(id);
+                    }
+                } else if (name.startsWith(PREFIX) && name.endsWith(BOARD_SUFFIX)) {
+                    stored.add(name.substring(PREFIX.length(), name.length() - BOARD_SUFFIX.length()));
+                }
+            }
+
+            int deleted = 0;
+            for (String hash : stored) {
+                Set<Integer> live = refs.get(hash);
+                if (live == null) {
+                    Files.deleteIfExists(boardFile(hash));
+                    Files.deleteIfExists(refsFile(hash));
+                    deleted++;
+                } else {
+                    writeRefs(hash, live);
+                }
+            }
+            return deleted;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not collect unused boards in " + directory, e);
+        }
+    }
+
+    /**
+     * Reads the {@code "boardHash"} field of a save file without decoding the rest of it.
+     *
+     * @param saveFile the save file
+     * @return the referenced board hash, or {@code null} if the save embeds its board
+     */
+    static String readBoardHash(Path saveFile) {
+        try (Reader reader = Files.newBufferedReader(saveFile);
+             JsonReader json = new JsonReader(reader)) {
+            json.beginObject();
+            while (json.hasNext()) {
+                if (json.nextName().equals("boardHash")) {
+                    return json.nextString();
+                }
+                json.skipValue();
+            }
+            return null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private Path boardFile(String hash) {
+        return directory.resolve(PREFIX + hash + BOARD_SUFFIX);
+    }
+
+    private Path refsFile(String hash) {
+        return directory.resolve(PREFIX + hash + REFS_SUFFIX);
+    }
+
+    private Set<Integer> readRefs(String hash) throws IOException {
+        Path file = refsFile(hash);
+        Set<Integer> refs = new TreeSet<>();
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file)) {
+                if (!line.isBlank()) refs.add(Integer.valueOf(line.trim()));
+            }
+        }
+        return refs;
+    }
+
+    private void writeRefs(String hash, Set<Integer> refs) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int id : refs) {
+            sb.append(id).append('\n');
+        }
+        writeAtomically(refsFile(hash), sb.toString());
+    }
+
+    private void writeAtomically(Path target, String content) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.writeString(tmp, content);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -29,6 +29,7 @@ import java.util.stream.Collectors;
  * @author Alina Paliienko (xpaliia00)
  */
 public class GameArchive {
+    private static final GameSnapshotCache CACHE = new GameSnapshotCache(GameSnapshotCache.DEFAULT_MAX_WEIGHT);
 
     /**
      * Returns a sorted list of all saved game IDs.
@@ -58,6 +59,10 @@ public class GameArchive {
     /**
      * Loads the given game ID from disk by reading the corresponding JSON file
      * and returning a {@code GameDeserializer} instance.
+     * <p>
+     * Parsed save files are kept in a {@link GameSnapshotCache}, so reopening an unchanged save
+     * only rebuilds the game from the cached snapshot instead of reading the file again.
+     * </p>
      *
      * @param gameId the numeric ID of the saved game (e.g., {@code 3} for {@code "3.json"})
      * @return a {@code GameDeserializer} initialized with the game state from the file
@@ -70,7 +75,7 @@ public class GameArchive {
             throw new IllegalArgumentException("No save with id=" + gameId);
         }
         try {
-            return new GameDeserializer(file);
+            return new GameDeserializer(CACHE.get(gameId, file), gameId);
         } catch (Exception e) {
             throw new RuntimeException("Failed to load game " + gameId, e);
         }
@@ -78,28 +83,50 @@ public class GameArchive {
 
     /**
      * Deletes the saved-game file associated with the given ID.
+     * The save's reference to its board in the {@link BoardStore} is released,
+     * which deletes the board once no other save uses it.
      *
      * @param gameId the ID of the game to delete (e.g., {@code 3} for {@code "3.json"})
      * @throws UncheckedIOException if an I/O error occurs while attempting to delete the file
      */
     public static void delete(int gameId) {
         Path file = findDataDirectory().resolve(gameId + ".json");
+        CACHE.invalidate(gameId);
+        ArchiveIndex.shared().remove(gameId);
+        String boardHash = Files.exists(file) ? BoardStore.readBoardHash(file) : null;
         try {
             Files.deleteIfExists(file);
         } catch (IOException e) {
             throw new UncheckedIOException("Could not delete save " + gameId, e);
         }
+        if (boardHash != null) {
+            BoardStore.shared().release(boardHash, gameId);
+        }
+    }
+
+    /**
+     * Recomputes the board references of all saves and deletes stored boards no save uses.
+     *
+     * @return the number of deleted boards
+     */
+    public static int collectUnusedBoards() {
+        return BoardStore.shared().collectGarbage();
     }
 
     /**
      * Returns the date (without time) when the game with the given ID was saved.
-     * The date is extracted from the {@code "timestamp"} field in the JSON file.
+     * The date is taken from the archive index; only saves missing from the index
+     * are read, using the {@code "timestamp"} field in the JSON file.
      *
      * @param gameId the ID of the saved game (e.g., {@code 3} for {@code "3.json"})
      * @return the {@code LocalDate} representing the date the game was saved
      * @throws RuntimeException if the file cannot be read or the timestamp is missing/invalid
      */
     public static LocalDate getGameDate(int gameId) {
+        ArchiveEntry entry = ArchiveIndex.shared().get(gameId);
+        if (entry != null) {
+            return entry.getDate();
+        }
         Path file = findDataDirectory().resolve(gameId + ".json");
         try (FileReader reader = new FileReader(file.toFile())) {
             JsonObject jsonObject = JsonParser.parseReader(reader).getAsJsonObject();
@@ -111,6 +138,36 @@ public class GameArchive {
         }
     }
 
+    /**
+     * Returns one page of the saved games matching the query.
+     * The query is answered from the archive index, without opening the save files.
+     *
+     * @param query the filters, sort order and page to select
+     * @return the matching page of index entries
+     */
+    public static ArchivePage query(ArchiveQuery query) {
+        return ArchiveIndex.shared().query(query);
+    }
+
+    /**
+     * Brings the archive index in line with the {@code data/} directory, indexing save files
+     * written by other means (e.g., copied in by hand) and dropping entries of removed ones.
+     * Only files missing from the index are opened.
+     */
+    public static void syncIndex() {
+        ArchiveIndex.shared().sync();
+    }
+
+    /**
+     * Returns the cache of parsed save files, e.g., to read its hit rate and load latency
+     * or to change its memory budget.
+     *
+     * @return the shared snapshot cache
+     */
+    public static GameSnapshotCache getCache() {
+        return CACHE;
+    }
+
     /**
      * Locates the directory where saved games are stored.
      * Searches for the {@code "data/"} directory; intended fallback to
@@ -2,13 +2,19 @@ package json;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
 import com.google.gson.annotations.SerializedName;
 import common.Position;
 import common.Side;
 import common.GameNode;
 import game.Game;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -22,16 +28,29 @@ import java.util.List;
  * </p>
  *
  * <p>
+ * A game can also be read from memory (a {@link Reader}, UTF-8 bytes or a parsed {@link JsonElement}),
+ * e.g., the board received by a multiplayer client. Such games are not saved to the {@code data/}
+ * directory, and {@link #newGame()} builds further copies without parsing the JSON again.
+ * </p>
+ *
+ * <p>
  * Additional helper methods allow navigation through move history step by step.
  * </p>
  *
  * @author Alina Paliienko (xpaliia00)
  */
 public class GameDeserializer {
+    private final SnapshotWithHistory snapshot;
+    private final int saveId;
     private final Game game;
     private final List<Position> fullHistory;
     private int currentStep = 0;
 
+    private static final Gson GSON = new GsonBuilder().create();
+
+    /** Save ID of a game read from memory, which is never saved. */
+    static final int NOT_SAVED = -1;
+
     /**
      * Reads and reconstructs a saved game from the given JSON file.
      *
@@ -39,13 +58,78 @@ public class GameDeserializer {
      * @throws Exception if the file cannot be read or parsed correctly
      */
     public GameDeserializer(Path jsonFile) throws Exception {
-        SnapshotWithHistory snapshot;
-        try (Reader reader = Files.newBufferedReader(jsonFile)) {
-            Gson gson = new GsonBuilder().create();
-            snapshot = gson.fromJson(reader, SnapshotWithHistory.class);
+        this(readSnapshot(jsonFile), saveIdOf(jsonFile));
+    }
+
+    /**
+     * Reads a game from JSON text, e.g., received over the network.
+     *
+     * @param reader the JSON source; it is not closed
+     * @throws JsonParseException if the JSON is malformed
+     */
+    public GameDeserializer(Reader reader) {
+        this(GSON.fromJson(reader, SnapshotWithHistory.class), NOT_SAVED);
+    }
+
+    /**
+     * Reads a game from UTF-8 encoded JSON.
+     *
+     * @param json the JSON bytes
+     * @throws JsonParseException if the JSON is malformed
+     */
+    public GameDeserializer(byte[] json) {
+        this(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a game from an already parsed JSON tree, e.g., a field of a network message.
+     *
+     * @param json the JSON object of the game
+     * @throws JsonParseException if the JSON does not describe a game
+     */
+    public GameDeserializer(JsonElement json) {
+        this(GSON.fromJson(json, SnapshotWithHistory.class), NOT_SAVED);
+    }
+
+    /**
+     * Reconstructs a game from an already parsed snapshot.
+     * <p>
+     * The snapshot is only read, never modified, so the same instance can be shared
+     * between several deserializers (e.g., by {@link GameSnapshotCache}).
+     * </p>
+     *
+     * @param snapshot the parsed save file
+     * @param saveId   the ID of the save file the game will keep writing to, or {@link #NOT_SAVED}
+     */
+    GameDeserializer(SnapshotWithHistory snapshot, int saveId) {
+        if (snapshot == null || snapshot.initialNodes == null) {
+            throw new JsonParseException("Not a saved game.");
         }
+        this.snapshot = snapshot;
+        this.saveId = saveId;
+        game = buildGame();
+        fullHistory = buildFullHistory();
+        replay(0);
+        finishGame(game);
+    }
+
+    /**
+     * Builds another game from the same snapshot, as if it were deserialized again, but without
+     * reading or parsing the JSON. The game shares no state with {@link #getGame()}.
+     *
+     * @return a new game in the saved state
+     */
+    public Game newGame() {
+        Game copy = buildGame();
+        finishGame(copy);
+        return copy;
+    }
 
-        game = Game.create(snapshot.rows, snapshot.cols);
+    /**
+     * Creates a game with the initial board of the snapshot.
+     */
+    private Game buildGame() {
+        Game game = Game.create(snapshot.rows, snapshot.cols, saveId != NOT_SAVED);
         game.clearHistory();
 
         // Reconstruct initial board state from saved nodes
@@ -62,21 +146,66 @@ public class GameDeserializer {
             node.addObserver(game);
         }
         game.init();
+        return game;
+    }
 
-        // Merge undo and redo history into a full list of moves
-        fullHistory = new ArrayList<>(snapshot.undoHistory);
+    /**
+     * Merges the undo and redo history into a full list of moves.
+     */
+    private List<Position> buildFullHistory() {
+        List<Position> history = new ArrayList<>(snapshot.undoHistory);
         for (int i = snapshot.redoHistory.size() - 1; i >= 0; i--) {
-            fullHistory.add(snapshot.redoHistory.get(i));
+            history.add(snapshot.redoHistory.get(i));
         }
+        return history;
+    }
 
-        goToStep(0);
+    /**
+     * Restores the history, hints and save file of a built game.
+     */
+    private void finishGame(Game game) {
+        game.markInitialBoard();
         game.loadHistory(snapshot.undoHistory, snapshot.redoHistory);
-        // Assign the original save ID (e.g., 3.json → ID 3)
+        game.setHintsUsed(snapshot.hintsUsed);
+        if (saveId != NOT_SAVED) {
+            game.setSaveFileId(saveId);
+        }
+    }
+
+    /**
+     * Parses a save file into its snapshot representation without building a game.
+     *
+     * @param jsonFile path to the saved game file
+     * @return the parsed snapshot
+     * @throws IOException if the file cannot be read
+     */
+    static SnapshotWithHistory readSnapshot(Path jsonFile) throws IOException {
+        SnapshotWithHistory snapshot;
+        try (Reader reader = Files.newBufferedReader(jsonFile)) {
+            snapshot = GSON.fromJson(reader, SnapshotWithHistory.class);
+        }
+        // Archived saves reference their initial board in the board store next to them
+        if (snapshot.initialNodes == null && snapshot.boardHash != null) {
+            Path dir = jsonFile.toAbsolutePath().getParent();
+            String board = new BoardStore(dir).read(snapshot.boardHash);
+            snapshot.initialNodes = GSON.fromJson(board, SnapshotWithHistory.class).initialNodes;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Derives the save ID from a save file name (e.g., {@code 3.json} → ID 3).
+     * Temporary files used for network transfer get the ID {@link #NOT_SAVED}.
+     *
+     * @param jsonFile path to the saved game file
+     * @return the save ID
+     */
+    private static int saveIdOf(Path jsonFile) {
         String fileName = jsonFile.getFileName().toString();
-        int id = -1;
-        if(!fileName.startsWith("temp_game_"))
-            id = Integer.parseInt(fileName.replace(".json", ""));
-        game.setSaveFileId(id);
+        if (fileName.startsWith("temp_game_")) {
+            return NOT_SAVED;
+        }
+        return Integer.parseInt(fileName.replace(".json", ""));
     }
 
     /**
@@ -118,6 +247,7 @@ public class GameDeserializer {
     /**
      * Moves the game state to a specific step in the move history,
      * resetting the board and replaying all moves up to that point.
+     * The replayed moves are not logged.
      *
      * @param step the step number to reach (0 ≤ step ≤ total steps)
      * @throws IllegalArgumentException if the step is out of bounds
@@ -126,14 +256,29 @@ public class GameDeserializer {
         if (step < 0 || step > fullHistory.size()) {
             throw new IllegalArgumentException("Step out of range: " + step);
         }
+        replay(step);
+    }
+
+    /**
+     * Resets the board and replays the first moves of the history without logging them.
+     * Unlike {@link #goToStep(int)}, it cannot be overridden, so the constructor uses it.
+     *
+     * @param step the number of moves to replay
+     */
+    private void replay(int step) {
         game.clearHistory();
         game.init();
-        for (int i = 0; i < step; i++) {
-            Position move = fullHistory.get(i);
-            GameNode node = game.node(move);
-            node.turn();
-            game.updatePowerPropagation();
-            game.setLastTurnedNode(move);
+        game.setLoggingSuppressed(true);
+        try {
+            for (int i = 0; i < step; i++) {
+                Position move = fullHistory.get(i);
+                GameNode node = game.node(move);
+                node.turn();
+                game.updatePowerPropagation();
+                game.setLastTurnedNode(move);
+            }
+        } finally {
+            game.setLoggingSuppressed(false);
         }
         currentStep = step;
     }
@@ -169,14 +314,19 @@ public class GameDeserializer {
 
     /**
      * Represents the complete snapshot of a saved game.
-     * This includes metadata (move count, timestamp, board size),
-     * the layout of all initial nodes, and the full undo/redo move history.
+     * This includes metadata (move count, timestamps, completion, board size),
+     * the layout of all initial nodes (or the hash of the layout in the {@link BoardStore}),
+     * and the full undo/redo move history.
      */
-    private static class SnapshotWithHistory {
+    static class SnapshotWithHistory {
         @SerializedName("moveNumber")    int moveNumber;
         @SerializedName("timestamp")     long timestamp;
+        @SerializedName("startedAt")     long startedAt;
+        @SerializedName("completed")     boolean completed;
+        @SerializedName("hintsUsed")     int hintsUsed;
         @SerializedName("rows")          int rows;
         @SerializedName("cols")          int cols;
+        @SerializedName("boardHash")     String boardHash;
         @SerializedName("initialNodes")  List<NodeDto> initialNodes;
         @SerializedName("undoHistory")   List<Position> undoHistory;
         @SerializedName("redoHistory")   List<Position> redoHistory;
@@ -187,7 +337,7 @@ public class GameDeserializer {
      * Stores the node's position, type (power, bulb, or link),
      * whether it is currently lit, and its connector directions.
      */
-    private static class NodeDto {
+    static class NodeDto {
         int row, col;
         boolean isPower, isBulb, isLink, isLit;
         List<Side> connectors;
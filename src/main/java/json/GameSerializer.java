@@ -28,12 +28,20 @@ public class GameSerializer {
     private static final Path DATA_DIRECTORY = Paths.get("data");
 
     private Path logFile;
+    private int saveId;
     private final Gson gson;
 
     private String json;
+    private SnapshotWithHistory lastSnapshot;
+    /** Game of an in-memory save whose snapshot is taken when it is read. */
+    private Game pendingGame;
+    private int pendingMoveCount;
 
     private List<NodeDto> initialNodes;
     private boolean initialCaptured = false;
+    private String boardHash;
+    private int boardRetainedFor = 0;
+    private long startedAt = 0;
 
 
     /**
@@ -43,14 +51,30 @@ public class GameSerializer {
      * @throws RuntimeException if the data directory cannot be created
      */
     public GameSerializer() {
+        this(true);
+    }
+
+    /**
+     * Creates a serializer that keeps the last state in memory only. Nothing is written to
+     * the {@code data/} directory or to the archive, but {@link #getJson()} works as usual.
+     * A later {@link #setFixedFile(int)} turns saving on.
+     *
+     * @return the in-memory serializer
+     */
+    public static GameSerializer inMemory() {
+        return new GameSerializer(false);
+    }
+
+    private GameSerializer(boolean persistent) {
         this.gson = new GsonBuilder().setPrettyPrinting().create();
+        if (!persistent) return;
         try {
             Files.createDirectories(DATA_DIRECTORY);
         } catch (IOException e) {
             throw new RuntimeException("Could not create data directory", e);
         }
-        int id = allocateNextId();
-        this.logFile = DATA_DIRECTORY.resolve(id + ".json");
+        this.saveId = allocateNextId();
+        this.logFile = DATA_DIRECTORY.resolve(saveId + ".json");
     }
 
     /**
@@ -91,40 +115,150 @@ public class GameSerializer {
      * Saves the current game state to the assigned JSON file.
      * The serialized data includes the initial board layout (captured only once),
      * the current move count, and the undo/redo history stacks.
+     * The save's entry in the archive index is updated as well, so archive queries
+     * never need to read the file back.
+     * <p>
+     * Archived saves do not embed the initial board: it is stored once in the {@link BoardStore}
+     * and the save only references it by its content hash.
+     * </p>
      *
      * @param game       the {@code Game} instance to serialize
      * @param moveCount  the number of moves performed so far
      */
     public void serialize(Game game, int moveCount) {
         if (!initialCaptured) {
-            initialNodes = captureNodes(game);
-            initialCaptured = true;
+            captureInitialBoard(game);
+        }
+        // Saves outside the archive (e.g., negative IDs of multiplayer mirrors) keep the board inline
+        boolean sharedBoard = saveId > 0;
+        if (sharedBoard && boardRetainedFor != saveId) {
+            BoardStore.shared().retain(boardHash(game), saveId,
+                    gson.toJson(new BoardDto(game.rows(), game.cols(), initialNodes)));
+            boardRetainedFor = saveId;
+        }
+        if (logFile == null) {
+            // Nothing is written, so the snapshot is only taken if the state is read
+            pendingGame = game;
+            pendingMoveCount = moveCount;
+            json = null;
+            if (startedAt == 0) {
+                startedAt = Instant.now().toEpochMilli();
+            }
+            return;
+        }
+        SnapshotWithHistory dto = snapshot(game, moveCount);
+        lastSnapshot = dto;
+        json = null;
+        try (FileWriter w = new FileWriter(logFile.toFile(), false)) {
+            w.write(gson.toJson(dto));
+            w.write(System.lineSeparator());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
         }
+        if (saveId > 0) {
+            ArchiveIndex.shared().put(new ArchiveEntry(saveId, dto.timestamp, startedAt,
+                    game.rows(), game.cols(), moveCount, dto.completed));
+        }
+    }
+
+    /**
+     * Captures the current state of the game with its undo/redo history.
+     *
+     * @param game      the game to capture
+     * @param moveCount the number of moves performed so far
+     * @return the snapshot, without the initial board if it is stored in the {@link BoardStore}
+     */
+    private SnapshotWithHistory snapshot(Game game, int moveCount) {
         List<Position> undoHistory = extractStack(game, "undoStack");
         List<Position> redoHistory = extractStack(game, "redoStack");
 
-        SnapshotWithHistory dto = new SnapshotWithHistory(
+        long now = Instant.now().toEpochMilli();
+        if (startedAt == 0) {
+            startedAt = now;
+        }
+        boolean sharedBoard = saveId > 0;
+        return new SnapshotWithHistory(
                 moveCount,
-                Instant.now().toEpochMilli(),
+                now,
+                startedAt,
+                isCompleted(game),
+                game.getHintsUsed(),
                 game.rows(), game.cols(),
-                initialNodes,
+                // In-memory saves are never archived, so their board is not hashed
+                logFile != null ? boardHash(game) : null,
+                sharedBoard ? null : initialNodes,
                 undoHistory,
                 redoHistory
         );
+    }
 
-        json = gson.toJson(dto);
-        try (FileWriter w = new FileWriter(logFile.toFile(), false)) {
-            w.write(json);
-            w.write(System.lineSeparator());
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Records the current board as the initial layout of the save.
+     * Normally this happens on the first save; games restored from a save call it explicitly,
+     * so that the restored save keeps referencing the original board.
+     *
+     * @param game the game whose board is captured
+     */
+    public void captureInitialBoard(Game game) {
+        initialNodes = captureNodes(game);
+        boardHash = null;
+        initialCaptured = true;
+    }
+
+    /**
+     * Returns the content hash of the captured initial board, computing it on first use.
+     *
+     * @param game the game whose board was captured
+     * @return the board hash
+     */
+    private String boardHash(Game game) {
+        if (boardHash == null) {
+            boardHash = hashBoard(game.rows(), game.cols(), initialNodes);
         }
+        return boardHash;
+    }
+
+    /**
+     * Checks whether all bulbs on the board are lit, without the side effects of {@link Game#checkWin()}.
+     *
+     * @param game the game to inspect
+     * @return true if the board contains at least one bulb and all bulbs are lit
+     */
+    private static boolean isCompleted(Game game) {
+        return game.bulbCount() > 0 && game.litBulbs() == game.bulbCount();
     }
 
+    /**
+     * Returns the last serialized game state as a self-contained JSON document,
+     * with the initial board embedded (e.g., to send it over the network).
+     * An in-memory save captures the game's state here rather than on every move.
+     *
+     * @return the JSON document, or {@code null} if nothing was serialized yet
+     */
     public String getJson() {
+        if (pendingGame != null) {
+            lastSnapshot = snapshot(pendingGame, pendingMoveCount);
+            pendingGame = null;
+        }
+        if (json == null && lastSnapshot != null) {
+            json = gson.toJson(lastSnapshot.withBoard(initialNodes));
+        }
         return json;
     }
 
+    /**
+     * Computes the content hash of the initial board used as its key in the {@link BoardStore}.
+     *
+     * @param rows  number of rows
+     * @param cols  number of columns
+     * @param nodes the initial nodes
+     * @return the board hash
+     */
+    private String hashBoard(int rows, int cols, List<NodeDto> nodes) {
+        return BoardStore.hashBoard(rows, cols, gson.toJsonTree(nodes).getAsJsonArray());
+    }
+
     /**
      * Captures the layout and properties of all nodes on the game board.
      * Iterates over the board by rows and columns and collects a list of
@@ -182,6 +316,18 @@ public class GameSerializer {
         }
     }
 
+    /**
+     * Serializable data class representing a board layout stored in the {@link BoardStore}.
+     */
+    private static class BoardDto {
+        int rows, cols;
+        List<NodeDto> initialNodes;
+        BoardDto(int rows, int cols, List<NodeDto> nodes) {
+            this.rows = rows; this.cols = cols;
+            this.initialNodes = nodes;
+        }
+    }
+
     /**
      * Represents a snapshot of the game state for serialization,
      * including metadata such as move count, board dimensions,
@@ -190,7 +336,11 @@ public class GameSerializer {
     private static class SnapshotWithHistory {
         int moveNumber;
         long timestamp;
+        long startedAt;
+        boolean completed;
+        int hintsUsed;
         int rows, cols;
+        String boardHash;
         List<NodeDto> initialNodes;
         List<Position> undoHistory, redoHistory;
         /**
@@ -198,33 +348,61 @@ public class GameSerializer {
          *
          * @param mn    the move number
          * @param ts    the timestamp (in milliseconds since epoch)
+         * @param start the timestamp of the first save of the game
+         * @param done  whether all bulbs were lit
+         * @param hints how many times the hint window was opened
          * @param r     number of rows in the game board
          * @param c     number of columns in the game board
-         * @param init  list of initial nodes describing the board state
+         * @param hash  content hash of the initial board
+         * @param init  list of initial nodes describing the board state, or {@code null} if only referenced
          * @param undo  undo history stack as a list of positions
          * @param redo  redo history stack as a list of positions
          */
-        SnapshotWithHistory(int mn, long ts, int r, int c,
+        SnapshotWithHistory(int mn, long ts, long start, boolean done, int hints, int r, int c,
+                            String hash,
                             List<NodeDto> init,
                             List<Position> undo,
                             List<Position> redo) {
             this.moveNumber   = mn;
             this.timestamp    = ts;
+            this.startedAt    = start;
+            this.completed    = done;
+            this.hintsUsed    = hints;
             this.rows         = r;
             this.cols         = c;
+            this.boardHash    = hash;
             this.initialNodes = init;
             this.undoHistory  = undo;
             this.redoHistory  = redo;
         }
 
+        /**
+         * Returns a copy of this snapshot with the initial board embedded.
+         *
+         * @param nodes the initial nodes
+         * @return the self-contained snapshot
+         */
+        SnapshotWithHistory withBoard(List<NodeDto> nodes) {
+            return new SnapshotWithHistory(moveNumber, timestamp, startedAt, completed, hintsUsed, rows, cols,
+                    boardHash, nodes, undoHistory, redoHistory);
+        }
     }
 
     /**
      * Updates the save file path to a fixed ID (used when reloading existing games).
+     * The start time of the game is taken over from the archive index, so the duration
+     * of a resumed game covers the whole play time.
      *
      * @param id the fixed game ID (e.g., 3 → "3.json")
      */
     public void setFixedFile(int id) {
+        this.saveId = id;
         this.logFile = DATA_DIRECTORY.resolve(id + ".json");
+        if (id > 0) {
+            ArchiveEntry previous = ArchiveIndex.shared().get(id);
+            if (previous != null) {
+                startedAt = previous.getStartedAt();
+            }
+        }
     }
 }
\ No newline at end of file
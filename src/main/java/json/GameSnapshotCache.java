@@ -0,0 +1,247 @@
+package json;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of parsed save files used by {@link GameArchive}.
+ * <p>
+ * Entries are keyed by save ID and validated against the file's modification time and size,
+ * so a save that was rewritten since it was cached is parsed again. Cached snapshots are frozen
+ * (all lists are immutable) and every load builds a fresh {@code Game} from them, so archive views
+ * never share mutable state.
+ * </p>
+ *
+ * <p>
+ * Eviction is driven by an estimate of the memory held by the cached snapshots rather than by
+ * the number of entries, because a 10x10 board with a long history is far bigger than a 3x3 one.
+ * </p>
+ *
+ * @author Alina Paliienko (xpaliia00)
+ */
+public final class GameSnapshotCache {
+    /** Default memory budget for cached snapshots (8 MiB). */
+    public static final long DEFAULT_MAX_WEIGHT = 8L * 1024 * 1024;
+
+    // Rough per-object sizes used by the weight estimate (64-bit JVM, compressed oops)
+    private static final long SNAPSHOT_OVERHEAD = 128;
+    private static final long NODE_WEIGHT = 96;
+    private static final long POSITION_WEIGHT = 24;
+
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxWeight;
+    private long currentWeight = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long hitNanos = 0;
+    private long missNanos = 0;
+
+    /**
+     * Single cached snapshot together with the file stamp it was read from.
+     */
+    private static class Entry {
+        final long modified;
+        final long size;
+        final long weight;
+        final GameDeserializer.SnapshotWithHistory snapshot;
+
+        Entry(long modified, long size, long weight, GameDeserializer.SnapshotWithHistory snapshot) {
+            this.modified = modified;
+            this.size = size;
+            this.weight = weight;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * Creates a cache with the given memory budget.
+     *
+     * @param maxWeight the maximum estimated size of all cached snapshots in bytes
+     */
+    public GameSnapshotCache(long maxWeight) {
+        setMaxWeight(maxWeight);
+    }
+
+    /**
+     * Returns the parsed snapshot of the given save file, reading it from disk only if it is not
+     * cached or the file changed since it was cached.
+     *
+     * @param gameId the ID of the save
+     * @param file   the save file
+     * @return the frozen snapshot
+     * @throws IOException if the file cannot be read
+     */
+    GameDeserializer.SnapshotWithHistory get(int gameId, Path file) throws IOException {
+        long start = System.nanoTime();
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        long size = Files.size(file);
+
+        synchronized (this) {
+            Entry cached = entries.get(gameId);
+            if (cached != null && cached.modified == modified && cached.size == size) {
+                hits++;
+                hitNanos += System.nanoTime() - start;
+                return cached.snapshot;
+            }
+        }
+
+        // Parse outside the lock so that a slow file does not block other lookups
+        GameDeserializer.SnapshotWithHistory snapshot = freeze(GameDeserializer.readSnapshot(file));
+        Entry entry = new Entry(modified, size, weigh(snapshot), snapshot);
+
+        synchronized (this) {
+            misses++;
+            Entry previous = entries.put(gameId, entry);
+            if (previous != null) {
+                currentWeight -= previous.weight;
+            }
+            currentWeight += entry.weight;
+            evictToBudget();
+            missNanos += System.nanoTime() - start;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Removes the snapshot of the given save from the cache (e.g., after it was deleted).
+     *
+     * @param gameId the ID of the save
+     */
+    public synchronized void invalidate(int gameId) {
+        Entry removed = entries.remove(gameId);
+        if (removed != null) {
+            currentWeight -= removed.weight;
+        }
+    }
+
+    /**
+     * Removes all cached snapshots. Statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        currentWeight = 0;
+    }
+
+    /**
+     * Changes the memory budget, evicting entries immediately if the cache is over the new limit.
+     *
+     * @param maxWeight the maximum estimated size of all cached snapshots in bytes
+     */
+    public synchronized void setMaxWeight(long maxWeight) {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("Cache weight must not be negative.");
+        }
+        this.maxWeight = maxWeight;
+        evictToBudget();
+    }
+
+    /**
+     * Evicts least recently used entries until the cache fits its memory budget.
+     */
+    private void evictToBudget() {
+        Iterator<Map.Entry<Integer, Entry>> it = entries.entrySet().iterator();
+        while (currentWeight > maxWeight && it.hasNext()) {
+            currentWeight -= it.next().getValue().weight;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Makes the parsed snapshot safe to share by replacing all its lists with immutable copies.
+     *
+     * @param snapshot the freshly parsed snapshot
+     * @return the same snapshot instance, frozen
+     */
+    private static GameDeserializer.SnapshotWithHistory freeze(GameDeserializer.SnapshotWithHistory snapshot) {
+        snapshot.initialNodes = List.copyOf(snapshot.initialNodes);
+        snapshot.undoHistory = List.copyOf(snapshot.undoHistory);
+        snapshot.redoHistory = List.copyOf(snapshot.redoHistory);
+        for (GameDeserializer.NodeDto node : snapshot.initialNodes) {
+            node.connectors = List.copyOf(node.connectors);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Estimates how many bytes of heap the snapshot occupies.
+     *
+     * @param snapshot the snapshot to weigh
+     * @return the estimated size in bytes
+     */
+    private static long weigh(GameDeserializer.SnapshotWithHistory snapshot) {
+        return SNAPSHOT_OVERHEAD
+                + NODE_WEIGHT * snapshot.initialNodes.size()
+                + POSITION_WEIGHT * (snapshot.undoHistory.size() + snapshot.redoHistory.size());
+    }
+
+    /**
+     * Returns the number of loads served from the cache.
+     *
+     * @return the hit count
+     */
+    public synchronized long getHitCount() { return hits; }
+
+    /**
+     * Returns the number of loads that had to read and parse the save file.
+     *
+     * @return the miss count
+     */
+    public synchronized long getMissCount() { return misses; }
+
+    /**
+     * Returns the number of entries evicted to stay within the memory budget.
+     *
+     * @return the eviction count
+     */
+    public synchronized long getEvictionCount() { return evictions; }
+
+    /**
+     * Returns the ratio of cache hits to all lookups.
+     *
+     * @return the hit rate between 0 and 1, or 0 if nothing was loaded yet
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Returns the average time of a lookup served from the cache.
+     *
+     * @return the average hit latency in microseconds
+     */
+    public synchronized double getAverageHitMicros() {
+        return hits == 0 ? 0 : hitNanos / 1000.0 / hits;
+    }
+
+    /**
+     * Returns the average time of a lookup that had to read the save file.
+     *
+     * @return the average miss latency in microseconds
+     */
+    public synchronized double getAverageMissMicros() {
+        return misses == 0 ? 0 : missNanos / 1000.0 / misses;
+    }
+
+    /**
+     * Returns the number of cached snapshots.
+     *
+     * @return the entry count
+     */
+    public synchronized int size() { return entries.size(); }
+
+    /**
+     * Returns the estimated memory held by the cached snapshots.
+     *
+     * @return the current weight in bytes
+     */
+    public synchronized long getWeight() { return currentWeight; }
+}
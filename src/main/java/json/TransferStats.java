@@ -0,0 +1,54 @@
+package json;
+
+/**
+ * Result of a bulk export or import done by {@link ArchiveTransfer}.
+ *
+ * @author Alina Paliienko (xpaliia00)
+ */
+public class TransferStats {
+    private final long records;
+    private final long bytes;
+    private final long elapsedNanos;
+
+    /**
+     * Constructs the statistics of one transfer.
+     *
+     * @param records      number of saves transferred
+     * @param bytes        number of bytes written to or read from the stream
+     * @param elapsedNanos wall-clock duration of the transfer
+     */
+    TransferStats(long records, long bytes, long elapsedNanos) {
+        this.records = records;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the number of saves transferred.
+     *
+     * @return the record count
+     */
+    public long getRecords() { return records; }
+
+    /**
+     * Returns the size of the transferred stream.
+     *
+     * @return the number of bytes
+     */
+    public long getBytes() { return bytes; }
+
+    /**
+     * Returns the throughput of the transfer.
+     *
+     * @return saves per second
+     */
+    public double getRecordsPerSecond() {
+        return elapsedNanos == 0 ? 0 : records * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d records, %d bytes in %.2f s (%.0f records/s)",
+                records, bytes, elapsedNanos / 1e9, getRecordsPerSecond());
+    }
+}
@@ -0,0 +1,113 @@
+package log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Writer of the binary event log {@code events_<n>.bin}, a sequence of fixed-size {@link EventRecord}s.
+ * <p>
+ * Each process writes a new file, continuing the numbering, and so does every rotation of the
+ * {@link LogSink}'s segment. Records are collected in a direct buffer and written when it is full
+ * or when the log is flushed.
+ * The writer is not thread-safe; it is used only by the consumer thread of the {@link LogRing}.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+class EventLog {
+    static final String FILE_PREFIX = "events_";
+    static final String FILE_SUFFIX = ".bin";
+    private static final Pattern FILE_NAME = Pattern.compile("events_(\\d+)\\.bin.*");
+    private static final int BUFFERED_RECORDS = 512;
+
+    private final Path directory;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFERED_RECORDS * EventRecord.SIZE);
+    private FileChannel channel;
+    private Path file;
+
+    /**
+     * Creates an event log in the given directory. The file is created with the first record.
+     *
+     * @param directory the log directory
+     */
+    EventLog(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the file written by this log.
+     *
+     * @return the file, or {@code null} if no record was written yet
+     */
+    Path file() {
+        return file;
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param timestamp    epoch milliseconds of the event
+     * @param gameId       ID of the game
+     * @param type         kind of the event
+     * @param cellIndex    index of the cell
+     * @param latencyNanos time the event waited in the logger
+     * @throws IOException if the buffer cannot be written
+     */
+    void append(long timestamp, long gameId, EventType type, int cellIndex, long latencyNanos) throws IOException {
+        if (buffer.remaining() < EventRecord.SIZE) {
+            flush();
+        }
+        EventRecord.encode(buffer, timestamp, gameId, type, cellIndex, latencyNanos);
+    }
+
+    /**
+     * Writes the buffered records to the file.
+     *
+     * @throws IOException if the records cannot be written
+     */
+    void flush() throws IOException {
+        if (buffer.position() == 0) return;
+        if (channel == null) {
+            open();
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffered records and closes the file. A further record starts the next file.
+     *
+     * @throws IOException if the records cannot be written
+     */
+    void close() throws IOException {
+        flush();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        int last = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                Matcher m = FILE_NAME.matcher(p.getFileName().toString());
+                if (m.matches()) {
+                    last = Math.max(last, Integer.parseInt(m.group(1)));
+                }
+            }
+        }
+        file = directory.resolve(FILE_PREFIX + (last + 1) + FILE_SUFFIX);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+}
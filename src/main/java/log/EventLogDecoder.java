@@ -0,0 +1,133 @@
+package log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reads the binary event log written by the logging subsystem (see {@link EventRecord} for the format).
+ * <p>
+ * Replay, analytics and debugging tools can read the events of a game directly, without parsing
+ * the text log. The positions of turn, undo and redo events are resolved with the board size
+ * recorded by the {@link EventType#STARTED} event of the game.
+ * </p>
+ *
+ * <p>Can be run from the command line: {@code EventLogDecoder <file> [gameId]}.</p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public class EventLogDecoder {
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+
+    private EventLogDecoder() {
+    }
+
+    /**
+     * Streams all records of an event log file in the order they were written.
+     * A truncated last record (e.g., after a crash) is ignored.
+     *
+     * @param file   the event log file
+     * @param action called for every record
+     * @throws IOException if the file cannot be read
+     */
+    public static void forEach(Path file, Consumer<EventRecord> action) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(EventRecord.SIZE * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) > 0 || buffer.position() >= EventRecord.SIZE) {
+                buffer.flip();
+                while (buffer.remaining() >= EventRecord.SIZE) {
+                    action.accept(EventRecord.decode(buffer));
+                }
+                buffer.compact();
+            }
+        }
+    }
+
+    /**
+     * Reads all records of an event log file.
+     *
+     * @param file the event log file
+     * @return the records in the order they were written
+     * @throws IOException if the file cannot be read
+     */
+    public static List<EventRecord> read(Path file) throws IOException {
+        List<EventRecord> records = new ArrayList<>();
+        forEach(file, records::add);
+        return records;
+    }
+
+    /**
+     * Reads the records of one game.
+     *
+     * @param file   the event log file
+     * @param gameId the ID of the game
+     * @return the records of the game in the order they were written
+     * @throws IOException if the file cannot be read
+     */
+    public static List<EventRecord> read(Path file, long gameId) throws IOException {
+        List<EventRecord> records = new ArrayList<>();
+        forEach(file, r -> {
+            if (r.getGameId() == gameId) records.add(r);
+        });
+        return records;
+    }
+
+    /**
+     * Prints the records of an event log file in readable form.
+     *
+     * @param args the event log file and optionally the ID of the game to print
+     * @throws IOException if the file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: EventLogDecoder <file> [gameId]");
+            System.exit(2);
+        }
+        Long onlyGame = args.length > 1 ? Long.valueOf(args[1]) : null;
+        Map<Long, Integer> colsByGame = new HashMap<>();
+        forEach(Paths.get(args[0]), r -> {
+            if (r.getType() == EventType.STARTED) {
+                colsByGame.put(r.getGameId(), r.getBoardCols());
+            }
+            if (onlyGame != null && r.getGameId() != onlyGame) return;
+            System.out.println(format(r, colsByGame.get(r.getGameId())));
+        });
+    }
+
+    /**
+     * Formats a record as one line of text.
+     *
+     * @param r    the record
+     * @param cols the number of columns of the game's board, or {@code null} if unknown
+     * @return the formatted record
+     */
+    static String format(EventRecord r, Integer cols) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(TIME.format(Instant.ofEpochMilli(r.getTimestamp())))
+                .append(" game=").append(r.getGameId())
+                .append(' ').append(r.getType());
+        if (r.getType() == EventType.STARTED) {
+            sb.append(' ').append(r.getBoardRows()).append('x').append(r.getBoardCols());
+        } else if (r.hasPosition()) {
+            if (cols != null && cols > 0) {
+                sb.append(' ').append(r.getRow(cols)).append(',').append(r.getCol(cols));
+            } else {
+                sb.append(" cell=").append(r.getCellIndex());
+            }
+        }
+        sb.append(" latency=").append(r.getLatencyNanos() / 1_000).append("us");
+        return sb.toString();
+    }
+}
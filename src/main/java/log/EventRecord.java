@@ -0,0 +1,167 @@
+package log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One record of the binary event log.
+ * <p>
+ * Every record has {@value #SIZE} bytes, big-endian:
+ * </p>
+ * <pre>
+ *  0  long  timestamp      epoch milliseconds of the event
+ *  8  long  gameId         ID of the game
+ * 16  int   type           {@link EventType#code()}
+ * 20  int   cellIndex      (row - 1) * cols + (col - 1), or -1 if the event has no position;
+ *                          for {@link EventType#STARTED} the board size as rows &lt;&lt; 16 | cols
+ * 24  long  latencyNanos   time the event waited in the logger before it was written
+ * </pre>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public class EventRecord {
+    /** Size of one record in bytes. */
+    public static final int SIZE = 32;
+
+    private final long timestamp;
+    private final long gameId;
+    private final EventType type;
+    private final int cellIndex;
+    private final long latencyNanos;
+
+    /**
+     * Constructs a record.
+     *
+     * @param timestamp    epoch milliseconds of the event
+     * @param gameId       ID of the game
+     * @param type         kind of the event
+     * @param cellIndex    index of the cell, the board size for {@link EventType#STARTED}, or -1
+     * @param latencyNanos time the event waited in the logger
+     */
+    public EventRecord(long timestamp, long gameId, EventType type, int cellIndex, long latencyNanos) {
+        this.timestamp = timestamp;
+        this.gameId = gameId;
+        this.type = type;
+        this.cellIndex = cellIndex;
+        this.latencyNanos = latencyNanos;
+    }
+
+    /**
+     * Computes the cell index of a position.
+     *
+     * @param row  the row (1-based)
+     * @param col  the column (1-based)
+     * @param cols the number of columns of the board
+     * @return the cell index
+     */
+    public static int cellIndex(int row, int col, int cols) {
+        return (row - 1) * cols + (col - 1);
+    }
+
+    /**
+     * Writes a record to the buffer.
+     *
+     * @param buffer       the target buffer with at least {@value #SIZE} bytes remaining
+     * @param timestamp    epoch milliseconds of the event
+     * @param gameId       ID of the game
+     * @param type         kind of the event
+     * @param cellIndex    index of the cell
+     * @param latencyNanos time the event waited in the logger
+     */
+    static void encode(ByteBuffer buffer, long timestamp, long gameId, EventType type, int cellIndex,
+                       long latencyNanos) {
+        buffer.putLong(timestamp).putLong(gameId).putInt(type.code()).putInt(cellIndex).putLong(latencyNanos);
+    }
+
+    /**
+     * Reads a record from the buffer.
+     *
+     * @param buffer the source buffer with at least {@value #SIZE} bytes remaining
+     * @return the record
+     */
+    public static EventRecord decode(ByteBuffer buffer) {
+        return new EventRecord(buffer.getLong(), buffer.getLong(), EventType.fromCode(buffer.getInt()),
+                buffer.getInt(), buffer.getLong());
+    }
+
+    /**
+     * Returns the time of the event.
+     *
+     * @return epoch milliseconds
+     */
+    public long getTimestamp() { return timestamp; }
+
+    /**
+     * Returns the ID of the game.
+     *
+     * @return the game ID
+     */
+    public long getGameId() { return gameId; }
+
+    /**
+     * Returns the kind of the event.
+     *
+     * @return the event type
+     */
+    public EventType getType() { return type; }
+
+    /**
+     * Returns the raw cell index field.
+     *
+     * @return the cell index, the board size of a start event, or -1
+     */
+    public int getCellIndex() { return cellIndex; }
+
+    /**
+     * Returns how long the event waited in the logger before it was written.
+     *
+     * @return the latency in nanoseconds
+     */
+    public long getLatencyNanos() { return latencyNanos; }
+
+    /**
+     * Returns whether the event refers to a node.
+     *
+     * @return true for turn, undo and redo events
+     */
+    public boolean hasPosition() {
+        return type == EventType.TURN || type == EventType.UNDO || type == EventType.REDO;
+    }
+
+    /**
+     * Returns the row of the event's node.
+     *
+     * @param cols the number of columns of the board
+     * @return the row (1-based)
+     */
+    public int getRow(int cols) {
+        return cellIndex / cols + 1;
+    }
+
+    /**
+     * Returns the column of the event's node.
+     *
+     * @param cols the number of columns of the board
+     * @return the column (1-based)
+     */
+    public int getCol(int cols) {
+        return cellIndex % cols + 1;
+    }
+
+    /**
+     * Returns the number of rows of the board of a {@link EventType#STARTED} event.
+     *
+     * @return the number of rows
+     */
+    public int getBoardRows() {
+        return cellIndex >>> 16;
+    }
+
+    /**
+     * Returns the number of columns of the board of a {@link EventType#STARTED} event.
+     *
+     * @return the number of columns
+     */
+    public int getBoardCols() {
+        return cellIndex & 0xFFFF;
+    }
+}
@@ -0,0 +1,86 @@
+package log;
+
+/**
+ * Kinds of entries recorded by {@link GameLogger}.
+ * <p>
+ * Typed entries carry only primitive data (e.g., the position of a turned node), so publishing
+ * them does not allocate; the text is produced by the background writer.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public enum EventType {
+    /** A free-form text message. */
+    MESSAGE(0, LogLevel.INFO, null),
+    /** The player turned a node. */
+    TURN(1, LogLevel.DEBUG, "TURN at the position: "),
+    /** A turn was undone. */
+    UNDO(2, LogLevel.DEBUG, "UNDO at the position: "),
+    /** A turn was redone. */
+    REDO(3, LogLevel.DEBUG, "REDO at the position: "),
+    /** The player connected all bulbs. */
+    WON(4, LogLevel.INFO, "Player WON the game!"),
+    /** The game session ended; the log is closed after this entry. */
+    ENDED(5, LogLevel.INFO, "=== Game ended ==="),
+    /** The game session started; carries the board size. */
+    STARTED(6, LogLevel.INFO, "=== Game ");
+
+    private static final EventType[] BY_CODE = new EventType[values().length];
+
+    static {
+        for (EventType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final int code;
+    private final LogLevel level;
+    private final String text;
+
+    EventType(int code, LogLevel level, String text) {
+        this.code = code;
+        this.level = level;
+        this.text = text;
+    }
+
+    /**
+     * Returns the level of entries of this type. Free-form messages may be logged at any level.
+     *
+     * @return the level
+     */
+    public LogLevel level() {
+        return level;
+    }
+
+    /**
+     * Returns the stable code of the type used in the binary event log.
+     *
+     * @return the type code
+     */
+    public int code() {
+        return code;
+    }
+
+    /**
+     * Returns the type with the given code.
+     *
+     * @param code the type code
+     * @return the event type
+     * @throws IllegalArgumentException if no type has the code
+     */
+    public static EventType fromCode(int code) {
+        if (code < 0 || code >= BY_CODE.length) {
+            throw new IllegalArgumentException("Unknown event type code: " + code);
+        }
+        return BY_CODE[code];
+    }
+
+    /**
+     * Returns the fixed text of the entry, or its prefix if the entry has a position.
+     *
+     * @return the text, {@code null} for {@link #MESSAGE}
+     */
+    String text() {
+        return text;
+    }
+}
@@ -0,0 +1,15 @@
+package log;
+
+/**
+ * Determines when the background log writer flushes buffered log entries to disk.
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public enum FlushPolicy {
+    /** Flush after every batch of entries taken from the ring buffer. */
+    EVERY_BATCH,
+    /** Flush at most once per configured interval; entries are written by the buffered writer in between. */
+    INTERVAL,
+    /** Flush only when a logger is closed or {@link GameLogger#flush()} is called. */
+    ON_CLOSE
+}
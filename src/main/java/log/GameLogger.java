@@ -1,90 +1,194 @@
 package log;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import common.Position;
+
 import java.io.IOException;
-import java.nio.file.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.lang.ref.Cleaner;
+import java.util.List;
 
 /**
- * Utility class for logging the progress of a game to a timestamped file.
+ * Utility class for logging the progress of a game.
+ * <p>
+ * Entries of all games are written to shared rolling segment files in the {@code logs/} directory
+ * (see {@link LogSink}); every entry is timestamped and tagged with the ID of its game.
+ * The log of one game of the current run can be read back with {@link #readLog(long)}. Segments are rotated,
+ * compressed and deleted according to the {@link #retentionPolicy()}.
+ * </p>
+ *
  * <p>
- * Automatically creates a log file in the {@code logs/} directory.
- * Logging is finalized and the writer is closed automatically via {@link java.lang.ref.Cleaner}
- * when the object becomes unreachable or is garbage collected.
+ * A game should {@link #close()} its logger when it is discarded. As a fallback, the closing entry
+ * is written automatically via {@link java.lang.ref.Cleaner} when the logger becomes unreachable.
+ * No file is held open per game, so games that are never closed do not leak file descriptors.
  * </p>
  *
  * <p>
- * Each game session is logged in a separate file, and all log entries are timestamped.
+ * Logging is asynchronous: the calling thread (usually the JavaFX thread) only stores the entry
+ * in a preallocated ring buffer shared by all loggers. A background thread formats the entries,
+ * writes them and flushes the files according to the {@link FlushPolicy}
+ * (see {@link #setFlushPolicy(FlushPolicy, long)}). Entries below the {@link LogLevel} threshold,
+ * dropped by sampling or of a suppressed game are discarded before they reach the ring buffer.
  * </p>
  *
  * @author Andrii Bondarenko (xbonda06)
  */
-public class GameLogger {
+public final class GameLogger implements AutoCloseable {
 
     private static final Cleaner cleaner = Cleaner.create();
 
-    private final BufferedWriter writer;
+    private final long gameId;
+    private final int cols;
+    private final LogRing ring;
+    private final LogFilter filter;
     private final Cleaner.Cleanable cleanable;
+    private volatile boolean suppressed;
 
     /**
-     * Inner class that defines cleanup behavior when the GameLogger is no longer referenced.
-     * Automatically writes a closing message and closes the writer.
+     * Inner class that defines cleanup behavior when the GameLogger is closed or no longer referenced.
+     * Publishes the end-of-game entry.
      */
     private static class LoggerState implements Runnable {
-        private final BufferedWriter writer;
+        private final LogRing ring;
+        private final long gameId;
 
         /**
-         * Constructs a cleanup state with the given writer.
+         * Constructs a cleanup state for the given game.
          *
-         * @param writer the writer to close during cleanup
+         * @param ring   the ring the logger publishes to
+         * @param gameId the ID of the logged game
          */
-        LoggerState(BufferedWriter writer) {
-            this.writer = writer;
+        LoggerState(LogRing ring, long gameId) {
+            this.ring = ring;
+            this.gameId = gameId;
         }
 
         /**
-         * Called when the GameLogger is cleaned up by the Cleaner.
-         * Writes the end-of-game message and closes the log file.
+         * Called when the GameLogger is closed or cleaned up by the Cleaner.
+         * Writes the end-of-game message.
          */
         @Override
         public void run() {
-            try {
-                writer.write("=== Game ended ===\n");
-                writer.close();
-            } catch (IOException e) {
-                System.err.println("LOGGER CLEANUP ERROR: " + e.getMessage());
+            if (ring.filter().accept(EventType.ENDED, EventType.ENDED.level())) {
+                ring.publish(gameId, EventType.ENDED, 0, 0, 0, null);
             }
         }
     }
 
     /**
-     * Creates a new logger for a game session.
-     * A log file is created in the {@code logs/} directory with the game ID and timestamp.
+     * Creates a new logger for a game session of unknown board size and logs the start of the game.
      *
      * @param gameId the ID of the game session being logged
-     * @throws RuntimeException if the log file cannot be created
      */
     public GameLogger(long gameId) {
-        try {
-            Path logDir = Paths.get("logs");
-            if (!Files.exists(logDir)) {
-                Files.createDirectories(logDir);
-            }
+        this(gameId, 0, 0);
+    }
+
+    /**
+     * Creates a new logger for a game session and logs the start of the game.
+     * The board size is recorded in the binary event log, where positions are stored as cell indices.
+     *
+     * @param gameId the ID of the game session being logged
+     * @param rows   the number of rows of the board
+     * @param cols   the number of columns of the board
+     */
+    public GameLogger(long gameId, int rows, int cols) {
+        this.gameId = gameId;
+        this.cols = cols;
+        this.ring = LogRing.shared();
+        this.filter = ring.filter();
+        if (filter.accept(EventType.STARTED, EventType.STARTED.level())) {
+            ring.publish(gameId, EventType.STARTED, rows, cols, cols, null);
+        }
+        this.cleanable = cleaner.register(this, new LoggerState(ring, gameId));
+    }
 
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-            Path logFile = logDir.resolve("game_" + gameId + "_" + timestamp + ".log");
+    /**
+     * Sets when the background writer flushes the log files of all games.
+     * The default is {@link FlushPolicy#EVERY_BATCH}.
+     *
+     * @param policy         the flush policy
+     * @param intervalMillis the maximum time between flushes for {@link FlushPolicy#INTERVAL}
+     */
+    public static void setFlushPolicy(FlushPolicy policy, long intervalMillis) {
+        LogRing.shared().setFlushPolicy(policy, intervalMillis);
+    }
 
-            this.writer = new BufferedWriter(new FileWriter(logFile.toFile(), true));
-            log("=== Game " + gameId + " started at " + timestamp + " ===");
+    /**
+     * Enables or disables the binary event log ({@code logs/events_<n>.bin}), which records every entry
+     * as a fixed-size {@link EventRecord} for replay and analysis tools (see {@link EventLogDecoder}).
+     * It is disabled by default unless the {@code lightbulb.log.events} system property is {@code true}.
+     *
+     * @param enabled whether events are recorded
+     */
+    public static void setEventLogEnabled(boolean enabled) {
+        LogRing.shared().setEventsEnabled(enabled);
+    }
 
-            LoggerState state = new LoggerState(writer);
-            this.cleanable = cleaner.register(this, state);
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to initialize game logger", e);
-        }
+    /**
+     * Returns the rotation and retention settings of the log files. Changes take effect
+     * with the next entry or retention pass.
+     *
+     * @return the retention policy
+     */
+    public static RetentionPolicy retentionPolicy() {
+        return LogRing.shared().sink().policy();
+    }
+
+    /**
+     * Returns the counters of log rotation, compression and deletion.
+     *
+     * @return the log metrics
+     */
+    public static LogMetrics metrics() {
+        return LogRing.shared().sink().metrics();
+    }
+
+    /**
+     * Sets the minimum level of entries logged by all games. The default is {@link LogLevel#DEBUG},
+     * which logs every move; {@link LogLevel#INFO} keeps only the game lifecycle.
+     *
+     * @param level the threshold, {@link LogLevel#OFF} disables logging
+     */
+    public static void setLevel(LogLevel level) {
+        LogRing.shared().filter().setLevel(level);
+    }
+
+    /**
+     * Returns the minimum level of entries logged by all games.
+     *
+     * @return the threshold
+     */
+    public static LogLevel getLevel() {
+        return LogRing.shared().filter().getLevel();
+    }
+
+    /**
+     * Keeps only every {@code n}-th entry of the given type, counted over all games.
+     *
+     * @param type the event type
+     * @param n    the sample rate, 1 logs every entry
+     */
+    public static void setSampleRate(EventType type, int n) {
+        LogRing.shared().filter().setSampleRate(type, n);
+    }
+
+    /**
+     * Suppresses or resumes logging of this game, e.g., while a saved game is replayed.
+     *
+     * @param suppressed true to discard all entries of this game
+     */
+    public void setSuppressed(boolean suppressed) {
+        this.suppressed = suppressed;
+    }
+
+    /**
+     * Returns whether entries of the given level would be logged for this game.
+     * Callers building an expensive message should check this first.
+     *
+     * @param level the level
+     * @return true if the level is enabled and logging is not suppressed
+     */
+    public boolean isEnabled(LogLevel level) {
+        return !suppressed && filter.isEnabled(level);
     }
 
     /**
@@ -93,12 +197,102 @@ public class GameLogger {
      * @param message the message to be logged
      */
     public void log(String message) {
-        try {
-            writer.write(LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + " - " + message);
-            writer.newLine();
-            writer.flush();
-        } catch (IOException e) {
-            System.err.println("LOGGER ERROR: " + e.getMessage());
+        log(LogLevel.INFO, message);
+    }
+
+    /**
+     * Writes a message with the given level to the log file with a timestamp.
+     *
+     * @param level   the level of the message
+     * @param message the message to be logged
+     */
+    public void log(LogLevel level, String message) {
+        if (accept(EventType.MESSAGE, level)) {
+            ring.publish(gameId, EventType.MESSAGE, 0, 0, 0, message);
+        }
+    }
+
+    private boolean accept(EventType type, LogLevel level) {
+        return !suppressed && filter.accept(type, level);
+    }
+
+    /**
+     * Logs that the node at the given position was turned.
+     *
+     * @param pos the position of the turned node
+     */
+    public void turn(Position pos) {
+        if (accept(EventType.TURN, EventType.TURN.level())) {
+            ring.publish(gameId, EventType.TURN, pos.getRow(), pos.getCol(), cols, null);
+        }
+    }
+
+    /**
+     * Logs that the turn at the given position was undone.
+     *
+     * @param pos the position of the node turned back
+     */
+    public void undo(Position pos) {
+        if (accept(EventType.UNDO, EventType.UNDO.level())) {
+            ring.publish(gameId, EventType.UNDO, pos.getRow(), pos.getCol(), cols, null);
+        }
+    }
+
+    /**
+     * Logs that the turn at the given position was redone.
+     *
+     * @param pos the position of the node turned again
+     */
+    public void redo(Position pos) {
+        if (accept(EventType.REDO, EventType.REDO.level())) {
+            ring.publish(gameId, EventType.REDO, pos.getRow(), pos.getCol(), cols, null);
         }
     }
+
+    /**
+     * Logs that the player won the game.
+     */
+    public void won() {
+        if (accept(EventType.WON, EventType.WON.level())) {
+            ring.publish(gameId, EventType.WON, 0, 0, 0, null);
+        }
+    }
+
+    /**
+     * Blocks until all entries logged so far by any game are written to disk.
+     */
+    public void flush() {
+        ring.flush();
+    }
+
+    /**
+     * Logs the end of the game. Later calls have no effect.
+     */
+    @Override
+    public void close() {
+        cleanable.clean();
+    }
+
+    /**
+     * Returns the ID of this run of the application. Game IDs restart with every run, so the log
+     * index keys the games by the run ID as well.
+     *
+     * @return the run ID
+     */
+    public static String runId() {
+        return LogRing.shared().sink().runId();
+    }
+
+    /**
+     * Reads the log of a game of this run from the segment files, after writing all pending entries.
+     *
+     * @param gameId the ID of the game
+     * @return the log entries of the game
+     * @throws IOException if the log files cannot be read
+     */
+    public static List<String> readLog(long gameId) throws IOException {
+        LogRing ring = LogRing.shared();
+        ring.flush();
+        return LogIndex.extract(ring.sink().directory(), ring.sink().runId(), gameId);
+    }
 }
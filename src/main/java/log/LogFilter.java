@@ -0,0 +1,120 @@
+package log;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Level threshold and per-type sampling applied before an entry is published.
+ * <p>
+ * The check of a disabled level is a single volatile read and comparison, so disabled entries cost
+ * close to nothing. With a sample rate of {@code n} for a type, only every {@code n}-th entry of
+ * that type is kept; the counter is shared by all games.
+ * </p>
+ *
+ * <p>
+ * The initial configuration is read from the system properties {@code lightbulb.log.level}
+ * (e.g., {@code INFO}) and {@code lightbulb.log.sample} (e.g., {@code TURN:10,UNDO:2}).
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+class LogFilter {
+    private volatile int threshold = LogLevel.DEBUG.ordinal();
+    private volatile int[] sampleRates = new int[EventType.values().length];
+    private final AtomicLongArray counters = new AtomicLongArray(EventType.values().length);
+
+    /**
+     * Creates a filter passing everything from {@link LogLevel#DEBUG} without sampling.
+     */
+    LogFilter() {
+        Arrays.fill(sampleRates, 1);
+    }
+
+    /**
+     * Applies the {@code lightbulb.log.level} and {@code lightbulb.log.sample} system properties.
+     *
+     * @throws IllegalArgumentException if a property has an invalid value
+     */
+    void applySystemProperties() {
+        String level = System.getProperty("lightbulb.log.level");
+        if (level != null) {
+            setLevel(LogLevel.valueOf(level.trim().toUpperCase()));
+        }
+        String sample = System.getProperty("lightbulb.log.sample");
+        if (sample != null && !sample.isBlank()) {
+            for (String entry : sample.split(",")) {
+                String[] parts = entry.split(":");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Invalid sample rate: " + entry);
+                }
+                setSampleRate(EventType.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+            }
+        }
+    }
+
+    /**
+     * Sets the minimum level of entries that are logged.
+     *
+     * @param level the threshold, {@link LogLevel#OFF} disables logging
+     */
+    void setLevel(LogLevel level) {
+        this.threshold = level.ordinal();
+    }
+
+    /**
+     * Returns the minimum level of entries that are logged.
+     *
+     * @return the threshold
+     */
+    LogLevel getLevel() {
+        return LogLevel.values()[threshold];
+    }
+
+    /**
+     * Keeps only every {@code n}-th entry of the given type.
+     *
+     * @param type the event type
+     * @param n    the sample rate, 1 keeps every entry
+     */
+    synchronized void setSampleRate(EventType type, int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Sample rate must be positive.");
+        }
+        int[] rates = sampleRates.clone();
+        rates[type.ordinal()] = n;
+        sampleRates = rates;
+    }
+
+    /**
+     * Returns the sample rate of the given type.
+     *
+     * @param type the event type
+     * @return every how many entries one is kept
+     */
+    int getSampleRate(EventType type) {
+        return sampleRates[type.ordinal()];
+    }
+
+    /**
+     * Returns whether entries of the given level are logged at all.
+     *
+     * @param level the level
+     * @return true if the level is enabled
+     */
+    boolean isEnabled(LogLevel level) {
+        return level.ordinal() >= threshold;
+    }
+
+    /**
+     * Decides whether an entry is logged, counting it towards the sample of its type.
+     *
+     * @param type  the event type
+     * @param level the level of the entry
+     * @return true if the entry should be published
+     */
+    boolean accept(EventType type, LogLevel level) {
+        if (level.ordinal() < threshold) return false;
+        int rate = sampleRates[type.ordinal()];
+        return rate == 1 || counters.getAndIncrement(type.ordinal()) % rate == 0;
+    }
+}
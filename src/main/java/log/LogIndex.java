@@ -0,0 +1,127 @@
+package log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Extracts the log of a single game from the shared segment files written by {@link LogSink}.
+ * <p>
+ * The index {@code segments.idx} lists the segments containing each game of each run, so only those
+ * segments are scanned. Game IDs restart with every run of the application, so a game is looked up
+ * by its run ID and its game ID; index entries of earlier versions, which have no run ID, are not found.
+ * Escaped line breaks are restored. Compressed segments are read transparently; entries in segments
+ * deleted by the retention are lost.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public class LogIndex {
+    /** Length of the {@code HH:mm:ss} prefix of every line. */
+    private static final int TIME_LENGTH = 8;
+
+    private LogIndex() {
+    }
+
+    /**
+     * Returns the numbers of the segments containing entries of the given game.
+     *
+     * @param logDirectory the log directory
+     * @param runId        the ID of the run that logged the game, see {@link GameLogger#runId()}
+     * @param gameId       the ID of the game
+     * @return the segment numbers in ascending order
+     * @throws IOException if the index cannot be read
+     */
+    public static List<Integer> segmentsOf(Path logDirectory, String runId, long gameId) throws IOException {
+        TreeSet<Integer> segments = new TreeSet<>();
+        Path index = logDirectory.resolve(LogSink.INDEX_FILE);
+        if (!Files.exists(index)) return List.of();
+
+        String suffix = " " + runId + " " + gameId;
+        try (BufferedReader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.endsWith(suffix) && line.length() > suffix.length()) {
+                    segments.add(Integer.parseInt(line.substring(0, line.length() - suffix.length())));
+                }
+            }
+        }
+        return new ArrayList<>(segments);
+    }
+
+    /**
+     * Extracts the entries of one game in the format of the former per-game log files
+     * ({@code HH:mm:ss - <text>}).
+     *
+     * @param logDirectory the log directory
+     * @param runId        the ID of the run that logged the game, see {@link GameLogger#runId()}
+     * @param gameId       the ID of the game
+     * @return the log entries of the game in the order they were written
+     * @throws IOException if a segment cannot be read
+     */
+    public static List<String> extract(Path logDirectory, String runId, long gameId) throws IOException {
+        String tag = " [" + gameId + "] - ";
+        List<String> lines = new ArrayList<>();
+        for (int segment : segmentsOf(logDirectory, runId, gameId)) {
+            try (BufferedReader reader = openSegment(logDirectory, segment)) {
+                if (reader == null) continue;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(tag, TIME_LENGTH)) {
+                        lines.add(line.substring(0, TIME_LENGTH) + " - " + unescape(line, TIME_LENGTH + tag.length()));
+                    }
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Restores the text of an entry escaped by {@link LogSink}.
+     */
+    private static String unescape(String line, int from) {
+        if (line.indexOf('\\', from) < 0) return line.substring(from);
+        StringBuilder text = new StringBuilder(line.length() - from);
+        for (int i = from; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                c = line.charAt(++i);
+                text.append(c == 'n' ? '\n' : c == 'r' ? '\r' : c);
+            } else {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Opens a segment for reading, decompressing it if it was compressed after rotation.
+     *
+     * @param logDirectory the log directory
+     * @param number       the segment number
+     * @return the reader, or {@code null} if the segment was deleted
+     * @throws IOException if the segment cannot be opened
+     */
+    private static BufferedReader openSegment(Path logDirectory, int number) throws IOException {
+        Path plain = LogSink.segmentPath(logDirectory, number);
+        try {
+            return Files.newBufferedReader(plain, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            // compressed by the retention in the meantime
+        }
+        try {
+            return new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(LogSink.compressedPath(plain))), StandardCharsets.UTF_8));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package log;
+
+/**
+ * Severity levels of log entries. Entries below the level set by {@link GameLogger#setLevel(LogLevel)}
+ * are discarded before they reach the ring buffer.
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public enum LogLevel {
+    /** Very detailed diagnostic entries. */
+    TRACE,
+    /** Individual moves: turns, undos and redos. */
+    DEBUG,
+    /** Game lifecycle: start, win and end. */
+    INFO,
+    /** Unexpected but recoverable situations. */
+    WARN,
+    /** Failures. */
+    ERROR,
+    /** Used as a threshold only: disables logging. */
+    OFF
+}
@@ -0,0 +1,98 @@
+package log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of log rotation and retention, see {@link GameLogger#metrics()}.
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public class LogMetrics {
+    private final AtomicLong rotations = new AtomicLong();
+    private final AtomicLong compressedSegments = new AtomicLong();
+    private final AtomicLong bytesBeforeCompression = new AtomicLong();
+    private final AtomicLong bytesAfterCompression = new AtomicLong();
+    private final AtomicLong deletedByAge = new AtomicLong();
+    private final AtomicLong deletedByBudget = new AtomicLong();
+    private final AtomicLong deletedBytes = new AtomicLong();
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    void rotated() {
+        rotations.incrementAndGet();
+    }
+
+    void compressed(long before, long after) {
+        compressedSegments.incrementAndGet();
+        bytesBeforeCompression.addAndGet(before);
+        bytesAfterCompression.addAndGet(after);
+    }
+
+    void deleted(long bytes, boolean byAge) {
+        (byAge ? deletedByAge : deletedByBudget).incrementAndGet();
+        deletedBytes.addAndGet(bytes);
+    }
+
+    void setDiskBytes(long bytes) {
+        diskBytes.set(bytes);
+    }
+
+    /**
+     * Returns the number of rotated segments.
+     *
+     * @return the rotation count
+     */
+    public long getRotations() { return rotations.get(); }
+
+    /**
+     * Returns the number of segments compressed after rotation.
+     *
+     * @return the compressed segment count
+     */
+    public long getCompressedSegments() { return compressedSegments.get(); }
+
+    /**
+     * Returns the ratio of compressed to original size of all compressed segments.
+     *
+     * @return the compression ratio, 1 if nothing was compressed
+     */
+    public double getCompressionRatio() {
+        long before = bytesBeforeCompression.get();
+        return before == 0 ? 1 : (double) bytesAfterCompression.get() / before;
+    }
+
+    /**
+     * Returns the number of files deleted because they exceeded the maximum age.
+     *
+     * @return the deleted file count
+     */
+    public long getDeletedByAge() { return deletedByAge.get(); }
+
+    /**
+     * Returns the number of files deleted to keep the directory within the disk budget.
+     *
+     * @return the deleted file count
+     */
+    public long getDeletedByBudget() { return deletedByBudget.get(); }
+
+    /**
+     * Returns the total size of all deleted files.
+     *
+     * @return the number of bytes freed
+     */
+    public long getDeletedBytes() { return deletedBytes.get(); }
+
+    /**
+     * Returns the size of the log directory after the last retention pass.
+     *
+     * @return the number of bytes on disk
+     */
+    public long getDiskBytes() { return diskBytes.get(); }
+
+    @Override
+    public String toString() {
+        return String.format("rotations=%d compressed=%d (ratio %.2f) deletedByAge=%d deletedByBudget=%d "
+                        + "deletedBytes=%d diskBytes=%d",
+                getRotations(), getCompressedSegments(), getCompressionRatio(), getDeletedByAge(),
+                getDeletedByBudget(), getDeletedBytes(), getDiskBytes());
+    }
+}
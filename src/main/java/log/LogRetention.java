@@ -0,0 +1,178 @@
+package log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Background compression and retention of the files in the log directory.
+ * <p>
+ * A pass compresses rotated segments ({@code segment_<n>.log} to {@code segment_<n>.log.gz}),
+ * deletes files older than the maximum age and then deletes the oldest files until the directory
+ * fits into the disk budget. It covers the text segments, the binary event logs and the per-game
+ * files of earlier versions. The newest segment and the newest event log are never touched,
+ * because they may still be written. Passes run one at a time on a daemon thread.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+class LogRetention {
+    private static final Pattern SEGMENT = Pattern.compile("segment_(\\d+)\\.log(\\.gz)?");
+    private static final Pattern EVENTS = Pattern.compile("events_(\\d+)\\.bin");
+    private static final Pattern LEGACY = Pattern.compile("game_\\d+_\\d{8}_\\d{6}\\.log");
+
+    private final Path directory;
+    private final RetentionPolicy policy;
+    private final LogMetrics metrics;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "log-retention");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Creates the retention of a log directory.
+     *
+     * @param directory the log directory
+     * @param policy    the retention settings
+     * @param metrics   the counters to update
+     */
+    LogRetention(Path directory, RetentionPolicy policy, LogMetrics metrics) {
+        this.directory = directory;
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Schedules a pass on the background thread.
+     *
+     * @return the pending pass
+     */
+    Future<?> schedule() {
+        return executor.submit(this::runQuietly);
+    }
+
+    private void runQuietly() {
+        try {
+            run();
+        } catch (IOException e) {
+            System.err.println("LOG RETENTION ERROR: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A managed file with the attributes needed for the decisions of a pass.
+     */
+    private static class LogFile {
+        final Path path;
+        final long size;
+        final long modified;
+
+        LogFile(Path path, long size, long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * Runs one pass on the calling thread.
+     *
+     * @throws IOException if the directory cannot be listed
+     */
+    void run() throws IOException {
+        if (!Files.isDirectory(directory)) return;
+
+        int newestSegment = 0;
+        int newestEvents = 0;
+        List<Path> candidates = new ArrayList<>();
+        long total = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                String name = p.getFileName().toString();
+                Matcher segment = SEGMENT.matcher(name);
+                Matcher events = EVENTS.matcher(name);
+                if (segment.matches()) {
+                    newestSegment = Math.max(newestSegment, Integer.parseInt(segment.group(1)));
+                } else if (events.matches()) {
+                    newestEvents = Math.max(newestEvents, Integer.parseInt(events.group(1)));
+                } else if (!LEGACY.matcher(name).matches()) {
+                    if (Files.isRegularFile(p)) total += Files.size(p);
+                    continue;
+                }
+                candidates.add(p);
+            }
+        }
+
+        List<LogFile> deletable = new ArrayList<>();
+        for (Path p : candidates) {
+            String name = p.getFileName().toString();
+            boolean current = name.equals(LogSink.SEGMENT_PREFIX + newestSegment + LogSink.SEGMENT_SUFFIX)
+                    || name.equals(EventLog.FILE_PREFIX + newestEvents + EventLog.FILE_SUFFIX);
+            if (!current && policy.isCompress() && name.startsWith(LogSink.SEGMENT_PREFIX)
+                    && name.endsWith(LogSink.SEGMENT_SUFFIX)) {
+                try {
+                    p = compress(p);
+                } catch (IOException e) {
+                    System.err.println("LOG RETENTION ERROR: " + e.getMessage());
+                }
+            }
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(p, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            total += attrs.size();
+            if (!current) {
+                deletable.add(new LogFile(p, attrs.size(), attrs.lastModifiedTime().toMillis()));
+            }
+        }
+
+        deletable.sort(Comparator.comparingLong(f -> f.modified));
+        long cutoff = System.currentTimeMillis() - policy.getMaxFileAgeMillis();
+        for (LogFile f : deletable) {
+            boolean expired = f.modified < cutoff;
+            if (!expired && total <= policy.getMaxTotalBytes()) break;
+            if (Files.deleteIfExists(f.path)) {
+                metrics.deleted(f.size, expired);
+                total -= f.size;
+            }
+        }
+        metrics.setDiskBytes(total);
+    }
+
+    /**
+     * Compresses a rotated segment and deletes the original.
+     *
+     * @param segment the segment file
+     * @return the compressed file
+     * @throws IOException if the segment cannot be compressed
+     */
+    private Path compress(Path segment) throws IOException {
+        Path target = LogSink.compressedPath(segment);
+        Path tmp = segment.resolveSibling(segment.getFileName() + ".gz.tmp");
+        long before = Files.size(segment);
+        try (InputStream in = Files.newInputStream(segment);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp), 1 << 16)) {
+            in.transferTo(out);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.setLastModifiedTime(target, Files.getLastModifiedTime(segment));
+        Files.delete(segment);
+        metrics.compressed(before, Files.size(target));
+        return target;
+    }
+}
@@ -0,0 +1,410 @@
+package log;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated multi-producer, single-consumer ring buffer shared by all {@link GameLogger} instances.
+ * <p>
+ * A producer claims a sequence number with a single atomic increment, fills the slot's fields
+ * and publishes the slot by storing its sequence number. The slot fields are plain arrays,
+ * so publishing a typed entry does not allocate and never takes a lock. When the ring is full,
+ * producers wait for the consumer instead of dropping entries.
+ * </p>
+ *
+ * <p>
+ * One daemon thread consumes the entries in batches, formats them and writes them to the
+ * {@link LogSink} shared by all games and, if enabled, to the binary {@link EventLog}.
+ * Both are flushed according to the {@link FlushPolicy}. When no entries follow, the consumer parks
+ * until a producer unparks it, waking up only for a pending interval flush and once every
+ * second to rotate an expired segment.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+class LogRing {
+    /** Default number of slots; must be a power of two. */
+    static final int DEFAULT_CAPACITY = 1 << 13;
+
+    /** Longest park of the short backoff while entries may still follow a batch. */
+    private static final long MAX_BACKOFF_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    /** How often an idle consumer wakes up to rotate an expired segment. */
+    private static final long ROTATION_CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final DateTimeFormatter START_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")
+            .withZone(ZoneId.systemDefault());
+
+    private static LogRing shared;
+
+    private final int capacity;
+    private final int mask;
+    private final LogSink sink;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLongArray published;
+
+    private final long[] timestamps;
+    private final long[] publishNanos;
+    private final long[] gameIds;
+    private final EventType[] types;
+    private final int[] rows;
+    private final int[] cols;
+    private final int[] widths;
+    private final Object[] payloads;
+
+    private final EventLog events;
+    private final Thread consumer;
+    /** Set while the consumer is parked until a producer unparks it. */
+    private volatile boolean consumerParked;
+    private final LogFilter filter = new LogFilter();
+    private volatile boolean eventsEnabled;
+    /** Set if the consumer thread has died; entries are then dropped instead of waiting for it. */
+    private volatile boolean dead;
+    private volatile FlushPolicy flushPolicy = FlushPolicy.EVERY_BATCH;
+    private volatile long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(200);
+
+    /**
+     * Creates a ring with the given number of slots and starts its consumer thread.
+     *
+     * @param capacity number of slots, a power of two
+     * @param sink     the files the entries are written to
+     */
+    LogRing(int capacity, LogSink sink) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two.");
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.sink = sink;
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+        this.timestamps = new long[capacity];
+        this.publishNanos = new long[capacity];
+        this.gameIds = new long[capacity];
+        this.types = new EventType[capacity];
+        this.rows = new int[capacity];
+        this.cols = new int[capacity];
+        this.widths = new int[capacity];
+        this.payloads = new Object[capacity];
+        this.events = sink.events();
+
+        this.consumer = new Thread(this::consume, "game-logger");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Returns the ring used by all game loggers, creating it on first use.
+     * The capacity can be set by the {@code lightbulb.log.ringSize} system property, the rotation
+     * and retention by the properties listed in {@link RetentionPolicy}, the level and sampling by
+     * those listed in {@link LogFilter}. The binary event log is enabled by {@code lightbulb.log.events=true}.
+     *
+     * @return the shared ring
+     */
+    static synchronized LogRing shared() {
+        if (shared == null) {
+            LogSink sink = new LogSink(Paths.get("logs"), RetentionPolicy.fromSystemProperties(), new LogMetrics());
+            shared = new LogRing(Integer.getInteger("lightbulb.log.ringSize", DEFAULT_CAPACITY), sink);
+            shared.setEventsEnabled(Boolean.getBoolean("lightbulb.log.events"));
+            shared.filter.applySystemProperties();
+        }
+        return shared;
+    }
+
+    /**
+     * Enables or disables writing the binary event log. Entries published while disabled are not recorded.
+     *
+     * @param enabled whether events are written
+     */
+    void setEventsEnabled(boolean enabled) {
+        this.eventsEnabled = enabled;
+    }
+
+    /**
+     * Returns the level and sampling filter applied by the loggers publishing to this ring.
+     *
+     * @return the filter
+     */
+    LogFilter filter() {
+        return filter;
+    }
+
+    /**
+     * Returns the binary event log of this ring.
+     *
+     * @return the event log
+     */
+    EventLog events() {
+        return events;
+    }
+
+    /**
+     * Returns the files the entries are written to.
+     *
+     * @return the sink of this ring
+     */
+    LogSink sink() {
+        return sink;
+    }
+
+    /**
+     * Sets when the consumer flushes the log files.
+     *
+     * @param policy         the flush policy
+     * @param intervalMillis the interval for {@link FlushPolicy#INTERVAL}
+     */
+    void setFlushPolicy(FlushPolicy policy, long intervalMillis) {
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.flushPolicy = policy;
+    }
+
+    /**
+     * Publishes an entry.
+     *
+     * @param gameId  the ID of the game
+     * @param type    the kind of entry
+     * @param row     the row of the position, if any; the number of rows for {@link EventType#STARTED}
+     * @param col     the column of the position, if any; the number of columns for {@link EventType#STARTED}
+     * @param width   the number of columns of the game's board, used to compute the cell index
+     * @param payload the message of a {@link EventType#MESSAGE} entry
+     */
+    void publish(long gameId, EventType type, int row, int col, int width, Object payload) {
+        long seq = claimed.getAndIncrement();
+        if (!awaitFreeSlot(seq)) return;
+        int i = (int) seq & mask;
+        timestamps[i] = System.currentTimeMillis();
+        publishNanos[i] = System.nanoTime();
+        gameIds[i] = gameId;
+        types[i] = type;
+        rows[i] = row;
+        cols[i] = col;
+        widths[i] = width;
+        payloads[i] = payload;
+        // A volatile store, so it cannot be reordered with the read of the flag the consumer sets before parking
+        published.set(i, seq);
+        if (consumerParked) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Blocks until all entries published before this call are written and flushed.
+     */
+    void flush() {
+        CountDownLatch done = new CountDownLatch(1);
+        // an entry without a type is a flush barrier
+        publish(0, null, 0, 0, 0, done);
+        try {
+            while (!done.await(100, TimeUnit.MILLISECONDS)) {
+                if (dead) return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits until the slot of a sequence number has been consumed.
+     *
+     * @return false if the consumer has died and the entry must be dropped
+     */
+    private boolean awaitFreeSlot(long seq) {
+        int spins = 0;
+        while (seq - consumed.get() >= capacity) {
+            if (dead) return false;
+            if (++spins < 100) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(10_000);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs the consumer loop; if it dies nevertheless, producers stop waiting for it.
+     */
+    private void consume() {
+        try {
+            consumeEntries();
+        } finally {
+            dead = true;
+            System.err.println("LOGGER ERROR: The logger thread has stopped; further entries are dropped.");
+        }
+    }
+
+    /**
+     * Consumer loop: takes all contiguous published entries, writes them and releases their slots.
+     */
+    private void consumeEntries() {
+        StringBuilder text = new StringBuilder(128);
+        TimeFormat time = new TimeFormat();
+        boolean dirty = false;
+        long next = 0;
+        long lastFlush = System.nanoTime();
+        long nextRotationCheck = lastFlush + ROTATION_CHECK_NANOS;
+        long idleParkNanos = 1_000;
+
+        while (true) {
+            long end = next;
+            while (published.getAcquire((int) end & mask) == end) {
+                end++;
+            }
+
+            if (end == next) {
+                long now = System.nanoTime();
+                boolean interval = flushPolicy == FlushPolicy.INTERVAL;
+                if (dirty && interval && now - lastFlush >= flushIntervalNanos) {
+                    flushSink();
+                    dirty = false;
+                    lastFlush = System.nanoTime();
+                }
+                if (now - nextRotationCheck >= 0) {
+                    rotateIfExpired();
+                    nextRotationCheck = now + ROTATION_CHECK_NANOS;
+                }
+                if (idleParkNanos <= MAX_BACKOFF_PARK_NANOS) {
+                    LockSupport.parkNanos(idleParkNanos);
+                    idleParkNanos *= 2;
+                    continue;
+                }
+                long timeout = nextRotationCheck - now;
+                if (dirty && interval) {
+                    timeout = Math.min(timeout, lastFlush + flushIntervalNanos - now);
+                }
+                consumerParked = true;
+                if (published.get((int) next & mask) != next) {
+                    LockSupport.parkNanos(this, Math.max(timeout, 1_000));
+                }
+                consumerParked = false;
+                continue;
+            }
+            idleParkNanos = 1_000;
+
+            for (long seq = next; seq < end; seq++) {
+                int i = (int) seq & mask;
+                EventType type = types[i];
+                if (type == null) {
+                    flushSink();
+                    dirty = false;
+                    ((CountDownLatch) payloads[i]).countDown();
+                } else {
+                    write(gameIds[i], type, timestamps[i], rows[i], cols[i], payloads[i], text, time);
+                    if (eventsEnabled) {
+                        record(i, type);
+                    }
+                    dirty = true;
+                }
+                payloads[i] = null;
+            }
+            next = end;
+            consumed.set(end);
+
+            FlushPolicy policy = flushPolicy;
+            if (dirty && (policy == FlushPolicy.EVERY_BATCH
+                    || policy == FlushPolicy.INTERVAL && System.nanoTime() - lastFlush >= flushIntervalNanos)) {
+                flushSink();
+                dirty = false;
+                lastFlush = System.nanoTime();
+            }
+        }
+    }
+
+    private void write(long gameId, EventType type, long timestamp, int row, int col, Object payload,
+                       StringBuilder text, TimeFormat time) {
+        text.setLength(0);
+        try {
+            if (type == EventType.MESSAGE) {
+                text.append(payload);
+            } else if (type == EventType.STARTED) {
+                text.append(type.text()).append(gameId).append(" started at ")
+                        .append(START_TIMESTAMP.format(Instant.ofEpochMilli(timestamp))).append(" ===");
+            } else if (type == EventType.WON || type == EventType.ENDED) {
+                text.append(type.text());
+            } else {
+                text.append(type.text()).append(row).append(',').append(col);
+            }
+            sink.write(gameId, time.format(timestamp), text);
+        } catch (IOException | RuntimeException e) {
+            report(e);
+        }
+    }
+
+    private void record(int i, EventType type) {
+        int cell;
+        if (type == EventType.STARTED) {
+            cell = rows[i] << 16 | cols[i];
+        } else if (type == EventType.TURN || type == EventType.UNDO || type == EventType.REDO) {
+            cell = EventRecord.cellIndex(rows[i], cols[i], widths[i]);
+        } else {
+            cell = -1;
+        }
+        try {
+            events.append(timestamps[i], gameIds[i], type, cell, System.nanoTime() - publishNanos[i]);
+        } catch (IOException | RuntimeException e) {
+            report(e);
+        }
+    }
+
+    private void rotateIfExpired() {
+        try {
+            sink.rotateIfExpired();
+        } catch (IOException | RuntimeException e) {
+            report(e);
+        }
+    }
+
+    private void flushSink() {
+        try {
+            sink.flush();
+            events.flush();
+        } catch (IOException | RuntimeException e) {
+            report(e);
+        }
+    }
+
+    /**
+     * Reports a failure of the sink, the event log or the formatting of an entry; the entry is lost,
+     * but the consumer keeps running so that producers are never blocked by a full ring.
+     */
+    private static void report(Exception e) {
+        System.err.println("LOGGER ERROR: " + e);
+    }
+
+    /**
+     * Formats timestamps as {@code HH:mm:ss}, computing the text only once per second.
+     */
+    private static class TimeFormat {
+        private final ZoneId zone = ZoneId.systemDefault();
+        private final StringBuilder text = new StringBuilder(8);
+        private long second = Long.MIN_VALUE;
+
+        CharSequence format(long epochMillis) {
+            long s = Math.floorDiv(epochMillis, 1000);
+            if (s != second) {
+                second = s;
+                LocalTime t = LocalTime.ofInstant(Instant.ofEpochSecond(s), zone);
+                text.setLength(0);
+                twoDigits(t.getHour()).append(':');
+                twoDigits(t.getMinute()).append(':');
+                twoDigits(t.getSecond());
+            }
+            return text;
+        }
+
+        private StringBuilder twoDigits(int value) {
+            return text.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+        }
+    }
+}
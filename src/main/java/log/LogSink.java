@@ -0,0 +1,291 @@
+package log;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Rolling log files shared by all games of the process.
+ * <p>
+ * Entries of all games are multiplexed into {@code segment_<n>.log} files; every line carries
+ * the ID of its game: {@code HH:mm:ss [<gameId>] - <text>}. Line breaks and backslashes in the text
+ * are escaped as {@code \n}, {@code \r} and {@code \\}, so every entry stays one line. A new segment
+ * is started when the current one exceeds the size limit of the {@link RetentionPolicy} (counted in
+ * characters, which equals bytes for the ASCII log text) or has been open longer than its age limit.
+ * Each process starts a new segment, continuing the numbering. The binary {@link EventLog} is rotated
+ * with the segments, so its files are bounded by the same limits. After every rotation
+ * {@link LogRetention} compresses the rotated segments and applies the retention limits to both.
+ * </p>
+ *
+ * <p>
+ * Game IDs restart with every run of the application, so each sink has its own {@link #runId() run ID},
+ * and a run never shares a segment with another. The first entry of a game in a segment appends
+ * {@code <segment> <runId> <gameId>} to {@code segments.idx}, so {@link LogIndex} reads only the segments
+ * containing a given game of a given run.
+ * </p>
+ *
+ * <p>The sink is not thread-safe; it is used only by the consumer thread of the {@link LogRing}.</p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+class LogSink {
+    static final String SEGMENT_PREFIX = "segment_";
+    static final String SEGMENT_SUFFIX = ".log";
+    static final String INDEX_FILE = "segments.idx";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment_(\\d+)\\.log.*");
+
+    private final Path directory;
+    private final RetentionPolicy policy;
+    private final LogMetrics metrics;
+    private final LogRetention retention;
+    private final EventLog events;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36) + "." + ProcessHandle.current().pid();
+    private final Set<Long> gamesInSegment = new HashSet<>();
+    private final StringBuilder line = new StringBuilder(128);
+
+    private BufferedWriter index;
+    private BufferedWriter segment;
+    private long segmentSize;
+    private long segmentOpenedAt;
+    private int segmentNumber;
+    private long deletionsAtLastCompaction;
+
+    /**
+     * Creates a sink writing to the given directory. Files are opened with the first entry.
+     *
+     * @param directory the log directory
+     * @param policy    the rotation and retention settings
+     * @param metrics   the counters of rotations and retention
+     */
+    LogSink(Path directory, RetentionPolicy policy, LogMetrics metrics) {
+        this.directory = directory;
+        this.policy = policy;
+        this.metrics = metrics;
+        this.retention = new LogRetention(directory, policy, metrics);
+        this.events = new EventLog(directory);
+    }
+
+    /**
+     * Returns the rotation and retention settings.
+     *
+     * @return the policy
+     */
+    RetentionPolicy policy() {
+        return policy;
+    }
+
+    /**
+     * Returns the counters of rotations and retention.
+     *
+     * @return the metrics
+     */
+    LogMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the retention of the log directory.
+     *
+     * @return the retention
+     */
+    LogRetention retention() {
+        return retention;
+    }
+
+    /**
+     * Returns the binary event log, which is rotated with the segments.
+     *
+     * @return the event log
+     */
+    EventLog events() {
+        return events;
+    }
+
+    /**
+     * Returns the ID of the run writing to this sink, which scopes the game IDs in the index.
+     *
+     * @return the run ID, without spaces
+     */
+    String runId() {
+        return runId;
+    }
+
+    /**
+     * Returns the log directory.
+     *
+     * @return the directory of the segments and the index
+     */
+    Path directory() {
+        return directory;
+    }
+
+    /**
+     * Appends one entry of a game.
+     *
+     * @param gameId the ID of the game
+     * @param time   the formatted time of the entry
+     * @param text   the text of the entry
+     * @throws IOException if the entry cannot be written
+     */
+    void write(long gameId, CharSequence time, CharSequence text) throws IOException {
+        if (segment == null || segmentSize >= policy.getMaxSegmentBytes() || expired()) {
+            roll();
+        }
+        if (gamesInSegment.add(gameId)) {
+            index.write(segmentNumber + " " + runId + " " + gameId);
+            index.newLine();
+        }
+        line.setLength(0);
+        line.append(time).append(" [").append(gameId).append("] - ");
+        appendEscaped(text);
+        line.append('\n');
+        segment.append(line);
+        segmentSize += line.length();
+    }
+
+    private void appendEscaped(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                default -> line.append(c);
+            }
+        }
+    }
+
+    /**
+     * Flushes the current segment and the index.
+     *
+     * @throws IOException if the files cannot be flushed
+     */
+    void flush() throws IOException {
+        if (segment != null) {
+            segment.flush();
+            index.flush();
+        }
+    }
+
+    /**
+     * Rotates the current segment if it is not empty and has exceeded its age limit.
+     * Called by the idle consumer about once a second, so that segments are rotated even without new entries.
+     *
+     * @throws IOException if the segment cannot be rotated
+     */
+    void rotateIfExpired() throws IOException {
+        if (segment != null && segmentSize > 0 && expired()) {
+            roll();
+        }
+    }
+
+    private boolean expired() {
+        return System.currentTimeMillis() - segmentOpenedAt >= policy.getMaxSegmentAgeMillis();
+    }
+
+    /**
+     * Closes the current segment and event log, starts the next segment and schedules a retention pass.
+     * The next event record starts the next event log.
+     */
+    private void roll() throws IOException {
+        if (segment == null) {
+            Files.createDirectories(directory);
+            segmentNumber = lastSegmentNumber(directory);
+            openIndex();
+        } else {
+            segment.close();
+            events.close();
+            metrics.rotated();
+            long deletions = metrics.getDeletedByAge() + metrics.getDeletedByBudget();
+            if (deletions != deletionsAtLastCompaction) {
+                deletionsAtLastCompaction = deletions;
+                compactIndex();
+            }
+        }
+        segmentNumber++;
+        gamesInSegment.clear();
+        segmentSize = 0;
+        segmentOpenedAt = System.currentTimeMillis();
+        segment = Files.newBufferedWriter(segmentPath(directory, segmentNumber), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        retention.schedule();
+    }
+
+    private void openIndex() throws IOException {
+        index = Files.newBufferedWriter(directory.resolve(INDEX_FILE), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Rewrites the index without the entries of segments deleted by the retention.
+     */
+    private void compactIndex() throws IOException {
+        index.close();
+        Path file = directory.resolve(INDEX_FILE);
+        List<String> live = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int space = line.indexOf(' ');
+            if (space > 0 && segmentExists(directory, Integer.parseInt(line.substring(0, space)))) {
+                live.add(line);
+            }
+        }
+        Path tmp = file.resolveSibling(INDEX_FILE + ".tmp");
+        Files.write(tmp, live, StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        openIndex();
+    }
+
+    /**
+     * Returns whether a segment still exists, compressed or not.
+     *
+     * @param directory the log directory
+     * @param number    the segment number
+     * @return true if the segment exists
+     */
+    static boolean segmentExists(Path directory, int number) {
+        Path plain = segmentPath(directory, number);
+        return Files.exists(plain) || Files.exists(compressedPath(plain));
+    }
+
+    /**
+     * Returns the path of the compressed form of a segment.
+     *
+     * @param segment the segment file
+     * @return the compressed segment file
+     */
+    static Path compressedPath(Path segment) {
+        return segment.resolveSibling(segment.getFileName() + ".gz");
+    }
+
+    /**
+     * Returns the path of a segment.
+     *
+     * @param directory the log directory
+     * @param number    the segment number
+     * @return the segment file
+     */
+    static Path segmentPath(Path directory, int number) {
+        return directory.resolve(SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+    }
+
+    private static int lastSegmentNumber(Path directory) throws IOException {
+        int last = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                Matcher m = SEGMENT_NAME.matcher(p.getFileName().toString());
+                if (m.matches()) {
+                    last = Math.max(last, Integer.parseInt(m.group(1)));
+                }
+            }
+        }
+        return last;
+    }
+}
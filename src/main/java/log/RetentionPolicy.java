@@ -0,0 +1,142 @@
+package log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rotation and retention settings of the shared log files.
+ * <p>
+ * A segment is rotated, together with the binary event log, when it reaches {@link #getMaxSegmentBytes()}
+ * or when it has been open for {@link #getMaxSegmentAgeMillis()}. Rotated segments are compressed in the background.
+ * Files older than {@link #getMaxFileAgeMillis()} are deleted, and then the oldest files are deleted
+ * until the whole directory fits into {@link #getMaxTotalBytes()}. The files currently written
+ * are never deleted.
+ * </p>
+ *
+ * <p>
+ * The defaults can be changed by the system properties {@code lightbulb.log.segmentBytes},
+ * {@code lightbulb.log.segmentAgeMinutes}, {@code lightbulb.log.maxTotalBytes},
+ * {@code lightbulb.log.maxAgeDays} and {@code lightbulb.log.compress}.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public class RetentionPolicy {
+    private volatile long maxSegmentBytes = 4L << 20;
+    private volatile long maxSegmentAgeMillis = TimeUnit.HOURS.toMillis(1);
+    private volatile long maxTotalBytes = 256L << 20;
+    private volatile long maxFileAgeMillis = TimeUnit.DAYS.toMillis(30);
+    private volatile boolean compress = true;
+
+    /**
+     * Creates a policy with the default settings.
+     */
+    public RetentionPolicy() {
+    }
+
+    /**
+     * Creates a policy with the defaults overridden by the {@code lightbulb.log.*} system properties.
+     *
+     * @return the configured policy
+     */
+    public static RetentionPolicy fromSystemProperties() {
+        RetentionPolicy p = new RetentionPolicy();
+        p.setMaxSegmentBytes(Long.getLong("lightbulb.log.segmentBytes", p.maxSegmentBytes));
+        p.setMaxSegmentAgeMillis(TimeUnit.MINUTES.toMillis(
+                Long.getLong("lightbulb.log.segmentAgeMinutes", TimeUnit.MILLISECONDS.toMinutes(p.maxSegmentAgeMillis))));
+        p.setMaxTotalBytes(Long.getLong("lightbulb.log.maxTotalBytes", p.maxTotalBytes));
+        p.setMaxFileAgeMillis(TimeUnit.DAYS.toMillis(
+                Long.getLong("lightbulb.log.maxAgeDays", TimeUnit.MILLISECONDS.toDays(p.maxFileAgeMillis))));
+        String compress = System.getProperty("lightbulb.log.compress");
+        if (compress != null) {
+            p.setCompress(Boolean.parseBoolean(compress));
+        }
+        return p;
+    }
+
+    /**
+     * Returns the size after which a segment is rotated.
+     *
+     * @return the maximum segment size in bytes
+     */
+    public long getMaxSegmentBytes() { return maxSegmentBytes; }
+
+    /**
+     * Sets the size after which a segment is rotated.
+     *
+     * @param bytes the maximum segment size
+     */
+    public void setMaxSegmentBytes(long bytes) {
+        this.maxSegmentBytes = requirePositive(bytes);
+    }
+
+    /**
+     * Returns how long a segment is written before it is rotated.
+     *
+     * @return the maximum segment age in milliseconds
+     */
+    public long getMaxSegmentAgeMillis() { return maxSegmentAgeMillis; }
+
+    /**
+     * Sets how long a segment is written before it is rotated.
+     *
+     * @param millis the maximum segment age
+     */
+    public void setMaxSegmentAgeMillis(long millis) {
+        this.maxSegmentAgeMillis = requirePositive(millis);
+    }
+
+    /**
+     * Returns the disk budget of the log directory.
+     *
+     * @return the maximum total size in bytes
+     */
+    public long getMaxTotalBytes() { return maxTotalBytes; }
+
+    /**
+     * Sets the disk budget of the whole log directory.
+     *
+     * @param bytes the maximum total size of the log files
+     */
+    public void setMaxTotalBytes(long bytes) {
+        this.maxTotalBytes = requirePositive(bytes);
+    }
+
+    /**
+     * Returns the age after which log files are deleted.
+     *
+     * @return the maximum file age in milliseconds
+     */
+    public long getMaxFileAgeMillis() { return maxFileAgeMillis; }
+
+    /**
+     * Sets the age after which log files are deleted.
+     *
+     * @param millis the maximum file age
+     */
+    public void setMaxFileAgeMillis(long millis) {
+        this.maxFileAgeMillis = requirePositive(millis);
+    }
+
+    /**
+     * Returns whether rotated segments are compressed.
+     *
+     * @return true if rotated segments are gzipped
+     */
+    public boolean isCompress() { return compress; }
+
+    /**
+     * Sets whether rotated segments are compressed with gzip.
+     *
+     * @param compress true to compress rotated segments
+     */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    private static long requirePositive(long value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("Value must be positive.");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,319 @@
+package multiplayer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Base of the transports' connections: a bounded outbound queue with a slow-consumer policy.
+ * <p>
+ * Sending never blocks. Messages are queued whole and written by the transport's writer; when
+ * the queued bytes would exceed the limit, the {@link SlowConsumerPolicy} decides whether the new
+ * message is dropped, the client is disconnected, or the queue is discarded and
+ * {@link ConnectionHandler#onOverflow(Connection)} sends a fresh state. A message that is partly
+ * written is never discarded, so the stream stays well-formed. A client that overflows again before
+ * it has read the fresh state is disconnected, as it would otherwise be resent the state with every message.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+abstract class AbstractConnection implements Connection {
+    /** Queued messages; the head may be partly written. Guarded by {@code this}. */
+    protected final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+    /** Bytes in {@link #queue} not yet written. Guarded by {@code this}. */
+    protected long queuedBytes;
+
+    protected final ConnectionHandler handler;
+    protected final OutboundMetrics metrics;
+    protected final MessageFramer framer = new MessageFramer();
+    private final OutboundLimit limit;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile Object attachment;
+    /** Whether sends are queued regardless of the limit. Guarded by {@code this}. */
+    private boolean resyncing;
+    /** Bytes of the last resync not yet written. Guarded by {@code this}. */
+    private long resyncBacklog;
+    /** When the writer last made progress, or the queue stopped being empty. Guarded by {@code this}. */
+    private long lastWriteTime = System.nanoTime();
+    private volatile long lastReadTime = lastWriteTime;
+
+    /**
+     * Creates a connection.
+     *
+     * @param handler receives the connection events
+     * @param limit   the outbound queue limit and policy
+     * @param metrics the counters to update
+     */
+    AbstractConnection(ConnectionHandler handler, OutboundLimit limit, OutboundMetrics metrics) {
+        this.handler = handler;
+        this.limit = limit;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void send(String line) {
+        send(ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public void send(ByteBuffer data) {
+        send(data, false);
+    }
+
+    @Override
+    public void sendDeferred(ByteBuffer data) {
+        send(data, true);
+    }
+
+    /**
+     * Queues or writes a message, or applies the slow-consumer policy if it does not fit.
+     *
+     * @param data     the message
+     * @param deferred true to always queue the message for the writer
+     */
+    private void send(ByteBuffer data, boolean deferred) {
+        if (!isOpen()) return;
+        int size = data.remaining();
+        synchronized (this) {
+            if (resyncing || queuedBytes == 0 || queuedBytes + size <= limit.getMaxQueuedBytes()) {
+                if (deferred) {
+                    enqueue(own(data));
+                    return;
+                }
+                if (offer(data)) {
+                    return;
+                }
+                size = -1;
+            }
+        }
+        if (size < 0) {
+            // Writing failed
+            fail();
+            return;
+        }
+        overflow(size);
+    }
+
+    @Override
+    public void sendUnlimited(Runnable sends) {
+        boolean unlimited;
+        synchronized (this) {
+            unlimited = resyncing;
+            resyncing = true;
+        }
+        try {
+            sends.run();
+        } finally {
+            synchronized (this) {
+                resyncing = unlimited;
+            }
+        }
+    }
+
+    /**
+     * Applies the slow-consumer policy to a message that does not fit into the queue.
+     *
+     * @param size the size of the rejected message
+     */
+    private void overflow(int size) {
+        switch (limit.getPolicy()) {
+            case DROP -> metrics.dropped(1, size);
+            case DISCONNECT -> {
+                metrics.dropped(1, size);
+                metrics.disconnected();
+                fail();
+            }
+            case RESYNC -> {
+                boolean stalled;
+                synchronized (this) {
+                    stalled = resyncBacklog > 0;
+                    if (!stalled) {
+                        discardQueued();
+                        resyncing = true;
+                    }
+                }
+                metrics.dropped(1, size);
+                if (stalled) {
+                    // The client has not even read the previous resync
+                    metrics.disconnected();
+                    fail();
+                    return;
+                }
+                metrics.resynced();
+                try {
+                    handler.onOverflow(this);
+                } finally {
+                    synchronized (this) {
+                        resyncing = false;
+                        resyncBacklog = queuedBytes;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards the queued messages except a partly written head.
+     */
+    private void discardQueued() {
+        ByteBuffer head = queue.peekFirst();
+        ByteBuffer keep = head != null && head.position() > 0 ? queue.pollFirst() : null;
+        long discarded = 0;
+        for (ByteBuffer b : queue) discarded += b.remaining();
+        int count = queue.size();
+        queue.clear();
+        if (keep != null) queue.add(keep);
+        queuedBytes -= discarded;
+        metrics.written(discarded);
+        metrics.dropped(count, discarded);
+    }
+
+    /**
+     * Adds a copy of the message to the queue. Called with the lock of this connection held.
+     *
+     * @param data the message
+     * @return false if the connection failed and must be closed
+     */
+    protected boolean offer(ByteBuffer data) {
+        enqueue(own(data));
+        return true;
+    }
+
+    /**
+     * Returns a buffer with the remaining bytes of the message that the queue may keep:
+     * a view of a read-only buffer, or a copy of any other buffer.
+     *
+     * @param data the message; it is consumed
+     * @return the buffer to queue, with position zero
+     */
+    protected static ByteBuffer own(ByteBuffer data) {
+        ByteBuffer owned;
+        if (data.isReadOnly()) {
+            owned = data.slice();
+        } else {
+            owned = ByteBuffer.allocate(data.remaining());
+            owned.put(data.duplicate()).flip();
+        }
+        data.position(data.limit());
+        return owned;
+    }
+
+    /**
+     * Appends a buffer owned by the connection to the queue. Called with the lock of this connection held.
+     *
+     * @param buffer the message; its position is greater than zero if it is partly written
+     */
+    protected void enqueue(ByteBuffer buffer) {
+        boolean wasEmpty = queue.isEmpty();
+        if (queuedBytes == 0) {
+            lastWriteTime = System.nanoTime();
+        }
+        queue.add(buffer);
+        queuedBytes += buffer.remaining();
+        metrics.queued(buffer.remaining(), queuedBytes);
+        if (wasEmpty) {
+            notifyWriter();
+        }
+    }
+
+    /**
+     * Accounts for bytes the writer has taken from the queue. Called with the lock of this connection held.
+     * The writer reports them to {@link OutboundMetrics#written(long)} once they are written.
+     *
+     * @param bytes the number of bytes taken
+     */
+    protected void dequeued(long bytes) {
+        queuedBytes -= bytes;
+        if (bytes > 0) {
+            lastWriteTime = System.nanoTime();
+        }
+        resyncBacklog = Math.max(0, resyncBacklog - bytes);
+    }
+
+    /**
+     * Passes received bytes to the framer, which hands complete messages to the handler.
+     *
+     * @param data the bytes read from the socket
+     * @throws IOException if a message exceeds the size limit
+     */
+    protected void received(ByteBuffer data) throws IOException {
+        lastReadTime = System.nanoTime();
+        framer.feed(data, message -> handler.onMessage(this, message));
+    }
+
+    /**
+     * Tells the writer that the queue is no longer empty. Called with the lock of this connection held.
+     */
+    protected abstract void notifyWriter();
+
+    /**
+     * Closes the connection from a sending thread, after a write error or an overflow.
+     */
+    protected void fail() {
+        close();
+    }
+
+    /**
+     * Closes the underlying socket.
+     */
+    protected abstract void closeSocket();
+
+    @Override
+    public int getQueuedBytes() {
+        synchronized (this) {
+            return (int) Math.min(Integer.MAX_VALUE, queuedBytes);
+        }
+    }
+
+    @Override
+    public long getLastReadTime() {
+        return lastReadTime;
+    }
+
+    @Override
+    public long getWriteStalledSince() {
+        synchronized (this) {
+            return queuedBytes > 0 ? lastWriteTime : -1;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        closeSocket();
+        synchronized (this) {
+            metrics.written(queuedBytes);
+            queuedBytes = 0;
+            queue.clear();
+            notifyWriter();
+        }
+        handler.onClose(this);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    @Override
+    public Protocol getProtocol() {
+        return framer.getProtocol();
+    }
+
+    @Override
+    public void setProtocol(Protocol protocol) {
+        framer.setProtocol(protocol);
+    }
+
+    @Override
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    @Override
+    public void setAttachment(Object attachment) {
+        this.attachment = attachment;
+    }
+}
@@ -0,0 +1,386 @@
+package multiplayer;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import common.Position;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codec of the binary wire protocol.
+ * <p>
+ * A frame is the length of its body as a varint, followed by the body: one opcode byte and
+ * the payload. The frequent game messages have compact payloads of varint fields; a turn of
+ * player 2 at (3, 4) is the five bytes {@code 04 01 02 03 04}. Every other message is sent as
+ * an {@link #OP_JSON} frame carrying the JSON text, so the binary protocol can express everything
+ * the JSON protocol can. A message relayed by a room carries the room's sequence number in an
+ * {@link #OP_SEQUENCED} frame, which prefixes the body of the message with the number.
+ * </p>
+ *
+ * <table>
+ *     <caption>Opcodes</caption>
+ *     <tr><th>Opcode</th><th>JSON type</th><th>Payload</th></tr>
+ *     <tr><td>0</td><td>any</td><td>UTF-8 JSON object</td></tr>
+ *     <tr><td>1</td><td>turn</td><td>playerId, row, col</td></tr>
+ *     <tr><td>2</td><td>undo</td><td>playerId</td></tr>
+ *     <tr><td>3</td><td>redo</td><td>playerId</td></tr>
+ *     <tr><td>4</td><td>win</td><td>winnerId</td></tr>
+ *     <tr><td>5</td><td>start_game</td><td>none</td></tr>
+ *     <tr><td>6</td><td>player_count</td><td>none</td></tr>
+ *     <tr><td>7</td><td>any with roomSeq</td><td>roomSeq, then the body of the message without roomSeq</td></tr>
+ * </table>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public final class BinaryProtocol {
+    /** Message carried as JSON text. */
+    public static final byte OP_JSON = 0;
+    /** A turn of a tile. */
+    public static final byte OP_TURN = 1;
+    /** An undone turn. */
+    public static final byte OP_UNDO = 2;
+    /** A redone turn. */
+    public static final byte OP_REDO = 3;
+    /** A player has won. */
+    public static final byte OP_WIN = 4;
+    /** Start of the match. */
+    public static final byte OP_START_GAME = 5;
+    /** Request of the player count. */
+    public static final byte OP_PLAYER_COUNT = 6;
+    /** A message with the sequence number of a room's message stream. */
+    public static final byte OP_SEQUENCED = 7;
+
+    private static final int MAX_VARINT_BYTES = 5;
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * Encodes a message as a frame, with a compact payload if the message has one.
+     *
+     * @param msg the message
+     * @return the frame, ready to be sent
+     */
+    public static ByteBuffer encode(JsonObject msg) {
+        int seq = sequenceNumber(msg);
+        if (seq >= 0) {
+            JsonObject inner = msg.deepCopy();
+            inner.remove("roomSeq");
+            return sequenced(seq, encode(inner));
+        }
+        ByteBuffer compact = encodeCompact(msg);
+        return compact != null ? compact : encodeJson(msg.toString());
+    }
+
+    /**
+     * Encodes a message given as JSON text as a frame, with a compact payload if the message has one.
+     *
+     * @param json the message
+     * @return the frame, ready to be sent
+     */
+    public static ByteBuffer encode(String json) {
+        JsonObject msg = JsonParser.parseString(json).getAsJsonObject();
+        if (sequenceNumber(msg) >= 0) return encode(msg);
+        ByteBuffer compact = encodeCompact(msg);
+        return compact != null ? compact : encodeJson(json);
+    }
+
+    /**
+     * Returns the sequence number of a message.
+     *
+     * @param msg the message
+     * @return the non-negative {@code roomSeq} field, or -1 if the message has none
+     */
+    private static int sequenceNumber(JsonObject msg) {
+        JsonElement seq = msg.get("roomSeq");
+        if (seq == null || !seq.isJsonPrimitive() || !seq.getAsJsonPrimitive().isNumber()) return -1;
+        try {
+            return Math.max(-1, seq.getAsInt());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Wraps a frame into an {@link #OP_SEQUENCED} frame.
+     *
+     * @param seq   the sequence number
+     * @param frame the frame of the message; its position is not changed
+     * @return the sequenced frame
+     */
+    static ByteBuffer sequenced(int seq, ByteBuffer frame) {
+        int bodyStart = frame.position() + (int) (peekLength(frame, frame.position(), frame.limit()) >>> 32);
+        int innerLength = frame.limit() - bodyStart;
+        int length = 1 + varintSize(seq) + innerLength;
+        ByteBuffer out = ByteBuffer.allocate(varintSize(length) + length);
+        putVarint(out, length);
+        out.put(OP_SEQUENCED);
+        putVarint(out, seq);
+        out.put(frame.slice(bodyStart, innerLength));
+        return out.flip();
+    }
+
+    /**
+     * Encodes JSON text as an {@link #OP_JSON} frame.
+     *
+     * @param json the JSON object
+     * @return the frame
+     */
+    public static ByteBuffer encodeJson(String json) {
+        byte[] text = json.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(varintSize(text.length + 1) + text.length + 1);
+        putVarint(frame, text.length + 1);
+        frame.put(OP_JSON).put(text);
+        return frame.flip();
+    }
+
+    private static ByteBuffer encodeCompact(JsonObject msg) {
+        JsonElement typeElement = msg.get("type");
+        if (typeElement == null || !typeElement.isJsonPrimitive()) return null;
+        try {
+            switch (typeElement.getAsString()) {
+                case "turn" -> {
+                    JsonObject pos = msg.getAsJsonObject("position");
+                    if (msg.size() != 3 || pos == null || pos.size() != 2) return null;
+                    return frame(OP_TURN, msg.get("playerId").getAsInt(),
+                            pos.get("row").getAsInt(), pos.get("col").getAsInt());
+                }
+                case "undo", "redo" -> {
+                    if (msg.size() != 2) return null;
+                    return frame("undo".equals(typeElement.getAsString()) ? OP_UNDO : OP_REDO,
+                            msg.get("playerId").getAsInt());
+                }
+                case "win" -> {
+                    if (msg.size() != 2) return null;
+                    return frame(OP_WIN, msg.get("winnerId").getAsInt());
+                }
+                case "start_game" -> {
+                    return msg.size() == 1 ? frame(OP_START_GAME) : null;
+                }
+                case "player_count" -> {
+                    return msg.size() == 1 ? frame(OP_PLAYER_COUNT) : null;
+                }
+                default -> {
+                    return null;
+                }
+            }
+        } catch (RuntimeException e) {
+            // Unexpected field types are kept as JSON
+            return null;
+        }
+    }
+
+    /**
+     * Builds a frame with a payload of non-negative varint fields.
+     *
+     * @param opcode the opcode
+     * @param fields the payload fields
+     * @return the frame, or {@code null} if a field is negative
+     */
+    private static ByteBuffer frame(byte opcode, int... fields) {
+        int bodySize = 1;
+        for (int f : fields) {
+            if (f < 0) return null;
+            bodySize += varintSize(f);
+        }
+        ByteBuffer frame = ByteBuffer.allocate(varintSize(bodySize) + bodySize);
+        putVarint(frame, bodySize);
+        frame.put(opcode);
+        for (int f : fields) putVarint(frame, f);
+        return frame.flip();
+    }
+
+    /**
+     * Prefixes a received frame body with its length, e.g., to forward it unchanged.
+     *
+     * @param body the opcode and payload, between position and limit
+     * @return the frame; the body's position is not changed
+     */
+    public static ByteBuffer frame(ByteBuffer body) {
+        int length = body.remaining();
+        ByteBuffer frame = ByteBuffer.allocate(varintSize(length) + length);
+        putVarint(frame, length);
+        frame.put(body.duplicate());
+        return frame.flip();
+    }
+
+    /**
+     * Returns the opcode of a frame body.
+     *
+     * @param body the opcode and payload
+     * @return the opcode
+     */
+    public static byte opcode(ByteBuffer body) {
+        return body.get(body.position());
+    }
+
+    /**
+     * Reads the turned tile of an {@link #OP_TURN} frame body.
+     *
+     * @param body the opcode and payload; its position is not changed
+     * @return the position of the turn
+     * @throws IllegalArgumentException if the payload is truncated
+     */
+    static Position turnPosition(ByteBuffer body) {
+        ByteBuffer in = body.duplicate();
+        in.get();
+        getVarint(in);
+        int row = getVarint(in);
+        return new Position(row, getVarint(in));
+    }
+
+    /**
+     * Decodes a frame body to the JSON text of the message.
+     *
+     * @param body the opcode and payload; its position is not changed
+     * @return the message as JSON text
+     * @throws IllegalArgumentException if the opcode is unknown or the payload is truncated
+     */
+    public static String toJson(ByteBuffer body) {
+        ByteBuffer in = body.duplicate();
+        byte opcode = in.get();
+        if (opcode == OP_JSON) {
+            return StandardCharsets.UTF_8.decode(in).toString();
+        }
+        if (opcode == OP_SEQUENCED) {
+            int seq = getVarint(in);
+            if (!in.hasRemaining()) throw new IllegalArgumentException("Empty sequenced message");
+            return withSequenceNumber(toJson(in), seq);
+        }
+        JsonObject msg = new JsonObject();
+        switch (opcode) {
+            case OP_TURN -> {
+                msg.addProperty("type", "turn");
+                msg.addProperty("playerId", getVarint(in));
+                JsonObject pos = new JsonObject();
+                pos.addProperty("row", getVarint(in));
+                pos.addProperty("col", getVarint(in));
+                msg.add("position", pos);
+            }
+            case OP_UNDO, OP_REDO -> {
+                msg.addProperty("type", opcode == OP_UNDO ? "undo" : "redo");
+                msg.addProperty("playerId", getVarint(in));
+            }
+            case OP_WIN -> {
+                msg.addProperty("type", "win");
+                msg.addProperty("winnerId", getVarint(in));
+            }
+            case OP_START_GAME -> msg.addProperty("type", "start_game");
+            case OP_PLAYER_COUNT -> msg.addProperty("type", "player_count");
+            default -> throw new IllegalArgumentException("Unknown opcode " + opcode);
+        }
+        return msg.toString();
+    }
+
+    /**
+     * Adds a sequence number as the first field of a JSON object, without parsing it.
+     *
+     * @param json the JSON object, which has at least one field
+     * @param seq  the sequence number
+     * @return the JSON object with the {@code roomSeq} field
+     */
+    static String withSequenceNumber(String json, int seq) {
+        return "{\"roomSeq\":" + seq + "," + json.substring(json.indexOf('{') + 1);
+    }
+
+    /**
+     * Reads the length prefix of a frame without consuming it.
+     *
+     * @param buf  the buffer
+     * @param from index of the first byte of the prefix
+     * @param to   index after the last available byte
+     * @return {@code (prefixBytes << 32) | length}, or -1 if the prefix is incomplete;
+     *         a malformed prefix yields the length {@link Integer#MAX_VALUE}
+     */
+    static long peekLength(ByteBuffer buf, int from, int to) {
+        int value = 0;
+        for (int i = 0; i < MAX_VARINT_BYTES; i++) {
+            if (from + i >= to) return -1;
+            byte b = buf.get(from + i);
+            value |= (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                return ((long) (i + 1) << 32) | (value < 0 ? Integer.MAX_VALUE : value);
+            }
+        }
+        return ((long) MAX_VARINT_BYTES << 32) | Integer.MAX_VALUE;
+    }
+
+    /**
+     * Reads one frame body from a stream.
+     *
+     * @param in the stream
+     * @return the opcode and payload, or {@code null} at the end of the stream
+     * @throws IOException if reading fails or the stream ends inside a frame
+     */
+    public static ByteBuffer readFrame(InputStream in) throws IOException {
+        int length = 0;
+        for (int i = 0; ; i++) {
+            int b = in.read();
+            if (b < 0) {
+                if (i == 0) return null;
+                throw new EOFException("Stream ended inside a frame header");
+            }
+            if (i == MAX_VARINT_BYTES) throw new IOException("Malformed frame length");
+            length |= (b & 0x7F) << (7 * i);
+            if (b < 0x80) break;
+        }
+        if (length <= 0 || length > MessageFramer.MAX_MESSAGE_BYTES) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        byte[] body = in.readNBytes(length);
+        if (body.length < length) throw new EOFException("Stream ended inside a frame");
+        return ByteBuffer.wrap(body);
+    }
+
+    /**
+     * Returns the number of bytes of a non-negative value encoded as a varint.
+     *
+     * @param value the value
+     * @return the encoded size, 1 to 5 bytes
+     */
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Writes a varint: seven bits per byte, least significant first, high bit set on all but the last byte.
+     *
+     * @param buf   the target buffer
+     * @param value the non-negative value
+     */
+    static void putVarint(ByteBuffer buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    /**
+     * Reads a varint.
+     *
+     * @param buf the source buffer
+     * @return the value
+     * @throws IllegalArgumentException if the varint is truncated or malformed
+     */
+    static int getVarint(ByteBuffer buf) {
+        int value = 0;
+        for (int i = 0; i < MAX_VARINT_BYTES; i++) {
+            if (!buf.hasRemaining()) throw new IllegalArgumentException("Truncated varint");
+            byte b = buf.get();
+            value |= (b & 0x7F) << (7 * i);
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
@@ -0,0 +1,197 @@
+package multiplayer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Transport with one blocking reader thread per client, the original model of the server.
+ * <p>
+ * The threads come from the given executor: a pool of platform threads or one virtual thread per
+ * task. Each client also has a writer thread draining its outbound queue, so a client that stops
+ * reading blocks only its own writer instead of the thread broadcasting a move. The writer waits on
+ * a {@link Semaphore} rather than a monitor, so a virtual writer does not pin its carrier thread.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+class BlockingTransport implements Transport {
+    private static final int BACKLOG = 4096;
+
+    private final ExecutorService pool;
+    private final Set<SocketConnection> connections = ConcurrentHashMap.newKeySet();
+    private final OutboundLimit limit = new OutboundLimit();
+    private final OutboundMetrics metrics = new OutboundMetrics();
+    private ServerSocket serverSocket;
+
+    /**
+     * Creates a transport running each connection on a task of the given executor.
+     *
+     * @param pool the executor providing the reader threads
+     */
+    BlockingTransport(ExecutorService pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void bind(int port) throws IOException {
+        serverSocket = new ServerSocket(port, BACKLOG);
+    }
+
+    @Override
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void serve(ConnectionHandler handler) throws IOException {
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket = serverSocket.accept();
+                SocketConnection connection = new SocketConnection(socket, handler);
+                connections.add(connection);
+                pool.execute(connection::writeLoop);
+                pool.execute(connection::run);
+            }
+        } catch (SocketException e) {
+            if (!serverSocket.isClosed()) throw e;
+        }
+    }
+
+    @Override
+    public void setOutboundLimit(int maxQueuedBytes, SlowConsumerPolicy policy) {
+        limit.set(maxQueuedBytes, policy);
+    }
+
+    @Override
+    public OutboundMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException ignored) {}
+        for (SocketConnection connection : connections) {
+            connection.close();
+        }
+        pool.shutdownNow();
+    }
+
+    /**
+     * Connection served by its own reader thread and its own writer thread.
+     */
+    private class SocketConnection extends AbstractConnection {
+        private static final int WRITE_BUFFER_BYTES = 16 * 1024;
+
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final Semaphore writerSignal = new Semaphore(0);
+        private final byte[] scratch = new byte[WRITE_BUFFER_BYTES];
+
+        SocketConnection(Socket socket, ConnectionHandler handler) throws IOException {
+            super(handler, limit, BlockingTransport.this.metrics);
+            this.socket = socket;
+            this.in = socket.getInputStream();
+            this.out = new BufferedOutputStream(socket.getOutputStream(), WRITE_BUFFER_BYTES);
+        }
+
+        void run() {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            try {
+                handler.onOpen(this);
+                int n;
+                while (isOpen() && (n = in.read(buffer.array())) >= 0) {
+                    buffer.clear().limit(n);
+                    received(buffer);
+                }
+            } catch (IOException ignored) {
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Writes the queued messages until the connection is closed. Everything queued since the
+         * previous write is written together and flushed once.
+         */
+        void writeLoop() {
+            List<ByteBuffer> batch = new ArrayList<>();
+            try {
+                while (isOpen()) {
+                    writerSignal.acquire();
+                    long bytes = 0;
+                    synchronized (this) {
+                        for (ByteBuffer b : queue) {
+                            bytes += b.remaining();
+                        }
+                        batch.addAll(queue);
+                        queue.clear();
+                        // The batch no longer counts towards the limit: it may be read before the write returns
+                        dequeued(bytes);
+                    }
+                    if (batch.isEmpty()) continue;
+                    try {
+                        for (ByteBuffer b : batch) {
+                            write(b);
+                        }
+                        out.flush();
+                        metrics.flushed();
+                    } finally {
+                        metrics.written(bytes);
+                        batch.clear();
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                close();
+            }
+        }
+
+        /**
+         * Writes a queued buffer to the buffered stream; shared read-only buffers are copied in chunks.
+         */
+        private void write(ByteBuffer b) throws IOException {
+            if (b.hasArray()) {
+                out.write(b.array(), b.arrayOffset() + b.position(), b.remaining());
+                return;
+            }
+            while (b.hasRemaining()) {
+                int n = Math.min(scratch.length, b.remaining());
+                b.get(scratch, 0, n);
+                out.write(scratch, 0, n);
+            }
+        }
+
+        @Override
+        protected void notifyWriter() {
+            writerSignal.release();
+        }
+
+        @Override
+        protected void closeSocket() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+            connections.remove(this);
+        }
+
+        @Override
+        public SocketAddress getRemoteAddress() {
+            return socket.getRemoteSocketAddress();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package multiplayer;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import game.Game;
+import json.GameSerializer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Boards generated ahead of time, so a room, e.g., of a match, can start without waiting for its board.
+ * <p>
+ * Generating and serializing a large board takes long enough to delay a match noticeably. The pool keeps
+ * a few boards of every size that has been asked for and generates replacements on a background thread
+ * as boards are taken. When the pool of a size is empty, {@link #take(int)} generates the board on the taking
+ * thread, {@link #takeAsync(int)} on the pool's thread, while {@link #poll(int)} returns none, for callers that
+ * must not wait, such as the matchmaking; they ask for the boards they wait for with {@link #prepare(int, int)},
+ * also when no boards are pooled.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+final class BoardPool implements AutoCloseable {
+    /**
+     * A generated board with its state as sent to the clients.
+     *
+     * @param game  the board, with randomized rotations
+     * @param state the serialized initial state
+     * @param json  the state as compact JSON text
+     */
+    record Board(Game game, JsonElement state, String json) {
+
+        /**
+         * Generates a board that is kept in memory only, so rooms do not fill the save directory. The generation
+         * of a board with too few bulbs occasionally gives up; it is tried again up to
+         * {@value #GENERATE_ATTEMPTS} times.
+         *
+         * @param difficulty the board size
+         * @return the board
+         * @throws IllegalArgumentException if the size is not valid
+         * @throws IllegalStateException    if no board could be generated
+         */
+        static Board generate(int difficulty) {
+            Game game;
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    game = Game.generate(difficulty, difficulty, false);
+                    break;
+                } catch (IllegalStateException e) {
+                    if (attempt == GENERATE_ATTEMPTS) throw e;
+                }
+            }
+            game.randomizeRotations();
+            GameSerializer serializer = GameSerializer.inMemory();
+            serializer.serialize(game, 1);
+            JsonElement state = JsonParser.parseString(serializer.getJson());
+            return new Board(game, state, state.toString());
+        }
+    }
+
+    /** How often the generation of a board is tried before it fails. */
+    static final int GENERATE_ATTEMPTS = 5;
+
+    private final int boardsPerSize;
+    /** Pooled boards by size. Guarded by {@code this}. */
+    private final Map<Integer, ArrayDeque<Board>> pools = new HashMap<>();
+    /** Boards being generated by size. Guarded by {@code this}. */
+    private final Map<Integer, Integer> pending = new HashMap<>();
+    /** Callers of {@link #takeAsync(int)} waiting for a board, by size, in the order they asked. Guarded by {@code this}. */
+    private final Map<Integer, ArrayDeque<CompletableFuture<Board>>> waiters = new HashMap<>();
+    private final ExecutorService generator = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "board-pool");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean closed;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param boardsPerSize how many boards of every size asked for are kept ready
+     */
+    BoardPool(int boardsPerSize) {
+        this.boardsPerSize = boardsPerSize;
+    }
+
+    /**
+     * Takes a board of the given size, generating it if none is ready, and has a replacement generated.
+     *
+     * @param difficulty the board size
+     * @return the board, owned by the caller
+     * @throws IllegalArgumentException if no board of the size can be generated
+     */
+    Board take(int difficulty) {
+        Board board = poll(difficulty);
+        return board != null ? board : Board.generate(difficulty);
+    }
+
+    /**
+     * Takes a board of the given size without waiting for it. If none is ready, the caller gets the next board
+     * of the size generated on the pool's thread, before the pool is refilled.
+     *
+     * @param difficulty the board size
+     * @return the board, owned by the caller, completed at once if one was ready, or failed if none could be
+     *         generated or the pool is closed
+     */
+    CompletableFuture<Board> takeAsync(int difficulty) {
+        Board board = poll(difficulty);
+        if (board != null) return CompletableFuture.completedFuture(board);
+        CompletableFuture<Board> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                future.completeExceptionally(new IllegalStateException("The server is stopping."));
+                return future;
+            }
+            waiters.computeIfAbsent(difficulty, d -> new ArrayDeque<>()).add(future);
+        }
+        prepare(difficulty);
+        return future;
+    }
+
+    /**
+     * Takes a ready board of the given size, if there is one, and has a replacement generated.
+     *
+     * @param difficulty the board size
+     * @return the board, owned by the caller, or {@code null} if none is ready yet
+     */
+    Board poll(int difficulty) {
+        Board board;
+        synchronized (this) {
+            ArrayDeque<Board> pool = pools.get(difficulty);
+            board = pool != null ? pool.poll() : null;
+        }
+        prepare(difficulty);
+        return board;
+    }
+
+    /**
+     * Has boards of the given size generated until the pool of the size is full, e.g., when players
+     * start looking for a match of that size.
+     *
+     * @param difficulty the board size
+     */
+    void prepare(int difficulty) {
+        prepare(difficulty, 0);
+    }
+
+    /**
+     * Has boards of the given size generated until the pool of the size is full and holds at least the boards
+     * a caller waits for, e.g., the players queued for a match of that size. Asked for again while the players
+     * wait, this also replaces a board whose generation has failed.
+     *
+     * @param difficulty the board size
+     * @param wanted     the boards that must be ready or being generated, also if more than are pooled
+     */
+    synchronized void prepare(int difficulty, int wanted) {
+        if (closed) return;
+        int ready = pools.computeIfAbsent(difficulty, d -> new ArrayDeque<>()).size();
+        int generating = pending.getOrDefault(difficulty, 0);
+        ArrayDeque<CompletableFuture<Board>> waiting = waiters.get(difficulty);
+        int needed = Math.max(boardsPerSize, wanted) + (waiting != null ? waiting.size() : 0);
+        for (int i = ready + generating; i < needed; i++) {
+            pending.merge(difficulty, 1, Integer::sum);
+            generator.execute(() -> generate(difficulty));
+        }
+    }
+
+    /**
+     * Generates a board of a size for the caller that has waited longest, or for the pool if nobody waits.
+     * A failed generation fails the longest waiting caller.
+     */
+    private void generate(int difficulty) {
+        Board board = null;
+        RuntimeException failure = null;
+        try {
+            board = Board.generate(difficulty);
+        } catch (RuntimeException e) {
+            System.out.println("SERVER: Cannot generate a board of size " + difficulty + ": " + e.getMessage());
+            failure = e;
+        }
+        CompletableFuture<Board> waiter;
+        synchronized (this) {
+            pending.merge(difficulty, -1, Integer::sum);
+            ArrayDeque<CompletableFuture<Board>> waiting = waiters.get(difficulty);
+            waiter = waiting != null ? waiting.poll() : null;
+            if (waiter == null && board != null && !closed) {
+                pools.get(difficulty).add(board);
+                return;
+            }
+        }
+        if (waiter != null) {
+            if (board != null) {
+                waiter.complete(board);
+            } else {
+                waiter.completeExceptionally(failure);
+            }
+        } else if (board != null) {
+            board.game().close();
+        }
+    }
+
+    /**
+     * Returns how many boards of a size are ready.
+     *
+     * @param difficulty the board size
+     * @return the number of pooled boards
+     */
+    synchronized int getReadyCount(int difficulty) {
+        ArrayDeque<Board> pool = pools.get(difficulty);
+        return pool != null ? pool.size() : 0;
+    }
+
+    /**
+     * Stops generating boards and releases the pooled ones.
+     */
+    @Override
+    public void close() {
+        List<CompletableFuture<Board>> waiting = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            for (ArrayDeque<Board> pool : pools.values()) {
+                for (Board board : pool) board.game().close();
+                pool.clear();
+            }
+            waiters.values().forEach(waiting::addAll);
+            waiters.clear();
+        }
+        generator.shutdownNow();
+        for (CompletableFuture<Board> waiter : waiting) {
+            waiter.completeExceptionally(new IllegalStateException("The server is stopping."));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package multiplayer;
+
+/**
+ * Estimates the offset of a client's clock from the server's, as NTP does, from the pings of the heartbeat.
+ * <p>
+ * A ping leaves the server at {@code t0} and its pong arrives at {@code t3}; the pong carries the client's
+ * time {@code c} at which the client answered. Assuming equal delays both ways, the client answered at the
+ * server's time {@code (t0 + t3) / 2}, so its clock is ahead by {@code c - (t0 + t3) / 2}. The error is at most
+ * half the round trip and is smallest for the fastest round trips, so the estimate of the fastest of the last
+ * {@value #WINDOW} pings is used. The clocks are monotonic timers such as {@link System#nanoTime()}; their
+ * origins are arbitrary, which the offset absorbs.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+final class ClockSync {
+    private static final int WINDOW = 8;
+
+    private final long[] roundTrips = new long[WINDOW];
+    private final long[] offsets = new long[WINDOW];
+    private int samples;
+    private long offset;
+    private long offsetRoundTrip = -1;
+
+    /**
+     * Adds the estimate of a pong.
+     *
+     * @param sentAt     the server's time the ping was sent
+     * @param clientTime the client's time it answered the ping
+     * @param receivedAt the server's time the pong was received
+     */
+    synchronized void sample(long sentAt, long clientTime, long receivedAt) {
+        int i = samples++ % WINDOW;
+        roundTrips[i] = receivedAt - sentAt;
+        offsets[i] = clientTime - (sentAt + (receivedAt - sentAt) / 2);
+        int best = 0;
+        for (int j = 1; j < Math.min(samples, WINDOW); j++) {
+            if (roundTrips[j] < roundTrips[best]) best = j;
+        }
+        offset = offsets[best];
+        offsetRoundTrip = roundTrips[best];
+    }
+
+    /**
+     * Returns whether an offset has been estimated.
+     *
+     * @return true after the first sample
+     */
+    synchronized boolean hasOffset() {
+        return offsetRoundTrip >= 0;
+    }
+
+    /**
+     * Returns how far the client's clock is ahead of the server's.
+     *
+     * @return the offset in nanoseconds, 0 before the first sample
+     */
+    synchronized long getOffsetNanos() {
+        return offset;
+    }
+
+    /**
+     * Converts a time of the client to the server's clock.
+     *
+     * @param clientTime the client's time
+     * @return the server's time, or {@code clientTime} before the first sample
+     */
+    synchronized long toServerTime(long clientTime) {
+        return clientTime - offset;
+    }
+}
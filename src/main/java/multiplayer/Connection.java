@@ -0,0 +1,119 @@
+package multiplayer;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * A client connection of a {@link Transport}.
+ * <p>
+ * Messages can be sent from any thread without blocking; the transport keeps the bytes of every call
+ * together. Messages the client has not read yet are queued up to the transport's outbound limit.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public interface Connection {
+
+    /**
+     * Sends one line of text; the line separator is appended.
+     *
+     * @param line the line without separator
+     */
+    void send(String line);
+
+    /**
+     * Sends raw bytes. The buffer is consumed; its content is copied if it cannot be written immediately,
+     * unless the buffer is read-only. A read-only buffer is queued as it is, so its content must never
+     * change; this lets one encoded message be shared by many connections.
+     *
+     * @param data the bytes to send
+     */
+    void send(ByteBuffer data);
+
+    /**
+     * Sends raw bytes like {@link #send(ByteBuffer)}, but never writes them on the calling thread:
+     * they are queued and written by the transport's writer together with whatever else has queued up.
+     * A thread sending one message to many connections then only queues it.
+     *
+     * @param data the bytes to send
+     */
+    void sendDeferred(ByteBuffer data);
+
+    /**
+     * Runs sends whose messages are queued regardless of the outbound limit, e.g., the state
+     * a client has asked for. Messages sent by other threads meanwhile are not limited either.
+     *
+     * @param sends the sends to run
+     */
+    void sendUnlimited(Runnable sends);
+
+    /**
+     * Returns the number of bytes queued for the client that the transport has not started to write.
+     *
+     * @return the queue depth in bytes
+     */
+    int getQueuedBytes();
+
+    /**
+     * Returns when data was last received from the client.
+     *
+     * @return the {@link System#nanoTime()} of the last read, or of the connection if nothing was read
+     */
+    long getLastReadTime();
+
+    /**
+     * Returns since when queued messages have been waiting without any of them being written,
+     * e.g., because the client does not read.
+     *
+     * @return the {@link System#nanoTime()} of the last write progress, or -1 if nothing is queued
+     */
+    long getWriteStalledSince();
+
+    /**
+     * Returns the protocol used to decode the messages received on this connection.
+     *
+     * @return the inbound protocol, {@link Protocol#JSON} for a new connection
+     */
+    Protocol getProtocol();
+
+    /**
+     * Switches the decoding of received messages. When called while a message is handled,
+     * the switch takes effect from the next message. Outgoing messages are not affected.
+     *
+     * @param protocol the new inbound protocol
+     */
+    void setProtocol(Protocol protocol);
+
+    /**
+     * Closes the connection. The handler's {@link ConnectionHandler#onClose(Connection)} is called once.
+     */
+    void close();
+
+    /**
+     * Returns whether the connection is still open.
+     *
+     * @return true if open
+     */
+    boolean isOpen();
+
+    /**
+     * Returns the address of the remote peer.
+     *
+     * @return the remote address, or {@code null} if unknown
+     */
+    SocketAddress getRemoteAddress();
+
+    /**
+     * Returns the object attached by the handler, e.g., the player using the connection.
+     *
+     * @return the attachment, or {@code null}
+     */
+    Object getAttachment();
+
+    /**
+     * Attaches an object to the connection.
+     *
+     * @param attachment the attachment
+     */
+    void setAttachment(Object attachment);
+}
@@ -0,0 +1,60 @@
+package multiplayer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Receives the events of the connections of a {@link Transport}.
+ * <p>
+ * With the selector transport the callbacks run on an event-loop thread shared by many connections,
+ * so they must not block.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public interface ConnectionHandler {
+
+    /**
+     * Called when a client has connected.
+     *
+     * @param connection the new connection
+     */
+    void onOpen(Connection connection);
+
+    /**
+     * Called for every complete message received from a client: a line without separator, or
+     * the body of a binary frame if the connection uses {@link Protocol#BINARY}.
+     * The buffer may point into the transport's read buffer and is valid only during the call.
+     *
+     * @param connection the connection the message arrived on
+     * @param message    the message
+     */
+    void onMessage(Connection connection, ByteBuffer message);
+
+    /**
+     * Called once when the connection has been closed by either side.
+     *
+     * @param connection the closed connection
+     */
+    void onClose(Connection connection);
+
+    /**
+     * Called under the {@link SlowConsumerPolicy#RESYNC} policy when the outbound queue of a connection
+     * overflowed and its queued messages were discarded. The handler should send the client a fresh
+     * state; messages sent to the connection during this call are not limited.
+     *
+     * @param connection the connection whose queue was discarded
+     */
+    default void onOverflow(Connection connection) {
+    }
+
+    /**
+     * Decodes a received message as UTF-8 text.
+     *
+     * @param message the message bytes
+     * @return the message text
+     */
+    static String text(ByteBuffer message) {
+        return StandardCharsets.UTF_8.decode(message).toString();
+    }
+}
@@ -0,0 +1,27 @@
+package multiplayer;
+
+/**
+ * What the server does with a message a client sends faster than its rate limits allow.
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public enum FloodPolicy {
+    /** The message is discarded without being decoded. */
+    DROP,
+    /**
+     * The message is handled once the client's limits allow it, after the client's earlier messages.
+     * A client with too many messages waiting is disconnected.
+     */
+    DELAY,
+    /** The client is disconnected. */
+    DISCONNECT;
+
+    /**
+     * Returns the policy set by the {@code lightbulb.server.floodPolicy} system property.
+     *
+     * @return the configured policy, {@link #DELAY} by default
+     */
+    public static FloodPolicy fromSystemProperties() {
+        return valueOf(System.getProperty("lightbulb.server.floodPolicy", DELAY.name()).trim().toUpperCase());
+    }
+}
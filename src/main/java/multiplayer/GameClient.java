@@ -10,9 +10,15 @@ import json.GameDeserializer;
 import com.google.gson.*;
 import java.io.*;
 import java.net.Socket;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Represents a multiplayer game client that connects to a game server.
@@ -21,45 +27,110 @@ import java.util.*;
  * to registered listeners. Each client manages its own game state and observes opponents' moves.
  * </p>
  *
+ * <p>
+ * Server messages are processed by one listener thread, which is either a platform thread or,
+ * when enabled, a virtual thread. The state read by other threads is kept in volatile fields
+ * and concurrent collections, and outgoing messages are serialized by a lock.
+ * </p>
+ *
+ * <p>
+ * The client follows the sequence numbers of its room's messages. Its own moves are not sent back
+ * to it, so a missing number is expected for each move it has sent; if more are missing, a message
+ * was lost, e.g., dropped for reading too slowly, and the client resumes its session to get what it
+ * has missed. After losing its connection, it can {@link #reconnect()} and resume the same way.
+ * </p>
+ *
+ * <p>
+ * The client answers the server's pings, which report its round-trip time and let the server estimate
+ * the offset of the client's clock. As the server pings regularly, a client that has received nothing for
+ * its read timeout considers the server gone and disconnects, instead of waiting for a half-open connection
+ * forever.
+ * </p>
+ *
+ * <p>
+ * A win is announced by the server, also to the winner: of players finishing at about the same time,
+ * the one that finished first wins, not the one whose claim arrived first.
+ * </p>
+ *
  * @author Andrii Bondarenko (xbonda06)
  */
 public class GameClient {
 
     private final String host;
     private final int port;
-
-    private Socket socket;
-    private BufferedReader in;
-    private PrintWriter out;
-
-    private int playerId;
-    private Game ownGame;
-    private int latestPlayerCount = -1;
-    private List<Integer> latestPlayerIds = new ArrayList<>();
-    private final Map<Integer, Game> opponentGames = new HashMap<>();
+    private final boolean virtualThread;
+
+    private volatile Socket socket;
+    private volatile InputStream in;
+    private volatile OutputStream out;
+    private volatile Protocol protocol = Protocol.JSON;
+    private volatile boolean binaryOut;
+    private boolean binaryIn;
+    private boolean resyncing;
+    private volatile int resyncCount;
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private volatile Thread listener;
+    private volatile long readTimeoutMillis = TimeUnit.SECONDS.toMillis(Long.getLong("lightbulb.client.readTimeoutSeconds", 30));
+    private volatile long rttMicros = -1;
+
+    private volatile String sessionToken;
+    private volatile int lastSeq = -1;
+    /** Own moves sent whose sequence numbers have not been skipped yet; an upper bound. */
+    private final AtomicInteger pendingOwnMoves = new AtomicInteger();
+    private boolean awaitingResume;
+    private boolean resumeInit;
+    private boolean restoringOwn;
+    private volatile boolean discardOwnState;
+    private volatile int gapCount;
+    private volatile int resumeCount;
+    private volatile String lastResumeMode;
+
+    private volatile int playerId;
+    private volatile Game ownGame;
+    private volatile int latestPlayerCount = -1;
+    private volatile List<Integer> latestPlayerIds = List.of();
+    private final Map<Integer, Game> opponentGames = new ConcurrentHashMap<>();
     private volatile boolean gameStarted = false;
+    private volatile String roomId;
+    private volatile boolean matchmaking;
+    private volatile long matchWaitMillis = -1;
+    private volatile List<RoomInfo> latestRooms = List.of();
+    private volatile String lastError;
 
-    private GameStartListener startListener;
-    private GameUpdateListener gameUpdateListener;
-    private GameWinListener gameWinListener;
-    private GamePlayerCountListener playerCountListener;
+    private volatile GameStartListener startListener;
+    private volatile GameUpdateListener gameUpdateListener;
+    private volatile GameWinListener gameWinListener;
+    private volatile GamePlayerCountListener playerCountListener;
 
     private final Gson gson = new Gson();
 
     // debug fields used for testing
-    private final List<Position> receivedMoves = new ArrayList<>();
+    private final List<Position> receivedMoves = new CopyOnWriteArrayList<>();
     private final Map<Integer, Stack<Position>> opponentUndoStacks = new HashMap<>();
     private final Map<Integer, Stack<Position>> opponentRedoStacks = new HashMap<>();
 
     /**
      * Constructs a new GameClient instance.
+     * The listener runs on a virtual thread if the {@code lightbulb.client.virtualThreads} system property is true.
      *
      * @param host the host address of the server
      * @param port the port number of the server
      */
     public GameClient(String host, int port) {
+        this(host, port, Boolean.getBoolean("lightbulb.client.virtualThreads"));
+    }
+
+    /**
+     * Constructs a new GameClient instance.
+     *
+     * @param host          the host address of the server
+     * @param port          the port number of the server
+     * @param virtualThread true to listen to the server on a virtual thread instead of a platform thread
+     */
+    public GameClient(String host, int port, boolean virtualThread) {
         this.host = host;
         this.port = port;
+        this.virtualThread = virtualThread;
     }
 
     /**
@@ -70,6 +141,7 @@ public class GameClient {
             if (out != null) out.close();
             if (in != null) in.close();
             if (socket != null && !socket.isClosed()) socket.close();
+            closeGames();
             System.out.println("CLIENT: Disconnected from server.");
         } catch (IOException e) {
             e.printStackTrace();
@@ -83,9 +155,130 @@ public class GameClient {
      */
     public void start() throws IOException {
         socket = new Socket(host, port);
-        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        out = new PrintWriter(socket.getOutputStream(), true);
-        new Thread(this::listen).start();
+        socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, readTimeoutMillis));
+        in = new BufferedInputStream(socket.getInputStream());
+        out = new BufferedOutputStream(socket.getOutputStream());
+        binaryOut = false;
+        if (protocol == Protocol.BINARY) {
+            // The server decodes everything after the hello as frames
+            JsonObject hello = new JsonObject();
+            hello.addProperty("type", "hello");
+            hello.addProperty("protocol", "binary");
+            send(hello);
+            binaryOut = true;
+        }
+        Thread.Builder builder = virtualThread ? Thread.ofVirtual() : Thread.ofPlatform();
+        listener = builder.name("client-listener").start(this::listen);
+    }
+
+    /**
+     * Sets how long the client waits for a message before it considers the server gone.
+     * It should be longer than the server's ping interval. Takes effect when the client connects.
+     *
+     * @param millis the read timeout, or 0 to wait forever
+     */
+    public void setReadTimeoutMillis(long millis) {
+        if (millis < 0) throw new IllegalArgumentException("Timeout must not be negative.");
+        this.readTimeoutMillis = millis;
+    }
+
+    /**
+     * Returns whether the client is connected and listening to the server.
+     *
+     * @return true until the connection is closed or lost
+     */
+    public boolean isConnected() {
+        Socket s = socket;
+        Thread t = listener;
+        return s != null && !s.isClosed() && t != null && t.isAlive();
+    }
+
+    /**
+     * Closes the connection to the server, as if it was lost, but keeps the games and the session,
+     * so the client can {@link #reconnect()}.
+     */
+    public void disconnect() {
+        try {
+            if (socket != null) socket.close();
+            Thread t = listener;
+            if (t != null) t.join(1000);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Connects to the server again and resumes the session in the client's room. The server sends the
+     * messages the client has missed, or the whole state of the room if that is smaller.
+     *
+     * @throws IOException           if the connection cannot be established
+     * @throws IllegalStateException if the client has no session
+     */
+    public void reconnect() throws IOException {
+        String token = sessionToken;
+        String room = roomId;
+        if (token == null || room == null) {
+            throw new IllegalStateException("No session to resume.");
+        }
+        disconnect();
+        start();
+        sendResume(room, token, lastSeq);
+    }
+
+    /**
+     * Takes over a session, e.g., of a client that has crashed, on the current connection.
+     * The client's games are replaced by the state of the room sent by the server.
+     *
+     * @param roomId the ID of the room of the session
+     * @param token  the session token
+     */
+    public void resumeSession(String roomId, String token) {
+        discardOwnState = true;
+        sendResume(roomId, token, -1);
+    }
+
+    /**
+     * Asks the server to resume a session.
+     *
+     * @param roomId  the ID of the room
+     * @param token   the session token
+     * @param lastSeq the last sequence number received, or -1 to get the whole state
+     */
+    private void sendResume(String roomId, String token, int lastSeq) {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "resume");
+        msg.addProperty("roomId", roomId);
+        msg.addProperty("token", token);
+        msg.addProperty("lastSeq", lastSeq);
+        send(msg);
+    }
+
+    /**
+     * Checks the sequence number of a room message. A message received before, or while the client
+     * waits for a resumed session, is skipped. If more messages are missing than the client's own moves
+     * can explain, the client resumes its session from the last message it has received.
+     *
+     * @param seq the sequence number
+     * @return true if the message is to be handled
+     */
+    private boolean acceptSequenced(int seq) {
+        if (awaitingResume) return false;
+        if (lastSeq >= 0) {
+            if (seq <= lastSeq) return false;
+            int missing = seq - lastSeq - 1;
+            if (missing > pendingOwnMoves.get() && sessionToken != null && roomId != null) {
+                gapCount++;
+                System.out.println("CLIENT " + playerId + ": Messages after " + lastSeq + " are missing. Resuming.");
+                awaitingResume = true;
+                sendResume(roomId, sessionToken, lastSeq);
+                return false;
+            }
+            pendingOwnMoves.updateAndGet(n -> Math.max(0, n - missing));
+        }
+        lastSeq = seq;
+        return true;
     }
 
     /**
@@ -93,20 +286,61 @@ public class GameClient {
      */
     private void listen() {
         playerId = -1;
+        binaryIn = false;
         try {
             String line;
-            while ((line = in.readLine()) != null) {
+            while ((line = nextMessage()) != null) {
                 JsonObject obj = JsonParser.parseString(line).getAsJsonObject();
                 String type = obj.get("type").getAsString();
+                JsonElement seq = obj.get("roomSeq");
+                if (seq != null && !acceptSequenced(seq.getAsInt())) continue;
 
                 switch (type) {
+                    case "hello" -> binaryIn = "binary".equals(obj.get("protocol").getAsString());
+
+                    case "ping" -> {
+                        if (obj.has("rtt")) rttMicros = obj.get("rtt").getAsLong();
+                        JsonObject pong = new JsonObject();
+                        pong.addProperty("type", "pong");
+                        pong.add("t", obj.get("t"));
+                        pong.addProperty("clientTime", System.nanoTime());
+                        send(pong);
+                    }
+
+                    case "resync" -> {
+                        resyncing = true;
+                        resyncCount++;
+                        lastSeq = -1;
+                        awaitingResume = false;
+                        pendingOwnMoves.set(0);
+                        System.out.println("CLIENT: Resynchronizing with the server.");
+                    }
+
                     case "init" -> {
-                        playerId = obj.get("playerId").getAsInt();
-                        String gameJson = obj.get("gameJson").toString();
-                        ownGame = deserializeGame(gameJson);
+                        if (!resumeInit) {
+                            // A new room; its messages are numbered from the session message on
+                            lastSeq = -1;
+                        }
+                        resumeInit = false;
+                        int newPlayerId = obj.get("playerId").getAsInt();
+                        GameDeserializer board = new GameDeserializer(obj.get("gameJson"));
+                        if (resyncing && newPlayerId == playerId && ownGame != null) {
+                            // Own board is kept; the opponents' boards are rebuilt from the replayed moves
+                            closeOpponentGames();
+                            receivedMoves.clear();
+                            board.getGame().close();
+                        } else {
+                            closeGames();
+                            gameStarted = false;
+                            ownGame = board.getGame();
+                            ownGame.setLoggingSuppressed(restoringOwn);
+                        }
+                        resyncing = false;
+                        playerId = newPlayerId;
+                        roomId = obj.has("roomId") ? obj.get("roomId").getAsString() : null;
                         for (int i = 1; i <= 4; i++) {
                             if (i != playerId) {
-                                Game g = deserializeGame(gameJson);
+                                Game g = board.newGame();
                                 opponentGames.put(i, g);
                                 opponentUndoStacks.put(i, new Stack<>());
                                 opponentRedoStacks.put(i, new Stack<>());
@@ -136,6 +370,8 @@ public class GameClient {
                             if (gameUpdateListener != null) {
                                 gameUpdateListener.onGameUpdate();
                             }
+                        } else if (restoringOwn) {
+                            ownGame.node(new Position(r, c)).turn();
                         }
                     }
 
@@ -158,6 +394,8 @@ public class GameClient {
                             if (gameUpdateListener != null) {
                                 gameUpdateListener.onGameUpdate();
                             }
+                        } else if (restoringOwn) {
+                            ownGame.undo();
                         }
                     }
 
@@ -176,6 +414,8 @@ public class GameClient {
                                 }
                                 undoStack.push(pos);
                             }
+                        } else if (restoringOwn) {
+                            ownGame.redo();
                         }
 
                         if (gameUpdateListener != null) {
@@ -184,6 +424,7 @@ public class GameClient {
                     }
 
                     case "start_game" -> {
+                        if (gameStarted) continue;
                         gameStarted = true;
                         System.out.println("CLIENT: Game started!");
                         if (startListener != null) {
@@ -192,10 +433,16 @@ public class GameClient {
                     }
 
                     case "player_count_response" -> {
-                        latestPlayerCount = obj.get("count").getAsInt();
-                        latestPlayerIds.clear();
+                        List<Integer> ids = new ArrayList<>();
                         for (JsonElement el : obj.getAsJsonArray("playerIds")) {
-                            latestPlayerIds.add(el.getAsInt());
+                            ids.add(el.getAsInt());
+                        }
+                        latestPlayerIds = List.copyOf(ids);
+                        latestPlayerCount = obj.get("count").getAsInt();
+                        if (restoringOwn) {
+                            // The player count ends the replay of a resumed session
+                            restoringOwn = false;
+                            ownGame.setLoggingSuppressed(false);
                         }
 
                         if(playerCountListener != null) {
@@ -203,6 +450,77 @@ public class GameClient {
                         }
                     }
 
+                    case "room_created" -> roomId = obj.get("roomId").getAsString();
+
+                    case "match_queued" -> matchmaking = true;
+
+                    case "match_cancelled" -> matchmaking = false;
+
+                    case "match_found" -> {
+                        // The room's messages follow, as after joining it
+                        matchmaking = false;
+                        matchWaitMillis = obj.get("waitMillis").getAsLong();
+                        roomId = obj.get("roomId").getAsString();
+                        System.out.println("CLIENT: Matched into room " + roomId + " after " + matchWaitMillis + " ms.");
+                    }
+
+                    case "session" -> {
+                        sessionToken = obj.get("token").isJsonNull() ? null : obj.get("token").getAsString();
+                        lastSeq = Math.max(lastSeq, obj.get("lastSeq").getAsInt());
+                        pendingOwnMoves.set(0);
+                    }
+
+                    case "resumed" -> {
+                        String mode = obj.get("mode").getAsString();
+                        boolean keepOwn = ownGame != null && !discardOwnState;
+                        discardOwnState = false;
+                        playerId = obj.get("playerId").getAsInt();
+                        roomId = obj.get("roomId").getAsString();
+                        lastSeq = obj.get("after").getAsInt();
+                        awaitingResume = false;
+                        pendingOwnMoves.set(0);
+                        if (!"delta".equals(mode)) {
+                            // The initial message follows, then a snapshot or the replayed messages
+                            resumeInit = true;
+                            resyncing = "replay".equals(mode) && keepOwn;
+                            restoringOwn = "replay".equals(mode) && !keepOwn;
+                        }
+                        lastResumeMode = mode;
+                        resumeCount++;
+                        System.out.println("CLIENT: Resumed as player " + playerId + " (" + mode + ").");
+                    }
+
+                    case "snapshot" -> applySnapshot(obj);
+
+                    case "room_left" -> {
+                        roomId = null;
+                        System.out.println("CLIENT: Left room " + obj.get("roomId").getAsString());
+                    }
+
+                    case "room_list" -> {
+                        List<RoomInfo> rooms = new ArrayList<>();
+                        for (JsonElement el : obj.getAsJsonArray("rooms")) {
+                            JsonObject r = el.getAsJsonObject();
+                            rooms.add(new RoomInfo(r.get("roomId").getAsString(), r.get("difficulty").getAsInt(),
+                                    r.get("players").getAsInt(), r.get("maxPlayers").getAsInt(),
+                                    r.has("spectators") ? r.get("spectators").getAsInt() : 0,
+                                    r.get("started").getAsBoolean()));
+                        }
+                        latestRooms = List.copyOf(rooms);
+                    }
+
+                    case "error" -> {
+                        lastError = obj.get("message").getAsString();
+                        // A rejected move is not relayed, so its sequence number is not skipped
+                        pendingOwnMoves.updateAndGet(n -> Math.max(0, n - 1));
+                        if (awaitingResume) {
+                            // The session cannot be resumed; continue from the next message
+                            awaitingResume = false;
+                            lastSeq = -1;
+                        }
+                        System.out.println("CLIENT: Server error: " + lastError);
+                    }
+
                     case "win" -> {
                         int winnerId = obj.get("winnerId").getAsInt();
                         if(winnerId == playerId) {
@@ -216,19 +534,135 @@ public class GameClient {
                     }
                 }
             }
+        } catch (SocketTimeoutException e) {
+            System.out.println("CLIENT " + playerId + ": No message from the server for " + readTimeoutMillis
+                    + " ms. Disconnecting.");
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
         } catch (IOException e) {
             System.out.println("CLIENT " + playerId + ": Connection lost.");
         }
     }
 
-    private Game deserializeGame(String gameJson) {
+    /**
+     * Restores the boards from the snapshot of an authoritative room, which follows the initial message
+     * of a resumed session: every player's moves are applied again, and the undo and redo history restored.
+     *
+     * @param obj the snapshot message
+     */
+    private void applySnapshot(JsonObject obj) {
+        for (JsonElement el : obj.getAsJsonArray("players")) {
+            JsonObject player = el.getAsJsonObject();
+            int id = player.get("playerId").getAsInt();
+            List<Position> undo = positions(player.getAsJsonArray("undo"));
+            List<Position> redo = positions(player.getAsJsonArray("redo"));
+            if (id == playerId) {
+                ownGame.setLoggingSuppressed(true);
+                for (Position pos : undo) ownGame.node(pos).turn();
+                ownGame.loadHistory(undo, redo);
+                ownGame.setLoggingSuppressed(false);
+            } else {
+                Game g = opponentGames.get(id);
+                if (g == null) continue;
+                for (Position pos : undo) {
+                    g.node(pos).turn();
+                    g.setLastTurnedNode(pos);
+                }
+                g.updatePowerPropagation();
+                opponentUndoStacks.get(id).addAll(undo);
+                for (int i = redo.size() - 1; i >= 0; i--) {
+                    opponentRedoStacks.get(id).push(redo.get(i));
+                }
+            }
+        }
+        if (gameUpdateListener != null) {
+            gameUpdateListener.onGameUpdate();
+        }
+        if (obj.get("started").getAsBoolean() && !gameStarted) {
+            gameStarted = true;
+            if (startListener != null) {
+                startListener.onGameStarted();
+            }
+        }
+        int winnerId = obj.get("winnerId").getAsInt();
+        if (winnerId != 0 && gameWinListener != null) {
+            gameWinListener.onGameWin(winnerId);
+        }
+    }
+
+    private static List<Position> positions(JsonArray arr) {
+        List<Position> list = new ArrayList<>(arr.size());
+        for (JsonElement el : arr) {
+            JsonArray pos = el.getAsJsonArray();
+            list.add(new Position(pos.get(0).getAsInt(), pos.get(1).getAsInt()));
+        }
+        return list;
+    }
+
+    /**
+     * Reads the next message from the server as JSON text: a line, or a binary frame
+     * once the server has acknowledged the binary protocol.
+     *
+     * @return the message, or {@code null} at the end of the stream
+     * @throws IOException if reading fails
+     */
+    private String nextMessage() throws IOException {
+        if (binaryIn) {
+            ByteBuffer frame = BinaryProtocol.readFrame(in);
+            return frame != null ? BinaryProtocol.toJson(frame) : null;
+        }
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        int b;
+        while ((b = in.read()) >= 0 && b != '\n') {
+            line.write(b);
+        }
+        if (b < 0 && line.size() == 0) return null;
+        String text = line.toString(StandardCharsets.UTF_8);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    /**
+     * Closes the games of the current room, e.g., before the games of another room are created.
+     */
+    private void closeGames() {
+        if (ownGame != null) ownGame.close();
+        closeOpponentGames();
+    }
+
+    /**
+     * Closes the mirrored games of the opponents.
+     */
+    private void closeOpponentGames() {
+        opponentGames.values().forEach(Game::close);
+        opponentGames.clear();
+        opponentUndoStacks.clear();
+        opponentRedoStacks.clear();
+    }
+
+    /**
+     * Writes one message to the server. Senders on different threads are serialized by a lock.
+     *
+     * @param msg the message to send
+     */
+    private void send(JsonObject msg) {
+        byte[] bytes;
+        if (binaryOut) {
+            ByteBuffer frame = BinaryProtocol.encode(msg);
+            bytes = new byte[frame.remaining()];
+            frame.get(bytes);
+        } else {
+            bytes = (msg + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+        sendLock.lock();
         try {
-            Path temp = Files.createTempFile("temp_game_", ".json");
-            Files.writeString(temp, gameJson);
-            GameDeserializer deserializer = new GameDeserializer(temp);
-            return deserializer.getGame();
-        } catch (Exception e) {
-            throw new RuntimeException("Deserialization Error", e);
+            out.write(bytes);
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("CLIENT " + playerId + ": Sending failed: " + e.getMessage());
+        } finally {
+            sendLock.unlock();
         }
     }
 
@@ -239,7 +673,7 @@ public class GameClient {
         if (playerId == 1) { // Only player 1 can start the game
             JsonObject msg = new JsonObject();
             msg.addProperty("type", "start_game");
-            out.println(msg);
+            send(msg);
         }
     }
 
@@ -258,7 +692,8 @@ public class GameClient {
         posJson.addProperty("col", pos.getCol());
         msg.add("position", posJson);
 
-        out.println(msg);
+        pendingOwnMoves.incrementAndGet();
+        send(msg);
     }
 
     /**
@@ -268,7 +703,8 @@ public class GameClient {
         JsonObject msg = new JsonObject();
         msg.addProperty("type", "undo");
         msg.addProperty("playerId", playerId);
-        out.println(msg);
+        pendingOwnMoves.incrementAndGet();
+        send(msg);
     }
 
     /**
@@ -278,20 +714,97 @@ public class GameClient {
         JsonObject msg = new JsonObject();
         msg.addProperty("type", "redo");
         msg.addProperty("playerId", playerId);
-        out.println(msg);
+        pendingOwnMoves.incrementAndGet();
+        send(msg);
     }
 
     /**
-     * Sends a win notification to the server.
+     * Sends a win notification to the server, stamped with the time the client finished.
+     * The win listener is called when the server announces the winner.
      */
     public void sendWin() {
         JsonObject msg = new JsonObject();
         msg.addProperty("type", "win");
         msg.addProperty("winnerId", playerId);
-        out.println(msg);
-        if(gameWinListener != null) {
-            gameWinListener.onGameWin(playerId);
-        }
+        msg.addProperty("clientTime", System.nanoTime());
+        send(msg);
+    }
+
+    /**
+     * Asks the server to create a new room and to join it. The previous room is left.
+     *
+     * @param difficulty the board size of the new room
+     */
+    public void createRoom(int difficulty) {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "create_room");
+        msg.addProperty("difficulty", difficulty);
+        send(msg);
+    }
+
+    /**
+     * Asks the server to put the client into a room with other players looking for a match. The previous
+     * room is left; the match starts as soon as the room has been found.
+     *
+     * @param difficulty the preferred board size; the match may have a nearby size after a longer wait
+     */
+    public void findMatch(int difficulty) {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "find_match");
+        msg.addProperty("difficulty", difficulty);
+        send(msg);
+    }
+
+    /**
+     * Stops looking for a match.
+     */
+    public void cancelMatch() {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "cancel_match");
+        send(msg);
+    }
+
+    /**
+     * Requests the list of rooms from the server; the answer is available from {@link #getLatestRooms()}.
+     */
+    public void requestRoomList() {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "list_rooms");
+        send(msg);
+    }
+
+    /**
+     * Asks the server to join a room. The previous room is left.
+     *
+     * @param roomId the ID of the room
+     */
+    public void joinRoom(String roomId) {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "join_room");
+        msg.addProperty("roomId", roomId);
+        send(msg);
+    }
+
+    /**
+     * Asks the server to watch a room as a spectator. The previous room is left. A spectator has the
+     * player ID 0 and mirrors the games of all players; it cannot play.
+     *
+     * @param roomId the ID of the room
+     */
+    public void spectateRoom(String roomId) {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "spectate");
+        msg.addProperty("roomId", roomId);
+        send(msg);
+    }
+
+    /**
+     * Leaves the current room and returns to the lobby.
+     */
+    public void leaveRoom() {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "leave_room");
+        send(msg);
     }
 
     /**
@@ -300,10 +813,24 @@ public class GameClient {
     public void requestPlayerCount() {
         JsonObject msg = new JsonObject();
         msg.addProperty("type", "player_count");
-        out.println(msg);
+        send(msg);
         System.out.println("CLIENT: Player count requested.");
     }
 
+    /**
+     * Sets the wire protocol requested when connecting. Must be called before {@link #start()}.
+     *
+     * @param protocol the protocol, {@link Protocol#JSON} by default
+     */
+    public void setProtocol(Protocol protocol) { this.protocol = protocol; }
+
+    /**
+     * Returns the wire protocol requested when connecting.
+     *
+     * @return the protocol
+     */
+    public Protocol getProtocol() { return protocol; }
+
     /**
      * Checks if the game has started.
      *
@@ -340,6 +867,55 @@ public class GameClient {
      */
     public int getLatestPlayerCount() { return latestPlayerCount; }
 
+    /**
+     * Returns how many times the server has resent the room state because this client read too slowly.
+     *
+     * @return the number of resyncs
+     */
+    public int getResyncCount() { return resyncCount; }
+
+    /**
+     * Returns the token of the client's session in its room, which lets it resume after losing the connection.
+     *
+     * @return the session token, or {@code null} if the client has no session
+     */
+    public String getSessionToken() { return sessionToken; }
+
+    /**
+     * Returns the sequence number of the last room message the client has received.
+     *
+     * @return the sequence number, or -1 if unknown
+     */
+    public int getLastSeq() { return lastSeq; }
+
+    /**
+     * Returns how many times the client has found messages of its room missing.
+     *
+     * @return the number of gaps
+     */
+    public int getGapCount() { return gapCount; }
+
+    /**
+     * Returns how many times the client's session has been resumed.
+     *
+     * @return the number of resumed sessions
+     */
+    public int getResumeCount() { return resumeCount; }
+
+    /**
+     * Returns how the server sent the state of the last resumed session.
+     *
+     * @return {@code delta}, {@code snapshot} or {@code replay}, or {@code null} if no session has been resumed
+     */
+    public String getLastResumeMode() { return lastResumeMode; }
+
+    /**
+     * Returns the round-trip time to the server, as measured by the server's pings.
+     *
+     * @return the smoothed round-trip time in microseconds, or -1 if it has not been reported yet
+     */
+    public long getRttMicros() { return rttMicros; }
+
     /**
      * Returns the list of player IDs currently connected to the server.
      *
@@ -347,6 +923,41 @@ public class GameClient {
      */
     public List<Integer> getLatestPlayerIds() { return new ArrayList<>(latestPlayerIds); }
 
+    /**
+     * Returns the ID of the room the client is in.
+     *
+     * @return the room ID, or {@code null} while in the lobby
+     */
+    public String getRoomId() { return roomId; }
+
+    /**
+     * Returns whether the client is queued for a match.
+     *
+     * @return true between the server queueing the client and finding or cancelling its match
+     */
+    public boolean isMatchmaking() { return matchmaking; }
+
+    /**
+     * Returns how long the client waited for its last match.
+     *
+     * @return the wait in milliseconds, or -1 if the client has not been matched
+     */
+    public long getMatchWaitMillis() { return matchWaitMillis; }
+
+    /**
+     * Returns the most recently received room list.
+     *
+     * @return the rooms of the server
+     */
+    public List<RoomInfo> getLatestRooms() { return latestRooms; }
+
+    /**
+     * Returns the last error reported by the server, e.g., when a room could not be joined.
+     *
+     * @return the error message, or {@code null}
+     */
+    public String getLastError() { return lastError; }
+
     /**
      * Returns the current game instance of the client.
      *
@@ -376,6 +987,13 @@ public class GameClient {
      */
     public int getPlayerId() { return playerId; }
 
+    /**
+     * Returns whether the client watches its room as a spectator.
+     *
+     * @return true for a spectator
+     */
+    public boolean isSpectator() { return playerId == 0; }
+
     /**
      * Returns a list of all received move positions from opponents.
      *
@@ -1,127 +1,610 @@
 package multiplayer;
 
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import common.Position;
 import game.Game;
-import json.GameSerializer;
-import java.io.*;
+import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import com.google.gson.JsonArray;
 
 /**
  * Implements a multiplayer game server using Java Sockets.
  * <p>
- * Handles multiple clients, generates a common game board,
- * and broadcasts messages. Each client is assigned a unique player ID.
- * Game can only be started by the first connected player.
+ * The server hosts any number of {@link Room}s on one port; clients create, list, join and spectate rooms
+ * or are matched into one by the {@link Matchmaker}, see {@link Protocol} for the messages. A server created
+ * with a difficulty also hosts a default room that every client joins on connecting, as single-game servers did.
+ * </p>
+ *
+ * <p>
+ * The network layer is a {@link Transport} selected by the {@link ServerMode}. Sending never blocks: every client
+ * has a bounded outbound queue handled by the {@link SlowConsumerPolicy}, the {@link Heartbeat} reaps dead
+ * connections, and a {@link RateLimiter} checks each raw message before it is decoded. Boards are generated
+ * ahead of time by a {@link BoardPool}, and rooms may be recorded by a {@link MatchRecorder}. The settings are
+ * kept in a {@link ServerConfig}.
  * </p>
  *
  * @author Andrii Bondarenko (xbonda06)
  */
 public class GameServer {
+    /** Smallest board size of a room. */
+    public static final int MIN_DIFFICULTY = 2;
+    /** Largest board size of a room. */
+    public static final int MAX_DIFFICULTY = 15;
+    private static final long SPECTATOR_CATCH_UP_MILLIS = 100;
+    private static final long TIMER_TICK_MILLIS = 10;
+    private static final int TIMER_WHEEL_SIZE = 512;
+    private static final long MATCHMAKING_MILLIS = 50;
+
     private final int difficulty;
     private final int port;
-    private final int maxPlayers = 4;
-    private final GameSerializer gameSerializer = new GameSerializer();
-    private final List<ClientHandler> clients = new CopyOnWriteArrayList<>();
-    private final ExecutorService pool = Executors.newCachedThreadPool();
-    private ServerSocket serverSocket;
-    private final Deque<Integer> availablePlayerIds = new ConcurrentLinkedDeque<>();
-
-    private Game game;
-    private String gameJson;
-    private final AtomicBoolean gameStarted = new AtomicBoolean(false);
+    private final ServerMode mode;
+    private final boolean defaultRoomEnabled;
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+    private final AtomicLong nextRoomId = new AtomicLong(1);
+    private volatile Room defaultRoom;
+    private final ServerConfig config = ServerConfig.fromSystemProperties();
+    private volatile Matchmaker matchmaker;
+    private volatile BoardPool boards;
+    private volatile MatchRecorder recorder;
+    private volatile RateLimiter limiter;
+    /** Handles the messages delayed by the rate limits, so that they never hold up the sweeper. */
+    private volatile ExecutorService delayedMessages;
+    /** Messages that exceeded the rate limits, by {@link FloodPolicy}. */
+    private final AtomicLongArray rateLimited = new AtomicLongArray(FloodPolicy.values().length);
+    private volatile TimerWheel timers;
+    private volatile Heartbeat heartbeat;
+    private volatile Transport transport;
+    private volatile ScheduledExecutorService sweeper;
+    private volatile boolean stopped;
 
 
     /**
      * Constructs a GameServer listening on the given port and with the specified difficulty.
+     * The server mode is read from the {@code lightbulb.server.mode} system property.
      *
      * @param port       The TCP port to listen on.
      * @param difficulty The difficulty level of the generated game.
      */
     public GameServer(int port, int difficulty) {
+        this(port, difficulty, ServerMode.fromSystemProperties());
+    }
+
+    /**
+     * Constructs a GameServer listening on the given port, with the specified difficulty and network model.
+     * Connecting clients join the default room with a game of this difficulty.
+     *
+     * @param port       The TCP port to listen on.
+     * @param difficulty The difficulty level of the generated game.
+     * @param mode       The network model of the server.
+     */
+    public GameServer(int port, int difficulty, ServerMode mode) {
+        this(port, difficulty, mode, true);
+    }
+
+    /**
+     * Constructs a lobby-only GameServer: clients create and join rooms themselves.
+     *
+     * @param port The TCP port to listen on.
+     * @param mode The network model of the server.
+     */
+    public GameServer(int port, ServerMode mode) {
+        this(port, 5, mode, false);
+    }
+
+    private GameServer(int port, int difficulty, ServerMode mode, boolean defaultRoomEnabled) {
         this.port = port;
         this.difficulty = difficulty;
-        for (int i = 1; i <= maxPlayers; i++) {
-            availablePlayerIds.add(i);
+        this.mode = mode;
+        this.defaultRoomEnabled = defaultRoomEnabled;
+    }
+
+    private static int checkDifficulty(int difficulty) {
+        if (difficulty < MIN_DIFFICULTY || difficulty > MAX_DIFFICULTY) {
+            throw new IllegalArgumentException("Difficulty must be between " + MIN_DIFFICULTY + " and " + MAX_DIFFICULTY + ".");
         }
+        return difficulty;
     }
 
     /**
-     * Stops the server, closes all client connections, and shuts down the thread pool.
+     * Stops the server, closes all client connections and all rooms.
      */
     public void stop() {
-        try {
-            System.out.println("SERVER: Stopping server...");
-            for (ClientHandler client : clients) {
-                client.close();
-            }
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
-            }
-            pool.shutdownNow();
-        } catch (IOException e) {
-            e.printStackTrace();
+        System.out.println("SERVER: Stopping server...");
+        stopped = true;
+        Transport t = transport;
+        if (t != null) t.close();
+        ScheduledExecutorService s = sweeper;
+        if (s != null) s.shutdownNow();
+        ExecutorService d = delayedMessages;
+        if (d != null) d.shutdownNow();
+        TimerWheel w = timers;
+        if (w != null) w.close();
+        BoardPool b = boards;
+        if (b != null) b.close();
+        for (Room room : rooms.values()) {
+            room.close();
         }
+        rooms.clear();
+        MatchRecorder r = recorder;
+        if (r != null) r.close();
     }
 
     /**
-     * Returns the current game instance.
+     * Returns the game of the default room.
      *
-     * @return the generated game object
+     * @return the generated game object, or {@code null} for a lobby-only server
      */
     public Game getGame () {
-        return game;
+        Room room = defaultRoom;
+        return room != null ? room.getGame() : null;
+    }
+
+    /**
+     * Returns the game of a room.
+     *
+     * @param roomId the room ID
+     * @return the room's game, or {@code null} if there is no such room
+     */
+    public Game getGame(String roomId) {
+        Room room = rooms.get(roomId);
+        return room != null ? room.getGame() : null;
+    }
+
+    /**
+     * Returns the number of open rooms.
+     *
+     * @return the room count
+     */
+    public int getRoomCount() {
+        return rooms.size();
+    }
+
+    /**
+     * Returns whether the server has bound its port and accepts clients, i.e., it has been started and not stopped.
+     *
+     * @return true while listening
+     */
+    public boolean isListening() {
+        return transport != null && !stopped;
+    }
+
+    /**
+     * Returns the port the server listens on; a server constructed with port 0 reports the port it was given
+     * once it is {@linkplain #isListening() listening}.
+     *
+     * @return the TCP port
+     */
+    public int getPort() {
+        Transport t = transport;
+        return t != null ? t.getLocalPort() : port;
+    }
+
+    /**
+     * Returns the network model of the server.
+     *
+     * @return the server mode
+     */
+    public ServerMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the settings of the server, read from the system properties when it was created.
+     * Settings of rooms take effect for rooms created afterwards, all others when the server is started.
+     *
+     * @return the live configuration
+     */
+    public ServerConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Returns the winner announced in a room.
+     *
+     * @param roomId the room ID
+     * @return the winner's player ID, or 0 if nobody has won or there is no such room
+     */
+    public int getWinnerId(String roomId) {
+        Room room = rooms.get(roomId);
+        return room != null ? room.getWinnerId() : 0;
+    }
+
+    /**
+     * Returns the number of spectators watching a room.
+     *
+     * @param roomId the room ID
+     * @return the spectator count, or 0 if there is no such room
+     */
+    public int getSpectatorCount(String roomId) {
+        Room room = rooms.get(roomId);
+        return room != null ? room.getSpectatorCount() : 0;
+    }
+
+    /**
+     * Returns how many messages of a room have been skipped for lagging spectators and replaced by catch-ups.
+     *
+     * @param roomId the room ID
+     * @return the number of coalesced messages, or 0 if there is no such room
+     */
+    public long getCoalescedMessages(String roomId) {
+        Room room = rooms.get(roomId);
+        return room != null ? room.getCoalescedMessages() : 0;
+    }
+
+    /**
+     * Returns the smoothed round-trip time of a player, measured by the pings.
+     *
+     * @param roomId   the room ID
+     * @param playerId the player ID
+     * @return the round-trip time in microseconds, or -1 if unknown
+     */
+    public long getRttMicros(String roomId, int playerId) {
+        Room room = rooms.get(roomId);
+        long rtt = room != null ? room.getRttNanos(playerId) : -1;
+        return rtt >= 0 ? TimeUnit.NANOSECONDS.toMicros(rtt) : -1;
+    }
+
+    /**
+     * Returns the round-trip times measured for a player by the pings.
+     *
+     * @param roomId   the room ID
+     * @param playerId the player ID
+     * @return a copy of the player's latency histogram, or {@code null} if the player is not connected
+     */
+    public LatencyHistogram getLatencyHistogram(String roomId, int playerId) {
+        Room room = rooms.get(roomId);
+        return room != null ? room.getLatency(playerId) : null;
+    }
+
+    /**
+     * Returns how many clients have been disconnected because they stopped sending or reading.
+     *
+     * @return the number of idle disconnects
+     */
+    public long getIdleDisconnects() {
+        Heartbeat h = heartbeat;
+        return h != null ? h.getIdleDisconnects() : 0;
+    }
+
+    /**
+     * Returns the match file of a room.
+     *
+     * @param roomId the room ID
+     * @return the file, or {@code null} if the room does not exist or is not recorded
+     */
+    public Path getRecordingFile(String roomId) {
+        Room room = rooms.get(roomId);
+        return room != null ? room.getRecordingFile() : null;
+    }
+
+    /**
+     * Returns how many records have been written to the match files.
+     *
+     * @return the number of written records, 0 if the server does not record
+     */
+    public long getWrittenMatchRecords() {
+        MatchRecorder r = recorder;
+        return r != null ? r.getWrittenRecords() : 0;
+    }
+
+    /**
+     * Returns how many messages of all clients have exceeded the rate limits.
+     *
+     * @param penalty what was done with the messages
+     * @return the number of messages; for {@link FloodPolicy#DISCONNECT} the number of disconnected clients
+     */
+    public long getRateLimitedMessages(FloodPolicy penalty) {
+        return rateLimited.get(penalty.ordinal());
+    }
+
+    /**
+     * Returns how many messages of a room's members have exceeded the rate limits.
+     *
+     * @param roomId  the room ID
+     * @param penalty what was done with the messages
+     * @return the number of messages, or 0 if the room does not exist
+     */
+    public long getRateLimitedMessages(String roomId, FloodPolicy penalty) {
+        Room room = rooms.get(roomId);
+        return room != null ? room.getRateLimited(penalty) : 0;
+    }
+
+    /**
+     * Returns how many players are waiting for a match.
+     *
+     * @return the length of the matchmaking queue
+     */
+    public int getMatchQueueLength() {
+        Matchmaker m = matchmaker;
+        return m != null ? m.getQueueLength() : 0;
+    }
+
+    /**
+     * Returns how many matches have been formed.
+     *
+     * @return the number of matches
+     */
+    public long getMatchCount() {
+        Matchmaker m = matchmaker;
+        return m != null ? m.getMatchCount() : 0;
+    }
+
+    /**
+     * Returns how long the matched players have waited.
+     *
+     * @return a copy of the time-to-match histogram, or {@code null} before the server has been started
+     */
+    public LatencyHistogram getTimeToMatch() {
+        Matchmaker m = matchmaker;
+        return m != null ? m.getTimeToMatch() : null;
+    }
+
+    /**
+     * Returns the counters of the clients' outbound queues.
+     *
+     * @return the outbound metrics, or {@code null} before the server has been started
+     */
+    public OutboundMetrics getOutboundMetrics() {
+        Transport t = transport;
+        return t != null ? t.getMetrics() : null;
     }
 
     /**
      * Starts the server. Accepts incoming connections,
      * assigns player IDs, and handles communication between clients.
+     * Blocks until the server is stopped.
      */
     public void start() {
-        try (ServerSocket serverSocket = new ServerSocket(port)) {
-            this.serverSocket = serverSocket;
-            System.out.println("SERVER: Server is started on address " + getIpAddress() + ":" + port + ", waiting for players...");
-
-            this.game = Game.generate(difficulty, difficulty);
-            game.randomizeRotations();
-            gameSerializer.serialize(game, 1);
-            gameJson = gameSerializer.getJson();
-
-            while (!serverSocket.isClosed()) {
-                Socket clientSocket = serverSocket.accept();
-
-                if (gameStarted.get()) {
-                    System.out.println("SERVER: Game already started. Rejecting new connection.");
-                    clientSocket.close();
-                    continue;
-                }
-
-                Integer assignedId = availablePlayerIds.poll();
-
-                if (assignedId == null) {
-                    System.out.println("SERVER: Server is full. Rejecting connection.");
-                    clientSocket.close();
-                    continue;
-                }
+        TimerWheel w = new TimerWheel(TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS, TIMER_WHEEL_SIZE, "server-timers");
+        this.timers = w;
+        this.heartbeat = new Heartbeat(w, config.getPingIntervalMillis(), config.getReadIdleTimeoutMillis(),
+                config.getWriteIdleTimeoutMillis());
+        BoardPool b = new BoardPool(config.getPooledBoards());
+        this.boards = b;
+        this.matchmaker = new Matchmaker(Room.MAX_PLAYERS, config.getMatchTargetWaitMillis(), b::getReadyCount);
+        Path directory = config.getRecordingDirectory();
+        MatchRecorder r = directory != null ? new MatchRecorder(directory) : null;
+        this.recorder = r;
+        RateLimiter.Rate rate = config.getConnectionRate();
+        Map<String, RateLimiter.Rate> typeRates = config.getTypeRates();
+        RateLimiter l = rate != null || !typeRates.isEmpty() ? new RateLimiter(rate, typeRates, config.getFloodPolicy()) : null;
+        this.limiter = l;
+        ExecutorService d = l != null && l.getPenalty() == FloodPolicy.DELAY ? newDelayedMessagesExecutor() : null;
+        this.delayedMessages = d;
+        Transport t = mode.createTransport();
+        try {
+            t.setOutboundLimit(config.getMaxQueuedBytes(), config.getSlowConsumerPolicy());
+            t.bind(port);
+            this.transport = t;
+            if (stopped) {
+                t.close();
+                return;
+            }
+            System.out.println("SERVER: Server is started on address " + getIpAddress() + ":" + t.getLocalPort() + ", waiting for players...");
 
-                ClientHandler handler = new ClientHandler(clientSocket, assignedId);
-                clients.add(handler);
-                pool.execute(handler);
-                System.out.println("SERVER: Player " + handler.playerId + " connected.");
+            if (defaultRoomEnabled) {
+                defaultRoom = createRoom(difficulty);
             }
+            b.prepare(difficulty);
+            startSweeper();
 
-        } catch (SocketException e) {
+            t.serve(new GameHandler());
             System.out.println("SERVER: Server socket was closed. Server is shutting down.");
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            t.close();
+            w.close();
+            b.close();
+            if (r != null) r.close();
+            if (d != null) d.shutdownNow();
         }
     }
 
+    /**
+     * Creates the threads handling delayed messages. Each client's delayed messages are handled by one task
+     * at a time, so they stay in order; a slow message, e.g., a {@code join_room} sending a large board,
+     * holds up only the clients whose messages wait behind it.
+     *
+     * @return the executor
+     */
+    private static ExecutorService newDelayedMessagesExecutor() {
+        AtomicLong threads = new AtomicLong();
+        return Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread thread = new Thread(r, "delayed-messages-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Periodically closes rooms that have been empty for the idle timeout, sends lagging spectators
+     * their catch-up when nothing else is relayed to them, and matches players that have waited long enough,
+     * having the boards they wait for generated.
+     */
+    private void startSweeper() {
+        long idle = config.getRoomIdleTimeoutMillis();
+        long period = Math.max(10, Math.min(idle / 2, TimeUnit.SECONDS.toMillis(30)));
+        ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "room-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        s.scheduleWithFixedDelay(() -> {
+            long now = System.currentTimeMillis();
+            for (Room room : rooms.values()) {
+                if (room != defaultRoom && room.closeIfIdle(now, idle)) {
+                    rooms.remove(room.getId(), room);
+                    System.out.println("SERVER: Room " + room.getId() + " closed after being idle.");
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        s.scheduleWithFixedDelay(() -> rooms.values().forEach(Room::catchUpSpectators),
+                SPECTATOR_CATCH_UP_MILLIS, SPECTATOR_CATCH_UP_MILLIS, TimeUnit.MILLISECONDS);
+        s.scheduleWithFixedDelay(() -> {
+            matchmaker.poll(System.nanoTime()).forEach(this::startMatch);
+            // Queued players wait for a board also if none is pooled or generating their last one has failed
+            for (int size : matchmaker.getQueuedSizes()) {
+                boards.prepare(size, 1);
+            }
+        }, MATCHMAKING_MILLIS, MATCHMAKING_MILLIS, TimeUnit.MILLISECONDS);
+        sweeper = s;
+        if (stopped) s.shutdownNow();
+    }
+
+    /**
+     * Creates and registers a new room.
+     *
+     * @param difficulty the board size of the room
+     * @return the new room
+     * @throws IllegalStateException if the room limit has been reached
+     */
+    private Room createRoom(int difficulty) {
+        checkRoomLimit();
+        return createRoom(boards.take(difficulty));
+    }
+
+    /**
+     * Creates a room for a client and moves the client into it. If no board is ready, it is generated on the
+     * board pool's thread and the client is answered once it is, so the client's event loop never waits for it.
+     * The client stays in its current room until then, and also if no room can be created.
+     *
+     * @param member     the client
+     * @param difficulty the board size of the room
+     * @throws IllegalStateException if the room limit has been reached
+     */
+    private void createRoom(Room.Member member, int difficulty) {
+        checkRoomLimit();
+        boards.takeAsync(difficulty).whenComplete((board, error) -> {
+            if (error != null) {
+                member.send(errorMessage("Cannot create a room: " + error.getMessage()));
+                return;
+            }
+            if (!member.getConnection().isOpen()) {
+                board.game().close();
+                return;
+            }
+            try {
+                Room room = createRoom(board);
+                leave(member, false);
+                JsonObject resp = new JsonObject();
+                resp.addProperty("type", "room_created");
+                resp.addProperty("roomId", room.getId());
+                member.send(resp.toString());
+                join(member, room);
+            } catch (IllegalStateException e) {
+                member.send(errorMessage(e.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * Creates and registers a new room with a generated board.
+     *
+     * @param board the board of the room, owned by the room afterwards, or closed if the room limit has been reached
+     * @return the new room
+     * @throws IllegalStateException if the room limit has been reached
+     */
+    private Room createRoom(BoardPool.Board board) {
+        if (rooms.size() >= config.getMaxRooms()) {
+            board.game().close();
+            throw new IllegalStateException("Room limit reached.");
+        }
+        Room room = new Room(Long.toString(nextRoomId.getAndIncrement()), board, config.isAuthoritative(), timers,
+                config.getWinWindowMillis());
+        MatchRecorder r = recorder;
+        if (r != null) room.setRecording(r.open(room.getId(), board.json()));
+        rooms.put(room.getId(), room);
+        return room;
+    }
+
+    /**
+     * Checks that another room may be created.
+     *
+     * @throws IllegalStateException if the room limit has been reached
+     */
+    private void checkRoomLimit() {
+        if (rooms.size() >= config.getMaxRooms()) {
+            throw new IllegalStateException("Room limit reached.");
+        }
+    }
+
+    /**
+     * Queues a client for a match, leaving the room it is in.
+     *
+     * @param member     the client
+     * @param difficulty the preferred board size
+     */
+    private void findMatch(Room.Member member, int difficulty) {
+        leave(member, false);
+        boards.prepare(difficulty, 1);
+        // Sent first, so it cannot follow the match_found of a match formed meanwhile by the sweeper
+        JsonObject resp = new JsonObject();
+        resp.addProperty("type", "match_queued");
+        resp.addProperty("difficulty", difficulty);
+        resp.addProperty("queued", matchmaker.getQueueLength(difficulty) + 1);
+        member.send(resp.toString());
+        Matchmaker.Match match = matchmaker.enqueue(member, difficulty, System.nanoTime());
+        if (match != null) startMatch(match);
+    }
+
+    /**
+     * Creates the room of a match with a pooled board, puts its players into it and starts the game. Players
+     * that have disconnected meanwhile are left out; if fewer than two remain, or the board has been taken
+     * meanwhile, they are queued again with their waiting times.
+     *
+     * @param match the matched players
+     */
+    private void startMatch(Matchmaker.Match match) {
+        long now = System.nanoTime();
+        List<Matchmaker.Ticket> tickets = new ArrayList<>();
+        for (Matchmaker.Ticket ticket : match.tickets()) {
+            if (ticket.member().getConnection().isOpen() && ticket.member().getRoom() == null) tickets.add(ticket);
+        }
+        BoardPool.Board board = tickets.size() >= 2 ? boards.poll(match.difficulty()) : null;
+        if (board == null) {
+            matchmaker.requeue(tickets);
+            return;
+        }
+        Room room;
+        try {
+            room = createRoom(board);
+        } catch (RuntimeException e) {
+            System.out.println("SERVER: Cannot create a room for a match: " + e.getMessage());
+            for (Matchmaker.Ticket ticket : tickets) {
+                ticket.member().send(errorMessage("No room for the match: " + e.getMessage()));
+            }
+            return;
+        }
+        for (Matchmaker.Ticket ticket : tickets) {
+            JsonObject found = new JsonObject();
+            found.addProperty("type", "match_found");
+            found.addProperty("roomId", room.getId());
+            found.addProperty("difficulty", match.difficulty());
+            found.addProperty("waitMillis", TimeUnit.NANOSECONDS.toMillis(now - ticket.queuedAt()));
+            ticket.member().send(found.toString());
+            try {
+                join(ticket.member(), room);
+            } catch (IllegalStateException e) {
+                ticket.member().send(errorMessage(e.getMessage()));
+            }
+        }
+        matchmaker.started(tickets, now);
+        if (room.start(tickets.get(0).member())) {
+            JsonObject startMsg = new JsonObject();
+            startMsg.addProperty("type", "start_game");
+            room.relay(OutboundMessage.ofJson(startMsg.toString()), null);
+        }
+        System.out.println("SERVER: Matched " + tickets.size() + " players into room " + room.getId() + ".");
+    }
+
     /**
      * Returns the public IPv4 address of the server, if available.
      *
@@ -150,138 +633,463 @@ public class GameServer {
     }
 
     /**
-     * Sends a message to all clients except the sender.
-     *
-     * @param message the message to be sent
-     * @param sender  the client who sent the original message
+     * Protocol on top of the transport: lobby requests, room membership and relaying of moves.
      */
-    public void broadcast(String message, ClientHandler sender) {
-        for (ClientHandler client : clients) {
-            if (client != sender) {
-                client.sendMessage(message);
+    private class GameHandler implements ConnectionHandler {
+        /** Passed as the billed type of a message of a client without rate limits. */
+        private static final int UNBILLED = -2;
+
+        /**
+         * Registers the client in the lobby and with the heartbeat, or puts it into the default room if the server has one.
+         */
+        @Override
+        public void onOpen(Connection connection) {
+            Room.Member member = new Room.Member(connection);
+            connection.setAttachment(member);
+            RateLimiter l = limiter;
+            if (l != null) member.setRateBuckets(l.newBuckets(System.nanoTime()));
+            heartbeat.watch(member);
+            Room room = defaultRoom;
+            if (room == null) {
+                System.out.println("SERVER: Client connected to the lobby.");
+                return;
+            }
+            try {
+                join(member, room);
+            } catch (IllegalStateException e) {
+                System.out.println("SERVER: " + e.getMessage() + " Rejecting connection.");
+                connection.close();
             }
         }
-    }
-
-    /**
-     * Handles communication with a single client in a separate thread.
-     */
-    private class ClientHandler implements Runnable {
-        private final Socket socket;
-        private final int playerId;
-        private BufferedReader in;
-        private PrintWriter out;
 
         /**
-         * Constructs a client handler for a connected socket and assigns a player ID.
-         *
-         * @param socket   the client's socket
-         * @param playerId the unique ID assigned to the player
+         * Handles lobby requests and the messages of the client's room, if the client is within its rate limits.
          */
-        public ClientHandler(Socket socket, int playerId) {
-            this.socket = socket;
-            this.playerId = playerId;
+        @Override
+        public void onMessage(Connection connection, ByteBuffer message) {
+            if (!(connection.getAttachment() instanceof Room.Member member)) return;
+            RateLimiter.Buckets buckets = member.getRateBuckets();
+            RateLimiter l = limiter;
+            if (buckets == null || l == null) {
+                handleMessage(member, message, UNBILLED);
+                return;
+            }
+            int type = l.typeOf(message, connection.getProtocol());
+            if (admit(member, buckets, type, message)) handleMessage(member, message, type);
         }
 
         /**
-         * Starts the message listening loop for this client.
-         * Handles specific types of messages and communicates with other players.
+         * Checks a raw message against the client's rate limits and applies the penalty to a message beyond them.
+         * A message is delayed also while earlier ones of the client are, so the client's messages stay in order.
+         *
+         * @param member  the client
+         * @param buckets the client's buckets
+         * @param type    the index of the message's limited type, or -1
+         * @param message the raw message
+         * @return true if the message may be handled now
          */
-        @Override
-        public void run() {
-            try {
-                in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                out = new PrintWriter(socket.getOutputStream(), true);
-
-                out.println(initMessage());
-                out.println(playerCountMessage());
-                broadcast(playerCountMessage().toString(), this);
-
-                String line;
-                while ((line = in.readLine()) != null) {
-                    JsonObject obj = JsonParser.parseString(line).getAsJsonObject();
-                    String type = obj.get("type").getAsString();
-
-                    if ("start_game".equals(type) && playerId == 1) {
-                        gameStarted.set(true);
-                        JsonObject startMsg = new JsonObject();
-                        startMsg.addProperty("type", "start_game");
-                        broadcast(startMsg.toString(), null);
-                    } else if ("player_count".equals(type)) {
-                        JsonObject resp = playerCountMessage();
-                        out.println(resp);
-                    } else {
-                        broadcast(line, this);
+        private boolean admit(Room.Member member, RateLimiter.Buckets buckets, int type, ByteBuffer message) {
+            RateLimiter l = limiter;
+            Connection connection = member.getConnection();
+            if (!connection.isOpen()) return false;
+            FloodPolicy penalty = l.getPenalty();
+            long now = System.nanoTime();
+            synchronized (buckets) {
+                boolean behind = buckets.isDelaying();
+                long wait = l.admit(buckets, type, now, penalty == FloodPolicy.DELAY);
+                if (wait == 0 && !behind) return true;
+                boolean full = penalty == FloodPolicy.DELAY && buckets.isFull();
+                if (wait > 0 || full) rateLimited(member, full ? FloodPolicy.DISCONNECT : penalty);
+                switch (penalty) {
+                    case DROP -> { }
+                    case DISCONNECT -> disconnectFlooding(member);
+                    case DELAY -> {
+                        ByteBuffer copy = ByteBuffer.allocate(message.remaining()).put(message.duplicate()).flip();
+                        if (!buckets.delay(now + wait, type, copy)) {
+                            disconnectFlooding(member);
+                        } else if (!behind) {
+                            scheduleDrain(member, buckets, wait);
+                        }
                     }
                 }
-            } catch (IOException e) {
-                System.out.println("SERVER: Player " + playerId + " disconnected.");
-            } finally {
-                try {
-                    socket.close();
-                    clients.remove(this);
-                    if (!gameStarted.get()) {
-                        availablePlayerIds.addFirst(playerId);
-                        System.out.println("SERVER: Player " + playerId + " ID released.");
-                    }
-                } catch (IOException ignored) {}
+                return false;
             }
         }
 
         /**
-         * Sends a message to the client.
+         * Lets the sweeper wait for a client's tokens and then hands its delayed messages to their own threads.
          *
-         * @param message the message to send
+         * @param member  the client
+         * @param buckets the client's buckets
+         * @param wait    the nanoseconds until the next message's tokens are available
          */
-        public void sendMessage(String message) {
-            out.println(message);
+        private void scheduleDrain(Room.Member member, RateLimiter.Buckets buckets, long wait) {
+            ExecutorService d = delayedMessages;
+            sweeper.schedule(() -> d.execute(() -> drain(member, buckets)), wait, TimeUnit.NANOSECONDS);
         }
 
         /**
-         * Builds and returns the initial message sent to a connected client.
+         * Handles the delayed messages of a client whose tokens have become available, in order, and schedules
+         * itself again for the rest.
          *
-         * @return JSON string with player ID and initial game state
+         * @param member  the client
+         * @param buckets the client's buckets
          */
-        private String initMessage() {
-            JsonObject obj = new JsonObject();
-            obj.addProperty("type", "init");
-            obj.addProperty("playerId", playerId);
-            JsonElement gameJsonElement = JsonParser.parseString(gameJson);
-            obj.add("gameJson", gameJsonElement);
-            return obj.toString();
+        private void drain(Room.Member member, RateLimiter.Buckets buckets) {
+            while (member.getConnection().isOpen()) {
+                RateLimiter.Delayed next;
+                synchronized (buckets) {
+                    RateLimiter.Delayed delayed = buckets.peekDelayed();
+                    if (delayed == null) {
+                        buckets.stopDelaying();
+                        return;
+                    }
+                    long wait = delayed.due() - System.nanoTime();
+                    if (wait > 0) {
+                        scheduleDrain(member, buckets, wait);
+                        return;
+                    }
+                    buckets.pollDelayed();
+                    next = delayed;
+                }
+                handleMessage(member, next.message(), next.type());
+            }
+            synchronized (buckets) {
+                buckets.stopDelaying();
+            }
         }
 
         /**
-         * Constructs and returns a JSON object containing the current player count and their IDs.
+         * Handles lobby requests and the messages of the client's room. A JSON message whose parsed type differs
+         * from the one it was billed as, e.g., because of a duplicate or escaped {@code "type"} key, is invalid.
          *
-         * @return JSON object with type, count, and player IDs
+         * @param member     the client
+         * @param message    the raw message
+         * @param billedType the index of the limited type the message was billed as, -1 for none, or
+         *                   {@link #UNBILLED} if the client is not rate limited
          */
-        private JsonObject playerCountMessage() {
-            JsonObject resp = new JsonObject();
-            resp.addProperty("type", "player_count_response");
-
-            List<Integer> ids = clients.stream()
-                    .map(handler -> handler.playerId)
-                    .toList();
-
-            resp.addProperty("count", ids.size());
+        private void handleMessage(Room.Member member, ByteBuffer message, int billedType) {
+            Connection connection = member.getConnection();
+            if (connection.getProtocol() == Protocol.BINARY) {
+                byte opcode = BinaryProtocol.opcode(message);
+                if (opcode != BinaryProtocol.OP_JSON) {
+                    try {
+                        handleFrame(member, opcode, message);
+                    } catch (IllegalStateException | IllegalArgumentException e) {
+                        member.send(errorMessage(e.getMessage()));
+                    }
+                    return;
+                }
+                message.position(message.position() + 1);
+            }
+            String line = ConnectionHandler.text(message);
+            JsonObject obj;
+            String type;
+            try {
+                obj = JsonParser.parseString(line).getAsJsonObject();
+                type = obj.get("type").getAsString();
+                RateLimiter l = limiter;
+                if (billedType != UNBILLED && l != null && l.typeIndex(type) != billedType) {
+                    throw new IllegalArgumentException("The message was billed as another type.");
+                }
+            } catch (RuntimeException e) {
+                System.out.println("SERVER: Invalid message from " + connection.getRemoteAddress() + ".");
+                connection.close();
+                return;
+            }
 
-            JsonArray arr = new JsonArray();
-            for (int id : ids) arr.add(id);
-            resp.add("playerIds", arr);
+            try {
+                switch (type) {
+                    case "hello" -> {
+                        Protocol protocol = Protocol.valueOf(obj.get("protocol").getAsString().toUpperCase());
+                        JsonObject resp = new JsonObject();
+                        resp.addProperty("type", "hello");
+                        resp.addProperty("protocol", protocol.name().toLowerCase());
+                        member.send(resp.toString());
+                        member.setProtocol(protocol);
+                        connection.setProtocol(protocol);
+                    }
+                    case "create_room" -> {
+                        int size = obj.has("difficulty") ? checkDifficulty(obj.get("difficulty").getAsInt()) : difficulty;
+                        createRoom(member, size);
+                    }
+                    case "find_match" -> {
+                        int size = obj.has("difficulty") ? checkDifficulty(obj.get("difficulty").getAsInt()) : difficulty;
+                        findMatch(member, size);
+                    }
+                    case "cancel_match" -> {
+                        if (matchmaker.cancel(member)) {
+                            JsonObject resp = new JsonObject();
+                            resp.addProperty("type", "match_cancelled");
+                            member.send(resp.toString());
+                        }
+                    }
+                    case "pong" -> heartbeat.pong(member, obj.get("t").getAsLong(), clientTime(obj));
+                    case "list_rooms" -> member.send(roomListMessage().toString());
+                    case "join_room" -> {
+                        Room room = rooms.get(obj.get("roomId").getAsString());
+                        if (room == null) {
+                            throw new IllegalStateException("Room " + obj.get("roomId").getAsString() + " does not exist.");
+                        }
+                        if (member.getRoom() != room) {
+                            leave(member, false);
+                            join(member, room);
+                        }
+                    }
+                    case "spectate" -> {
+                        Room room = rooms.get(obj.get("roomId").getAsString());
+                        if (room == null) {
+                            throw new IllegalStateException("Room " + obj.get("roomId").getAsString() + " does not exist.");
+                        }
+                        if (member.getRoom() != room || !member.isSpectator()) {
+                            matchmaker.cancel(member);
+                            leave(member, false);
+                            room.spectate(member);
+                            System.out.println("SERVER: Spectator connected to room " + room.getId() + ".");
+                        }
+                    }
+                    case "resume" -> {
+                        Room room = rooms.get(obj.get("roomId").getAsString());
+                        if (room == null) {
+                            throw new IllegalStateException("Room " + obj.get("roomId").getAsString() + " does not exist.");
+                        }
+                        resume(member, room, obj.get("token").getAsString(), obj.get("lastSeq").getAsInt());
+                    }
+                    case "leave_room" -> {
+                        Room room = member.getRoom();
+                        if (leave(member, false)) {
+                            JsonObject resp = new JsonObject();
+                            resp.addProperty("type", "room_left");
+                            resp.addProperty("roomId", room.getId());
+                            member.send(resp.toString());
+                        }
+                    }
+                    default -> {
+                        if (obj.has("roomSeq")) {
+                            // Sequence numbers are the room's; a client cannot make up its own
+                            obj.remove("roomSeq");
+                            line = obj.toString();
+                        }
+                        Position position = "turn".equals(type) && decodesTurns(member) ? position(obj) : null;
+                        handleRoomMessage(member, type, position, clientTime(obj), OutboundMessage.ofJson(line));
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Missing or mistyped fields, unknown rooms and rejected joins are reported to the client
+                member.send(errorMessage(e.getMessage() != null ? e.getMessage() : "Invalid " + type + " message."));
+            }
+        }
 
-            return resp;
+        /**
+         * Sends a slow client the state of its room again, or disconnects it if that is not possible.
+         */
+        @Override
+        public void onOverflow(Connection connection) {
+            if (!(connection.getAttachment() instanceof Room.Member member)) return;
+            Room room = member.getRoom();
+            if (room != null && !room.resync(member)) {
+                System.out.println("SERVER: Player " + member.getPlayerId() + " cannot be resynchronized. Disconnecting.");
+                connection.close();
+            }
         }
 
         /**
-         * Closes the socket connection for the client.
+         * Removes the client from its room, keeping its session if the match has started, or from the matchmaking queue.
          */
-        public void close() {
-            try {
-                socket.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+        @Override
+        public void onClose(Connection connection) {
+            if (connection.getAttachment() instanceof Room.Member member) {
+                matchmaker.cancel(member);
+                leave(member, true);
+            }
+        }
+    }
+
+    /**
+     * Counts a message beyond a client's rate limits for the server and the client's room.
+     *
+     * @param member  the client
+     * @param penalty what is done with the message
+     */
+    private void rateLimited(Room.Member member, FloodPolicy penalty) {
+        rateLimited.incrementAndGet(penalty.ordinal());
+        Room room = member.getRoom();
+        if (room != null) room.rateLimited(penalty);
+    }
+
+    private static void disconnectFlooding(Room.Member member) {
+        System.out.println("SERVER: Client " + member.getConnection().getRemoteAddress()
+                + " exceeded its rate limits. Closing the connection.");
+        member.getConnection().close();
+    }
+
+    /**
+     * Handles a compact binary frame. Game messages are forwarded without decoding their payload,
+     * except for the tile of a turn in an authoritative or recorded room.
+     *
+     * @param member the sending member
+     * @param opcode the opcode of the frame
+     * @param body   the opcode and payload
+     * @throws IllegalStateException if the client is not in a room or the opcode is unknown
+     */
+    private void handleFrame(Room.Member member, byte opcode, ByteBuffer body) {
+        String type = switch (opcode) {
+            case BinaryProtocol.OP_TURN -> "turn";
+            case BinaryProtocol.OP_UNDO -> "undo";
+            case BinaryProtocol.OP_REDO -> "redo";
+            case BinaryProtocol.OP_WIN -> "win";
+            case BinaryProtocol.OP_START_GAME -> "start_game";
+            case BinaryProtocol.OP_PLAYER_COUNT -> "player_count";
+            default -> throw new IllegalStateException("Unknown opcode " + opcode + ".");
+        };
+        Position position = opcode == BinaryProtocol.OP_TURN && decodesTurns(member)
+                ? BinaryProtocol.turnPosition(body) : null;
+        handleRoomMessage(member, type, position, null, OutboundMessage.ofFrameBody(body));
+    }
+
+    private static boolean decodesTurns(Room.Member member) {
+        Room room = member.getRoom();
+        return room != null && (room.isAuthoritative() || room.isRecorded());
+    }
+
+    private static Long clientTime(JsonObject msg) {
+        return msg.has("clientTime") ? msg.get("clientTime").getAsLong() : null;
+    }
+
+    private static Position position(JsonObject msg) {
+        JsonObject pos = msg.getAsJsonObject("position");
+        return new Position(pos.get("row").getAsInt(), pos.get("col").getAsInt());
+    }
+
+    /**
+     * Handles a message of a client inside a room.
+     *
+     * @param member     the sending member
+     * @param type       the message type
+     * @param position   the tile of a turn in an authoritative or recorded room, otherwise {@code null}
+     * @param clientTime the client's time the message reports, or {@code null}
+     * @param message    the received message, relayed to the other players
+     */
+    private void handleRoomMessage(Room.Member member, String type, Position position, Long clientTime,
+                                   OutboundMessage message) {
+        long receivedAt = System.nanoTime();
+        Room room = member.getRoom();
+        if (room == null) {
+            throw new IllegalStateException("Not in a room.");
+        }
+        if (member.isSpectator() && !"player_count".equals(type)) {
+            throw new IllegalStateException("Spectators cannot play.");
+        }
+        if (room.isAuthoritative() && isMove(type)) {
+            room.play(member, type, position, clientTime, receivedAt);
+        } else if ("start_game".equals(type)) {
+            if (room.start(member)) {
+                JsonObject startMsg = new JsonObject();
+                startMsg.addProperty("type", "start_game");
+                room.relay(OutboundMessage.ofJson(startMsg.toString()), null);
             }
+        } else if ("player_count".equals(type)) {
+            member.send(room.playerCountMessage());
+        } else if ("win".equals(type)) {
+            room.claimWin(member, clientTime, receivedAt);
+        } else if (isMove(type)) {
+            room.move(member, type, position, receivedAt, message);
+        } else {
+            room.relay(message, member);
         }
     }
+
+    private static boolean isMove(String type) {
+        return switch (type) {
+            case "turn", "undo", "redo", "win" -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Adds a client to a room and sends it the initial game state.
+     *
+     * @param member the client
+     * @param room   the room to join
+     * @throws IllegalStateException if the room cannot be joined
+     */
+    private void join(Room.Member member, Room room) {
+        matchmaker.cancel(member);
+        room.join(member);
+        System.out.println("SERVER: Player " + member.getPlayerId() + " connected to room " + room.getId() + ".");
+        member.send(room.initMessage(member.getPlayerId()));
+        member.send(room.sessionMessage(member));
+        OutboundMessage count = room.playerCountMessage();
+        member.send(count);
+        room.broadcast(count, member);
+    }
+
+    /**
+     * Resumes a player's session in a room and sends the client what it has missed.
+     * A client in another room leaves it first.
+     *
+     * @param member  the client
+     * @param room    the room of the session
+     * @param token   the session token
+     * @param lastSeq the last sequence number the client has received, or -1 if it has no state
+     * @throws IllegalStateException if the session cannot be resumed
+     */
+    private void resume(Room.Member member, Room room, String token, int lastSeq) {
+        matchmaker.cancel(member);
+        if (member.getRoom() != null && member.getRoom() != room) {
+            leave(member, false);
+        }
+        boolean rejoined = member.getRoom() != room;
+        room.resume(member, token, lastSeq);
+        System.out.println("SERVER: Player " + member.getPlayerId() + " resumed in room " + room.getId() + ".");
+        if (rejoined) {
+            room.broadcast(room.playerCountMessage(), member);
+        }
+    }
+
+    /**
+     * Removes a client from its room, if it is in one.
+     *
+     * @param member       the client
+     * @param disconnected true if the connection was lost, so the session is kept during a match
+     * @return true if the client has left a room
+     */
+    private boolean leave(Room.Member member, boolean disconnected) {
+        Room room = member.getRoom();
+        if (room == null) return false;
+        int playerId = member.getPlayerId();
+        boolean spectator = member.isSpectator();
+        if (!room.leave(member, disconnected)) return false;
+        System.out.println("SERVER: " + (spectator ? "Spectator" : "Player " + playerId) + " left room " + room.getId() + ".");
+        return true;
+    }
+
+    /**
+     * Builds the list of open rooms for the lobby.
+     *
+     * @return JSON object with the type {@code room_list} and an array of rooms
+     */
+    private JsonObject roomListMessage() {
+        JsonObject resp = new JsonObject();
+        resp.addProperty("type", "room_list");
+        JsonArray arr = new JsonArray();
+        for (Room room : rooms.values()) {
+            arr.add(room.info());
+        }
+        resp.add("rooms", arr);
+        return resp;
+    }
+
+    /**
+     * Builds an error reply.
+     *
+     * @param text the error description
+     * @return JSON string with the type {@code error} and the message
+     */
+    private static String errorMessage(String text) {
+        JsonObject resp = new JsonObject();
+        resp.addProperty("type", "error");
+        resp.addProperty("message", text);
+        return resp.toString();
+    }
 }
@@ -0,0 +1,129 @@
+package multiplayer;
+
+import com.google.gson.JsonObject;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the connections of a server alive and reaps the dead ones.
+ * <p>
+ * Every client is sent a {@code ping} with the server's timestamp {@code t} each ping interval and answers
+ * with a {@code pong} carrying the same timestamp and its own time {@code clientTime}. The difference is the
+ * client's round-trip time, measured once per ping, which the following pings report back to the client as
+ * {@code rtt} in microseconds; with the client's time it also gives the offset of the client's clock,
+ * see {@link ClockSync}.
+ * A client that has sent nothing for the read idle timeout, not even a pong, is considered gone: its half-open
+ * connection is closed, which frees its place in the room and keeps its session for a resume. A client whose
+ * queued messages have not moved for the write idle timeout does not read and is closed the same way.
+ * </p>
+ * <p>
+ * The checks run on a {@link TimerWheel}, one timer per connection and ping interval, so reading and
+ * writing only update timestamps of the connection.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+final class Heartbeat {
+    private final long pingMillis;
+    private final long readIdleNanos;
+    private final long writeIdleNanos;
+    private final TimerWheel wheel;
+    private final AtomicLong idleDisconnects = new AtomicLong();
+
+    /**
+     * Creates the heartbeat of a server.
+     *
+     * @param wheel           the timers of the server
+     * @param pingMillis      the interval between pings
+     * @param readIdleMillis  how long a client may send nothing; longer than the ping interval
+     * @param writeIdleMillis how long messages queued for a client may wait without any being written
+     * @throws IllegalArgumentException if the read idle timeout does not leave time for a pong
+     */
+    Heartbeat(TimerWheel wheel, long pingMillis, long readIdleMillis, long writeIdleMillis) {
+        if (pingMillis <= 0 || writeIdleMillis <= 0) throw new IllegalArgumentException("Intervals must be positive.");
+        if (readIdleMillis <= pingMillis) {
+            throw new IllegalArgumentException("The read idle timeout must be longer than the ping interval.");
+        }
+        this.pingMillis = pingMillis;
+        this.readIdleNanos = TimeUnit.MILLISECONDS.toNanos(readIdleMillis);
+        this.writeIdleNanos = TimeUnit.MILLISECONDS.toNanos(writeIdleMillis);
+        this.wheel = wheel;
+    }
+
+    /**
+     * Starts pinging a new client and checking its connection.
+     *
+     * @param member the client
+     */
+    void watch(Room.Member member) {
+        wheel.schedule(() -> check(member), pingMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Closes the connection of a client that has stopped reading or sending, or pings it and checks it again
+     * after the ping interval.
+     *
+     * @param member the client
+     */
+    private void check(Room.Member member) {
+        Connection connection = member.getConnection();
+        if (!connection.isOpen()) return;
+        long now = System.nanoTime();
+        long readIdle = now - connection.getLastReadTime();
+        if (readIdle > readIdleNanos) {
+            reap(member, "has sent nothing for " + TimeUnit.NANOSECONDS.toMillis(readIdle) + " ms");
+            return;
+        }
+        long stalledSince = connection.getWriteStalledSince();
+        if (stalledSince >= 0 && now - stalledSince > writeIdleNanos) {
+            reap(member, "has read nothing for " + TimeUnit.NANOSECONDS.toMillis(now - stalledSince) + " ms");
+            return;
+        }
+        JsonObject ping = new JsonObject();
+        ping.addProperty("type", "ping");
+        ping.addProperty("t", now);
+        member.pinged(now);
+        long rtt = member.getRttNanos();
+        if (rtt >= 0) ping.addProperty("rtt", TimeUnit.NANOSECONDS.toMicros(rtt));
+        // A ping must not make a slow client overflow
+        connection.sendUnlimited(() -> member.send(ping.toString()));
+        wheel.schedule(() -> check(member), pingMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void reap(Room.Member member, String reason) {
+        idleDisconnects.incrementAndGet();
+        System.out.println("SERVER: Client " + member.getConnection().getRemoteAddress() + " " + reason
+                + ". Closing the connection.");
+        member.getConnection().close();
+    }
+
+    /**
+     * Records the round-trip time and clock offset of a pong. Only the first pong echoing the timestamp of one of
+     * the client's last {@value Room#MAX_PENDING_PINGS} pings is accepted, so a client cannot forge or replay
+     * a timestamp to claim a longer round trip than it took.
+     *
+     * @param member     the client
+     * @param sentAt     the timestamp of the ping the client answers
+     * @param clientTime the client's time it answered, or {@code null} if the pong has none
+     */
+    void pong(Room.Member member, long sentAt, Long clientTime) {
+        if (!member.ponged(sentAt)) return;
+        long now = System.nanoTime();
+        long rtt = now - sentAt;
+        if (rtt < 0 || rtt > readIdleNanos) return;
+        member.roundTrip(rtt);
+        if (clientTime != null) {
+            member.getClock().sample(sentAt, clientTime, now);
+        }
+    }
+
+    /**
+     * Returns how many connections have been closed because the client stopped sending or reading.
+     *
+     * @return the number of reaped connections
+     */
+    long getIdleDisconnects() {
+        return idleDisconnects.get();
+    }
+}
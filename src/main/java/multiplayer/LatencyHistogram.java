@@ -0,0 +1,148 @@
+package multiplayer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Histogram of latencies with a bounded relative error, e.g., of a player's round-trip times.
+ * <p>
+ * Values are counted in buckets whose width grows with the value: every power of two of microseconds
+ * is split into {@value #SUB_BUCKETS} buckets, so a percentile is off by at most 1/{@value #SUB_BUCKETS}
+ * of its value, and the histogram takes constant memory however many values it has counted.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BITS = 3;
+    /** Powers of two up to about four hours in microseconds; longer latencies count in the last bucket. */
+    private static final int MAGNITUDES = 32;
+
+    private final long[] counts;
+    private long count;
+    private long sumMicros;
+    private long minMicros = Long.MAX_VALUE;
+    private long maxMicros;
+
+    /**
+     * Creates an empty histogram.
+     */
+    public LatencyHistogram() {
+        this.counts = new long[MAGNITUDES * SUB_BUCKETS];
+    }
+
+    private LatencyHistogram(LatencyHistogram other) {
+        this.counts = other.counts.clone();
+        this.count = other.count;
+        this.sumMicros = other.sumMicros;
+        this.minMicros = other.minMicros;
+        this.maxMicros = other.maxMicros;
+    }
+
+    /**
+     * Counts a latency.
+     *
+     * @param nanos the latency in nanoseconds; negative values count as zero
+     */
+    public synchronized void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts[bucket(micros)]++;
+        count++;
+        sumMicros += micros;
+        minMicros = Math.min(minMicros, micros);
+        maxMicros = Math.max(maxMicros, micros);
+    }
+
+    /**
+     * Returns the bucket of a value: values below {@value #SUB_BUCKETS} have one bucket each, larger ones
+     * are bucketed by their highest bit and the {@value #SUB_BITS} bits below it.
+     */
+    private static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS + 1;
+        if (magnitude >= MAGNITUDES) return MAGNITUDES * SUB_BUCKETS - 1;
+        int sub = (int) (micros >>> (magnitude - 1)) & (SUB_BUCKETS - 1);
+        return magnitude * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the largest value of a bucket.
+     */
+    private static long bucketMax(int bucket) {
+        int magnitude = bucket / SUB_BUCKETS;
+        int sub = bucket % SUB_BUCKETS;
+        if (magnitude == 0) return sub;
+        return ((long) (SUB_BUCKETS + sub + 1) << (magnitude - 1)) - 1;
+    }
+
+    /**
+     * Returns the number of latencies counted.
+     *
+     * @return the count
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the smallest latency counted.
+     *
+     * @return the minimum in microseconds, or 0 if the histogram is empty
+     */
+    public synchronized long getMinMicros() {
+        return count > 0 ? minMicros : 0;
+    }
+
+    /**
+     * Returns the largest latency counted.
+     *
+     * @return the maximum in microseconds
+     */
+    public synchronized long getMaxMicros() {
+        return maxMicros;
+    }
+
+    /**
+     * Returns the mean of the latencies counted.
+     *
+     * @return the mean in microseconds, or 0 if the histogram is empty
+     */
+    public synchronized long getMeanMicros() {
+        return count > 0 ? sumMicros / count : 0;
+    }
+
+    /**
+     * Returns the latency that the given share of the counted latencies does not exceed.
+     *
+     * @param percentile the share in percent, from 0 to 100
+     * @return the percentile in microseconds, at most 1/8 above the exact value, or 0 if the histogram is empty
+     */
+    public synchronized long getPercentileMicros(double percentile) {
+        if (percentile < 0 || percentile > 100) throw new IllegalArgumentException("Percentile must be from 0 to 100.");
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.max(minMicros, Math.min(maxMicros, bucketMax(i)));
+            }
+        }
+        return maxMicros;
+    }
+
+    /**
+     * Returns a copy of the histogram that later latencies are not counted in.
+     *
+     * @return the copy
+     */
+    public synchronized LatencyHistogram copy() {
+        return new LatencyHistogram(this);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LatencyHistogram{count=" + count + ", min=" + getMinMicros() + " us, p50=" + getPercentileMicros(50)
+                + " us, p99=" + getPercentileMicros(99) + " us, max=" + maxMicros + " us}";
+    }
+}
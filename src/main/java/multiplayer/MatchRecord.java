@@ -0,0 +1,70 @@
+package multiplayer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One record of a match file written by the {@link MatchRecorder}.
+ * <p>
+ * Every record has {@value #SIZE} bytes, big-endian:
+ * </p>
+ * <pre>
+ *  0  int    seq       sequence number within the match, from 1
+ *  4  byte   playerId  the player, or 0 for an event of the room
+ *  5  byte   op        {@link Op#ordinal()}
+ *  6  short  cell      (row - 1) * cols + (col - 1), or -1 if the record has no position
+ *  8  long   nanos     time since the recording started, in nanoseconds
+ * </pre>
+ *
+ * @param seq      sequence number within the match
+ * @param playerId the player, or 0 for an event of the room
+ * @param op       what happened
+ * @param cell     index of the cell, or -1
+ * @param nanos    time since the recording started
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public record MatchRecord(int seq, int playerId, Op op, int cell, long nanos) {
+    /** Size of one record in bytes. */
+    public static final int SIZE = 16;
+
+    /**
+     * Kinds of recorded events.
+     */
+    public enum Op {
+        /** The match was started. */
+        START,
+        /** The player turned a node. */
+        TURN,
+        /** The player undid its last turn; the cell is -1 if the room did not apply it. */
+        UNDO,
+        /** The player redid its last undone turn; the cell is -1 if the room did not apply it. */
+        REDO,
+        /** The player was announced as the winner. */
+        WIN
+    }
+
+    private static final Op[] OPS = Op.values();
+
+    /**
+     * Writes a record to the buffer.
+     *
+     * @param buffer the target buffer with at least {@value #SIZE} bytes remaining
+     */
+    void encode(ByteBuffer buffer) {
+        buffer.putInt(seq).put((byte) playerId).put((byte) op.ordinal()).putShort((short) cell).putLong(nanos);
+    }
+
+    /**
+     * Reads a record from the buffer.
+     *
+     * @param buffer the source buffer with at least {@value #SIZE} bytes remaining
+     * @return the record
+     * @throws IllegalArgumentException if the operation is unknown
+     */
+    static MatchRecord decode(ByteBuffer buffer) {
+        int seq = buffer.getInt();
+        int playerId = buffer.get();
+        int op = buffer.get();
+        if (op < 0 || op >= OPS.length) throw new IllegalArgumentException("Unknown operation " + op + ".");
+        return new MatchRecord(seq, playerId, OPS[op], buffer.getShort(), buffer.getLong());
+    }
+}
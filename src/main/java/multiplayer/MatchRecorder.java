@@ -0,0 +1,254 @@
+package multiplayer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records every room of a server into an append-only match file, {@code match_<roomId>_<epochMillis>.match}.
+ * <p>
+ * A file starts with the board once, then has one {@link MatchRecord} per event of the match:
+ * </p>
+ * <pre>
+ *  0  int    magic      {@value #MAGIC}
+ *  4  int    version    {@value #VERSION}
+ *  8  long   startedAt  epoch milliseconds the recording started
+ * 16  int    length     length of the board
+ * 20  byte[] board      the initial game state as sent to the clients, UTF-8 JSON
+ *  …  records of {@value MatchRecord#SIZE} bytes each
+ * </pre>
+ * <p>
+ * Rooms only queue their records, under their locks; one daemon thread takes them in batches, writes them
+ * to the files and flushes every file of a batch, so moves are never delayed by the disk. A file that cannot
+ * be written is abandoned. {@link MatchReplay} reads the files.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+final class MatchRecorder implements AutoCloseable {
+    static final int MAGIC = 0x4C424D52;
+    static final int VERSION = 1;
+    static final String FILE_PREFIX = "match_";
+    static final String FILE_SUFFIX = ".match";
+    private static final int BUFFERED_RECORDS = 256;
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * A queued record of a recording, or with a {@code null} record the end of the recording.
+     */
+    private record Entry(Recording recording, MatchRecord record) {}
+
+    private static final Entry STOP = new Entry(null, null);
+
+    private final Path directory;
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final AtomicLong writtenRecords = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * The recording of one room.
+     * <p>
+     * {@link #append} is called under the room's lock, which orders the sequence numbers;
+     * the file and its buffer are used only by the writer thread.
+     * </p>
+     */
+    final class Recording {
+        private final Path file;
+        private final byte[] board;
+        private final long startedAt = System.currentTimeMillis();
+        private final long startNanos = System.nanoTime();
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFERED_RECORDS * MatchRecord.SIZE);
+        private int seq;
+        private FileChannel channel;
+        private boolean failed;
+
+        private Recording(String roomId, String boardJson) {
+            this.file = directory.resolve(FILE_PREFIX + roomId + "_" + startedAt + FILE_SUFFIX);
+            this.board = boardJson.getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Returns the match file.
+         *
+         * @return the file, created with the first record
+         */
+        Path file() { return file; }
+
+        /**
+         * Queues a record of the match.
+         *
+         * @param playerId the player, or 0 for an event of the room
+         * @param op       what happened
+         * @param cell     index of the cell, or -1
+         * @param at       the {@link System#nanoTime()} of the event
+         */
+        void append(int playerId, MatchRecord.Op op, int cell, long at) {
+            if (closed) return;
+            queue.add(new Entry(this, new MatchRecord(++seq, playerId, op, cell, Math.max(0, at - startNanos))));
+        }
+
+        /**
+         * Ends the recording; its file is closed after the queued records have been written.
+         */
+        void close() {
+            if (!closed) queue.add(new Entry(this, null));
+        }
+
+        private void write(MatchRecord record) throws IOException {
+            if (channel == null) {
+                Files.createDirectories(directory);
+                channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                ByteBuffer header = ByteBuffer.allocate(20 + board.length);
+                header.putInt(MAGIC).putInt(VERSION).putLong(startedAt).putInt(board.length).put(board).flip();
+                while (header.hasRemaining()) channel.write(header);
+            }
+            if (buffer.remaining() < MatchRecord.SIZE) flush();
+            record.encode(buffer);
+        }
+
+        private void flush() throws IOException {
+            if (channel == null || buffer.position() == 0) return;
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        private void closeFile() throws IOException {
+            if (channel == null) return;
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void fail(IOException e) {
+            failed = true;
+            System.out.println("SERVER: Cannot write the match file " + file + ": " + e.getMessage());
+            try {
+                if (channel != null) channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Creates a recorder writing to the given directory and starts its writer thread.
+     *
+     * @param directory the directory of the match files, created with the first file
+     */
+    MatchRecorder(Path directory) {
+        this.directory = directory;
+        this.writer = new Thread(this::write, "match-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Starts the recording of a room.
+     *
+     * @param roomId    the room ID
+     * @param boardJson the initial game state of the room as compact JSON
+     * @return the recording
+     */
+    Recording open(String roomId, String boardJson) {
+        return new Recording(roomId, boardJson);
+    }
+
+    /**
+     * Returns how many records have been written to the files and flushed.
+     *
+     * @return the number of written records
+     */
+    long getWrittenRecords() {
+        return writtenRecords.get();
+    }
+
+    /**
+     * Takes the queued records in batches and writes them, flushing every file of a batch.
+     */
+    private void write() {
+        List<Entry> batch = new ArrayList<>();
+        Set<Recording> open = new LinkedHashSet<>();
+        Set<Recording> touched = new LinkedHashSet<>();
+        boolean stopping = false;
+        while (!stopping) {
+            long written = 0;
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch);
+            for (Entry entry : batch) {
+                Recording recording = entry.recording();
+                if (entry == STOP) {
+                    stopping = true;
+                    break;
+                }
+                if (recording.failed) continue;
+                try {
+                    if (entry.record() == null) {
+                        touched.remove(recording);
+                        open.remove(recording);
+                        recording.closeFile();
+                    } else {
+                        recording.write(entry.record());
+                        written++;
+                        open.add(recording);
+                        touched.add(recording);
+                    }
+                } catch (IOException e) {
+                    recording.fail(e);
+                    open.remove(recording);
+                    touched.remove(recording);
+                }
+            }
+            batch.clear();
+            for (Recording recording : touched) {
+                try {
+                    recording.flush();
+                } catch (IOException e) {
+                    recording.fail(e);
+                    open.remove(recording);
+                }
+            }
+            touched.clear();
+            writtenRecords.addAndGet(written);
+        }
+        for (Recording recording : open) {
+            try {
+                recording.closeFile();
+            } catch (IOException e) {
+                recording.fail(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the queued records, closes all files and stops the writer thread. Records queued afterwards are dropped.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        queue.add(STOP);
+        try {
+            writer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
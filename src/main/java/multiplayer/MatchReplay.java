@@ -0,0 +1,299 @@
+package multiplayer;
+
+import com.google.gson.JsonParser;
+import common.Position;
+import game.Game;
+import json.GameDeserializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads a match file written by the {@link MatchRecorder} and reconstructs the players' boards.
+ * <p>
+ * Every player's board is determined by how often each node has been turned and by its undo and redo
+ * history. While reading, the replay keeps a keyframe of this state every {@value #KEYFRAME_INTERVAL}
+ * moves of a player, sharing the histories between keyframes, so the board at any time is rebuilt from
+ * the closest keyframe with at most that many moves instead of from the start of the match.
+ * A truncated last record, e.g., of a server that crashed, is ignored.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public final class MatchReplay {
+    /** Number of moves of a player between two keyframes. */
+    public static final int KEYFRAME_INTERVAL = 64;
+
+    private final long startedAt;
+    private final GameDeserializer boardSource;
+    private final int rows;
+    private final int cols;
+    private final List<MatchRecord> records;
+    private final Map<Integer, Track> tracks = new TreeMap<>();
+    private int winnerId;
+
+    /**
+     * A history of turned cells, the last one first. Keyframes share the common part of their histories.
+     */
+    private record Moves(int cell, Moves next) {}
+
+    /**
+     * The state of a player's board after a number of its moves.
+     *
+     * @param rotations how often each node has been turned, modulo 4
+     * @param undo      the turns that can be undone, the last one first
+     * @param redo      the turns that can be redone, the next one first
+     */
+    private record Keyframe(byte[] rotations, Moves undo, Moves redo) {}
+
+    /**
+     * The moves and keyframes of one player.
+     */
+    private static final class Track {
+        private final List<MatchRecord> moves = new ArrayList<>();
+        private final List<Keyframe> keyframes = new ArrayList<>();
+        private byte[] rotations;
+        private Moves undo;
+        private Moves redo;
+
+        private Track(int cells) {
+            rotations = new byte[cells];
+            keyframes.add(new Keyframe(rotations.clone(), null, null));
+        }
+
+        private void add(MatchRecord move) {
+            moves.add(move);
+            Keyframe state = apply(new Keyframe(rotations, undo, redo), move);
+            rotations = state.rotations();
+            undo = state.undo();
+            redo = state.redo();
+            if (moves.size() % KEYFRAME_INTERVAL == 0) {
+                keyframes.add(new Keyframe(rotations.clone(), undo, redo));
+            }
+        }
+    }
+
+    private MatchReplay(long startedAt, String boardJson, List<MatchRecord> records) {
+        this.startedAt = startedAt;
+        this.boardSource = new GameDeserializer(JsonParser.parseString(boardJson));
+        Game initial = boardSource.getGame();
+        this.rows = initial.rows();
+        this.cols = initial.cols();
+        initial.close();
+        this.records = Collections.unmodifiableList(records);
+        for (MatchRecord r : records) {
+            switch (r.op()) {
+                case TURN, UNDO, REDO -> tracks.computeIfAbsent(r.playerId(), id -> new Track(rows * cols)).add(r);
+                case WIN -> winnerId = r.playerId();
+                case START -> { }
+            }
+        }
+    }
+
+    /**
+     * Reads a match file.
+     *
+     * @param file the match file
+     * @return the replay of the match
+     * @throws IOException if the file cannot be read or is not a match file
+     */
+    public static MatchReplay read(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() < 20 || buffer.getInt() != MatchRecorder.MAGIC) {
+            throw new IOException(file + " is not a match file.");
+        }
+        int version = buffer.getInt();
+        if (version != MatchRecorder.VERSION) {
+            throw new IOException("Unsupported match file version " + version + ".");
+        }
+        long startedAt = buffer.getLong();
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) throw new IOException(file + " is truncated.");
+        String board = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        List<MatchRecord> records = new ArrayList<>(buffer.remaining() / MatchRecord.SIZE);
+        try {
+            while (buffer.remaining() >= MatchRecord.SIZE) {
+                records.add(MatchRecord.decode(buffer));
+            }
+            return new MatchReplay(startedAt, board, records);
+        } catch (RuntimeException e) {
+            throw new IOException(file + " is corrupt: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Applies a move to a state. Moves that the player's game would ignore, such as an undo without
+     * a turn to undo, leave the state as it is.
+     *
+     * @param state the state, whose rotations are modified
+     * @param move  the move
+     * @return the state after the move
+     */
+    private static Keyframe apply(Keyframe state, MatchRecord move) {
+        byte[] rotations = state.rotations();
+        Moves undo = state.undo();
+        Moves redo = state.redo();
+        switch (move.op()) {
+            case TURN -> {
+                int cell = move.cell();
+                if (cell < 0 || cell >= rotations.length) return state;
+                rotations[cell] = (byte) ((rotations[cell] + 1) & 3);
+                return new Keyframe(rotations, new Moves(cell, undo), null);
+            }
+            case UNDO -> {
+                if (undo == null) return state;
+                rotations[undo.cell()] = (byte) ((rotations[undo.cell()] + 3) & 3);
+                return new Keyframe(rotations, undo.next(), new Moves(undo.cell(), redo));
+            }
+            case REDO -> {
+                if (redo == null) return state;
+                rotations[redo.cell()] = (byte) ((rotations[redo.cell()] + 1) & 3);
+                return new Keyframe(rotations, new Moves(redo.cell(), undo), redo.next());
+            }
+            default -> {
+                return state;
+            }
+        }
+    }
+
+    /**
+     * Reconstructs a player's board as it was at a time of the match, including its undo and redo history.
+     *
+     * @param playerId the player
+     * @param nanos    the time since the recording started; the moves recorded at that time are included
+     * @return a new game, which the caller closes
+     */
+    public Game getBoard(int playerId, long nanos) {
+        Track track = tracks.get(playerId);
+        Keyframe state;
+        if (track == null) {
+            state = new Keyframe(new byte[rows * cols], null, null);
+        } else {
+            int count = movesUntil(track.moves, nanos);
+            Keyframe keyframe = track.keyframes.get(count / KEYFRAME_INTERVAL);
+            state = new Keyframe(keyframe.rotations().clone(), keyframe.undo(), keyframe.redo());
+            for (int i = count / KEYFRAME_INTERVAL * KEYFRAME_INTERVAL; i < count; i++) {
+                state = apply(state, track.moves.get(i));
+            }
+        }
+
+        Game game = boardSource.newGame();
+        game.setLoggingSuppressed(true);
+        byte[] rotations = state.rotations();
+        for (int cell = 0; cell < rotations.length; cell++) {
+            for (int i = 0; i < rotations[cell]; i++) {
+                game.node(position(cell)).turn();
+            }
+        }
+        List<Position> undo = positions(state.undo());
+        Collections.reverse(undo);
+        game.loadHistory(undo, positions(state.redo()));
+        return game;
+    }
+
+    /**
+     * Returns the number of moves recorded up to a time, by binary search.
+     */
+    private static int movesUntil(List<MatchRecord> moves, long nanos) {
+        int low = 0;
+        int high = moves.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (moves.get(mid).nanos() <= nanos) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private Position position(int cell) {
+        return new Position(cell / cols + 1, cell % cols + 1);
+    }
+
+    private List<Position> positions(Moves moves) {
+        List<Position> result = new ArrayList<>();
+        for (Moves m = moves; m != null; m = m.next()) {
+            result.add(position(m.cell()));
+        }
+        return result;
+    }
+
+    /**
+     * Returns when the recording started.
+     *
+     * @return epoch milliseconds
+     */
+    public long getStartedAt() { return startedAt; }
+
+    /**
+     * Returns the number of rows of the board.
+     *
+     * @return the number of rows
+     */
+    public int rows() { return rows; }
+
+    /**
+     * Returns the number of columns of the board.
+     *
+     * @return the number of columns
+     */
+    public int cols() { return cols; }
+
+    /**
+     * Returns all records of the match in the order of their sequence numbers.
+     *
+     * @return the records
+     */
+    public List<MatchRecord> getRecords() { return records; }
+
+    /**
+     * Returns the players that have made a move.
+     *
+     * @return the player IDs in ascending order
+     */
+    public List<Integer> getPlayerIds() { return List.copyOf(tracks.keySet()); }
+
+    /**
+     * Returns the announced winner.
+     *
+     * @return the winner's player ID, or 0 if the recording has no winner
+     */
+    public int getWinnerId() { return winnerId; }
+
+    /**
+     * Returns the time of the last record.
+     *
+     * @return nanoseconds since the recording started
+     */
+    public long getDurationNanos() {
+        return records.isEmpty() ? 0 : records.get(records.size() - 1).nanos();
+    }
+
+    /**
+     * Returns how many keyframes are kept for a player.
+     *
+     * @param playerId the player
+     * @return the number of keyframes, including the initial board
+     */
+    public int getKeyframeCount(int playerId) {
+        Track track = tracks.get(playerId);
+        return track != null ? track.keyframes.size() : 1;
+    }
+
+    @Override
+    public String toString() {
+        return "MatchReplay{" + rows + "x" + cols + ", records=" + records.size()
+                + ", players=" + tracks.keySet() + ", winner=" + winnerId + "}";
+    }
+}
@@ -0,0 +1,263 @@
+package multiplayer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Groups the players looking for a match into rooms.
+ * <p>
+ * Players queue with their preferred board size. As soon as a room's worth of players wants the same size,
+ * they are matched. A player that has waited for the target wait time is matched with whoever else is
+ * queued for the same size or one size apart, and every further target wait widens the accepted sizes
+ * by one; the room gets the board size of the player that has waited longest. A player stays queued
+ * while nobody else is, and can cancel.
+ * </p>
+ * <p>
+ * The matchmaker only forms the groups; the server creates their rooms. Groups are formed only for board sizes
+ * of which a board is ready, so a room never waits for its board to be generated; players stay queued until
+ * then, and the server has boards of their {@link #getQueuedSizes() sizes} generated while they wait. A full room
+ * is matched when its last player arrives, or by the server's periodic {@link #poll(long)} once its board is ready,
+ * the others by the same poll.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+final class Matchmaker {
+    /**
+     * A queued player.
+     *
+     * @param member     the player
+     * @param difficulty the preferred board size
+     * @param queuedAt   the {@link System#nanoTime()} the player was queued
+     */
+    record Ticket(Room.Member member, int difficulty, long queuedAt) {}
+
+    /**
+     * Players matched into one room.
+     *
+     * @param difficulty the board size of the room
+     * @param tickets    the players, longest waiting first
+     */
+    record Match(int difficulty, List<Ticket> tickets) {}
+
+    private final int groupSize;
+    private final long targetWaitNanos;
+    private final IntUnaryOperator readyBoards;
+    /** Queued players by preferred size, in the order they arrived. Guarded by {@code this}. */
+    private final Map<Integer, LinkedHashMap<Room.Member, Ticket>> queues = new HashMap<>();
+    /** The ticket of every queued player. Guarded by {@code this}. */
+    private final Map<Room.Member, Ticket> tickets = new HashMap<>();
+    private final LatencyHistogram timeToMatch = new LatencyHistogram();
+    private long matches;
+
+    /**
+     * Creates an empty matchmaker.
+     *
+     * @param groupSize        the number of players of a full room
+     * @param targetWaitMillis how long a player waits for a full room before others of nearby sizes are accepted
+     * @param readyBoards      returns how many boards of a size are ready for rooms
+     */
+    Matchmaker(int groupSize, long targetWaitMillis, IntUnaryOperator readyBoards) {
+        if (groupSize < 2) throw new IllegalArgumentException("A match needs at least two players.");
+        this.groupSize = groupSize;
+        this.targetWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, targetWaitMillis));
+        this.readyBoards = readyBoards;
+    }
+
+    /**
+     * Queues a player, replacing its earlier ticket, and matches the players of its size if they fill a room
+     * and a board of the size is ready.
+     *
+     * @param member     the player
+     * @param difficulty the preferred board size
+     * @param now        the current {@link System#nanoTime()}
+     * @return the match of the full room, or {@code null} if the player stays queued
+     */
+    synchronized Match enqueue(Room.Member member, int difficulty, long now) {
+        cancel(member);
+        Ticket ticket = new Ticket(member, difficulty, now);
+        tickets.put(member, ticket);
+        LinkedHashMap<Room.Member, Ticket> queue = queues.computeIfAbsent(difficulty, d -> new LinkedHashMap<>());
+        queue.put(member, ticket);
+        if (queue.size() < groupSize || readyBoards.applyAsInt(difficulty) == 0) return null;
+        return match(difficulty, new ArrayList<>(queue.values()).subList(0, groupSize));
+    }
+
+    /**
+     * Queues the players of a match again that could not be started, keeping the time they were first queued,
+     * e.g., because some of them have left or no board was ready after all.
+     *
+     * @param requeued the tickets of the players
+     */
+    synchronized void requeue(List<Ticket> requeued) {
+        for (Ticket ticket : requeued) {
+            cancel(ticket.member());
+            tickets.put(ticket.member(), ticket);
+            queues.computeIfAbsent(ticket.difficulty(), d -> new LinkedHashMap<>()).put(ticket.member(), ticket);
+        }
+        // Keep every queue in the order the players were first queued
+        for (Ticket ticket : requeued) {
+            LinkedHashMap<Room.Member, Ticket> queue = queues.get(ticket.difficulty());
+            List<Ticket> ordered = new ArrayList<>(queue.values());
+            ordered.sort(Comparator.comparingLong(t -> t.queuedAt() - ticket.queuedAt()));
+            queue.clear();
+            ordered.forEach(t -> queue.put(t.member(), t));
+        }
+    }
+
+    /**
+     * Removes a player from the queue.
+     *
+     * @param member the player
+     * @return true if the player was queued
+     */
+    synchronized boolean cancel(Room.Member member) {
+        Ticket ticket = tickets.remove(member);
+        if (ticket == null) return false;
+        queues.get(ticket.difficulty()).remove(member);
+        return true;
+    }
+
+    /**
+     * Matches the players filling a room whose board has become ready, and the players that have waited for
+     * the target wait time with the others queued for nearby sizes.
+     *
+     * @param now the current {@link System#nanoTime()}
+     * @return the matches, whose players are no longer queued
+     */
+    synchronized List<Match> poll(long now) {
+        List<Match> result = new ArrayList<>();
+        if (tickets.size() < 2) return result;
+        // The boards still ready for the matches of this poll, by size
+        Map<Integer, Integer> boards = new HashMap<>();
+        for (Map.Entry<Integer, LinkedHashMap<Room.Member, Ticket>> e : queues.entrySet()) {
+            LinkedHashMap<Room.Member, Ticket> queue = e.getValue();
+            while (queue.size() >= groupSize && takeBoard(boards, e.getKey())) {
+                result.add(match(e.getKey(), new ArrayList<>(queue.values()).subList(0, groupSize)));
+            }
+        }
+        // The first ticket of every queue is its oldest
+        long longestWait = 0;
+        for (LinkedHashMap<Room.Member, Ticket> queue : queues.values()) {
+            Iterator<Ticket> it = queue.values().iterator();
+            if (it.hasNext()) longestWait = Math.max(longestWait, now - it.next().queuedAt());
+        }
+        if (longestWait < targetWaitNanos) return result;
+
+        // The longest waiting players first; each may take the others of nearby sizes
+        List<Ticket> waiting = new ArrayList<>(tickets.values());
+        waiting.sort(Comparator.comparingLong(t -> t.queuedAt() - now));
+        for (Ticket oldest : waiting) {
+            long waited = now - oldest.queuedAt();
+            if (waited < targetWaitNanos) break;
+            if (!tickets.containsKey(oldest.member())) continue;
+            long tolerance = waited / targetWaitNanos;
+            List<Ticket> group = new ArrayList<>(groupSize);
+            group.add(oldest);
+            tickets.values().stream()
+                    .filter(t -> t != oldest && Math.abs(t.difficulty() - oldest.difficulty()) <= tolerance)
+                    .sorted(Comparator.<Ticket>comparingInt(t -> Math.abs(t.difficulty() - oldest.difficulty()))
+                            .thenComparingLong(t -> t.queuedAt() - now))
+                    .limit(groupSize - 1)
+                    .forEach(group::add);
+            if (group.size() >= 2 && takeBoard(boards, oldest.difficulty())) {
+                result.add(match(oldest.difficulty(), group));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts a board of a size as used by a match of the current poll.
+     *
+     * @return false if no board of the size is left
+     */
+    private boolean takeBoard(Map<Integer, Integer> boards, int difficulty) {
+        int left = boards.computeIfAbsent(difficulty, readyBoards::applyAsInt);
+        if (left == 0) return false;
+        boards.put(difficulty, left - 1);
+        return true;
+    }
+
+    /**
+     * Removes the players of a match from the queues.
+     */
+    private Match match(int difficulty, List<Ticket> group) {
+        Match match = new Match(difficulty, List.copyOf(group));
+        for (Ticket t : match.tickets()) {
+            cancel(t.member());
+        }
+        return match;
+    }
+
+    /**
+     * Records a match whose room has been created and the waiting times of its players.
+     *
+     * @param players the tickets of the players put into the room
+     * @param now     the current {@link System#nanoTime()}
+     */
+    synchronized void started(List<Ticket> players, long now) {
+        for (Ticket t : players) {
+            timeToMatch.record(now - t.queuedAt());
+        }
+        matches++;
+    }
+
+    /**
+     * Returns the number of queued players.
+     *
+     * @return the queue length
+     */
+    synchronized int getQueueLength() {
+        return tickets.size();
+    }
+
+    /**
+     * Returns the number of players queued for a board size.
+     *
+     * @param difficulty the board size
+     * @return the queue length of the size
+     */
+    synchronized int getQueueLength(int difficulty) {
+        LinkedHashMap<Room.Member, Ticket> queue = queues.get(difficulty);
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * Returns the board sizes players are queued for.
+     *
+     * @return the sizes of the non-empty queues
+     */
+    synchronized List<Integer> getQueuedSizes() {
+        List<Integer> sizes = new ArrayList<>();
+        queues.forEach((difficulty, queue) -> {
+            if (!queue.isEmpty()) sizes.add(difficulty);
+        });
+        return sizes;
+    }
+
+    /**
+     * Returns the number of matches formed.
+     *
+     * @return the match count
+     */
+    synchronized long getMatchCount() {
+        return matches;
+    }
+
+    /**
+     * Returns the waiting times of the matched players.
+     *
+     * @return a copy of the time-to-match histogram
+     */
+    LatencyHistogram getTimeToMatch() {
+        return timeToMatch.copy();
+    }
+}
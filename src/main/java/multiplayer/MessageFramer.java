@@ -0,0 +1,176 @@
+package multiplayer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Splits a byte stream into messages: newline-terminated lines of the {@link Protocol#JSON} protocol
+ * or length-prefixed frames of the {@link Protocol#BINARY} protocol.
+ * <p>
+ * Complete messages are passed as slices of the input buffer, without copying. Only the tail of
+ * a message split across reads is copied into a carry-over buffer, which grows up to the maximum
+ * message size. The protocol can be switched while a message is being handled; the bytes after
+ * that message are then decoded with the new protocol.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+class MessageFramer {
+    /** Longest accepted message; a client exceeding it is disconnected. */
+    static final int MAX_MESSAGE_BYTES = 1 << 20;
+
+    private volatile Protocol protocol = Protocol.JSON;
+    private ByteBuffer partial;
+
+    /**
+     * Returns the protocol used to decode the following messages.
+     *
+     * @return the current protocol
+     */
+    Protocol getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Switches the protocol, effective from the next message.
+     *
+     * @param protocol the new protocol
+     */
+    void setProtocol(Protocol protocol) {
+        this.protocol = protocol;
+    }
+
+    /**
+     * Consumes all bytes of the input and passes every completed message to the consumer.
+     *
+     * @param in       the received bytes, between position and limit
+     * @param messages receives each line without separator (and without a trailing {@code '\r'}),
+     *                 or each frame without its length prefix
+     * @throws IOException if a message exceeds {@link #MAX_MESSAGE_BYTES}
+     */
+    void feed(ByteBuffer in, Consumer<ByteBuffer> messages) throws IOException {
+        while (in.hasRemaining()) {
+            boolean binary = protocol == Protocol.BINARY;
+            if (partial != null && partial.position() > 0) {
+                if (!(binary ? completeFrame(in, messages) : completeLine(in, messages))) return;
+                continue;
+            }
+            int start = in.position();
+            if (binary) {
+                long header = BinaryProtocol.peekLength(in, start, in.limit());
+                int length = (int) header;
+                int bodyStart = start + (int) (header >>> 32);
+                if (header < 0 || bodyStart + checkLength(length) > in.limit()) {
+                    append(in, start, in.limit());
+                    in.position(in.limit());
+                    return;
+                }
+                in.position(bodyStart + length);
+                messages.accept(in.slice(bodyStart, length));
+            } else {
+                int end = indexOf(in, start, in.limit());
+                if (end < 0) {
+                    append(in, start, in.limit());
+                    in.position(in.limit());
+                    return;
+                }
+                in.position(end + 1);
+                deliverLine(in.slice(start, end - start), messages);
+            }
+        }
+    }
+
+    /**
+     * Completes a carried-over line with the input.
+     *
+     * @return true if the line was completed, false if the input was used up
+     */
+    private boolean completeLine(ByteBuffer in, Consumer<ByteBuffer> messages) throws IOException {
+        int start = in.position();
+        int end = indexOf(in, start, in.limit());
+        if (end < 0) {
+            append(in, start, in.limit());
+            in.position(in.limit());
+            return false;
+        }
+        append(in, start, end);
+        in.position(end + 1);
+        partial.flip();
+        deliverLine(partial, messages);
+        partial.clear();
+        return true;
+    }
+
+    /**
+     * Completes a carried-over frame with the input.
+     *
+     * @return true if the frame was completed, false if the input was used up
+     */
+    private boolean completeFrame(ByteBuffer in, Consumer<ByteBuffer> messages) throws IOException {
+        while (in.hasRemaining()) {
+            long header = BinaryProtocol.peekLength(partial, 0, partial.position());
+            if (header < 0) {
+                append(in, in.position(), in.position() + 1);
+                in.position(in.position() + 1);
+                continue;
+            }
+            int bodyStart = (int) (header >>> 32);
+            int length = checkLength((int) header);
+            int needed = bodyStart + length - partial.position();
+            int take = Math.min(needed, in.remaining());
+            append(in, in.position(), in.position() + take);
+            in.position(in.position() + take);
+            if (take == needed) {
+                partial.flip();
+                partial.position(bodyStart);
+                messages.accept(partial);
+                partial.clear();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int checkLength(int length) throws IOException {
+        if (length > MAX_MESSAGE_BYTES) {
+            throw new IOException("Message exceeds " + MAX_MESSAGE_BYTES + " bytes");
+        }
+        return length;
+    }
+
+    private static void deliverLine(ByteBuffer line, Consumer<ByteBuffer> messages) {
+        int len = line.remaining();
+        if (len > 0 && line.get(line.position() + len - 1) == '\r') {
+            line.limit(line.limit() - 1);
+        }
+        messages.accept(line);
+    }
+
+    private static int indexOf(ByteBuffer in, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (in.get(i) == '\n') return i;
+        }
+        return -1;
+    }
+
+    private void append(ByteBuffer in, int from, int to) throws IOException {
+        int len = to - from;
+        if (len == 0) return;
+        if (partial == null) {
+            partial = ByteBuffer.allocate(Math.max(256, Integer.highestOneBit(len) << 1));
+        }
+        if (partial.remaining() < len) {
+            int needed = partial.position() + len;
+            if (needed > MAX_MESSAGE_BYTES + 5) {
+                throw new IOException("Message exceeds " + MAX_MESSAGE_BYTES + " bytes");
+            }
+            ByteBuffer grown = ByteBuffer.allocate(Math.min(MAX_MESSAGE_BYTES + 5, Integer.highestOneBit(needed) << 1));
+            partial.flip();
+            grown.put(partial);
+            partial = grown;
+        }
+        partial.put(partial.position(), in, from, len);
+        partial.position(partial.position() + len);
+    }
+}
@@ -0,0 +1,40 @@
+package multiplayer;
+
+/**
+ * Limit of the outbound queue of each connection of a {@link Transport}, and what happens when it is reached.
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+class OutboundLimit {
+    /** Default limit of the bytes queued for one connection. */
+    static final int DEFAULT_MAX_QUEUED_BYTES = 1 << 20;
+
+    private volatile int maxQueuedBytes = DEFAULT_MAX_QUEUED_BYTES;
+    private volatile SlowConsumerPolicy policy = SlowConsumerPolicy.RESYNC;
+
+    /**
+     * Returns the number of bytes a connection may have queued.
+     *
+     * @return the limit in bytes
+     */
+    int getMaxQueuedBytes() { return maxQueuedBytes; }
+
+    /**
+     * Returns the policy applied when a message does not fit into the queue.
+     *
+     * @return the slow-consumer policy
+     */
+    SlowConsumerPolicy getPolicy() { return policy; }
+
+    /**
+     * Changes the limit and policy for all connections.
+     *
+     * @param maxQueuedBytes the limit in bytes
+     * @param policy         the slow-consumer policy
+     */
+    void set(int maxQueuedBytes, SlowConsumerPolicy policy) {
+        if (maxQueuedBytes <= 0) throw new IllegalArgumentException("Queue limit must be positive.");
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.policy = policy;
+    }
+}
@@ -0,0 +1,129 @@
+package multiplayer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A message sent to several connections that may use different protocols.
+ * <p>
+ * The message keeps the encoding it was received in and converts to the other protocol
+ * at most once, and only if a recipient needs it. A binary frame is forwarded with its
+ * original bytes. Messages may be sent again from a room's history, so the lazily
+ * created encodings are safely published to other threads.
+ * </p>
+ *
+ * <p>
+ * Both encodings are kept as read-only buffers, which the transports queue without copying,
+ * so sending to many recipients costs neither encoding nor copying per recipient.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+class OutboundMessage {
+    private volatile String json;
+    private volatile ByteBuffer line;
+    private volatile ByteBuffer frame;
+
+    private OutboundMessage(String json, ByteBuffer frame) {
+        this.json = json;
+        this.frame = frame != null ? frame.asReadOnlyBuffer() : null;
+    }
+
+    /**
+     * Creates a message from JSON text.
+     *
+     * @param json the JSON object
+     * @return the message
+     */
+    static OutboundMessage ofJson(String json) {
+        return new OutboundMessage(json, null);
+    }
+
+    /**
+     * Creates a message from a received frame body. The body is copied.
+     *
+     * @param body the opcode and payload
+     * @return the message
+     */
+    static OutboundMessage ofFrameBody(ByteBuffer body) {
+        return new OutboundMessage(null, BinaryProtocol.frame(body));
+    }
+
+    /**
+     * Returns a copy of the message with a sequence number of the room's message stream, in the
+     * encoding the message was received in.
+     *
+     * @param seq the sequence number
+     * @return the sequenced message
+     */
+    OutboundMessage withSequenceNumber(int seq) {
+        ByteBuffer f = frame;
+        if (json == null && f != null) {
+            return new OutboundMessage(null, BinaryProtocol.sequenced(seq, f.duplicate()));
+        }
+        return ofJson(BinaryProtocol.withSequenceNumber(json, seq));
+    }
+
+    /**
+     * Returns the size of the message in a protocol.
+     *
+     * @param protocol the protocol
+     * @return the number of bytes sent to a client reading that protocol
+     */
+    int size(Protocol protocol) {
+        return protocol == Protocol.BINARY ? frame().remaining() : line().remaining();
+    }
+
+    /**
+     * Returns the message as JSON text.
+     *
+     * @return the JSON object
+     * @throws IllegalArgumentException if the binary frame is malformed
+     */
+    String json() {
+        if (json == null) {
+            ByteBuffer body = frame.duplicate();
+            body.position((int) (BinaryProtocol.peekLength(body, 0, body.limit()) >>> 32));
+            json = BinaryProtocol.toJson(body);
+        }
+        return json;
+    }
+
+    /**
+     * Returns the message as a line of the JSON protocol.
+     *
+     * @return a new read-only view of the UTF-8 line with its separator, to be consumed by one send
+     */
+    ByteBuffer line() {
+        ByteBuffer l = line;
+        if (l == null) {
+            l = ByteBuffer.wrap((json() + "\n").getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+            line = l;
+        }
+        return l.duplicate();
+    }
+
+    /**
+     * Returns the message as a binary frame.
+     *
+     * @return a new read-only view of the frame, to be consumed by one send
+     */
+    ByteBuffer frame() {
+        ByteBuffer f = frame;
+        if (f == null) {
+            f = BinaryProtocol.encode(json).asReadOnlyBuffer();
+            frame = f;
+        }
+        return f.duplicate();
+    }
+
+    /**
+     * Sends the message in the given protocol.
+     *
+     * @param connection the recipient
+     * @param protocol   the protocol the recipient reads
+     */
+    void sendTo(Connection connection, Protocol protocol) {
+        connection.send(protocol == Protocol.BINARY ? frame() : line());
+    }
+}
@@ -0,0 +1,110 @@
+package multiplayer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the outbound queues of a {@link Transport}.
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public class OutboundMetrics {
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong droppedBytes = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+    private final AtomicLong resyncs = new AtomicLong();
+
+    void queued(long bytes, long connectionDepth) {
+        queuedBytes.addAndGet(bytes);
+        messages.incrementAndGet();
+        maxQueueDepth.accumulateAndGet(connectionDepth, Math::max);
+    }
+
+    void written(long bytes) {
+        queuedBytes.addAndGet(-bytes);
+    }
+
+    void flushed() {
+        flushes.incrementAndGet();
+    }
+
+    void dropped(int count, long bytes) {
+        droppedMessages.addAndGet(count);
+        droppedBytes.addAndGet(bytes);
+    }
+
+    void disconnected() {
+        disconnects.incrementAndGet();
+    }
+
+    void resynced() {
+        resyncs.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of bytes queued and not yet written, over all connections.
+     *
+     * @return the current queue depth in bytes
+     */
+    public long getQueuedBytes() { return queuedBytes.get(); }
+
+    /**
+     * Returns the deepest queue of a single connection seen so far.
+     *
+     * @return the maximum queue depth in bytes
+     */
+    public long getMaxQueueDepth() { return maxQueueDepth.get(); }
+
+    /**
+     * Returns the number of messages accepted for sending.
+     *
+     * @return the message count
+     */
+    public long getMessages() { return messages.get(); }
+
+    /**
+     * Returns the number of socket writes; several messages are written together when they queue up.
+     *
+     * @return the flush count
+     */
+    public long getFlushes() { return flushes.get(); }
+
+    /**
+     * Returns the number of messages dropped because a queue was full, including queues discarded for a resync.
+     *
+     * @return the dropped message count
+     */
+    public long getDroppedMessages() { return droppedMessages.get(); }
+
+    /**
+     * Returns the size of all dropped messages, including queues discarded for a resync.
+     *
+     * @return the number of dropped bytes
+     */
+    public long getDroppedBytes() { return droppedBytes.get(); }
+
+    /**
+     * Returns the number of clients disconnected because their queue was full.
+     *
+     * @return the disconnect count
+     */
+    public long getDisconnects() { return disconnects.get(); }
+
+    /**
+     * Returns the number of queues discarded and replaced by a fresh state.
+     *
+     * @return the resync count
+     */
+    public long getResyncs() { return resyncs.get(); }
+
+    @Override
+    public String toString() {
+        return String.format("queuedBytes=%d maxQueueDepth=%d messages=%d flushes=%d dropped=%d (%d bytes) "
+                        + "disconnects=%d resyncs=%d",
+                getQueuedBytes(), getMaxQueueDepth(), getMessages(), getFlushes(), getDroppedMessages(),
+                getDroppedBytes(), getDisconnects(), getResyncs());
+    }
+}
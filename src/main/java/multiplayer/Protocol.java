@@ -0,0 +1,37 @@
+package multiplayer;
+
+/**
+ * Wire format of a connection.
+ * <p>
+ * Every connection starts with {@link #JSON}. A client switches to {@link #BINARY} by sending
+ * {@code {"type":"hello","protocol":"binary"}}; the server answers with the same message as a JSON
+ * line, and all following messages in both directions are binary frames, see {@link BinaryProtocol}.
+ * Messages are relayed between clients of both protocols, binary frames without decoding.
+ * </p>
+ *
+ * <p>
+ * The messages a client sends to the {@link GameServer}, by their {@code type}:
+ * </p>
+ * <ul>
+ *     <li>{@code create_room} (optional {@code difficulty}), {@code list_rooms}, {@code join_room} and
+ *     {@code spectate} (with a {@code roomId}) and {@code leave_room} – the lobby; a spectator watches
+ *     a room without taking a player's place and cannot play,</li>
+ *     <li>{@code find_match} (optional {@code difficulty}, the preferred board size) and {@code cancel_match} –
+ *     the {@link Matchmaker}'s queue, answered by {@code match_queued} and {@code match_found} with the
+ *     {@code roomId} before the room's messages,</li>
+ *     <li>{@code resume} (with {@code roomId}, {@code token} of the {@code session} message sent on joining and
+ *     the {@code lastSeq} received) – continues a session on a new or the current connection, see {@link Room},</li>
+ *     <li>{@code pong} – the answer to a {@code ping}, see {@link Heartbeat},</li>
+ *     <li>{@code start_game} and {@code player_count} – answered by the client's room,</li>
+ *     <li>anything else, e.g., {@code turn} or {@code win} (optional {@code clientTime}) – relayed to the other
+ *     players of the room, numbered with the room's sequence number {@code roomSeq}.</li>
+ * </ul>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public enum Protocol {
+    /** One JSON object per line. */
+    JSON,
+    /** Length-prefixed binary frames. */
+    BINARY
+}
@@ -0,0 +1,371 @@
+package multiplayer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token-bucket rate limits of the messages a client may send, for the whole connection and per message type.
+ * <p>
+ * Every connection has a bucket for all its messages and one for each limited type. A bucket holds up to
+ * its burst of tokens and gains its rate of them per second; a message takes a token from the connection's
+ * bucket and from the bucket of its type. The type is found in the raw message without decoding it: from the
+ * opcode of a binary frame, or by scanning a JSON message for the {@code "type"} key of its outermost object,
+ * so a flooding client costs the server no parsing. The scan does not decode escapes or duplicate keys as the
+ * parser does, so the server compares the parsed type with {@link #typeIndex(String)} of the billed one and
+ * rejects a message whose types differ. The {@link FloodPolicy} decides what happens to a message without tokens.
+ * </p>
+ * <p>
+ * A delayed message takes its tokens in advance, so the buckets of a client that keeps flooding run into debt
+ * and each further message waits longer. At most {@value #MAX_DELAYED_MESSAGES} messages of a client wait.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+final class RateLimiter {
+    /** Number of messages that may wait for their tokens before the client is disconnected. */
+    static final int MAX_DELAYED_MESSAGES = 256;
+    private static final String PROPERTY = "lightbulb.server.rateLimit";
+    private static final byte[] TYPE_FIELD = "\"type\"".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The rate of a bucket.
+     *
+     * @param perSecond the tokens gained per second
+     * @param burst     the most tokens the bucket holds, i.e., the messages that may be sent at once
+     */
+    record Rate(double perSecond, int burst) {
+        /**
+         * Validates the rate.
+         *
+         * @throws IllegalArgumentException if the rate or burst is not positive
+         */
+        Rate {
+            if (!(perSecond > 0) || burst < 1) throw new IllegalArgumentException("Rate and burst must be positive.");
+        }
+
+        /**
+         * Parses a rate written as {@code <perSecond>/<burst>}, or {@code <perSecond>} with a burst of one second.
+         *
+         * @param text the rate
+         * @return the rate
+         * @throws IllegalArgumentException if the text is not a valid rate
+         */
+        static Rate parse(String text) {
+            String[] parts = text.trim().split("/");
+            double perSecond = Double.parseDouble(parts[0].trim());
+            int burst = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : (int) Math.max(1, Math.ceil(perSecond));
+            return new Rate(perSecond, burst);
+        }
+    }
+
+    /**
+     * A message waiting for its tokens.
+     *
+     * @param due     the {@link System#nanoTime()} its tokens are available
+     * @param type    the index of the type it was billed as, or -1
+     * @param message a copy of the message
+     */
+    record Delayed(long due, int type, ByteBuffer message) {}
+
+    /**
+     * The buckets of one connection and its delayed messages. Guarded by itself, also when passed to
+     * {@link #admit(Buckets, int, long, boolean)}.
+     */
+    static final class Buckets {
+        private final TokenBucket connection;
+        private final TokenBucket[] types;
+        private final ArrayDeque<Delayed> delayed = new ArrayDeque<>();
+        private boolean delaying;
+
+        private Buckets(TokenBucket connection, TokenBucket[] types) {
+            this.connection = connection;
+            this.types = types;
+        }
+
+        /**
+         * Returns whether messages are waiting or being handled after their delay, so that a new message
+         * must wait behind them.
+         *
+         * @return true while delaying
+         */
+        boolean isDelaying() { return delaying; }
+
+        /**
+         * Queues a message behind the delayed ones.
+         *
+         * @param due     when its tokens are available
+         * @param type    the index of the type it was billed as, or -1
+         * @param message a copy of the message
+         * @return false if too many messages are waiting
+         */
+        boolean delay(long due, int type, ByteBuffer message) {
+            if (delayed.size() >= MAX_DELAYED_MESSAGES) return false;
+            delayed.add(new Delayed(due, type, message));
+            delaying = true;
+            return true;
+        }
+
+        /**
+         * Returns whether no further message can be delayed.
+         *
+         * @return true if {@value #MAX_DELAYED_MESSAGES} messages are waiting
+         */
+        boolean isFull() { return delayed.size() >= MAX_DELAYED_MESSAGES; }
+
+        /**
+         * Returns the next delayed message.
+         *
+         * @return the message, or {@code null} if none is waiting
+         */
+        Delayed peekDelayed() { return delayed.peek(); }
+
+        /**
+         * Removes the next delayed message, which is being handled.
+         */
+        void pollDelayed() { delayed.poll(); }
+
+        /**
+         * Stops delaying after the delayed messages have been handled or discarded.
+         */
+        void stopDelaying() {
+            delayed.clear();
+            delaying = false;
+        }
+    }
+
+    /**
+     * A bucket of tokens, counted as a fraction so that slow rates refill exactly.
+     */
+    private static final class TokenBucket {
+        private final double perNano;
+        private final double burst;
+        private double tokens;
+        private long updatedAt;
+
+        private TokenBucket(Rate rate, long now) {
+            this.perNano = rate.perSecond() / TimeUnit.SECONDS.toNanos(1);
+            this.burst = rate.burst();
+            this.tokens = burst;
+            this.updatedAt = now;
+        }
+
+        /**
+         * Refills the bucket and returns how long it takes until it has a token.
+         */
+        private long nanosUntilToken(long now) {
+            if (now > updatedAt) {
+                tokens = Math.min(burst, tokens + (now - updatedAt) * perNano);
+                updatedAt = now;
+            }
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / perNano);
+        }
+
+        private void take() {
+            tokens -= 1;
+        }
+    }
+
+    private final Rate connectionRate;
+    private final byte[][] types;
+    private final Rate[] typeRates;
+    /** Index of the limited type of each binary opcode, or -1. */
+    private final int[] opcodeTypes = new int[256];
+    private final FloodPolicy penalty;
+
+    /**
+     * Creates the limits of a server.
+     *
+     * @param connectionRate the rate of all messages of a connection, or {@code null} for no such limit
+     * @param typeRates      the rates of message types, e.g., {@code turn} or {@code player_count}
+     * @param penalty        what happens to a message without tokens
+     */
+    RateLimiter(Rate connectionRate, Map<String, Rate> typeRates, FloodPolicy penalty) {
+        this.connectionRate = connectionRate;
+        this.penalty = penalty;
+        this.types = new byte[typeRates.size()][];
+        this.typeRates = new Rate[typeRates.size()];
+        int i = 0;
+        for (Map.Entry<String, Rate> e : typeRates.entrySet()) {
+            types[i] = e.getKey().getBytes(StandardCharsets.UTF_8);
+            this.typeRates[i++] = e.getValue();
+        }
+        Arrays.fill(opcodeTypes, -1);
+        String[] opcodeNames = {null, "turn", "undo", "redo", "win", "start_game", "player_count"};
+        for (int op = BinaryProtocol.OP_TURN; op <= BinaryProtocol.OP_PLAYER_COUNT; op++) {
+            opcodeTypes[op] = typeIndex(opcodeNames[op].getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * Reads the rates of message types set by the {@code lightbulb.server.rateLimit.<type>} system properties,
+     * each as {@code <perSecond>/<burst>}.
+     *
+     * @return the rates by message type
+     */
+    static Map<String, Rate> typeRatesFromSystemProperties() {
+        Map<String, Rate> rates = new LinkedHashMap<>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(PROPERTY + ".")) {
+                rates.put(name.substring(PROPERTY.length() + 1), Rate.parse(System.getProperty(name)));
+            }
+        }
+        return rates;
+    }
+
+    /**
+     * Reads the rate of all messages of a connection set by the {@code lightbulb.server.rateLimit} system property.
+     *
+     * @return the rate, or {@code null} if it is not limited
+     */
+    static Rate connectionRateFromSystemProperties() {
+        String rate = System.getProperty(PROPERTY);
+        return rate != null ? Rate.parse(rate) : null;
+    }
+
+    /**
+     * Returns what happens to a message without tokens.
+     *
+     * @return the penalty
+     */
+    FloodPolicy getPenalty() { return penalty; }
+
+    /**
+     * Creates the full buckets of a new connection.
+     *
+     * @param now the current {@link System#nanoTime()}
+     * @return the buckets
+     */
+    Buckets newBuckets(long now) {
+        TokenBucket[] buckets = new TokenBucket[typeRates.length];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new TokenBucket(typeRates[i], now);
+        }
+        return new Buckets(connectionRate != null ? new TokenBucket(connectionRate, now) : null, buckets);
+    }
+
+    /**
+     * Finds the limited type of a raw message without decoding it.
+     *
+     * @param message  the message, not consumed
+     * @param protocol the protocol of the connection
+     * @return the index of the type, or -1 if its type is not limited
+     */
+    int typeOf(ByteBuffer message, Protocol protocol) {
+        if (types.length == 0 || !message.hasRemaining()) return -1;
+        int from = message.position();
+        if (protocol == Protocol.BINARY) {
+            int opcode = message.get(from) & 0xFF;
+            if (opcode != BinaryProtocol.OP_JSON) return opcodeTypes[opcode];
+            from++;
+        }
+        int limit = message.limit();
+        int value = typeValue(message, from, limit);
+        if (value < 0) return -1;
+        for (int t = 0; t < types.length; t++) {
+            byte[] type = types[t];
+            if (value + type.length < limit && matches(message, type, value) && message.get(value + type.length) == '"') {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the value of the {@code "type"} key of the outermost JSON object, skipping nested objects,
+     * arrays and the contents of strings, so that a {@code "type"} key nested in another value is not taken.
+     *
+     * @return the index of the first character of the string value, or -1 if there is no such key
+     */
+    private static int typeValue(ByteBuffer message, int from, int limit) {
+        int depth = 0;
+        for (int i = from; i < limit; i++) {
+            byte b = message.get(i);
+            if (b == '"') {
+                int start = i;
+                i = skipString(message, i + 1, limit);
+                if (depth == 1 && i - start + 1 == TYPE_FIELD.length && matches(message, TYPE_FIELD, start)) {
+                    int colon = skipSpaces(message, i + 1, limit);
+                    if (colon < limit && message.get(colon) == ':') {
+                        int value = skipSpaces(message, colon + 1, limit);
+                        return value < limit && message.get(value) == '"' ? value + 1 : -1;
+                    }
+                }
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the quote closing a string, or the limit if the string is not closed.
+     */
+    private static int skipString(ByteBuffer message, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            byte b = message.get(i);
+            if (b == '\\') {
+                i++;
+            } else if (b == '"') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Takes a token for a message from the connection's bucket and the bucket of its type, if both have one.
+     *
+     * @param buckets the buckets of the connection
+     * @param type    the index of the message's type, or -1
+     * @param now     the current {@link System#nanoTime()}
+     * @param reserve true to take the tokens even if they are not there yet, for a delayed message
+     * @return 0 if the message may be handled now, otherwise the nanoseconds until its tokens are available
+     */
+    long admit(Buckets buckets, int type, long now, boolean reserve) {
+        TokenBucket connection = buckets.connection;
+        TokenBucket typed = type >= 0 ? buckets.types[type] : null;
+        long wait = Math.max(connection != null ? connection.nanosUntilToken(now) : 0, typed != null ? typed.nanosUntilToken(now) : 0);
+        if (wait == 0 || reserve) {
+            if (connection != null) connection.take();
+            if (typed != null) typed.take();
+        }
+        return wait;
+    }
+
+    /**
+     * Returns the index of a limited type, to compare the type of a parsed message with the one it was billed as.
+     *
+     * @param type the type of the message
+     * @return the index of the type, or -1 if it is not limited
+     */
+    int typeIndex(String type) {
+        return typeIndex(type.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private int typeIndex(byte[] type) {
+        for (int t = 0; t < types.length; t++) {
+            if (Arrays.equals(types[t], type)) return t;
+        }
+        return -1;
+    }
+
+    private static boolean matches(ByteBuffer buffer, byte[] pattern, int at) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (buffer.get(at + j) != pattern[j]) return false;
+        }
+        return true;
+    }
+
+    private static int skipSpaces(ByteBuffer buffer, int from, int limit) {
+        int i = from;
+        while (i < limit && Character.isWhitespace(buffer.get(i))) i++;
+        return i;
+    }
+}
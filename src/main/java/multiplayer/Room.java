@@ -0,0 +1,1190 @@
+package multiplayer;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import common.Position;
+import game.Game;
+import json.GameDeserializer;
+
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A match hosted by the {@link GameServer}: one generated board shared by up to four players.
+ * <p>
+ * Players get the lowest free ID when they join; IDs are released while the match has not started.
+ * Only player 1 can start the match, and nobody can join afterwards. A room that stays empty
+ * longer than the idle timeout is closed by the server.
+ * </p>
+ *
+ * <p>
+ * The room keeps the game messages it has relayed, so a client whose outbound queue overflowed
+ * can be sent the whole match again instead of the messages it lost.
+ * </p>
+ *
+ * <p>
+ * Every relayed message is numbered with the room's sequence number, so clients can tell
+ * whether they missed a message. A joining player gets a session token. If its connection drops
+ * after the match has started, the player can resume the session on a new connection: the room
+ * sends the messages after the last sequence number the client has seen, or the whole state
+ * of the room if that is smaller or the messages are no longer kept.
+ * </p>
+ *
+ * <p>
+ * Any number of spectators can watch a room without taking a player ID. Each message is encoded once
+ * and the shared buffer is queued for every spectator; the spectators' transports write it, so the
+ * thread relaying a move only queues it. A spectator whose queue grows beyond {@link #SPECTATOR_LAG_BYTES}
+ * is sent nothing more until it has read most of it, and then one catch-up in place of everything
+ * it skipped: the missed messages or the whole state, whichever is smaller.
+ * </p>
+ *
+ * <p>
+ * An authoritative room also keeps every player's board. Turns, undos and redos are applied to
+ * the sender's board before they are relayed, invalid moves are rejected, and the room itself
+ * notices when a player's board has all bulbs lit. Wins claimed by clients are not relayed.
+ * </p>
+ *
+ * <p>
+ * The winner is not simply the player whose win is read first, which would depend on the network and
+ * on thread scheduling. The first completed board, or the first claim in a room without boards, opens
+ * the adjudication window; the boards completed within it compete, and the room announces the player who
+ * finished first on the server's clock. A claim carries the time the client finished on its own clock,
+ * which is converted with the client's estimated clock offset; the result is bounded by the fastest round trip
+ * measured for the client, at most {@value #MAX_BACKDATE_MILLIS} ms, before the claim was received, so a client
+ * cannot move its finish back further than its latency explains, also not by holding back its pongs to appear
+ * slower. Without a timestamp, half that round trip before the receipt is assumed.
+ * </p>
+ *
+ * <p>
+ * A recorded room queues the start, every player's moves with the time they were received, and the winner
+ * to its {@link MatchRecorder.Recording}, in the order the room has handled them.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+class Room {
+    /** Maximum number of players in a room. */
+    static final int MAX_PLAYERS = 4;
+    /** Number of relayed messages kept for resynchronizing a slow client. */
+    static final int MAX_HISTORY = 10_000;
+    /**
+     * Queued bytes beyond which a spectator is considered behind and skipped. It is well above what a burst
+     * of moves queues before the transport writes it, and below the default outbound limit.
+     */
+    static final int SPECTATOR_LAG_BYTES = 256 * 1024;
+    /** Number of unanswered pings whose pongs are accepted; an older timestamp is not accepted. */
+    static final int MAX_PENDING_PINGS = 4;
+    /** Longest time a claim is moved back from its receipt, whatever round trip the client shows. */
+    static final long MAX_BACKDATE_MILLIS = 250;
+    private static final SecureRandom TOKENS = new SecureRandom();
+
+    private final String id;
+    private final int difficulty;
+    private final Game game;
+    /** The initial game state as compact JSON. */
+    private final String gameJson;
+    private final OutboundMessage[] initMessages = new OutboundMessage[MAX_PLAYERS + 1];
+    private OutboundMessage playerCount;
+    private final List<Member> members = new CopyOnWriteArrayList<>();
+    private final List<Member> spectators = new CopyOnWriteArrayList<>();
+    /** Number of spectators being skipped until they catch up. Guarded by {@code this}. */
+    private int laggingSpectators;
+    /** Messages not sent to lagging spectators. Guarded by {@code this}. */
+    private long coalescedMessages;
+    private final Deque<Integer> availablePlayerIds = new ArrayDeque<>();
+    private volatile boolean started;
+    private boolean closed;
+    private volatile long emptySince;
+    private final ArrayDeque<OutboundMessage> history = new ArrayDeque<>();
+    private boolean historyTruncated;
+    /** Sequence number of the last relayed message. Guarded by {@code this}. */
+    private int seq;
+    /** Session token of each player ID, or {@code null} if the player cannot resume. Guarded by {@code this}. */
+    private final String[] sessions = new String[MAX_PLAYERS + 1];
+    private final boolean authoritative;
+    /** Source of the players' boards of an authoritative room. */
+    private final GameDeserializer boardSource;
+    /** Board of each player ID of an authoritative room. Guarded by {@code this}. */
+    private final Game[] boards = new Game[MAX_PLAYERS + 1];
+    private volatile int winnerId;
+    private final TimerWheel timers;
+    private final long winWindowMillis;
+    /** The completed board of each player ID, or {@code null}. Guarded by {@code this}. */
+    private final WinClaim[] winClaims = new WinClaim[MAX_PLAYERS + 1];
+    /** Whether the adjudication window is open. Guarded by {@code this}. */
+    private boolean adjudicating;
+    private volatile MatchRecorder.Recording recording;
+    /** Messages of the members that exceeded their rate limits, by {@link FloodPolicy}. */
+    private final AtomicLongArray rateLimited = new AtomicLongArray(FloodPolicy.values().length);
+
+    /**
+     * A completed board competing for the win.
+     *
+     * @param receivedAt the server's time the completing move or the claim was received
+     * @param finishedAt the estimated server's time the player finished
+     */
+    private record WinClaim(long receivedAt, long finishedAt) {}
+
+    /**
+     * A connection that has joined the room.
+     */
+    static class Member {
+        private final Connection connection;
+        private volatile Room room;
+        private volatile int playerId;
+        private volatile Protocol protocol = Protocol.JSON;
+        private volatile int joinedAtSeq;
+        private volatile boolean spectator;
+        /** Last sequence number sent to a lagging spectator, or -1. Guarded by the room. */
+        private int behindSince = -1;
+        private volatile RateLimiter.Buckets rateBuckets;
+        /** Smoothed round-trip time in nanoseconds, or -1 before the first pong. */
+        private volatile long rttNanos = -1;
+        /** Fastest round trip measured in nanoseconds, or -1 before the first pong. */
+        private volatile long minRttNanos = -1;
+        /** Timestamps of the last pings awaiting their pongs, {@link Long#MIN_VALUE} if none. Guarded by itself. */
+        private final long[] pendingPings = newPendingPings();
+        private int pingCount;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final ClockSync clock = new ClockSync();
+
+        /**
+         * Creates a member for a connection that is not in any room yet.
+         *
+         * @param connection the client connection
+         */
+        Member(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Returns the client connection.
+         *
+         * @return the connection
+         */
+        Connection getConnection() { return connection; }
+
+        /**
+         * Returns the room the member is in.
+         *
+         * @return the room, or {@code null} while in the lobby
+         */
+        Room getRoom() { return room; }
+
+        /**
+         * Returns the player ID within the current room.
+         *
+         * @return the player ID, valid while in a room
+         */
+        int getPlayerId() { return playerId; }
+
+        /**
+         * Returns whether the member watches its room instead of playing.
+         *
+         * @return true for a spectator
+         */
+        boolean isSpectator() { return spectator; }
+
+        /**
+         * Returns the protocol the client reads.
+         *
+         * @return the outbound protocol
+         */
+        Protocol getProtocol() { return protocol; }
+
+        /**
+         * Sets the protocol the client reads.
+         *
+         * @param protocol the outbound protocol
+         */
+        void setProtocol(Protocol protocol) { this.protocol = protocol; }
+
+        /**
+         * Returns the rate limit buckets of the client.
+         *
+         * @return the buckets, or {@code null} if the client is not limited
+         */
+        RateLimiter.Buckets getRateBuckets() { return rateBuckets; }
+
+        /**
+         * Sets the rate limit buckets of the client.
+         *
+         * @param buckets the buckets
+         */
+        void setRateBuckets(RateLimiter.Buckets buckets) { this.rateBuckets = buckets; }
+
+        /**
+         * Returns the smoothed round-trip time of the client.
+         *
+         * @return the round-trip time in nanoseconds, or -1 if it has not been measured
+         */
+        long getRttNanos() { return rttNanos; }
+
+        private static long[] newPendingPings() {
+            long[] pings = new long[MAX_PENDING_PINGS];
+            Arrays.fill(pings, Long.MIN_VALUE);
+            return pings;
+        }
+
+        /**
+         * Remembers the timestamp of a ping sent to the client, replacing the oldest one still unanswered.
+         *
+         * @param sentAt the timestamp of the ping
+         */
+        void pinged(long sentAt) {
+            synchronized (pendingPings) {
+                pendingPings[pingCount++ % MAX_PENDING_PINGS] = sentAt;
+            }
+        }
+
+        /**
+         * Accepts the pong of a ping awaiting it, once.
+         *
+         * @param sentAt the timestamp the pong echoes
+         * @return true if it is the timestamp of one of the last pings and has not been answered yet
+         */
+        boolean ponged(long sentAt) {
+            if (sentAt == Long.MIN_VALUE) return false;
+            synchronized (pendingPings) {
+                for (int i = 0; i < MAX_PENDING_PINGS; i++) {
+                    if (pendingPings[i] == sentAt) {
+                        pendingPings[i] = Long.MIN_VALUE;
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Adds a round-trip time sample to the smoothed average, weighted 1/8 as TCP does.
+         *
+         * @param nanos the measured round-trip time
+         */
+        void roundTrip(long nanos) {
+            long rtt = rttNanos;
+            rttNanos = rtt < 0 ? nanos : rtt + (nanos - rtt) / 8;
+            long min = minRttNanos;
+            if (min < 0 || nanos < min) minRttNanos = nanos;
+            latency.record(nanos);
+        }
+
+        /**
+         * Returns the round-trip times measured for the client.
+         *
+         * @return the histogram, updated by later measurements
+         */
+        LatencyHistogram getLatency() { return latency; }
+
+        /**
+         * Returns the estimate of the client's clock offset.
+         *
+         * @return the clock synchronization
+         */
+        ClockSync getClock() { return clock; }
+
+        /**
+         * Estimates when on the server's clock the client did what it reports in a received message.
+         * The estimate lies between the fastest round trip measured, at most {@value #MAX_BACKDATE_MILLIS} ms,
+         * before the receipt and the receipt. A client can delay its pongs to make its smoothed round trip
+         * longer, but not its fastest one.
+         *
+         * @param clientTime the client's time of the event, or {@code null} if the message has none
+         * @param receivedAt the server's time the message was received
+         * @return the server's time of the event
+         */
+        long eventTime(Long clientTime, long receivedAt) {
+            long min = minRttNanos;
+            if (min < 0) return receivedAt;
+            long rtt = Math.min(min, TimeUnit.MILLISECONDS.toNanos(MAX_BACKDATE_MILLIS));
+            if (clientTime == null || !clock.hasOffset()) return receivedAt - rtt / 2;
+            return Math.max(receivedAt - rtt, Math.min(receivedAt, clock.toServerTime(clientTime)));
+        }
+
+        /**
+         * Sends a message in the client's protocol.
+         *
+         * @param message the message
+         */
+        void send(OutboundMessage message) {
+            message.sendTo(connection, protocol);
+        }
+
+        /**
+         * Queues a message in the client's protocol for the transport's writer.
+         *
+         * @param message the message
+         */
+        void sendDeferred(OutboundMessage message) {
+            connection.sendDeferred(protocol == Protocol.BINARY ? message.frame() : message.line());
+        }
+
+        /**
+         * Sends a JSON message in the client's protocol.
+         *
+         * @param json the JSON object
+         */
+        void send(String json) {
+            if (protocol == Protocol.BINARY) {
+                connection.send(BinaryProtocol.encodeJson(json));
+            } else {
+                connection.send(json);
+            }
+        }
+    }
+
+    /**
+     * Creates a room with a generated board.
+     *
+     * @param id              the room ID
+     * @param board           the board of the room, which the room closes with it
+     * @param authoritative   true to keep the players' boards and validate their moves
+     * @param timers          the timers of the adjudication window
+     * @param winWindowMillis how long after the first completed board others may still win
+     */
+    Room(String id, BoardPool.Board board, boolean authoritative, TimerWheel timers, long winWindowMillis) {
+        this.id = id;
+        this.difficulty = board.game().rows();
+        this.authoritative = authoritative;
+        this.timers = timers;
+        this.winWindowMillis = winWindowMillis;
+        this.game = board.game();
+        this.gameJson = board.json();
+        if (authoritative) {
+            boardSource = new GameDeserializer(board.state());
+            boardSource.getGame().close();
+        } else {
+            boardSource = null;
+        }
+        for (int i = 1; i <= MAX_PLAYERS; i++) {
+            availablePlayerIds.add(i);
+        }
+        this.emptySince = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the room ID used in the lobby messages.
+     *
+     * @return the room ID
+     */
+    String getId() { return id; }
+
+    /**
+     * Returns the game generated for the room.
+     *
+     * @return the game
+     */
+    Game getGame() { return game; }
+
+    /**
+     * Records the room from now on.
+     *
+     * @param recording the recording of the room, which the room ends when it is closed
+     */
+    synchronized void setRecording(MatchRecorder.Recording recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Returns whether the room is recorded, so the positions of its turns are needed.
+     *
+     * @return true if recorded
+     */
+    boolean isRecorded() { return recording != null; }
+
+    /**
+     * Returns the match file of the room.
+     *
+     * @return the file, or {@code null} if the room is not recorded
+     */
+    Path getRecordingFile() {
+        MatchRecorder.Recording r = recording;
+        return r != null ? r.file() : null;
+    }
+
+    /**
+     * Counts a message of a member that exceeded its rate limits.
+     *
+     * @param penalty what was done with the message
+     */
+    void rateLimited(FloodPolicy penalty) {
+        rateLimited.incrementAndGet(penalty.ordinal());
+    }
+
+    /**
+     * Returns how many messages of the room's members exceeded their rate limits.
+     *
+     * @param penalty what was done with the messages
+     * @return the number of messages; for {@link FloodPolicy#DISCONNECT} the number of disconnected clients
+     */
+    long getRateLimited(FloodPolicy penalty) {
+        return rateLimited.get(penalty.ordinal());
+    }
+
+    /**
+     * Returns whether the room keeps the players' boards and validates their moves.
+     *
+     * @return true if authoritative
+     */
+    boolean isAuthoritative() { return authoritative; }
+
+    /**
+     * Returns the player announced as the winner.
+     *
+     * @return the winner's player ID, or 0 while nobody has won
+     */
+    int getWinnerId() { return winnerId; }
+
+    /**
+     * Returns a player's board in an authoritative room.
+     *
+     * @param playerId the player ID
+     * @return the board, or {@code null} if the player has none
+     */
+    synchronized Game getBoard(int playerId) {
+        return playerId > 0 && playerId <= MAX_PLAYERS ? boards[playerId] : null;
+    }
+
+    /**
+     * Returns whether the match has been started.
+     *
+     * @return true if started
+     */
+    boolean isStarted() { return started; }
+
+    /**
+     * Returns the number of players in the room.
+     *
+     * @return the player count
+     */
+    int getPlayerCount() { return members.size(); }
+
+    /**
+     * Returns the smoothed round-trip time of a player.
+     *
+     * @param playerId the player ID
+     * @return the round-trip time in nanoseconds, or -1 if the player is not connected or has not been measured
+     */
+    long getRttNanos(int playerId) {
+        Member m = member(playerId);
+        return m != null ? m.getRttNanos() : -1;
+    }
+
+    /**
+     * Returns the round-trip times measured for a player.
+     *
+     * @param playerId the player ID
+     * @return a copy of the histogram, or {@code null} if the player is not connected
+     */
+    LatencyHistogram getLatency(int playerId) {
+        Member m = member(playerId);
+        return m != null ? m.getLatency().copy() : null;
+    }
+
+    private Member member(int playerId) {
+        for (Member m : members) {
+            if (m.playerId == playerId) return m;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of spectators watching the room.
+     *
+     * @return the spectator count
+     */
+    int getSpectatorCount() { return spectators.size(); }
+
+    /**
+     * Returns how many messages have been skipped for lagging spectators and replaced by catch-ups.
+     *
+     * @return the number of coalesced messages
+     */
+    synchronized long getCoalescedMessages() { return coalescedMessages; }
+
+    /**
+     * Adds a member to the room and assigns it a player ID.
+     *
+     * @param member the joining member, not in any room
+     * @throws IllegalStateException if the match has started, the room is full or closed
+     */
+    synchronized void join(Member member) {
+        if (closed) throw new IllegalStateException("Room " + id + " does not exist.");
+        if (started) throw new IllegalStateException("Game already started.");
+        Integer playerId = availablePlayerIds.poll();
+        if (playerId == null) throw new IllegalStateException("Room " + id + " is full.");
+        member.playerId = playerId;
+        member.room = this;
+        member.spectator = false;
+        member.joinedAtSeq = seq;
+        members.add(member);
+        playerCount = null;
+        byte[] token = new byte[16];
+        TOKENS.nextBytes(token);
+        sessions[playerId] = HexFormat.of().formatHex(token);
+        if (authoritative) {
+            closeBoard(playerId);
+            boards[playerId] = boardSource.newGame();
+            // The players' own clients log their games
+            boards[playerId].setLoggingSuppressed(true);
+        }
+    }
+
+    /**
+     * Removes a member; its player ID is released if the match has not started.
+     * A member whose connection dropped during the match keeps its session, so it can resume.
+     *
+     * @param member       the leaving member
+     * @param disconnected true if the connection was lost rather than the room left on request
+     * @return true if the member was in the room
+     */
+    synchronized boolean leave(Member member, boolean disconnected) {
+        if (member.spectator) {
+            if (member.room != this || !spectators.remove(member)) return false;
+            member.room = null;
+            if (member.behindSince >= 0) {
+                member.behindSince = -1;
+                laggingSpectators--;
+            }
+            return true;
+        }
+        if (member.room != this || !members.remove(member)) return false;
+        member.room = null;
+        playerCount = null;
+        if (!started || !disconnected) {
+            sessions[member.playerId] = null;
+        }
+        if (!started) {
+            availablePlayerIds.addFirst(member.playerId);
+            closeBoard(member.playerId);
+        }
+        if (members.isEmpty()) {
+            emptySince = System.currentTimeMillis();
+        }
+        return true;
+    }
+
+    /**
+     * Adds a spectator to the room and sends it the initial state with the player ID 0, every relayed
+     * message, or a snapshot once they are no longer all kept, a session message without a token and
+     * the player count.
+     * Spectators can join at any time and are not limited in number.
+     *
+     * @param member the joining member, not in any room
+     * @throws IllegalStateException if the room is closed or the relayed messages are no longer kept
+     */
+    synchronized void spectate(Member member) {
+        if (closed) throw new IllegalStateException("Room " + id + " does not exist.");
+        if (historyTruncated && !authoritative) {
+            throw new IllegalStateException("Room " + id + " cannot be watched any more.");
+        }
+        member.playerId = 0;
+        member.room = this;
+        member.spectator = true;
+        member.behindSince = -1;
+        member.joinedAtSeq = seq;
+        spectators.add(member);
+        member.connection.sendUnlimited(() -> {
+            member.send(initMessage(0));
+            if (historyTruncated) {
+                member.send(snapshotMessage());
+            } else {
+                for (OutboundMessage message : history) {
+                    member.send(message);
+                }
+            }
+            member.send(sessionMessage(member));
+            member.send(playerCountMessage());
+        });
+    }
+
+    /**
+     * Starts the match if requested by player 1.
+     *
+     * @param member the requesting member
+     * @return true if the match was started by this call
+     */
+    synchronized boolean start(Member member) {
+        if (started || member.room != this || member.playerId != 1) return false;
+        started = true;
+        record(0, MatchRecord.Op.START, null, System.nanoTime());
+        return true;
+    }
+
+    /**
+     * Closes the room if nobody has been in it for the given time.
+     *
+     * @param now         the current time in milliseconds
+     * @param idleMillis  how long the room must have been empty
+     * @return true if the room was closed by this call
+     */
+    synchronized boolean closeIfIdle(long now, long idleMillis) {
+        if (closed || !members.isEmpty() || now - emptySince < idleMillis) return false;
+        close();
+        return true;
+    }
+
+    /**
+     * Closes the room and releases its game. Members are not disconnected.
+     */
+    synchronized void close() {
+        if (closed) return;
+        closed = true;
+        for (Member m : spectators) {
+            m.room = null;
+        }
+        spectators.clear();
+        laggingSpectators = 0;
+        game.close();
+        for (int i = 1; i <= MAX_PLAYERS; i++) {
+            closeBoard(i);
+        }
+        if (recording != null) recording.close();
+    }
+
+    private void closeBoard(int playerId) {
+        if (boards[playerId] != null) {
+            boards[playerId].close();
+            boards[playerId] = null;
+        }
+    }
+
+    /**
+     * Applies a game message of a member to its board in an authoritative room and relays it.
+     * The relayed message carries the member's own player ID, whatever the client claimed.
+     * When the move lights all bulbs of the board, the member competes for the win. Its claim of the
+     * win only adds the time it finished on its clock.
+     *
+     * @param member     the sending member
+     * @param type       {@code turn}, {@code undo}, {@code redo} or {@code win}
+     * @param position   the turned tile of a {@code turn}
+     * @param clientTime the client's time of a {@code win}, or {@code null}
+     * @param receivedAt the server's time the message was received
+     * @throws IllegalStateException    if the match is not running, or there is nothing to undo or redo
+     * @throws IllegalArgumentException if the position is not on the board, or a claimed win is not confirmed
+     */
+    synchronized void play(Member member, String type, Position position, Long clientTime, long receivedAt) {
+        if (member.room != this) return;
+        int playerId = member.playerId;
+        if ("win".equals(type)) {
+            WinClaim claim = winClaims[playerId];
+            if (claim == null) {
+                if (winnerId == playerId) return;
+                throw new IllegalArgumentException("Win of player " + playerId + " is not confirmed by the server.");
+            }
+            if (adjudicating && clientTime != null) {
+                // The board was completed by the last move, which was sent when the client finished
+                winClaims[playerId] = new WinClaim(claim.receivedAt(), member.eventTime(clientTime, claim.receivedAt()));
+            }
+            return;
+        }
+        if (!started) throw new IllegalStateException("Game not started.");
+        if (winnerId != 0) throw new IllegalStateException("Game is over.");
+        Game board = boards[playerId];
+        String move;
+        switch (type) {
+            case "turn" -> {
+                int row = position.getRow();
+                int col = position.getCol();
+                if (row < 1 || row > board.rows() || col < 1 || col > board.cols()) {
+                    throw new IllegalArgumentException("Position " + row + "," + col + " is not on the board.");
+                }
+                board.node(position).turn();
+                move = "{\"type\":\"turn\",\"playerId\":" + playerId
+                        + ",\"position\":{\"row\":" + row + ",\"col\":" + col + "}}";
+            }
+            case "undo" -> {
+                if (!board.undo()) throw new IllegalStateException("Nothing to undo.");
+                position = board.getLastTurnedNode();
+                move = "{\"type\":\"undo\",\"playerId\":" + playerId + "}";
+            }
+            case "redo" -> {
+                if (!board.redo()) throw new IllegalStateException("Nothing to redo.");
+                position = board.getLastTurnedNode();
+                move = "{\"type\":\"redo\",\"playerId\":" + playerId + "}";
+            }
+            default -> throw new IllegalArgumentException("Unknown move " + type + ".");
+        }
+        relay(OutboundMessage.ofJson(move), member);
+        record(playerId, op(type), position, receivedAt);
+        if (winClaims[playerId] == null && board.checkWin()) {
+            completed(member, null, receivedAt);
+        }
+    }
+
+    /**
+     * Relays a turn, undo or redo of a member in a room that does not keep the boards, and records it.
+     *
+     * @param member     the sending member
+     * @param type       {@code turn}, {@code undo} or {@code redo}
+     * @param position   the turned tile of a {@code turn} in a recorded room, otherwise {@code null}
+     * @param receivedAt the server's time the message was received
+     * @param message    the received message
+     */
+    synchronized void move(Member member, String type, Position position, long receivedAt, OutboundMessage message) {
+        relay(message, member);
+        if (member.room == this && !member.spectator) {
+            record(member.playerId, op(type), position, receivedAt);
+        }
+    }
+
+    private static MatchRecord.Op op(String type) {
+        return switch (type) {
+            case "turn" -> MatchRecord.Op.TURN;
+            case "undo" -> MatchRecord.Op.UNDO;
+            case "redo" -> MatchRecord.Op.REDO;
+            default -> throw new IllegalArgumentException("Unknown move " + type + ".");
+        };
+    }
+
+    /**
+     * Queues a record of the match if the room is recorded.
+     *
+     * @param playerId the player, or 0 for an event of the room
+     * @param op       what happened
+     * @param position the node, or {@code null}; a position that is not on the board is recorded without it
+     * @param at       the {@link System#nanoTime()} of the event
+     */
+    private void record(int playerId, MatchRecord.Op op, Position position, long at) {
+        MatchRecorder.Recording r = recording;
+        if (r == null) return;
+        int cell = -1;
+        if (position != null && position.getRow() >= 1 && position.getRow() <= game.rows()
+                && position.getCol() >= 1 && position.getCol() <= game.cols()) {
+            cell = (position.getRow() - 1) * game.cols() + (position.getCol() - 1);
+        }
+        r.append(playerId, op, cell, at);
+    }
+
+    /**
+     * Handles the win claim of a player in a room that does not keep the boards.
+     *
+     * @param member     the claiming member
+     * @param clientTime the client's time it finished, or {@code null}
+     * @param receivedAt the server's time the claim was received
+     * @throws IllegalStateException if the match is not running
+     */
+    synchronized void claimWin(Member member, Long clientTime, long receivedAt) {
+        if (member.room != this || winClaims[member.playerId] != null) return;
+        if (!started) throw new IllegalStateException("Game not started.");
+        if (winnerId != 0) throw new IllegalStateException("Game is over.");
+        completed(member, clientTime, receivedAt);
+    }
+
+    /**
+     * Lets a player that has completed its board compete for the win, opening the adjudication window
+     * if it is the first.
+     *
+     * @param member     the player
+     * @param clientTime the client's time it finished, or {@code null}
+     * @param receivedAt the server's time the completing message was received
+     */
+    private void completed(Member member, Long clientTime, long receivedAt) {
+        winClaims[member.playerId] = new WinClaim(receivedAt, member.eventTime(clientTime, receivedAt));
+        if (!adjudicating) {
+            adjudicating = true;
+            timers.schedule(this::adjudicate, winWindowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Closes the adjudication window and announces the player that finished first, or of equal finishes,
+     * whose message was received first.
+     */
+    synchronized void adjudicate() {
+        if (!adjudicating || closed) return;
+        adjudicating = false;
+        int winner = 0;
+        for (int i = 1; i <= MAX_PLAYERS; i++) {
+            WinClaim claim = winClaims[i];
+            if (claim == null) continue;
+            WinClaim best = winner != 0 ? winClaims[winner] : null;
+            if (best == null || claim.finishedAt() - best.finishedAt() < 0
+                    || (claim.finishedAt() == best.finishedAt() && claim.receivedAt() - best.receivedAt() < 0)) {
+                winner = i;
+            }
+        }
+        winnerId = winner;
+        record(winner, MatchRecord.Op.WIN, null, System.nanoTime());
+        relay(OutboundMessage.ofJson("{\"type\":\"win\",\"winnerId\":" + winner + "}"), null);
+    }
+
+    /**
+     * Sends a message to all members except the sender, each in its own protocol, and to the spectators.
+     *
+     * @param message the message to send
+     * @param sender  the member who sent the original message, or {@code null} to send to everyone
+     */
+    synchronized void broadcast(OutboundMessage message, Member sender) {
+        for (Member m : members) {
+            if (m != sender) {
+                m.send(message);
+            }
+        }
+        if (!spectators.isEmpty()) {
+            fanOut(message, 0);
+        }
+    }
+
+    /**
+     * Queues a message for every spectator that is not behind. A spectator whose queue has grown
+     * beyond {@link #SPECTATOR_LAG_BYTES} is skipped from now on; once it has read all but a quarter
+     * of that, it is sent one catch-up instead of the skipped messages.
+     *
+     * @param message    the message
+     * @param messageSeq the sequence number of a relayed message, or 0
+     */
+    private void fanOut(OutboundMessage message, int messageSeq) {
+        for (Member s : spectators) {
+            int queued = s.connection.getQueuedBytes();
+            if (s.behindSince >= 0) {
+                if (queued <= SPECTATOR_LAG_BYTES / 4) {
+                    catchUp(s);
+                } else {
+                    coalescedMessages++;
+                }
+            } else if (queued > SPECTATOR_LAG_BYTES) {
+                s.behindSince = messageSeq > 0 ? messageSeq - 1 : seq;
+                laggingSpectators++;
+                coalescedMessages++;
+            } else {
+                s.sendDeferred(message);
+            }
+        }
+    }
+
+    /**
+     * Sends the catch-up to the lagging spectators that have read their queues,
+     * for rooms where nothing has been relayed since they fell behind.
+     */
+    synchronized void catchUpSpectators() {
+        if (laggingSpectators == 0) return;
+        for (Member s : spectators) {
+            if (s.behindSince >= 0 && s.connection.getQueuedBytes() <= SPECTATOR_LAG_BYTES / 4) {
+                catchUp(s);
+            }
+        }
+    }
+
+    /**
+     * Sends a lagging spectator what it has skipped, or disconnects it if that is no longer available.
+     *
+     * @param spectator the spectator
+     */
+    private void catchUp(Member spectator) {
+        int after = spectator.behindSince;
+        spectator.behindSince = -1;
+        laggingSpectators--;
+        if (!sendCatchUp(spectator, 0, after)) {
+            spectator.connection.close();
+        }
+    }
+
+    /**
+     * Records a game message in the room's history and sends it to all members except the sender.
+     * Recording and sending happen under the room's lock, so a resync never misses or repeats a message.
+     *
+     * @param message the message to relay
+     * @param sender  the member who sent the message, or {@code null} for a message of the server
+     */
+    synchronized void relay(OutboundMessage message, Member sender) {
+        OutboundMessage sequenced = message.withSequenceNumber(++seq);
+        if (history.size() == MAX_HISTORY) {
+            history.poll();
+            historyTruncated = true;
+        }
+        history.add(sequenced);
+        for (Member m : members) {
+            if (m != sender) {
+                m.send(sequenced);
+            }
+        }
+        if (!spectators.isEmpty()) {
+            fanOut(sequenced, seq);
+        }
+    }
+
+    /**
+     * Returns the message telling a member its session, sent after it has joined.
+     *
+     * @param member the member
+     * @return message with room ID, player ID, session token and the sequence number at joining
+     */
+    synchronized String sessionMessage(Member member) {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "session");
+        msg.addProperty("roomId", id);
+        msg.addProperty("playerId", member.playerId);
+        msg.addProperty("token", member.room == this ? sessions[member.playerId] : null);
+        msg.addProperty("lastSeq", member.joinedAtSeq);
+        return msg.toString();
+    }
+
+    /**
+     * Resumes a player's session on a member's connection. A member of the room that still holds
+     * the player ID, e.g., over a connection that has not noticed the drop yet, is disconnected.
+     * The member is then sent what it has missed, see {@link #sendCatchUp(Member, int, int)}.
+     *
+     * @param member  the member resuming the session; it is in this room under the session's player ID, or in no room
+     * @param token   the session token
+     * @param lastSeq the last sequence number the client has received, or -1 if it has no state
+     * @throws IllegalStateException if the room is closed, the session is not valid, or the state is no longer available
+     */
+    synchronized void resume(Member member, String token, int lastSeq) {
+        if (closed) throw new IllegalStateException("Room " + id + " does not exist.");
+        int playerId = sessionOwner(token);
+        if (playerId == 0 || (member.room == this && member.playerId != playerId)) {
+            throw new IllegalStateException("Session is not valid.");
+        }
+
+        if (member.room != this) {
+            if (!canCatchUp(lastSeq)) {
+                throw new IllegalStateException("State of room " + id + " is no longer available.");
+            }
+            for (Member m : members) {
+                if (m.playerId == playerId) {
+                    members.remove(m);
+                    m.room = null;
+                    m.connection.close();
+                }
+            }
+            member.playerId = playerId;
+            member.room = this;
+            member.spectator = false;
+            members.add(member);
+            playerCount = null;
+        }
+        if (!sendCatchUp(member, playerId, lastSeq)) {
+            throw new IllegalStateException("State of room " + id + " is no longer available.");
+        }
+    }
+
+    /**
+     * Checks whether a client can be sent what it has missed after a sequence number.
+     *
+     * @param lastSeq the last sequence number the client has received, or -1
+     * @return true if the relayed messages after {@code lastSeq} or the whole state are available
+     */
+    private boolean canCatchUp(int lastSeq) {
+        return authoritative || !historyTruncated || (lastSeq >= seq - history.size() && lastSeq <= seq);
+    }
+
+    /**
+     * Sends a client a {@code resumed} message and either the relayed messages after {@code lastSeq}
+     * or the whole state, whichever is smaller, and the player count. These are queued regardless of
+     * the outbound limit, as a client that has missed messages is often a slow one. The whole state is
+     * the initial message with a {@code snapshot} of all boards in an authoritative room, or with every
+     * relayed message otherwise.
+     *
+     * @param member   the client
+     * @param playerId the client's player ID, 0 for a spectator
+     * @param lastSeq  the last sequence number the client has received, or -1 if it has no state
+     * @return false if neither is available
+     */
+    private boolean sendCatchUp(Member member, int playerId, int lastSeq) {
+        int firstSeq = seq - history.size() + 1;
+        long deltaBytes = Long.MAX_VALUE;
+        if (lastSeq >= firstSeq - 1 && lastSeq <= seq) {
+            deltaBytes = 0;
+            int s = firstSeq;
+            for (OutboundMessage message : history) {
+                if (s++ > lastSeq) deltaBytes += message.size(member.protocol);
+            }
+        }
+        OutboundMessage snapshot = authoritative ? snapshotMessage() : null;
+        long fullBytes = Long.MAX_VALUE;
+        if (snapshot != null) {
+            fullBytes = initMessage(playerId).size(member.protocol) + snapshot.size(member.protocol);
+        } else if (!historyTruncated) {
+            fullBytes = initMessage(playerId).size(member.protocol);
+            for (OutboundMessage message : history) fullBytes += message.size(member.protocol);
+        }
+        if (deltaBytes == Long.MAX_VALUE && fullBytes == Long.MAX_VALUE) {
+            return false;
+        }
+        boolean delta = deltaBytes <= fullBytes;
+        member.connection.sendUnlimited(() -> sendResumed(member, playerId, lastSeq, delta, firstSeq, snapshot));
+        return true;
+    }
+
+
+    /**
+     * Sends a resuming member the messages it has missed or the whole state.
+     *
+     * @param member   the resuming member
+     * @param playerId the player ID of the session
+     * @param lastSeq  the last sequence number the client has received
+     * @param delta    true to send the relayed messages after {@code lastSeq}
+     * @param firstSeq the sequence number of the oldest message in the history
+     * @param snapshot the snapshot of an authoritative room, or {@code null}
+     */
+    private void sendResumed(Member member, int playerId, int lastSeq, boolean delta, int firstSeq,
+                             OutboundMessage snapshot) {
+        String mode = delta ? "delta" : snapshot != null ? "snapshot" : "replay";
+        int after = delta ? lastSeq : snapshot != null ? seq : 0;
+        member.send("{\"type\":\"resumed\",\"roomId\":" + new JsonPrimitive(id) + ",\"playerId\":" + playerId
+                + ",\"mode\":\"" + mode + "\",\"after\":" + after + "}");
+        if (!delta) {
+            member.send(initMessage(playerId));
+        }
+        if (snapshot != null && !delta) {
+            member.send(snapshot);
+        } else {
+            int s = firstSeq;
+            for (OutboundMessage message : history) {
+                if (s++ > after) member.send(message);
+            }
+        }
+        member.send(playerCountMessage());
+    }
+
+    /**
+     * Finds the player of a session token, comparing in constant time.
+     *
+     * @param token the session token
+     * @return the player ID, or 0 if the token is not a valid session
+     */
+    private int sessionOwner(String token) {
+        byte[] given = token.getBytes(StandardCharsets.UTF_8);
+        int owner = 0;
+        for (int i = 1; i <= MAX_PLAYERS; i++) {
+            if (sessions[i] != null && MessageDigest.isEqual(sessions[i].getBytes(StandardCharsets.UTF_8), given)) {
+                owner = i;
+            }
+        }
+        return owner;
+    }
+
+    /**
+     * Describes the state of an authoritative room: every player's undo and redo history.
+     *
+     * @return message of type {@code snapshot}
+     */
+    private OutboundMessage snapshotMessage() {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "snapshot");
+        msg.addProperty("started", started);
+        msg.addProperty("winnerId", winnerId);
+        JsonArray players = new JsonArray();
+        for (int i = 1; i <= MAX_PLAYERS; i++) {
+            if (boards[i] == null) continue;
+            JsonObject player = new JsonObject();
+            player.addProperty("playerId", i);
+            player.add("undo", positions(boards[i].getUndoHistory()));
+            player.add("redo", positions(boards[i].getRedoHistory()));
+            players.add(player);
+        }
+        msg.add("players", players);
+        return OutboundMessage.ofJson(msg.toString());
+    }
+
+    private static JsonArray positions(List<Position> moves) {
+        JsonArray arr = new JsonArray();
+        for (Position p : moves) {
+            JsonArray pos = new JsonArray();
+            pos.add(p.getRow());
+            pos.add(p.getCol());
+            arr.add(pos);
+        }
+        return arr;
+    }
+
+    /**
+     * Sends a member the state of the room again after its queued messages were discarded:
+     * a {@code resync} marker, the initial message, every relayed message and the player count.
+     *
+     * @param member the member to resynchronize
+     * @return false if the history is incomplete and the member cannot be resynchronized
+     */
+    synchronized boolean resync(Member member) {
+        if (member.room != this) return true;
+        if (historyTruncated) return false;
+        member.send("{\"type\":\"resync\"}");
+        member.send(initMessage(member.playerId));
+        for (OutboundMessage message : history) {
+            member.send(message);
+        }
+        member.send(playerCountMessage());
+        return true;
+    }
+
+    /**
+     * Returns the initial message sent to a member after joining. The message is encoded once per
+     * player ID and shared by everyone who joins with that ID.
+     *
+     * @param playerId the ID assigned to the member
+     * @return message with room ID, player ID and initial game state
+     */
+    synchronized OutboundMessage initMessage(int playerId) {
+        OutboundMessage message = initMessages[playerId];
+        if (message == null) {
+            // The game JSON is already compact, so it is inserted as text rather than parsed again
+            message = OutboundMessage.ofJson("{\"type\":\"init\",\"roomId\":" + new JsonPrimitive(id)
+                    + ",\"playerId\":" + playerId + ",\"gameJson\":" + gameJson + "}");
+            initMessages[playerId] = message;
+        }
+        return message;
+    }
+
+    /**
+     * Returns the current player count and the players' IDs. The message is encoded once for
+     * each change of the members and shared by all recipients.
+     *
+     * @return message with type, count, and player IDs
+     */
+    synchronized OutboundMessage playerCountMessage() {
+        if (playerCount == null) {
+            playerCount = OutboundMessage.ofJson(buildPlayerCountMessage().toString());
+        }
+        return playerCount;
+    }
+
+    /**
+     * Constructs a JSON object containing the current player count and their IDs.
+     *
+     * @return JSON object with type, count, and player IDs
+     */
+    private JsonObject buildPlayerCountMessage() {
+        JsonObject resp = new JsonObject();
+        resp.addProperty("type", "player_count_response");
+
+        List<Integer> ids = members.stream()
+                .map(m -> m.playerId)
+                .toList();
+
+        resp.addProperty("count", ids.size());
+
+        JsonArray arr = new JsonArray();
+        for (int pid : ids) arr.add(pid);
+        resp.add("playerIds", arr);
+
+        return resp;
+    }
+
+    /**
+     * Describes the room for the lobby's room list.
+     *
+     * @return JSON object with room ID, difficulty, player count and state
+     */
+    JsonObject info() {
+        JsonObject obj = new JsonObject();
+        obj.addProperty("roomId", id);
+        obj.addProperty("difficulty", difficulty);
+        obj.addProperty("players", members.size());
+        obj.addProperty("maxPlayers", MAX_PLAYERS);
+        obj.addProperty("spectators", spectators.size());
+        obj.addProperty("started", started);
+        return obj;
+    }
+}
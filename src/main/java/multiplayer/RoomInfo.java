@@ -0,0 +1,83 @@
+package multiplayer;
+
+/**
+ * Entry of the room list received from the server's lobby.
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public class RoomInfo {
+    private final String roomId;
+    private final int difficulty;
+    private final int players;
+    private final int maxPlayers;
+    private final int spectators;
+    private final boolean started;
+
+    /**
+     * Creates a room list entry.
+     *
+     * @param roomId     the room ID
+     * @param difficulty the board size
+     * @param players    the number of players in the room
+     * @param maxPlayers the player limit of the room
+     * @param spectators the number of spectators watching the room
+     * @param started    whether the match has started
+     */
+    public RoomInfo(String roomId, int difficulty, int players, int maxPlayers, int spectators, boolean started) {
+        this.roomId = roomId;
+        this.difficulty = difficulty;
+        this.players = players;
+        this.maxPlayers = maxPlayers;
+        this.spectators = spectators;
+        this.started = started;
+    }
+
+    /**
+     * Returns the room ID to join.
+     *
+     * @return the room ID
+     */
+    public String getRoomId() { return roomId; }
+
+    /**
+     * Returns the board size of the room.
+     *
+     * @return the difficulty
+     */
+    public int getDifficulty() { return difficulty; }
+
+    /**
+     * Returns the number of players in the room.
+     *
+     * @return the player count
+     */
+    public int getPlayers() { return players; }
+
+    /**
+     * Returns the player limit of the room.
+     *
+     * @return the maximum number of players
+     */
+    public int getMaxPlayers() { return maxPlayers; }
+
+    /**
+     * Returns the number of spectators watching the room; any room can be watched.
+     *
+     * @return the spectator count
+     */
+    public int getSpectators() { return spectators; }
+
+    /**
+     * Returns whether the match has started; started rooms cannot be joined.
+     *
+     * @return true if started
+     */
+    public boolean isStarted() { return started; }
+
+    /**
+     * Returns whether the room can be joined.
+     *
+     * @return true if the match has not started and there is a free player slot
+     */
+    public boolean isJoinable() { return !started && players < maxPlayers; }
+}
@@ -0,0 +1,322 @@
+package multiplayer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Non-blocking transport built on {@link Selector}.
+ * <p>
+ * The thread calling {@link #serve(ConnectionHandler)} accepts clients and hands them out round-robin
+ * to a few event-loop threads. Each loop owns a selector and one direct read buffer shared by all its
+ * connections; messages are framed in place in that buffer, so a connection only holds memory for
+ * a partially received message or for output the client has not read yet.
+ * </p>
+ *
+ * <p>
+ * A send writes directly to the channel when nothing is queued. Whatever the socket does not take is
+ * queued, up to the outbound limit, and written by the event loop once the channel becomes writable;
+ * messages that queued up meanwhile are coalesced into one gathering write. A deferred send only
+ * queues the message, and the connection's event loop writes it, so a message sent to many connections
+ * is written by all loops in parallel rather than by the sending thread.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+class SelectorTransport implements Transport {
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final int BACKLOG = 4096;
+    private static final int MAX_GATHER = 64;
+
+    private final EventLoop[] loops;
+    private final Set<NioConnection> connections = ConcurrentHashMap.newKeySet();
+    private final OutboundLimit limit = new OutboundLimit();
+    private final OutboundMetrics metrics = new OutboundMetrics();
+    private ServerSocketChannel serverChannel;
+    private volatile boolean closed;
+
+    /**
+     * Creates a transport with one event loop per processor, at most four.
+     */
+    SelectorTransport() {
+        this(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())));
+    }
+
+    /**
+     * Creates a transport with the given number of event loops.
+     *
+     * @param loopCount the number of event-loop threads
+     */
+    SelectorTransport(int loopCount) {
+        this.loops = new EventLoop[loopCount];
+    }
+
+    @Override
+    public void bind(int port) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), BACKLOG);
+    }
+
+    @Override
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void serve(ConnectionHandler handler) throws IOException {
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(handler, i);
+            loops[i].thread.start();
+        }
+        int next = 0;
+        try {
+            while (!closed) {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            }
+        } catch (ClosedChannelException e) {
+            if (!closed) throw e;
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void setOutboundLimit(int maxQueuedBytes, SlowConsumerPolicy policy) {
+        limit.set(maxQueuedBytes, policy);
+    }
+
+    @Override
+    public OutboundMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            if (serverChannel != null) serverChannel.close();
+        } catch (IOException ignored) {}
+        for (EventLoop loop : loops) {
+            if (loop != null) loop.selector.wakeup();
+        }
+        for (NioConnection connection : connections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Thread multiplexing the connections assigned to it.
+     */
+    private class EventLoop implements Runnable {
+        private final ConnectionHandler handler;
+        private final Selector selector;
+        private final Thread thread;
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        EventLoop(ConnectionHandler handler, int index) throws IOException {
+            this.handler = handler;
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "server-loop-" + index);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * Runs a task on the loop thread, e.g., a change of the interest set.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    NioConnection connection = new NioConnection(channel, this);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    connections.add(connection);
+                    handler.onOpen(connection);
+                } catch (IOException e) {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {}
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        NioConnection connection = (NioConnection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isWritable()) connection.flushQueued();
+                            if (key.isValid() && key.isReadable()) read(connection);
+                        } catch (IOException e) {
+                            connection.close();
+                        } catch (RuntimeException e) {
+                            if (!(e instanceof CancelledKeyException)) {
+                                System.out.println("SERVER: Closing connection after error: " + e);
+                            }
+                            connection.close();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("SERVER: Event loop failed: " + e.getMessage());
+            } finally {
+                try {
+                    selector.close();
+                } catch (IOException ignored) {}
+            }
+        }
+
+        private void read(NioConnection connection) throws IOException {
+            readBuffer.clear();
+            int n = connection.channel.read(readBuffer);
+            if (n < 0) {
+                connection.close();
+                return;
+            }
+            readBuffer.flip();
+            connection.received(readBuffer);
+        }
+    }
+
+    /**
+     * Non-blocking connection owned by one event loop.
+     */
+    private class NioConnection extends AbstractConnection {
+        private final SocketChannel channel;
+        private final EventLoop loop;
+        private volatile SelectionKey key;
+
+        NioConnection(SocketChannel channel, EventLoop loop) {
+            super(loop.handler, limit, SelectorTransport.this.metrics);
+            this.channel = channel;
+            this.loop = loop;
+        }
+
+        @Override
+        protected boolean offer(ByteBuffer data) {
+            if (!queue.isEmpty()) {
+                return super.offer(data);
+            }
+            int start = data.position();
+            int size = data.remaining();
+            int written;
+            try {
+                written = channel.write(data);
+            } catch (IOException e) {
+                return false;
+            }
+            metrics.flushed();
+            if (written == size) {
+                metrics.queued(size, size);
+                metrics.written(size);
+                return true;
+            }
+            // The whole message is kept, so the queue knows it has been partly written
+            ByteBuffer message = own(data.position(start));
+            enqueue(message.position(written));
+            return true;
+        }
+
+        /**
+         * Writes queued output; called by the event loop when the channel is writable or output has been queued.
+         * Up to {@link #MAX_GATHER} queued messages are passed to the socket in one gathering write.
+         * If the socket does not take everything, the rest is written once the channel becomes writable.
+         */
+        void flushQueued() throws IOException {
+            synchronized (this) {
+                while (!queue.isEmpty()) {
+                    ByteBuffer[] batch = new ByteBuffer[Math.min(queue.size(), MAX_GATHER)];
+                    Iterator<ByteBuffer> it = queue.iterator();
+                    for (int i = 0; i < batch.length; i++) {
+                        batch[i] = it.next();
+                    }
+                    long written = channel.write(batch);
+                    metrics.flushed();
+                    metrics.written(written);
+                    dequeued(written);
+                    while (!queue.isEmpty() && !queue.peek().hasRemaining()) {
+                        queue.poll();
+                    }
+                    if (batch[batch.length - 1].hasRemaining()) {
+                        setWriteInterest(true);
+                        return;
+                    }
+                }
+            }
+            setWriteInterest(false);
+        }
+
+        @Override
+        protected void notifyWriter() {
+            loop.execute(this::writeQueued);
+        }
+
+        private void writeQueued() {
+            try {
+                flushQueued();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void setWriteInterest(boolean enabled) {
+            SelectionKey k = key;
+            if (k == null || !k.isValid()) return;
+            synchronized (this) {
+                if (enabled == queue.isEmpty()) return;
+            }
+            k.interestOps(enabled ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        @Override
+        protected void fail() {
+            loop.execute(this::close);
+        }
+
+        @Override
+        protected void closeSocket() {
+            SelectionKey k = key;
+            if (k != null) k.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+            connections.remove(this);
+        }
+
+        @Override
+        public SocketAddress getRemoteAddress() {
+            try {
+                return channel.getRemoteAddress();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
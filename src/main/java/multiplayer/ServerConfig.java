@@ -0,0 +1,341 @@
+package multiplayer;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of a {@link GameServer}.
+ * <p>
+ * The limits of rooms, the outbound queues and the board pool, the ping and idle timeouts, the adjudication
+ * and matchmaking windows, recording and the rate limits. Settings of rooms and matches take effect for rooms
+ * created afterwards, all others when the server is started.
+ * </p>
+ *
+ * <p>
+ * The defaults can be changed by the system properties {@code lightbulb.room.idleSeconds},
+ * {@code lightbulb.server.maxRooms}, {@code lightbulb.server.maxQueuedBytes}, {@code lightbulb.server.slowConsumer},
+ * {@code lightbulb.server.authoritative}, {@code lightbulb.server.pingSeconds},
+ * {@code lightbulb.server.readIdleSeconds}, {@code lightbulb.server.writeIdleSeconds},
+ * {@code lightbulb.server.winWindowMillis}, {@code lightbulb.server.matchWaitMillis},
+ * {@code lightbulb.server.pooledBoards}, {@code lightbulb.server.recordingDir},
+ * {@code lightbulb.server.rateLimit}, {@code lightbulb.server.rateLimit.<type>} and
+ * {@code lightbulb.server.floodPolicy}.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public class ServerConfig {
+    private volatile long roomIdleMillis = TimeUnit.MINUTES.toMillis(5);
+    private volatile int maxRooms = 10_000;
+    private volatile int maxQueuedBytes = OutboundLimit.DEFAULT_MAX_QUEUED_BYTES;
+    private volatile SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.RESYNC;
+    private volatile boolean authoritative;
+    private volatile long pingMillis = TimeUnit.SECONDS.toMillis(10);
+    private volatile long readIdleMillis = TimeUnit.SECONDS.toMillis(30);
+    private volatile long writeIdleMillis = TimeUnit.SECONDS.toMillis(30);
+    private volatile long winWindowMillis = 200;
+    private volatile long matchWaitMillis = 5000;
+    private volatile int pooledBoards = 2;
+    private volatile Path recordingDirectory;
+    private volatile RateLimiter.Rate connectionRate;
+    private final Map<String, RateLimiter.Rate> typeRates = new ConcurrentHashMap<>();
+    private volatile FloodPolicy floodPolicy = FloodPolicy.DELAY;
+
+    /**
+     * Creates a configuration with the default settings.
+     */
+    public ServerConfig() {
+    }
+
+    /**
+     * Creates a configuration with the defaults overridden by the {@code lightbulb.*} system properties.
+     *
+     * @return the configuration
+     */
+    public static ServerConfig fromSystemProperties() {
+        ServerConfig c = new ServerConfig();
+        c.setRoomIdleTimeoutMillis(TimeUnit.SECONDS.toMillis(
+                Long.getLong("lightbulb.room.idleSeconds", TimeUnit.MILLISECONDS.toSeconds(c.roomIdleMillis))));
+        c.setMaxRooms(Integer.getInteger("lightbulb.server.maxRooms", c.maxRooms));
+        c.setMaxQueuedBytes(Integer.getInteger("lightbulb.server.maxQueuedBytes", c.maxQueuedBytes));
+        c.setSlowConsumerPolicy(SlowConsumerPolicy.fromSystemProperties());
+        c.setAuthoritative(Boolean.getBoolean("lightbulb.server.authoritative"));
+        c.setPingIntervalMillis(TimeUnit.SECONDS.toMillis(
+                Long.getLong("lightbulb.server.pingSeconds", TimeUnit.MILLISECONDS.toSeconds(c.pingMillis))));
+        c.setReadIdleTimeoutMillis(TimeUnit.SECONDS.toMillis(
+                Long.getLong("lightbulb.server.readIdleSeconds", TimeUnit.MILLISECONDS.toSeconds(c.readIdleMillis))));
+        c.setWriteIdleTimeoutMillis(TimeUnit.SECONDS.toMillis(
+                Long.getLong("lightbulb.server.writeIdleSeconds", TimeUnit.MILLISECONDS.toSeconds(c.writeIdleMillis))));
+        c.setWinWindowMillis(Long.getLong("lightbulb.server.winWindowMillis", c.winWindowMillis));
+        c.setMatchTargetWaitMillis(Long.getLong("lightbulb.server.matchWaitMillis", c.matchWaitMillis));
+        c.setPooledBoards(Integer.getInteger("lightbulb.server.pooledBoards", c.pooledBoards));
+        String recordingDir = System.getProperty("lightbulb.server.recordingDir");
+        if (recordingDir != null) {
+            c.setRecordingDirectory(Paths.get(recordingDir));
+        }
+        c.connectionRate = RateLimiter.connectionRateFromSystemProperties();
+        c.typeRates.putAll(RateLimiter.typeRatesFromSystemProperties());
+        c.setFloodPolicy(FloodPolicy.fromSystemProperties());
+        return c;
+    }
+
+    /**
+     * Returns how long a room may stay empty before it is closed.
+     *
+     * @return the idle timeout in milliseconds
+     */
+    public long getRoomIdleTimeoutMillis() { return roomIdleMillis; }
+
+    /**
+     * Sets how long a room may stay empty before it is closed. The default room is never closed.
+     *
+     * @param millis the idle timeout
+     */
+    public void setRoomIdleTimeoutMillis(long millis) {
+        this.roomIdleMillis = requirePositive(millis);
+    }
+
+    /**
+     * Returns the maximum number of open rooms.
+     *
+     * @return the room limit
+     */
+    public int getMaxRooms() { return maxRooms; }
+
+    /**
+     * Sets the maximum number of open rooms.
+     *
+     * @param maxRooms the room limit
+     */
+    public void setMaxRooms(int maxRooms) {
+        this.maxRooms = (int) requirePositive(maxRooms);
+    }
+
+    /**
+     * Returns how many bytes may be queued for a client that reads slower than the server sends.
+     *
+     * @return the limit per client in bytes
+     */
+    public int getMaxQueuedBytes() { return maxQueuedBytes; }
+
+    /**
+     * Sets how many bytes may be queued for a client that reads slower than the server sends.
+     *
+     * @param maxQueuedBytes the limit per client in bytes
+     */
+    public void setMaxQueuedBytes(int maxQueuedBytes) {
+        this.maxQueuedBytes = (int) requirePositive(maxQueuedBytes);
+    }
+
+    /**
+     * Returns what happens when the queue of a slow client is full.
+     *
+     * @return the slow-consumer policy
+     */
+    public SlowConsumerPolicy getSlowConsumerPolicy() { return slowConsumerPolicy; }
+
+    /**
+     * Sets what happens when the queue of a slow client is full.
+     *
+     * @param policy the slow-consumer policy
+     */
+    public void setSlowConsumerPolicy(SlowConsumerPolicy policy) {
+        this.slowConsumerPolicy = Objects.requireNonNull(policy);
+    }
+
+    /**
+     * Returns whether rooms keep the players' boards, validate their moves and decide the winner.
+     *
+     * @return true if the server validates moves
+     */
+    public boolean isAuthoritative() { return authoritative; }
+
+    /**
+     * Sets whether rooms keep the players' boards, validate their moves and decide the winner.
+     *
+     * @param authoritative true for authoritative rooms, false to relay moves unchecked
+     */
+    public void setAuthoritative(boolean authoritative) {
+        this.authoritative = authoritative;
+    }
+
+    /**
+     * Returns how often clients are pinged.
+     *
+     * @return the ping interval in milliseconds
+     */
+    public long getPingIntervalMillis() { return pingMillis; }
+
+    /**
+     * Sets how often clients are pinged.
+     *
+     * @param millis the ping interval
+     */
+    public void setPingIntervalMillis(long millis) {
+        this.pingMillis = requirePositive(millis);
+    }
+
+    /**
+     * Returns how long a client may send nothing, not even a pong, before it is disconnected.
+     *
+     * @return the read idle timeout in milliseconds
+     */
+    public long getReadIdleTimeoutMillis() { return readIdleMillis; }
+
+    /**
+     * Sets how long a client may send nothing, not even a pong, before it is disconnected.
+     * Must be longer than the ping interval.
+     *
+     * @param millis the read idle timeout
+     */
+    public void setReadIdleTimeoutMillis(long millis) {
+        this.readIdleMillis = requirePositive(millis);
+    }
+
+    /**
+     * Returns how long messages queued for a client may wait without any of them being written.
+     *
+     * @return the write idle timeout in milliseconds
+     */
+    public long getWriteIdleTimeoutMillis() { return writeIdleMillis; }
+
+    /**
+     * Sets how long messages queued for a client may wait without any of them being written before
+     * the client is disconnected.
+     *
+     * @param millis the write idle timeout
+     */
+    public void setWriteIdleTimeoutMillis(long millis) {
+        this.writeIdleMillis = requirePositive(millis);
+    }
+
+    /**
+     * Returns how long after the first player finishes others may still win by having finished earlier.
+     *
+     * @return the win window in milliseconds
+     */
+    public long getWinWindowMillis() { return winWindowMillis; }
+
+    /**
+     * Sets how long after the first player finishes others may still win by having finished earlier,
+     * e.g., over a slower network.
+     *
+     * @param millis the win window, or 0 to announce the first win that is received
+     */
+    public void setWinWindowMillis(long millis) {
+        if (millis < 0) throw new IllegalArgumentException("Window must not be negative.");
+        this.winWindowMillis = millis;
+    }
+
+    /**
+     * Returns how long a player looking for a match waits for a full room of its board size.
+     *
+     * @return the target wait in milliseconds
+     */
+    public long getMatchTargetWaitMillis() { return matchWaitMillis; }
+
+    /**
+     * Sets how long a player looking for a match waits for a full room of its board size before it is matched
+     * with fewer players or players of nearby sizes.
+     *
+     * @param millis the target wait
+     */
+    public void setMatchTargetWaitMillis(long millis) {
+        this.matchWaitMillis = requirePositive(millis);
+    }
+
+    /**
+     * Returns how many boards of every size asked for are generated ahead of time.
+     *
+     * @return the boards per size
+     */
+    public int getPooledBoards() { return pooledBoards; }
+
+    /**
+     * Sets how many boards of every size asked for are generated ahead of time.
+     *
+     * @param count the boards per size, or 0 to generate a board only when a room or a match needs one
+     */
+    public void setPooledBoards(int count) {
+        if (count < 0) throw new IllegalArgumentException("Count must not be negative.");
+        this.pooledBoards = count;
+    }
+
+    /**
+     * Returns the directory every room is recorded to.
+     *
+     * @return the directory of the match files, or {@code null} if nothing is recorded
+     */
+    public Path getRecordingDirectory() { return recordingDirectory; }
+
+    /**
+     * Sets the directory every room is recorded to, see {@link MatchReplay}.
+     *
+     * @param directory the directory of the match files, or {@code null} to record nothing
+     */
+    public void setRecordingDirectory(Path directory) {
+        this.recordingDirectory = directory;
+    }
+
+    /**
+     * Limits how many messages of any type each client may send.
+     *
+     * @param perSecond the sustained rate
+     * @param burst     how many messages may be sent at once
+     */
+    public void setRateLimit(double perSecond, int burst) {
+        this.connectionRate = new RateLimiter.Rate(perSecond, burst);
+    }
+
+    /**
+     * Limits how many messages of a type each client may send.
+     *
+     * @param type      the message type, e.g., {@code turn} or {@code player_count}
+     * @param perSecond the sustained rate
+     * @param burst     how many messages of the type may be sent at once
+     */
+    public void setRateLimit(String type, double perSecond, int burst) {
+        typeRates.put(type, new RateLimiter.Rate(perSecond, burst));
+    }
+
+    /**
+     * Returns the rate of all messages of a client.
+     *
+     * @return the rate, or {@code null} if it is not limited
+     */
+    RateLimiter.Rate getConnectionRate() { return connectionRate; }
+
+    /**
+     * Returns the rates of the limited message types.
+     *
+     * @return a copy of the rates by message type
+     */
+    Map<String, RateLimiter.Rate> getTypeRates() { return Map.copyOf(typeRates); }
+
+    /**
+     * Returns what happens to a message beyond a client's rate limits.
+     *
+     * @return the penalty
+     */
+    public FloodPolicy getFloodPolicy() { return floodPolicy; }
+
+    /**
+     * Sets what happens to a message beyond a client's rate limits.
+     *
+     * @param policy the penalty
+     */
+    public void setFloodPolicy(FloodPolicy policy) {
+        this.floodPolicy = Objects.requireNonNull(policy);
+    }
+
+    private static long requirePositive(long value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("Value must be positive.");
+        }
+        return value;
+    }
+}
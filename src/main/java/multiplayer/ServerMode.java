@@ -0,0 +1,39 @@
+package multiplayer;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Network model of the {@link GameServer}.
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public enum ServerMode {
+    /** One blocking platform thread per connected client. */
+    BLOCKING,
+    /** One blocking virtual thread per connected client. */
+    VIRTUAL,
+    /** A few non-blocking event loops multiplexing all clients with a selector. */
+    SELECTOR;
+
+    /**
+     * Returns the mode set by the {@code lightbulb.server.mode} system property.
+     *
+     * @return the configured mode, {@link #BLOCKING} by default
+     */
+    public static ServerMode fromSystemProperties() {
+        return valueOf(System.getProperty("lightbulb.server.mode", BLOCKING.name()).trim().toUpperCase());
+    }
+
+    /**
+     * Creates the transport implementing this mode.
+     *
+     * @return a new unbound transport
+     */
+    Transport createTransport() {
+        return switch (this) {
+            case BLOCKING -> new BlockingTransport(Executors.newCachedThreadPool());
+            case VIRTUAL -> new BlockingTransport(Executors.newVirtualThreadPerTaskExecutor());
+            case SELECTOR -> new SelectorTransport();
+        };
+    }
+}
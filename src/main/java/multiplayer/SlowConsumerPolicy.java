@@ -0,0 +1,28 @@
+package multiplayer;
+
+/**
+ * What the server does when a client does not read its messages fast enough and its
+ * outbound queue is full.
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public enum SlowConsumerPolicy {
+    /** The new message is dropped; the client misses it. */
+    DROP,
+    /** The client is disconnected. */
+    DISCONNECT,
+    /**
+     * The queued messages are discarded and the handler sends the client a fresh state instead.
+     * The client is disconnected if it overflows again before it has read that state.
+     */
+    RESYNC;
+
+    /**
+     * Returns the policy set by the {@code lightbulb.server.slowConsumer} system property.
+     *
+     * @return the configured policy, {@link #RESYNC} by default
+     */
+    public static SlowConsumerPolicy fromSystemProperties() {
+        return valueOf(System.getProperty("lightbulb.server.slowConsumer", RESYNC.name()).trim().toUpperCase());
+    }
+}
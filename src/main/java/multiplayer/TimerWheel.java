@@ -0,0 +1,165 @@
+package multiplayer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel for the many short timers of the connections, e.g., heartbeats.
+ * <p>
+ * Scheduling and cancelling take constant time and no lock: a new timer is handed to the wheel's thread,
+ * which puts it into the bucket of its deadline tick, and a cancelled timer is only marked and dropped when
+ * its bucket comes round. Every tick the thread runs the due timers of one bucket, so timers fire up to one
+ * tick late. Timers further away than one revolution stay in their bucket until their round comes.
+ * </p>
+ * <p>
+ * The tasks run on the wheel's thread and must not block.
+ * </p>
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+final class TimerWheel implements AutoCloseable {
+    private final long tickNanos;
+    private final List<ArrayDeque<Timeout>> buckets;
+    private final int mask;
+    private final long startTime = System.nanoTime();
+    /** Timers scheduled since the last tick. */
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean closed;
+    /** The tick being processed. Accessed by the wheel's thread only. */
+    private long tick;
+
+    /**
+     * A scheduled task.
+     */
+    static final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the task if it has not run yet.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * Creates and starts a wheel.
+     *
+     * @param tick       the resolution of the timers
+     * @param unit       the unit of the tick
+     * @param wheelSize  the number of buckets, rounded up to a power of two
+     * @param threadName the name of the wheel's thread
+     */
+    TimerWheel(long tick, TimeUnit unit, int wheelSize, String threadName) {
+        if (tick <= 0 || wheelSize <= 0) throw new IllegalArgumentException("Tick and wheel size must be positive.");
+        this.tickNanos = unit.toNanos(tick);
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) buckets.add(new ArrayDeque<>());
+        this.mask = size - 1;
+        this.thread = new Thread(this::run, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Runs the task once after the delay.
+     *
+     * @param task  the task, run on the wheel's thread
+     * @param delay the delay
+     * @param unit  the unit of the delay
+     * @return the timer, to cancel it
+     */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + Math.max(0, unit.toNanos(delay)));
+        added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Returns the number of timers that have not run or been dropped yet.
+     *
+     * @return the pending timers, including cancelled ones
+     */
+    int getPendingCount() {
+        int count = added.size();
+        synchronized (buckets) {
+            for (ArrayDeque<Timeout> bucket : buckets) count += bucket.size();
+        }
+        return count;
+    }
+
+    private void run() {
+        while (!closed) {
+            long wait = startTime + (tick + 1) * tickNanos - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            synchronized (buckets) {
+                transferAdded();
+                expire(buckets.get((int) (tick & mask)));
+            }
+            tick++;
+        }
+    }
+
+    /**
+     * Puts the newly scheduled timers into the buckets of their deadlines; overdue timers go into the current one.
+     */
+    private void transferAdded() {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.cancelled) continue;
+            long due = Math.max(tick, deadlineTick(timeout));
+            buckets.get((int) (due & mask)).add(timeout);
+        }
+    }
+
+    /**
+     * Runs the timers of the bucket that are due by the current tick and keeps those of later rounds.
+     *
+     * @param bucket the bucket of the current tick
+     */
+    private void expire(ArrayDeque<Timeout> bucket) {
+        for (int i = bucket.size(); i > 0; i--) {
+            Timeout timeout = bucket.poll();
+            if (timeout.cancelled) continue;
+            if (deadlineTick(timeout) > tick) {
+                bucket.add(timeout);
+                continue;
+            }
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private long deadlineTick(Timeout timeout) {
+        // The tick that ends at or after the deadline
+        return Math.max(0, (timeout.deadline - startTime + tickNanos - 1) / tickNanos - 1);
+    }
+
+    /**
+     * Stops the wheel; pending timers do not run.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+    }
+}
@@ -0,0 +1,55 @@
+package multiplayer;
+
+import java.io.IOException;
+
+/**
+ * Network layer of the {@link GameServer}: accepts clients and splits their input into messages.
+ *
+ * @author Andrii Bondarenko (xbonda06)
+ */
+public interface Transport {
+
+    /**
+     * Binds the server socket.
+     *
+     * @param port the TCP port, 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    void bind(int port) throws IOException;
+
+    /**
+     * Returns the port the transport is bound to.
+     *
+     * @return the local port
+     */
+    int getLocalPort();
+
+    /**
+     * Accepts and serves clients until the transport is closed. Blocks the calling thread.
+     *
+     * @param handler receives the connection events
+     * @throws IOException if accepting fails for a reason other than closing
+     */
+    void serve(ConnectionHandler handler) throws IOException;
+
+    /**
+     * Limits the bytes queued for each connection whose client reads slower than the server sends.
+     *
+     * @param maxQueuedBytes the limit per connection in bytes; a single larger message is still queued
+     *                       when the queue is empty
+     * @param policy         what happens to a message that does not fit
+     */
+    void setOutboundLimit(int maxQueuedBytes, SlowConsumerPolicy policy);
+
+    /**
+     * Returns the counters of the outbound queues of all connections.
+     *
+     * @return the outbound metrics
+     */
+    OutboundMetrics getMetrics();
+
+    /**
+     * Stops accepting clients and closes all connections.
+     */
+    void close();
+}
@@ -0,0 +1,64 @@
+package json;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveAnalyticsTest {
+
+    @TempDir
+    Path dir;
+
+    private void writeSave(int id, int size, int moves, boolean completed, int hints, long durationMillis)
+            throws IOException {
+        Files.writeString(dir.resolve(id + ".json"), """
+                {"moveNumber": %d, "timestamp": %d, "startedAt": 1000, "completed": %b, "hintsUsed": %d,
+                 "rows": %d, "cols": %d, "boardHash": "abc",
+                 "undoHistory": [{"row": 1, "col": 1}], "redoHistory": []}
+                """.formatted(moves, 1000 + durationMillis, completed, hints, size, size));
+    }
+
+    @Test
+    void aggregatesStatisticsPerBoardSize() throws IOException {
+        writeSave(1, 5, 10, true, 0, 60_000);
+        writeSave(2, 5, 20, true, 2, 120_000);
+        writeSave(3, 5, 40, false, 1, 0);
+        writeSave(4, 7, 30, true, 0, 30_000);
+        Files.writeString(dir.resolve("5.json"), "not json");
+        Files.writeString(dir.resolve("board_abc.json"), "{\"rows\": 5}");
+
+        AnalyticsReport report = ArchiveAnalytics.analyze(dir, 4);
+
+        assertEquals(5, report.getFilesRead());
+        assertEquals(1, report.getFailedFiles());
+        AnalyticsReport.SizeStats five = report.getBySize().get("5x5");
+        assertEquals(3, five.getGames());
+        assertEquals(15.0, five.getAverageMovesToWin(), 1e-9);
+        assertEquals(2.0 / 3, five.getHintUsageRate(), 1e-9);
+        assertEquals(60.0, five.getAverageDurationSeconds(), 1e-9);
+        assertEquals(1, report.getBySize().get("7x7").getCompleted());
+    }
+
+    @Test
+    void parallelRun_matchesSingleThreadedRun() throws IOException {
+        for (int id = 1; id <= 3_000; id++) {
+            writeSave(id, 4 + id % 5, id % 50, id % 3 == 0, id % 4, id);
+        }
+
+        AnalyticsReport single = ArchiveAnalytics.analyze(dir, 1);
+        AnalyticsReport parallel = ArchiveAnalytics.analyze(dir, Runtime.getRuntime().availableProcessors());
+
+        assertEquals(3_000, parallel.getFilesRead());
+        assertEquals(single.getBySize().keySet(), parallel.getBySize().keySet());
+        for (String size : single.getBySize().keySet()) {
+            AnalyticsReport.SizeStats a = single.getBySize().get(size);
+            AnalyticsReport.SizeStats b = parallel.getBySize().get(size);
+            assertEquals(a.getGames(), b.getGames());
+            assertEquals(a.getAverageMoves(), b.getAverageMoves(), 1e-9);
+            assertEquals(a.getAverageHints(), b.getAverageHints(), 1e-9);
+        }
+    }
+}
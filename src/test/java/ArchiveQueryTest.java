@@ -0,0 +1,122 @@
+package json;
+
+import common.Position;
+import common.Side;
+import game.Game;
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveQueryTest {
+
+    private static final Path DATA_DIR = Paths.get("data");
+
+    @BeforeEach
+    void setUp() throws IOException {
+        if (Files.exists(DATA_DIR)) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(DATA_DIR)) {
+                for (Path p : ds) Files.delete(p);
+            }
+        } else {
+            Files.createDirectories(DATA_DIR);
+        }
+    }
+
+    private static void writeSave(int id, long timestamp, long startedAt, int size, int moves, boolean completed)
+            throws IOException {
+        Files.writeString(DATA_DIR.resolve(id + ".json"), """
+                {"moveNumber": %d, "timestamp": %d, "startedAt": %d, "completed": %b,
+                 "rows": %d, "cols": %d, "initialNodes": [], "undoHistory": [], "redoHistory": []}
+                """.formatted(moves, timestamp, startedAt, completed, size, size));
+    }
+
+    private static List<Integer> ids(ArchivePage page) {
+        return page.getEntries().stream().map(ArchiveEntry::getId).toList();
+    }
+
+    @Test
+    void filtersBySizeCompletionAndDateRange() throws IOException {
+        writeSave(1, 1_000, 500, 5, 10, true);
+        writeSave(2, 2_000, 1_000, 5, 30, false);
+        writeSave(3, 3_000, 1_000, 7, 20, true);
+        writeSave(4, 4_000, 4_000, 5, 5, true);
+        GameArchive.syncIndex();
+
+        assertEquals(List.of(4, 1), ids(GameArchive.query(ArchiveQuery.all().boardSize(5, 5).completed(true))));
+        assertEquals(List.of(3, 2), ids(GameArchive.query(ArchiveQuery.all().savedBetween(2_000, 4_000))));
+        assertEquals(List.of(3, 1), ids(GameArchive.query(ArchiveQuery.all().moves(10, 20)
+                .sortBy(ArchiveQuery.SortKey.MOVES, true))));
+        assertEquals(List.of(3), ids(GameArchive.query(ArchiveQuery.all().duration(1_500, 10_000))));
+    }
+
+    @Test
+    void pagesThroughSortedResult() throws IOException {
+        for (int id = 1; id <= 5; id++) {
+            writeSave(id, id * 1_000L, 0, 4, id, false);
+        }
+        GameArchive.syncIndex();
+
+        ArchiveQuery q = ArchiveQuery.all().sortBy(ArchiveQuery.SortKey.ID, false);
+        ArchivePage first = GameArchive.query(q.page(0, 2));
+        ArchivePage last = GameArchive.query(q.page(4, 2));
+
+        assertEquals(List.of(1, 2), ids(first));
+        assertEquals(5, first.getTotalMatches());
+        assertTrue(first.hasMore());
+        assertEquals(List.of(5), ids(last));
+        assertFalse(last.hasMore());
+    }
+
+    @Test
+    void serializerAndDelete_keepIndexUpToDate() throws IOException {
+        Game game = Game.create(1, 2);
+        game.createPowerNode(new Position(1, 1), Side.EAST);
+        game.createBulbNode(new Position(1, 2), Side.WEST);
+        game.init();
+        game.randomizeRotations();
+
+        List<ArchiveEntry> saved = GameArchive.query(ArchiveQuery.all().boardSize(1, 2)).getEntries();
+        assertEquals(1, saved.size());
+        int id = saved.getFirst().getId();
+        assertTrue(Files.exists(DATA_DIR.resolve(id + ".json")));
+
+        GameArchive.delete(id);
+        assertEquals(0, GameArchive.query(ArchiveQuery.all()).getTotalMatches());
+    }
+
+    @Test
+    void indexIsRebuiltWhenLogIsMissing() throws IOException {
+        writeSave(8, 8_000, 8_000, 6, 3, false);
+        GameArchive.syncIndex();
+        Files.delete(DATA_DIR.resolve(ArchiveIndex.INDEX_FILE_NAME));
+        writeSave(9, 9_000, 9_000, 6, 3, false);
+
+        assertEquals(List.of(9, 8), ids(GameArchive.query(ArchiveQuery.all())));
+    }
+
+    @Test
+    void repeatedSavesOfOneGame_keepTheLogCompact() throws IOException {
+        ArchiveIndex index = new ArchiveIndex(DATA_DIR);
+        for (int move = 1; move <= 1_000; move++) {
+            index.put(new ArchiveEntry(1, move, 0, 5, 5, move, false));
+        }
+        index.put(new ArchiveEntry(2, 2_000, 0, 5, 5, 1, false));
+
+        // A log with one record per save would hold 1001 records of 30 bytes
+        assertTrue(Files.size(DATA_DIR.resolve(ArchiveIndex.INDEX_FILE_NAME)) <= 30 * (2 * 2 + 64 + 1));
+        ArchiveIndex reloaded = new ArchiveIndex(DATA_DIR);
+        assertEquals(1_000, reloaded.get(1).getMoveCount());
+        assertEquals(2, reloaded.query(ArchiveQuery.all()).getTotalMatches());
+    }
+
+    @Test
+    void invertedRanges_areRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ArchiveQuery.all().savedBetween(4_000, 2_000));
+        assertThrows(IllegalArgumentException.class, () -> ArchiveQuery.all().moves(20, 10));
+        assertThrows(IllegalArgumentException.class, () -> ArchiveQuery.all().duration(10, 1));
+        assertEquals(0, GameArchive.query(ArchiveQuery.all().savedBetween(2_000, 2_000)).getTotalMatches());
+    }
+}
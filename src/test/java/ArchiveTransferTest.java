@@ -0,0 +1,113 @@
+package json;
+
+import org.junit.jupiter.api.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveTransferTest {
+
+    private static final Path DATA_DIR = Paths.get("data");
+    private static final String NODES = """
+            [{"row": 1, "col": 1, "isPower": true, "isBulb": false, "isLink": false, "connectors": ["EAST"]},
+             {"row": 1, "col": 2, "isPower": false, "isBulb": true, "isLink": false, "connectors": ["WEST"]}]""";
+
+    @BeforeEach
+    void setUp() throws IOException {
+        if (Files.exists(DATA_DIR)) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(DATA_DIR)) {
+                for (Path p : ds) Files.delete(p);
+            }
+        } else {
+            Files.createDirectories(DATA_DIR);
+        }
+    }
+
+    private static void writeSave(int id, int moves, boolean completed) throws IOException {
+        Files.writeString(DATA_DIR.resolve(id + ".json"), """
+                {"moveNumber": %d, "timestamp": %d, "startedAt": 100, "completed": %b,
+                 "rows": 1, "cols": 2, "initialNodes": %s, "undoHistory": [], "redoHistory": []}
+                """.formatted(moves, 1_000 + id, completed, NODES));
+    }
+
+    private void roundTrip(ArchiveTransfer.Format format) throws IOException {
+        for (int id = 1; id <= 1_200; id++) {
+            writeSave(id, id % 40, id % 2 == 0);
+        }
+        GameArchive.syncIndex();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TransferStats exported = ArchiveTransfer.exportArchive(out, format);
+        assertEquals(1_200, exported.getRecords());
+        assertEquals(out.size(), exported.getBytes());
+
+        setUp();
+        writeSave(7, 3, false);
+        GameArchive.syncIndex();
+
+        TransferStats imported = ArchiveTransfer.importArchive(new ByteArrayInputStream(out.toByteArray()), format);
+
+        assertEquals(1_200, imported.getRecords());
+        assertEquals(1_201, GameArchive.listSavedGameIds().size());
+        assertEquals(600, GameArchive.query(ArchiveQuery.all().completed(true)).getTotalMatches());
+
+        String hash = BoardStore.readBoardHash(DATA_DIR.resolve("8.json"));
+        assertNotNull(hash);
+        assertEquals(1_200, BoardStore.shared().referenceCount(hash));
+        assertEquals(2, GameArchive.load(1_000).getGame().cols());
+    }
+
+    @Test
+    void ndjsonRoundTrip_preservesSavesAndSharesBoard() throws IOException {
+        roundTrip(ArchiveTransfer.Format.NDJSON);
+    }
+
+    @Test
+    void binaryRoundTrip_preservesSavesAndSharesBoard() throws IOException {
+        roundTrip(ArchiveTransfer.Format.BINARY);
+    }
+
+    @Test
+    void exportQuery_writesOnlyMatchingSaves() throws IOException {
+        for (int id = 1; id <= 10; id++) {
+            writeSave(id, id, id <= 3);
+        }
+        GameArchive.syncIndex();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArchiveQuery query = ArchiveQuery.all().completed(true).page(1, 1);
+        TransferStats stats = ArchiveTransfer.exportQuery(out, query, ArchiveTransfer.Format.NDJSON);
+
+        assertEquals(3, stats.getRecords());
+        List<String> lines = out.toString().lines().toList();
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\"initialNodes\""));
+        // The caller's paging is left as it was
+        assertEquals(List.of(2), GameArchive.query(query).getEntries().stream().map(ArchiveEntry::getId).toList());
+    }
+
+    @Test
+    void truncatedBinaryStream_isRejected() throws IOException {
+        writeSave(1, 5, false);
+        GameArchive.syncIndex();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArchiveTransfer.exportArchive(out, ArchiveTransfer.Format.BINARY);
+
+        // Decompress, cut off the end of the record and compress again
+        byte[] raw = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())).readAllBytes();
+        ByteArrayOutputStream truncated = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(truncated)) {
+            gzip.write(raw, 0, raw.length - 10);
+        }
+
+        assertThrows(EOFException.class, () -> ArchiveTransfer.importArchive(
+                new ByteArrayInputStream(truncated.toByteArray()), ArchiveTransfer.Format.BINARY));
+    }
+}
@@ -0,0 +1,164 @@
+package multiplayer;
+
+import common.Position;
+import game.Game;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static multiplayer.ServerTestSupport.await;
+import static multiplayer.ServerTestSupport.serverLoopCpu;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuthoritativeServerTest {
+    /** A generous bound on the server CPU of one move, far above its cost on any machine. */
+    private static final long MAX_CPU_PER_MOVE_NANOS = 1_000_000;
+
+    private final List<GameClient> clients = new ArrayList<>();
+    private GameServer server;
+
+    @AfterEach
+    public void tearDown() {
+        clients.forEach(GameClient::stop);
+        if (server != null) server.stop();
+    }
+
+    private void startServer(int port, boolean authoritative) throws InterruptedException {
+        server = new GameServer(port, ServerMode.SELECTOR);
+        server.getConfig().setAuthoritative(authoritative);
+        ServerTestSupport.start(server);
+    }
+
+    /**
+     * Connects two clients to a new room of the given size; the first one created the room.
+     */
+    private GameClient[] room(int port, int difficulty) throws Exception {
+        GameClient first = new GameClient("localhost", port);
+        GameClient second = new GameClient("localhost", port);
+        clients.add(first);
+        clients.add(second);
+        first.start();
+        second.start();
+        first.createRoom(difficulty);
+        await(() -> first.getOwnGame() != null, "Room should be created.");
+        second.joinRoom(first.getRoomId());
+        await(() -> second.getOwnGame() != null, "Second player should join.");
+        return new GameClient[]{first, second};
+    }
+
+    private static void awaitError(GameClient client, String text) throws InterruptedException {
+        await(() -> client.getLastError() != null && client.getLastError().contains(text),
+                "Expected error containing \"" + text + "\", got " + client.getLastError());
+    }
+
+    @Test
+    public void invalidMovesAndFalseWins_areRejected() throws Exception {
+        startServer(8940, true);
+        GameClient[] c = room(8940, 5);
+        AtomicInteger announced = new AtomicInteger();
+        c[1].setGameWinListener(announced::set);
+
+        c[0].sendTurn(new Position(1, 1));
+        awaitError(c[0], "not started");
+        c[0].sendStartGame();
+        await(c[1]::isGameStarted, "Game should start.");
+
+        c[0].sendTurn(new Position(6, 1));
+        awaitError(c[0], "not on the board");
+        c[0].sendUndo();
+        awaitError(c[0], "Nothing to undo");
+        c[0].sendWin();
+        awaitError(c[0], "not confirmed");
+
+        c[0].sendTurn(new Position(2, 3));
+        await(() -> c[1].getReceivedMoves().size() == 1, "A valid turn should be relayed.");
+        assertEquals(new Position(2, 3), c[1].getReceivedMoves().get(0));
+        assertEquals(0, announced.get(), "A false win must not reach the other players.");
+        assertEquals(0, server.getWinnerId(c[0].getRoomId()));
+    }
+
+    @Test
+    public void solvedBoard_isAnnouncedByTheServer() throws Exception {
+        startServer(8941, true);
+        GameClient[] c = room(8941, 3);
+        AtomicInteger announced = new AtomicInteger();
+        c[1].setGameWinListener(announced::set);
+        c[0].sendStartGame();
+        await(c[1]::isGameStarted, "Game should start.");
+
+        // Find rotations that light all bulbs of the 3x3 board, counting through all combinations
+        Game board = c[0].getOwnGame();
+        board.setLoggingSuppressed(true);
+        Position[] tiles = new Position[9];
+        for (int i = 0; i < tiles.length; i++) tiles[i] = new Position(1 + i / 3, 1 + i % 3);
+        int[] turns = new int[tiles.length];
+        boolean solved = false;
+        for (int step = 0; step < 1 << 18 && !solved; step++) {
+            int i = 0;
+            while (true) {
+                board.node(tiles[i]).turn();
+                if (++turns[i] < 4) break;
+                turns[i++] = 0;
+            }
+            solved = board.checkWin();
+        }
+        assertTrue(solved, "Every generated board has a solution.");
+
+        List<Position> moves = new ArrayList<>();
+        for (int i = 0; i < tiles.length; i++) {
+            for (int t = 0; t < turns[i]; t++) moves.add(tiles[i]);
+        }
+        if (moves.isEmpty()) {
+            // The board was generated solved; any full rotation solves it again
+            for (int t = 0; t < 4; t++) moves.add(tiles[0]);
+        }
+        for (Position move : moves) {
+            c[0].sendTurn(move);
+        }
+
+        await(() -> announced.get() == 1, "The server should announce player 1 as the winner.");
+        assertEquals(1, server.getWinnerId(c[0].getRoomId()));
+        c[1].sendTurn(new Position(1, 1));
+        awaitError(c[1], "Game is over");
+    }
+
+    @Test
+    public void serverCpuPerMove_authoritativeAndRelay() throws Exception {
+        int moves = 2000;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        for (boolean authoritative : new boolean[]{false, true}) {
+            startServer(0, authoritative);
+            // The first round warms up the JIT and is not checked
+            for (int round = 0; round < 2; round++) {
+                GameClient[] c = room(server.getPort(), GameServer.MAX_DIFFICULTY);
+                c[0].sendStartGame();
+                await(c[1]::isGameStarted, "Game should start.");
+                int before = c[1].getReceivedMoves().size();
+
+                long cpuBefore = serverLoopCpu(threads);
+                for (int i = 0; i < moves; i++) {
+                    c[0].sendTurn(new Position(1 + i % 15, 1 + (i / 15) % 15));
+                }
+                await(() -> c[1].getReceivedMoves().size() == before + moves, "All moves should be relayed.");
+                long cpu = serverLoopCpu(threads) - cpuBefore;
+
+                if (round == 1) {
+                    assertTrue(cpu / moves < MAX_CPU_PER_MOVE_NANOS, (authoritative ? "Authoritative" : "Relay")
+                            + " move took " + cpu / moves + " ns server CPU.");
+                }
+            }
+            clients.forEach(GameClient::stop);
+            clients.clear();
+            server.stop();
+            Thread.sleep(200);
+        }
+        server = null;
+    }
+
+}
@@ -0,0 +1,192 @@
+package multiplayer;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import common.Position;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static multiplayer.ServerTestSupport.await;
+import static multiplayer.ServerTestSupport.serverLoopCpu;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryProtocolTest {
+    /** A generous bound on the server CPU of relaying one message, far above its cost on any machine. */
+    private static final long MAX_CPU_PER_MESSAGE_NANOS = 1_000_000;
+    private static final String TURN = "{\"type\":\"turn\",\"playerId\":2,\"position\":{\"row\":3,\"col\":4}}";
+
+    private final List<GameClient> clients = new ArrayList<>();
+    private GameServer server;
+
+    @AfterEach
+    public void tearDown() {
+        clients.forEach(GameClient::stop);
+        if (server != null) server.stop();
+    }
+
+    private static byte[] bytes(ByteBuffer buf) {
+        byte[] b = new byte[buf.remaining()];
+        buf.duplicate().get(b);
+        return b;
+    }
+
+    private static ByteBuffer body(ByteBuffer frame) {
+        ByteBuffer body = frame.duplicate();
+        body.position((int) (BinaryProtocol.peekLength(body, 0, body.limit()) >>> 32));
+        return body;
+    }
+
+    @Test
+    public void turn_isEncodedInFiveBytes() {
+        ByteBuffer frame = BinaryProtocol.encode(TURN);
+
+        assertArrayEquals(new byte[]{4, BinaryProtocol.OP_TURN, 2, 3, 4}, bytes(frame));
+        assertEquals(JsonParser.parseString(TURN), JsonParser.parseString(BinaryProtocol.toJson(body(frame))));
+    }
+
+    @Test
+    public void compactMessages_roundTrip() {
+        for (String json : List.of(
+                "{\"type\":\"undo\",\"playerId\":1}",
+                "{\"type\":\"redo\",\"playerId\":4}",
+                "{\"type\":\"win\",\"winnerId\":3}",
+                "{\"type\":\"start_game\"}",
+                "{\"type\":\"player_count\"}",
+                "{\"type\":\"turn\",\"playerId\":1,\"position\":{\"row\":300,\"col\":20000}}")) {
+            ByteBuffer frame = BinaryProtocol.encode(json);
+            assertNotEquals(BinaryProtocol.OP_JSON, BinaryProtocol.opcode(body(frame)), json);
+            assertEquals(JsonParser.parseString(json), JsonParser.parseString(BinaryProtocol.toJson(body(frame))), json);
+        }
+    }
+
+    @Test
+    public void sequencedMessages_wrapTheCompactFrame() {
+        ByteBuffer frame = BinaryProtocol.encode(TURN);
+        ByteBuffer sequenced = OutboundMessage.ofFrameBody(body(frame)).withSequenceNumber(300).frame();
+
+        assertArrayEquals(new byte[]{7, BinaryProtocol.OP_SEQUENCED, (byte) 0xAC, 2, BinaryProtocol.OP_TURN, 2, 3, 4},
+                bytes(sequenced));
+        JsonObject expected = JsonParser.parseString(TURN).getAsJsonObject();
+        expected.addProperty("roomSeq", 300);
+        assertEquals(expected, JsonParser.parseString(BinaryProtocol.toJson(body(sequenced))));
+        assertArrayEquals(bytes(sequenced), bytes(BinaryProtocol.encode(BinaryProtocol.toJson(body(sequenced)))));
+    }
+
+    @Test
+    public void otherMessages_areCarriedAsJson() {
+        JsonObject msg = new JsonObject();
+        msg.addProperty("type", "turn");
+        msg.addProperty("playerId", 1);
+        msg.addProperty("extra", "kept");
+        ByteBuffer frame = BinaryProtocol.encode(msg);
+
+        assertEquals(BinaryProtocol.OP_JSON, BinaryProtocol.opcode(body(frame)));
+        assertEquals(msg, JsonParser.parseString(BinaryProtocol.toJson(body(frame))));
+    }
+
+    @Test
+    public void framer_switchesProtocolAfterCurrentMessage_andJoinsSplitFrames() throws Exception {
+        MessageFramer framer = new MessageFramer();
+        List<String> messages = new ArrayList<>();
+        ByteBuffer hello = ByteBuffer.wrap("{\"type\":\"hello\",\"protocol\":\"binary\"}\n".getBytes(StandardCharsets.UTF_8));
+        ByteBuffer turn = BinaryProtocol.encode(TURN);
+        ByteBuffer big = BinaryProtocol.encodeJson("{\"type\":\"chat\",\"text\":\"" + "x".repeat(300) + "\"}");
+
+        ByteBuffer stream = ByteBuffer.allocate(hello.remaining() + turn.remaining() + big.remaining());
+        stream.put(hello).put(turn).put(big).flip();
+
+        // One byte per read, so every frame is split
+        for (int i = 0; i < stream.limit(); i++) {
+            framer.feed(stream.slice(i, 1), m -> {
+                if (framer.getProtocol() == Protocol.JSON) {
+                    messages.add(StandardCharsets.UTF_8.decode(m).toString());
+                    framer.setProtocol(Protocol.BINARY);
+                } else {
+                    messages.add(BinaryProtocol.toJson(m));
+                }
+            });
+        }
+
+        assertEquals(3, messages.size());
+        assertEquals(JsonParser.parseString(TURN), JsonParser.parseString(messages.get(1)));
+        assertTrue(messages.get(2).contains("x".repeat(300)));
+    }
+
+    @Test
+    public void jsonAndBinaryClients_playInOneRoom() throws Exception {
+        int port = 8920;
+        server = new GameServer(port, ServerMode.SELECTOR);
+        ServerTestSupport.start(server);
+
+        GameClient binary = new GameClient("localhost", port);
+        binary.setProtocol(Protocol.BINARY);
+        GameClient json = new GameClient("localhost", port);
+        clients.add(binary);
+        clients.add(json);
+        binary.start();
+        json.start();
+
+        binary.createRoom(5);
+        await(() -> binary.getOwnGame() != null, "Binary client should receive its game.");
+        json.joinRoom(binary.getRoomId());
+        await(() -> json.getOwnGame() != null, "JSON client should join the room.");
+
+        binary.sendTurn(new Position(1, 2));
+        await(() -> json.getReceivedMoves().size() == 1, "Binary move should reach the JSON client.");
+        json.sendTurn(new Position(2, 1));
+        await(() -> binary.getReceivedMoves().size() == 1, "JSON move should reach the binary client.");
+
+        assertEquals(new Position(1, 2), json.getReceivedMoves().get(0));
+        assertEquals(new Position(2, 1), binary.getReceivedMoves().get(0));
+    }
+
+    @Test
+    public void bytesAndServerCpuPerMessage() throws Exception {
+        int messages = 1000;
+        server = new GameServer(0, ServerMode.SELECTOR);
+        ServerTestSupport.start(server);
+        int port = server.getPort();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        assertTrue(BinaryProtocol.encode(TURN).remaining() * 8 < TURN.getBytes(StandardCharsets.UTF_8).length + 1,
+                "A binary turn should be a fraction of the JSON line.");
+
+        // The first round warms up the JIT and is not checked
+        for (int round = 0; round < 2; round++) {
+            for (Protocol protocol : Protocol.values()) {
+                GameClient sender = new GameClient("localhost", port);
+                GameClient receiver = new GameClient("localhost", port);
+                sender.setProtocol(protocol);
+                receiver.setProtocol(protocol);
+                clients.add(sender);
+                clients.add(receiver);
+                sender.start();
+                receiver.start();
+                sender.createRoom(5);
+                await(() -> sender.getOwnGame() != null, "Room should be created.");
+                receiver.joinRoom(sender.getRoomId());
+                await(() -> receiver.getOwnGame() != null, "Receiver should join.");
+
+                long cpuBefore = serverLoopCpu(threads);
+                for (int i = 0; i < messages; i++) {
+                    sender.sendTurn(new Position(1 + i % 5, 1 + (i / 5) % 5));
+                }
+                await(() -> receiver.getReceivedMoves().size() == messages, "All moves should be relayed.");
+                long cpu = serverLoopCpu(threads) - cpuBefore;
+
+                if (round == 1) {
+                    assertTrue(cpu / messages < MAX_CPU_PER_MESSAGE_NANOS,
+                            protocol + " relay took " + cpu / messages + " ns server CPU per message.");
+                }
+            }
+        }
+    }
+
+}
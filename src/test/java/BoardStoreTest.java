@@ -0,0 +1,131 @@
+package json;
+
+import common.Position;
+import game.Game;
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoardStoreTest {
+
+    private static final Path DATA_DIR = Paths.get("data");
+
+    @BeforeEach
+    void setUp() throws IOException {
+        if (Files.exists(DATA_DIR)) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(DATA_DIR)) {
+                for (Path p : ds) Files.delete(p);
+            }
+        } else {
+            Files.createDirectories(DATA_DIR);
+        }
+    }
+
+    private static long directorySize() throws IOException {
+        try (Stream<Path> files = Files.list(DATA_DIR)) {
+            return files.filter(p -> !p.getFileName().toString().equals(ArchiveIndex.INDEX_FILE_NAME))
+                    .mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+
+    private static long boardFiles() throws IOException {
+        try (Stream<Path> files = Files.list(DATA_DIR)) {
+            return files.filter(p -> p.getFileName().toString().matches("board_\\w+\\.json")).count();
+        }
+    }
+
+    /**
+     * Saves the same board under the given number of save IDs, as every participant
+     * of a multiplayer match or every player of a pre-generated puzzle does.
+     *
+     * @return the size the saves would take with the board embedded in each of them
+     */
+    private static long saveSharedBoard(Game board, int copies, int firstId) throws Exception {
+        Path source = DATA_DIR.resolve("source.tmp");
+        long inlineBytes = 0;
+        board.setSaveFileId(firstId);
+        board.randomizeRotations();
+        Files.copy(DATA_DIR.resolve(firstId + ".json"), source, StandardCopyOption.REPLACE_EXISTING);
+
+        for (int i = 0; i < copies; i++) {
+            Path copy = DATA_DIR.resolve((firstId + i) + ".json");
+            Files.copy(source, copy, StandardCopyOption.REPLACE_EXISTING);
+            GameDeserializer deser = new GameDeserializer(copy);
+            Game participant = deser.getGame();
+            participant.node(new Position(1, 1)).turn();
+
+            // Without deduplication every save would embed the whole board
+            String hash = BoardStore.readBoardHash(copy);
+            inlineBytes += Files.size(copy) + BoardStore.shared().read(hash).length();
+        }
+        Files.delete(source);
+        return inlineBytes;
+    }
+
+    @Test
+    void multiplayerSession_storesBoardOnce() throws Exception {
+        long inline = saveSharedBoard(Game.generate(10, 10), 4, 1);
+
+        assertEquals(1, boardFiles());
+        long stored = directorySize();
+        assertTrue(stored < inline / 2, "Deduplicated saves should take less than half the space");
+    }
+
+    @Test
+    void puzzleLibrary_storesEachBoardOnce() throws Exception {
+        long inline = 0;
+        for (int puzzle = 0; puzzle < 5; puzzle++) {
+            inline += saveSharedBoard(Game.generate(7, 7), 10, 1 + puzzle * 10);
+        }
+
+        assertEquals(5, boardFiles());
+        long stored = directorySize();
+        assertTrue(stored < inline / 2, "Deduplicated saves should take less than half the space");
+    }
+
+    @Test
+    void loadedSave_resolvesBoardFromStore() throws Exception {
+        Game original = Game.generate(5, 5);
+        saveSharedBoard(original, 1, 3);
+
+        String saved = Files.readString(DATA_DIR.resolve("3.json"));
+        assertFalse(saved.contains("initialNodes"));
+        assertTrue(saved.contains("boardHash"));
+
+        Game loaded = GameArchive.load(3).getGame();
+        assertEquals(5, loaded.rows());
+        for (int r = 1; r <= 5; r++) {
+            for (int c = 1; c <= 5; c++) {
+                Position p = new Position(r, c);
+                assertEquals(original.node(p).isBulb(), loaded.node(p).isBulb());
+                assertEquals(original.node(p).isPower(), loaded.node(p).isPower());
+            }
+        }
+    }
+
+    @Test
+    void deletingLastReference_removesBoard() throws Exception {
+        saveSharedBoard(Game.generate(5, 5), 2, 1);
+        String hash = BoardStore.readBoardHash(DATA_DIR.resolve("1.json"));
+        assertEquals(2, BoardStore.shared().referenceCount(hash));
+
+        GameArchive.delete(1);
+        assertEquals(1, BoardStore.shared().referenceCount(hash));
+        assertEquals(1, boardFiles());
+
+        GameArchive.delete(2);
+        assertEquals(0, boardFiles());
+    }
+
+    @Test
+    void collectGarbage_removesBoardsOfSavesDeletedByHand() throws Exception {
+        saveSharedBoard(Game.generate(4, 4), 1, 1);
+        Files.delete(DATA_DIR.resolve("1.json"));
+
+        assertEquals(1, GameArchive.collectUnusedBoards());
+        assertEquals(0, boardFiles());
+    }
+}
@@ -1,8 +1,12 @@
 package json;
 
+import com.google.gson.JsonParser;
 import common.Position;
+import game.Game;
 import org.junit.jupiter.api.Test;
 
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -37,4 +41,50 @@ class GameDeserializerIntegrationTest {
         assertFalse(deser.previousStep(), "previousStep() should return false at step 0");
     }
 
+    @Test
+    void inMemorySources_buildTheSameBoardAsTheJson() {
+        Game original = Game.generate(6, 6, false);
+        GameSerializer serializer = GameSerializer.inMemory();
+        serializer.serialize(original, 0);
+        original.node(new Position(2, 3)).turn();
+        original.node(new Position(4, 4)).turn();
+        serializer.serialize(original, 2);
+        String json = serializer.getJson();
+
+        List<GameDeserializer> deserializers = List.of(
+                new GameDeserializer(new StringReader(json)),
+                new GameDeserializer(json.getBytes(StandardCharsets.UTF_8)),
+                new GameDeserializer(JsonParser.parseString(json)));
+        for (GameDeserializer deser : deserializers) {
+            assertEquals(2, deser.getTotalSteps());
+            deser.goToStep(2);
+            assertSameBoard(original, deser.getGame());
+        }
+    }
+
+    @Test
+    void newGame_isAnIndependentCopy() {
+        Game original = Game.generate(5, 5, false);
+        GameSerializer serializer = GameSerializer.inMemory();
+        serializer.serialize(original, 0);
+        GameDeserializer deser = new GameDeserializer(JsonParser.parseString(serializer.getJson()));
+
+        Game copy = deser.newGame();
+        assertSameBoard(deser.getGame(), copy);
+        copy.node(new Position(1, 1)).turn();
+        assertNotEquals(copy.node(new Position(1, 1)).getConnectors(),
+                deser.getGame().node(new Position(1, 1)).getConnectors());
+    }
+
+    private static void assertSameBoard(Game expected, Game actual) {
+        assertEquals(expected.rows(), actual.rows());
+        for (int r = 1; r <= expected.rows(); r++) {
+            for (int c = 1; c <= expected.cols(); c++) {
+                Position p = new Position(r, c);
+                assertEquals(expected.node(p).getConnectors(), actual.node(p).getConnectors(), "Node " + p);
+                assertEquals(expected.node(p).light(), actual.node(p).light(), "Light of " + p);
+            }
+        }
+    }
+
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.Random;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -123,6 +124,63 @@ public class GameGenerationAdvancedTests {
         };
     }
 
+    @Test
+    public void testLitBulbCounterFollowsTurnsUndoAndRedo() {
+        Game game = Game.generate(8, 8, false);
+        game.setLoggingSuppressed(true);
+        Position power = findPowerPosition(game);
+        Random random = new Random(42);
+
+        for (int step = 0; step < 300; step++) {
+            if (step % 10 == 7) {
+                game.undo();
+            } else if (step % 10 == 9) {
+                game.redo();
+            } else {
+                game.node(new Position(1 + random.nextInt(8), 1 + random.nextInt(8))).turn();
+            }
+
+            boolean[][] powered = poweredNodes(game, power);
+            int bulbs = 0, lit = 0;
+            for (int r = 1; r <= game.rows(); r++) {
+                for (int c = 1; c <= game.cols(); c++) {
+                    Position p = new Position(r, c);
+                    boolean reachable = powered[r - 1][c - 1];
+                    assertEquals(reachable, game.node(p).light(), "Node " + r + "," + c + " after step " + step);
+                    if (game.node(p).isBulb()) {
+                        bulbs++;
+                        if (reachable) lit++;
+                    }
+                }
+            }
+            assertEquals(bulbs, game.bulbCount());
+            assertEquals(lit, game.litBulbs(), "Lit bulbs after step " + step);
+            assertEquals(lit == bulbs, game.checkWin());
+        }
+        game.close();
+    }
+
+    private boolean[][] poweredNodes(Game game, Position power) {
+        boolean[][] visited = new boolean[game.rows()][game.cols()];
+        Queue<Position> queue = new LinkedList<>();
+        queue.add(power);
+        visited[power.getRow() - 1][power.getCol() - 1] = true;
+
+        while (!queue.isEmpty()) {
+            Position current = queue.poll();
+            GameNode node = game.node(current);
+            for (Side side : Side.values()) {
+                Position neighbor = neighbor(current, side, game.rows(), game.cols());
+                if (neighbor != null && !visited[neighbor.getRow() - 1][neighbor.getCol() - 1]
+                        && node.containsConnector(side) && game.node(neighbor).containsConnector(opposite(side))) {
+                    visited[neighbor.getRow() - 1][neighbor.getCol() - 1] = true;
+                    queue.add(neighbor);
+                }
+            }
+        }
+        return visited;
+    }
+
     private Position findPowerPosition(Game game) {
         for (int r = 1; r <= game.rows(); r++) {
             for (int c = 1; c <= game.cols(); c++) {
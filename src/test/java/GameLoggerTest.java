@@ -0,0 +1,296 @@
+package log;
+
+import common.Position;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameLoggerTest {
+
+    private static final int CALLS = 20_000;
+
+    @TempDir
+    Path dir;
+
+    private static RetentionPolicy policy(long segmentBytes) {
+        RetentionPolicy policy = new RetentionPolicy();
+        policy.setMaxSegmentBytes(segmentBytes);
+        policy.setCompress(false);
+        return policy;
+    }
+
+    private static List<String> readLog(long gameId) throws IOException {
+        return GameLogger.readLog(gameId);
+    }
+
+    @Test
+    void writesTypedEntriesInOrder() throws IOException {
+        GameLogger logger = new GameLogger(9_001);
+        logger.turn(new Position(2, 3));
+        logger.undo(new Position(2, 3));
+        logger.redo(new Position(2, 3));
+        logger.log("custom");
+        logger.won();
+        logger.flush();
+
+        List<String> lines = readLog(9_001);
+        assertEquals(6, lines.size());
+        assertTrue(lines.get(0).matches("\\d\\d:\\d\\d:\\d\\d - === Game 9001 started at .* ==="));
+        assertTrue(lines.get(1).endsWith(" - TURN at the position: 2,3"));
+        assertTrue(lines.get(2).endsWith(" - UNDO at the position: 2,3"));
+        assertTrue(lines.get(3).endsWith(" - REDO at the position: 2,3"));
+        assertTrue(lines.get(4).endsWith(" - custom"));
+        assertTrue(lines.get(5).endsWith(" - Player WON the game!"));
+    }
+
+    @Test
+    void close_writesEndEntryOnce() throws IOException {
+        GameLogger logger = new GameLogger(9_004);
+        logger.turn(new Position(1, 1));
+        logger.close();
+        logger.close();
+
+        List<String> lines = readLog(9_004);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(2).endsWith(" - === Game ended ==="));
+    }
+
+    @Test
+    void interleavedGames_areRolledAcrossSegmentsAndExtractedByIndex() throws IOException {
+        LogSink sink = new LogSink(dir, policy(1_000), new LogMetrics());
+        LogRing ring = new LogRing(64, sink);
+        for (int i = 0; i < 300; i++) {
+            ring.publish(1, EventType.TURN, 1, i, 300, null);
+            if (i % 100 == 0) ring.publish(2, EventType.MESSAGE, 0, 0, 0, "second " + i);
+        }
+        ring.flush();
+
+        try (Stream<Path> files = Files.list(dir)) {
+            assertTrue(files.filter(p -> p.getFileName().toString().startsWith("segment_")).count() > 5);
+        }
+        List<String> first = LogIndex.extract(dir, sink.runId(), 1);
+        assertEquals(300, first.size());
+        assertTrue(first.get(299).endsWith(" - TURN at the position: 1,299"));
+
+        List<Integer> segments = LogIndex.segmentsOf(dir, sink.runId(), 2);
+        assertEquals(3, segments.size());
+        assertEquals(List.of("second 0", "second 100", "second 200"),
+                LogIndex.extract(dir, sink.runId(), 2).stream().map(l -> l.substring(11)).toList());
+    }
+
+    @Test
+    void sameGameIdOfAnotherRun_isNotMerged() throws Exception {
+        LogSink earlier = new LogSink(dir, policy(1 << 20), new LogMetrics());
+        earlier.write(1, "12:00:00", "earlier run");
+        earlier.flush();
+        Thread.sleep(5);
+        LogSink current = new LogSink(dir, policy(1 << 20), new LogMetrics());
+        current.write(1, "12:00:01", "current run");
+        current.flush();
+
+        assertNotEquals(earlier.runId(), current.runId());
+        assertEquals(List.of("12:00:01 - current run"), LogIndex.extract(dir, current.runId(), 1));
+        assertEquals(List.of("12:00:00 - earlier run"), LogIndex.extract(dir, earlier.runId(), 1));
+    }
+
+    @Test
+    void messageWithLineBreaks_staysOneEntry() throws IOException {
+        LogSink sink = new LogSink(dir, policy(1 << 20), new LogMetrics());
+        sink.write(4, "12:00:00", "two\nlines\r and a \\n backslash");
+        sink.write(4, "12:00:01", "next");
+        sink.flush();
+
+        assertEquals(2, Files.readAllLines(dir.resolve("segment_1.log")).size());
+        assertEquals(List.of("12:00:00 - two\nlines\r and a \\n backslash", "12:00:01 - next"),
+                LogIndex.extract(dir, sink.runId(), 4));
+    }
+
+    @Test
+    void idleConsumer_isWokenByTheNextEntry() throws Exception {
+        LogSink sink = new LogSink(dir, policy(1 << 20), new LogMetrics());
+        LogRing ring = new LogRing(64, sink);
+        ring.publish(8, EventType.MESSAGE, 0, 0, 0, "before");
+        ring.flush();
+        // Long enough for the consumer to park until it is unparked or its rotation check is due
+        Thread.sleep(200);
+
+        long start = System.nanoTime();
+        ring.publish(8, EventType.MESSAGE, 0, 0, 0, "after");
+        ring.flush();
+        long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed < TimeUnit.MILLISECONDS.toNanos(500), "The parked consumer should be unparked: " + elapsed);
+        assertEquals(2, LogIndex.extract(dir, sink.runId(), 8).size());
+    }
+
+    @Test
+    void failingEntry_isSkipped_andTheConsumerKeepsRunning() throws IOException {
+        LogSink sink = new LogSink(dir, policy(1 << 20), new LogMetrics());
+        LogRing ring = new LogRing(64, sink);
+        Object broken = new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException("broken payload");
+            }
+        };
+        ring.publish(3, EventType.MESSAGE, 0, 0, 0, broken);
+        // More entries than the ring holds, which would block if the consumer had died
+        for (int i = 0; i < 200; i++) {
+            ring.publish(3, EventType.MESSAGE, 0, 0, 0, "entry " + i);
+        }
+        ring.flush();
+
+        List<String> lines = LogIndex.extract(dir, sink.runId(), 3);
+        assertEquals(200, lines.size());
+        assertTrue(lines.get(199).endsWith("entry 199"));
+    }
+
+    @Test
+    void concurrentProducers_loseNoEntries() throws Exception {
+        GameLogger logger = new GameLogger(9_002);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int row = t + 1;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 5_000; i++) logger.turn(new Position(row, i));
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        logger.flush();
+
+        List<String> lines = readLog(9_002);
+        assertEquals(1 + 20_000, lines.size());
+        for (int row = 1; row <= 4; row++) {
+            String prefix = "TURN at the position: " + row + ",";
+            int expected = 0;
+            for (String line : lines) {
+                int at = line.indexOf(prefix);
+                if (at >= 0) {
+                    assertEquals(expected++, Integer.parseInt(line.substring(at + prefix.length())));
+                }
+            }
+            assertEquals(5_000, expected);
+        }
+    }
+
+    @Test
+    void eventLog_recordsFixedSizeRecordsDecodableWithoutText() throws IOException {
+        LogRing ring = new LogRing(64, new LogSink(dir, policy(1 << 20), new LogMetrics()));
+        ring.setEventsEnabled(true);
+        ring.publish(5, EventType.STARTED, 4, 6, 6, null);
+        ring.publish(5, EventType.TURN, 2, 3, 6, null);
+        ring.publish(6, EventType.MESSAGE, 0, 0, 0, "not recorded as text");
+        ring.publish(5, EventType.UNDO, 4, 6, 6, null);
+        ring.publish(5, EventType.WON, 0, 0, 0, null);
+        ring.flush();
+
+        Path file = ring.events().file();
+        assertEquals(5L * EventRecord.SIZE, Files.size(file));
+
+        List<EventRecord> records = EventLogDecoder.read(file, 5);
+        assertEquals(List.of(EventType.STARTED, EventType.TURN, EventType.UNDO, EventType.WON),
+                records.stream().map(EventRecord::getType).toList());
+        int cols = records.get(0).getBoardCols();
+        assertEquals(4, records.get(0).getBoardRows());
+        assertEquals(6, cols);
+        assertEquals(EventRecord.cellIndex(2, 3, 6), records.get(1).getCellIndex());
+        assertEquals(2, records.get(1).getRow(cols));
+        assertEquals(3, records.get(1).getCol(cols));
+        assertEquals(23, records.get(2).getCellIndex());
+        assertEquals(-1, records.get(3).getCellIndex());
+        assertTrue(records.stream().allMatch(r -> r.getLatencyNanos() >= 0 && r.getTimestamp() > 0));
+        assertTrue(EventLogDecoder.format(records.get(1), cols).contains(" game=5 TURN 2,3 "));
+    }
+
+    @Test
+    void levelSamplingAndSuppression_filterBeforePublishing() throws IOException {
+        GameLogger logger = new GameLogger(9_005, 5, 5);
+        try {
+            GameLogger.setLevel(LogLevel.INFO);
+            logger.turn(new Position(1, 1));
+            assertFalse(logger.isEnabled(LogLevel.DEBUG));
+            logger.won();
+
+            GameLogger.setLevel(LogLevel.DEBUG);
+            GameLogger.setSampleRate(EventType.TURN, 10);
+            for (int i = 0; i < 100; i++) logger.turn(new Position(2, 2));
+            GameLogger.setSampleRate(EventType.TURN, 1);
+
+            logger.setSuppressed(true);
+            logger.undo(new Position(3, 3));
+            logger.log("suppressed");
+            assertFalse(logger.isEnabled(LogLevel.ERROR));
+            logger.setSuppressed(false);
+            logger.redo(new Position(4, 4));
+        } finally {
+            GameLogger.setLevel(LogLevel.DEBUG);
+            GameLogger.setSampleRate(EventType.TURN, 1);
+        }
+
+        List<String> lines = readLog(9_005);
+        assertEquals(1 + 1 + 10 + 1, lines.size());
+        assertTrue(lines.get(1).endsWith("Player WON the game!"));
+        assertEquals(10, lines.stream().filter(l -> l.endsWith("TURN at the position: 2,2")).count());
+        assertTrue(lines.get(12).endsWith("REDO at the position: 4,4"));
+    }
+
+    @Test
+    void disabledLevel_costsCloseToNothing() {
+        GameLogger logger = new GameLogger(9_006);
+        Position pos = new Position(1, 2);
+        GameLogger.setLevel(LogLevel.INFO);
+        try {
+            for (int i = 0; i < 10 * CALLS; i++) logger.turn(pos);
+            long start = System.nanoTime();
+            for (int i = 0; i < 10 * CALLS; i++) logger.turn(pos);
+            long perCall = (System.nanoTime() - start) / (10 * CALLS);
+            assertTrue(perCall < 1_000);
+        } finally {
+            GameLogger.setLevel(LogLevel.DEBUG);
+        }
+    }
+
+    /**
+     * Compares the per-call cost on the caller thread with the former synchronous logger,
+     * which formatted, wrote and flushed on every call.
+     */
+    @Test
+    void perCallLatency_beforeAndAfter() throws IOException {
+        Files.createDirectories(Paths.get("logs"));
+        Position pos = new Position(3, 4);
+
+        long before;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter("logs/sync_baseline.log", true))) {
+            long start = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                writer.write(LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"))
+                        + " - TURN at the position: " + pos.getRow() + "," + pos.getCol());
+                writer.newLine();
+                writer.flush();
+            }
+            before = System.nanoTime() - start;
+        }
+
+        GameLogger logger = new GameLogger(9_003);
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            logger.turn(pos);
+        }
+        long after = System.nanoTime() - start;
+        logger.flush();
+
+        assertTrue(after < before, "Logging through the ring buffer took " + after / CALLS
+                + " ns per call, writing synchronously " + before / CALLS + " ns.");
+        assertEquals(1 + CALLS, readLog(9_003).size());
+    }
+}
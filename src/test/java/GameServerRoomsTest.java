@@ -0,0 +1,252 @@
+import common.Position;
+import multiplayer.GameClient;
+import multiplayer.GameServer;
+import multiplayer.RoomInfo;
+import multiplayer.ServerMode;
+import multiplayer.ServerTestSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import static multiplayer.ServerTestSupport.await;
+import static multiplayer.ServerTestSupport.serverLoopCpu;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameServerRoomsTest {
+    /** A generous bound on the time, or server CPU, of one join, far above its cost on any machine. */
+    private static final long MAX_JOIN_NANOS = 100_000_000;
+
+    private final List<GameClient> clients = new ArrayList<>();
+    private GameServer server;
+
+    private GameServer startServer(int port) throws InterruptedException {
+        server = new GameServer(port, ServerMode.SELECTOR);
+        return server;
+    }
+
+    private void run(GameServer s) throws InterruptedException {
+        ServerTestSupport.start(s);
+    }
+
+    private GameClient connect(int port) throws Exception {
+        GameClient client = new GameClient("localhost", port);
+        client.start();
+        clients.add(client);
+        return client;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        clients.forEach(GameClient::stop);
+        if (server != null) server.stop();
+    }
+
+    @Test
+    public void createdRoomIsListedAndCanBeJoined() throws Exception {
+        int port = 8910;
+        run(startServer(port));
+
+        GameClient c1 = connect(port);
+        GameClient c2 = connect(port);
+        c1.createRoom(5);
+        await(() -> c1.getOwnGame() != null, "Creator should receive the room's game.");
+        assertEquals(1, c1.getPlayerId());
+
+        c2.requestRoomList();
+        await(() -> !c2.getLatestRooms().isEmpty(), "Room list should contain the created room.");
+        RoomInfo info = c2.getLatestRooms().get(0);
+        assertEquals(c1.getRoomId(), info.getRoomId());
+        assertEquals(1, info.getPlayers());
+        assertTrue(info.isJoinable());
+
+        c2.joinRoom(info.getRoomId());
+        await(() -> c2.getOwnGame() != null, "Joining client should receive the room's game.");
+        assertEquals(2, c2.getPlayerId());
+        assertEquals(c1.getRoomId(), c2.getRoomId());
+        await(() -> c1.getLatestPlayerCount() == 2, "Creator should be told about the second player.");
+    }
+
+    @Test
+    public void movesStayInsideTheirRoom() throws Exception {
+        int port = 8911;
+        run(startServer(port));
+
+        GameClient a1 = connect(port);
+        GameClient a2 = connect(port);
+        GameClient b1 = connect(port);
+        a1.createRoom(5);
+        b1.createRoom(5);
+        await(() -> a1.getRoomId() != null && b1.getRoomId() != null, "Both rooms should be created.");
+        assertNotEquals(a1.getRoomId(), b1.getRoomId());
+        a2.joinRoom(a1.getRoomId());
+        await(() -> a2.getOwnGame() != null, "Second player should join room A.");
+
+        a1.sendTurn(new Position(1, 1));
+        await(() -> !a2.getReceivedMoves().isEmpty(), "Move should reach the other player of room A.");
+        Thread.sleep(200);
+        assertTrue(b1.getReceivedMoves().isEmpty(), "Move must not reach room B.");
+        assertEquals(2, server.getRoomCount());
+    }
+
+    @Test
+    public void startedRoomCannotBeJoined() throws Exception {
+        int port = 8912;
+        run(startServer(port));
+
+        GameClient c1 = connect(port);
+        GameClient c2 = connect(port);
+        c1.createRoom(5);
+        await(() -> c1.getOwnGame() != null, "Room should be created.");
+        c1.sendStartGame();
+        await(c1::isGameStarted, "Game should start.");
+
+        c2.joinRoom(c1.getRoomId());
+        await(() -> c2.getLastError() != null, "Joining a started room should fail.");
+        assertNull(c2.getRoomId());
+    }
+
+    @Test
+    public void failedCreateKeepsThePlayerInItsRoom() throws Exception {
+        int port = 8917;
+        GameServer s = startServer(port);
+        s.getConfig().setMaxRooms(1);
+        run(s);
+
+        GameClient c1 = connect(port);
+        GameClient c2 = connect(port);
+        c1.createRoom(5);
+        await(() -> c1.getOwnGame() != null, "Room should be created.");
+        String roomId = c1.getRoomId();
+        c1.createRoom(5);
+        await(() -> c1.getLastError() != null, "Creating a room beyond the limit should fail.");
+        assertEquals(roomId, c1.getRoomId());
+
+        c2.requestRoomList();
+        await(() -> !c2.getLatestRooms().isEmpty(), "Room list should contain the first room.");
+        assertEquals(1, c2.getLatestRooms().get(0).getPlayers(), "The creator should still be in its room.");
+        assertEquals(1, s.getRoomCount());
+    }
+
+    @Test
+    public void idleRoomsAreReclaimed() throws Exception {
+        int port = 8913;
+        GameServer s = startServer(port);
+        s.getConfig().setRoomIdleTimeoutMillis(200);
+        run(s);
+
+        GameClient c1 = connect(port);
+        c1.createRoom(5);
+        await(() -> c1.getRoomId() != null, "Room should be created.");
+        Thread.sleep(400);
+        assertEquals(1, s.getRoomCount(), "A room with players is not idle.");
+
+        c1.leaveRoom();
+        await(() -> s.getRoomCount() == 0, "Empty room should be closed after the idle timeout.");
+    }
+
+    @Test
+    public void joinLatency() throws Exception {
+        int joins = 50;
+        run(startServer(0));
+        int port = server.getPort();
+
+        GameClient host = connect(port);
+        host.createRoom(10);
+        await(() -> host.getOwnGame() != null, "Room should be created.");
+
+        // The first round warms up the JIT and is not checked
+        for (int round = 0; round < 2; round++) {
+            long total = 0;
+            for (int i = 0; i < joins; i++) {
+                GameClient guest = connect(port);
+                long start = System.nanoTime();
+                guest.joinRoom(host.getRoomId());
+                long deadline = start + 10_000_000_000L;
+                while (guest.getOpponentIds().size() < 3) {
+                    assertTrue(System.nanoTime() < deadline, "Guest should join.");
+                    LockSupport.parkNanos(50_000);
+                }
+                total += System.nanoTime() - start;
+                guest.stop();
+                clients.remove(guest);
+            }
+            if (round == 1) {
+                assertTrue(total / joins < MAX_JOIN_NANOS, "Join took " + total / joins / 1000 + " us on average.");
+            }
+        }
+    }
+
+    @Test
+    public void joinCpu_largeBoard() throws Exception {
+        int joins = 1000;
+        run(startServer(0));
+        int port = server.getPort();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        GameClient host = connect(port);
+        host.createRoom(GameServer.MAX_DIFFICULTY);
+        await(() -> host.getOwnGame() != null, "Room should be created.");
+
+        try (Socket socket = new Socket("localhost", port)) {
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            // The first round warms up the JIT and is not checked
+            for (int round = 0; round < 2; round++) {
+                long cpuBefore = serverLoopCpu(threads);
+                for (int i = 0; i < joins; i++) {
+                    out.println("{\"type\":\"join_room\",\"roomId\":\"" + host.getRoomId() + "\"}");
+                    while (!in.readLine().contains("player_count_response")) {
+                        // skip
+                    }
+                    out.println("{\"type\":\"leave_room\"}");
+                    while (!in.readLine().contains("room_left")) {
+                        // skip
+                    }
+                }
+                long cpu = serverLoopCpu(threads) - cpuBefore;
+                if (round == 1) {
+                    assertTrue(cpu / joins < MAX_JOIN_NANOS, "Join took " + cpu / joins / 1000 + " us server CPU.");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void serverHostsThousandRooms() throws Exception {
+        int roomCount = 1000;
+        run(startServer(0));
+
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            // A client that does not read the replies is disconnected as too slow
+            Thread drain = new Thread(() -> {
+                try {
+                    while (in.readLine() != null) {
+                        // Skips the replies
+                    }
+                } catch (IOException ignored) {}
+            });
+            drain.setDaemon(true);
+            drain.start();
+            for (int i = 0; i < roomCount; i++) {
+                out.println("{\"type\":\"create_room\",\"difficulty\":5}");
+            }
+            long deadline = System.currentTimeMillis() + 60_000;
+            while (server.getRoomCount() < roomCount && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(roomCount, server.getRoomCount(), "All rooms should be created.");
+        }
+    }
+}
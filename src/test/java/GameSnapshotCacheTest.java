@@ -0,0 +1,97 @@
+package json;
+
+import common.Position;
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameSnapshotCacheTest {
+
+    private static final Path DATA_DIR = Paths.get("data");
+
+    private static final String SAVE = """
+            {
+              "moveNumber": 1,
+              "timestamp": 0,
+              "rows": 2,
+              "cols": 2,
+              "initialNodes": [
+                {"row": 1, "col": 1, "isPower": true, "isBulb": false, "isLink": false, "connectors": ["EAST"]},
+                {"row": 1, "col": 2, "isPower": false, "isBulb": true, "isLink": false, "connectors": ["WEST"]}
+              ],
+              "undoHistory": [{"row": 1, "col": 2}],
+              "redoHistory": []
+            }
+            """;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(DATA_DIR);
+        Files.writeString(DATA_DIR.resolve("41.json"), SAVE);
+        GameArchive.getCache().invalidate(41);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(DATA_DIR.resolve("41.json"));
+    }
+
+    @Test
+    void secondLoad_isServedFromCache_andBuildsIndependentGames() {
+        GameSnapshotCache cache = GameArchive.getCache();
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+
+        GameDeserializer first = GameArchive.load(41);
+        GameDeserializer second = GameArchive.load(41);
+
+        assertEquals(misses + 1, cache.getMissCount());
+        assertEquals(hits + 1, cache.getHitCount());
+        assertNotSame(first.getGame(), second.getGame());
+
+        // Moving one view must not affect the other one
+        first.nextStep();
+        assertEquals(1, first.getCurrentStep());
+        assertEquals(0, second.getCurrentStep());
+        assertEquals(first.getGame().node(new Position(1, 1)).getConnectors(),
+                second.getGame().node(new Position(1, 1)).getConnectors());
+    }
+
+    @Test
+    void rewrittenFile_isParsedAgain() throws IOException {
+        GameSnapshotCache cache = GameArchive.getCache();
+        GameArchive.load(41);
+        long misses = cache.getMissCount();
+
+        Path file = DATA_DIR.resolve("41.json");
+        Files.writeString(file, SAVE.replace("\"undoHistory\": [{\"row\": 1, \"col\": 2}]", "\"undoHistory\": []"));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5_000));
+
+        GameDeserializer reloaded = GameArchive.load(41);
+        assertEquals(misses + 1, cache.getMissCount());
+        assertEquals(0, reloaded.getTotalSteps());
+    }
+
+    @Test
+    void smallBudget_evictsLeastRecentlyUsed() throws IOException {
+        Files.writeString(DATA_DIR.resolve("42.json"), SAVE);
+        try {
+            GameSnapshotCache cache = new GameSnapshotCache(GameSnapshotCache.DEFAULT_MAX_WEIGHT);
+            cache.get(41, DATA_DIR.resolve("41.json"));
+            long oneEntry = cache.getWeight();
+
+            cache.setMaxWeight(oneEntry);
+            cache.get(42, DATA_DIR.resolve("42.json"));
+
+            assertEquals(1, cache.size());
+            assertEquals(1, cache.getEvictionCount());
+            assertThrows(UnsupportedOperationException.class,
+                    () -> cache.get(42, DATA_DIR.resolve("42.json")).undoHistory.clear());
+        } finally {
+            Files.deleteIfExists(DATA_DIR.resolve("42.json"));
+        }
+    }
+}
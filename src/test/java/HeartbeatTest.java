@@ -0,0 +1,185 @@
+package multiplayer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static multiplayer.ServerTestSupport.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HeartbeatTest {
+    private final List<GameClient> clients = new ArrayList<>();
+    private final List<Socket> sockets = new ArrayList<>();
+    private GameServer server;
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        clients.forEach(GameClient::stop);
+        for (Socket s : sockets) s.close();
+        if (server != null) server.stop();
+    }
+
+    private void startServer(int port) throws InterruptedException {
+        startServer(port, OutboundLimit.DEFAULT_MAX_QUEUED_BYTES);
+    }
+
+    private void startServer(int port, int maxQueuedBytes) throws InterruptedException {
+        server = new GameServer(port, ServerMode.SELECTOR);
+        server.getConfig().setMaxQueuedBytes(maxQueuedBytes);
+        server.getConfig().setPingIntervalMillis(100);
+        server.getConfig().setReadIdleTimeoutMillis(500);
+        server.getConfig().setWriteIdleTimeoutMillis(500);
+        ServerTestSupport.start(server);
+    }
+
+    private GameClient client(int port) throws IOException {
+        GameClient client = new GameClient("localhost", port);
+        clients.add(client);
+        client.start();
+        return client;
+    }
+
+    /**
+     * Connects a raw client to a room and reads up to its session message.
+     */
+    private Socket rawPlayer(int port, String roomId, int receiveBuffer) throws IOException {
+        Socket socket = new Socket();
+        if (receiveBuffer > 0) socket.setReceiveBufferSize(receiveBuffer);
+        socket.connect(new InetSocketAddress("localhost", port));
+        sockets.add(socket);
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        out.println("{\"type\":\"join_room\",\"roomId\":\"" + roomId + "\"}");
+        String line;
+        while ((line = in.readLine()) != null && !line.contains("\"session\"")) {
+            // Skip the initial state
+        }
+        return socket;
+    }
+
+    @Test
+    public void timerWheel_runsTimersAfterTheirDelay_exceptCancelledOnes() throws Exception {
+        // Eight buckets of 5 ms, so most timers wait for a later round of the wheel
+        try (TimerWheel wheel = new TimerWheel(5, TimeUnit.MILLISECONDS, 8, "test-wheel")) {
+            int count = 40;
+            CountDownLatch fired = new CountDownLatch(count - 1);
+            ConcurrentHashMap<Integer, Long> lateness = new ConcurrentHashMap<>();
+            TimerWheel.Timeout cancelled = null;
+            for (int i = 0; i < count; i++) {
+                int delay = i * 7;
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+                int id = i;
+                TimerWheel.Timeout timeout = wheel.schedule(() -> {
+                    lateness.put(id, System.nanoTime() - deadline);
+                    fired.countDown();
+                }, delay, TimeUnit.MILLISECONDS);
+                if (i == count / 2) cancelled = timeout;
+            }
+            cancelled.cancel();
+
+            assertTrue(fired.await(5, TimeUnit.SECONDS), "Every timer should run.");
+            Thread.sleep(50);
+            assertEquals(count - 1, lateness.size());
+            assertFalse(lateness.containsKey(count / 2), "A cancelled timer must not run.");
+            for (long late : lateness.values()) {
+                assertTrue(late >= 0, "A timer must not run early.");
+            }
+            assertEquals(0, wheel.getPendingCount());
+        }
+    }
+
+    @Test
+    public void silentClient_isReaped_whileAnsweringClientsStayAndAreMeasured() throws Exception {
+        int port = 8970;
+        startServer(port);
+        GameClient player = client(port);
+        player.createRoom(5);
+        await(() -> player.getSessionToken() != null, "Room should be created.");
+
+        // A half-open connection: the client neither reads nor sends anything, not even pongs
+        rawPlayer(port, player.getRoomId(), 0);
+        player.requestRoomList();
+        await(() -> !player.getLatestRooms().isEmpty() && player.getLatestRooms().get(0).getPlayers() == 2,
+                "The silent client should join.");
+
+        await(() -> server.getIdleDisconnects() == 1, "The silent client should be disconnected.");
+        player.requestRoomList();
+        await(() -> player.getLatestRooms().get(0).getPlayers() == 1, "The silent client's seat should be freed.");
+
+        // Several read idle timeouts later the answering client is still connected
+        Thread.sleep(1500);
+        assertEquals(1, server.getIdleDisconnects());
+        assertTrue(player.isConnected());
+        assertTrue(server.getRttMicros(player.getRoomId(), player.getPlayerId()) >= 0);
+        await(() -> player.getRttMicros() >= 0, "The pings should report the round-trip time.");
+    }
+
+    @Test
+    public void clientThatStopsReading_isDisconnected() throws Exception {
+        int port = 8971;
+        // The queue may grow large enough to block the socket, but the slow-consumer policy must not apply
+        startServer(port, 256 * 1024 * 1024);
+        GameClient player = client(port);
+        player.createRoom(5);
+        await(() -> player.getSessionToken() != null, "Room should be created.");
+
+        // The client keeps sending, so it is not idle, but never reads
+        Socket socket = rawPlayer(port, player.getRoomId(), 4096);
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        Thread keepAlive = new Thread(() -> {
+            while (!socket.isClosed() && !out.checkError()) {
+                out.println("{\"type\":\"pong\",\"t\":0}");
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        keepAlive.setDaemon(true);
+        keepAlive.start();
+
+        PrintWriter chat = new PrintWriter(rawPlayer(port, player.getRoomId(), 0).getOutputStream(), true,
+                StandardCharsets.UTF_8);
+        String text = "x".repeat(8 * 1024);
+        for (int i = 0; server.getIdleDisconnects() == 0; i++) {
+            assertTrue(i < 10_000, "The client that does not read should be disconnected.");
+            chat.println("{\"type\":\"chat\",\"text\":\"" + text + "\"}");
+            if (i % 16 == 15) Thread.sleep(5);
+        }
+        assertEquals(0, server.getOutboundMetrics().getDisconnects(), "The slow-consumer policy should not apply.");
+        assertTrue(player.isConnected(), "A client that reads should stay connected.");
+        keepAlive.interrupt();
+    }
+
+    @Test
+    public void client_detectsASilentServer() throws Exception {
+        int port = 8972;
+        try (ServerSocket silent = new ServerSocket(port)) {
+            GameClient client = new GameClient("localhost", port);
+            client.setReadTimeoutMillis(300);
+            clients.add(client);
+            long start = System.nanoTime();
+            client.start();
+            try (Socket accepted = silent.accept()) {
+                assertTrue(client.isConnected());
+                await(() -> !client.isConnected(), "The client should give up on the server.");
+                assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300));
+                assertEquals(-1, accepted.getInputStream().read(), "The client should close its connection.");
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package log;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogRetentionTest {
+
+    @TempDir
+    Path dir;
+
+    private Path file(String name, int bytes, long ageMillis) throws IOException {
+        Path p = dir.resolve(name);
+        Files.writeString(p, "12:00:00 [1] - TURN at the position: 1,1\n".repeat(bytes / 41 + 1));
+        Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis() - ageMillis));
+        return p;
+    }
+
+    @Test
+    void pass_compressesRotatedSegmentsAndKeepsCurrentOnes() throws IOException {
+        file("segment_1.log", 10_000, 3_000);
+        file("segment_2.log", 10_000, 2_000);
+        file("events_1.bin", 100, 2_000);
+
+        LogMetrics metrics = new LogMetrics();
+        new LogRetention(dir, new RetentionPolicy(), metrics).run();
+
+        assertTrue(Files.exists(dir.resolve("segment_1.log.gz")));
+        assertFalse(Files.exists(dir.resolve("segment_1.log")));
+        assertTrue(Files.exists(dir.resolve("segment_2.log")), "the newest segment may still be written");
+        assertTrue(Files.exists(dir.resolve("events_1.bin")));
+        assertEquals(1, metrics.getCompressedSegments());
+        assertTrue(metrics.getCompressionRatio() < 0.1);
+    }
+
+    @Test
+    void pass_deletesExpiredFilesThenOldestUntilWithinBudget() throws IOException {
+        file("game_1_20240101_120000.log", 1_000, TimeUnit.DAYS.toMillis(40));
+        file("segment_1.log.gz", 5_000, 4_000);
+        file("segment_2.log.gz", 5_000, 3_000);
+        file("segment_3.log.gz", 5_000, 2_000);
+        file("segment_4.log", 5_000, 0);
+
+        RetentionPolicy policy = new RetentionPolicy();
+        policy.setMaxTotalBytes(16_000);
+        LogMetrics metrics = new LogMetrics();
+        new LogRetention(dir, policy, metrics).run();
+
+        assertFalse(Files.exists(dir.resolve("game_1_20240101_120000.log")));
+        assertFalse(Files.exists(dir.resolve("segment_1.log.gz")));
+        assertTrue(Files.exists(dir.resolve("segment_2.log.gz")));
+        assertTrue(Files.exists(dir.resolve("segment_4.log")));
+        assertEquals(1, metrics.getDeletedByAge());
+        assertEquals(1, metrics.getDeletedByBudget());
+        assertTrue(metrics.getDiskBytes() <= 16_000);
+    }
+
+    @Test
+    void sink_rotatesByAgeAndExtractsCompressedSegments() throws Exception {
+        RetentionPolicy policy = new RetentionPolicy();
+        policy.setMaxSegmentAgeMillis(20);
+        LogMetrics metrics = new LogMetrics();
+        LogSink sink = new LogSink(dir, policy, metrics);
+
+        sink.write(7, "12:00:00", "first");
+        sink.flush();
+        Thread.sleep(30);
+        sink.write(7, "12:00:01", "second");
+        sink.flush();
+        sink.retention().schedule().get();
+
+        assertEquals(1, metrics.getRotations());
+        assertTrue(Files.exists(dir.resolve("segment_1.log.gz")));
+        assertEquals(List.of("12:00:00 - first", "12:00:01 - second"), LogIndex.extract(dir, sink.runId(), 7));
+    }
+
+    @Test
+    void sink_rotatesTheEventLogWithTheSegments() throws Exception {
+        RetentionPolicy policy = new RetentionPolicy();
+        policy.setMaxSegmentAgeMillis(20);
+        policy.setCompress(false);
+        LogSink sink = new LogSink(dir, policy, new LogMetrics());
+
+        sink.write(7, "12:00:00", "first");
+        sink.events().append(1, 7, EventType.TURN, 0, 0);
+        sink.events().flush();
+        Thread.sleep(30);
+        sink.write(7, "12:00:01", "second");
+        sink.events().append(2, 7, EventType.TURN, 1, 0);
+        sink.events().flush();
+        sink.retention().schedule().get();
+
+        assertEquals(dir.resolve("events_2.bin"), sink.events().file());
+        assertEquals(EventRecord.SIZE, Files.size(dir.resolve("events_1.bin")));
+        assertEquals(EventRecord.SIZE, Files.size(dir.resolve("events_2.bin")));
+    }
+
+    @Test
+    void pass_deletesRotatedEventLogsLikeSegments() throws IOException {
+        file("events_1.bin", 5_000, TimeUnit.DAYS.toMillis(40));
+        file("events_2.bin", 5_000, 3_000);
+        file("events_3.bin", 5_000, 2_000);
+        file("events_4.bin", 5_000, TimeUnit.DAYS.toMillis(40));
+
+        RetentionPolicy policy = new RetentionPolicy();
+        policy.setMaxTotalBytes(8_000);
+        LogMetrics metrics = new LogMetrics();
+        new LogRetention(dir, policy, metrics).run();
+
+        assertFalse(Files.exists(dir.resolve("events_1.bin")));
+        assertFalse(Files.exists(dir.resolve("events_2.bin")));
+        assertFalse(Files.exists(dir.resolve("events_3.bin")));
+        assertTrue(Files.exists(dir.resolve("events_4.bin")), "the newest event log may still be written");
+        assertEquals(1, metrics.getDeletedByAge());
+        assertEquals(2, metrics.getDeletedByBudget());
+    }
+}
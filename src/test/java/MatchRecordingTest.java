@@ -0,0 +1,194 @@
+package multiplayer;
+
+import common.GameNode;
+import common.Position;
+import game.Game;
+import json.GameDeserializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static multiplayer.ServerTestSupport.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MatchRecordingTest {
+    @TempDir
+    Path dir;
+
+    private final List<GameClient> clients = new ArrayList<>();
+    private GameServer server;
+
+    @AfterEach
+    public void tearDown() {
+        clients.forEach(GameClient::stop);
+        if (server != null) server.stop();
+    }
+
+    /**
+     * Returns the connectors of every node and the history of a board, to compare boards.
+     */
+    private static List<Object> state(Game game) {
+        List<Object> state = new ArrayList<>();
+        for (int r = 1; r <= game.rows(); r++) {
+            for (int c = 1; c <= game.cols(); c++) {
+                GameNode node = game.node(new Position(r, c));
+                state.add(node.getConnectors());
+            }
+        }
+        state.add(game.getUndoHistory());
+        state.add(game.getRedoHistory());
+        return state;
+    }
+
+    @Test
+    public void replay_reconstructsEveryPlayersBoardAtAnyTime() throws Exception {
+        BoardPool.Board board = BoardPool.Board.generate(5);
+        board.game().close();
+        GameDeserializer source = new GameDeserializer(board.state());
+        source.getGame().close();
+        Game[] games = {null, source.newGame(), source.newGame()};
+        games[1].setLoggingSuppressed(true);
+        games[2].setLoggingSuppressed(true);
+
+        // Random turns, undos and redos of two players, also undos and redos their games ignore
+        int moves = 600;
+        List<List<Object>> expected = new ArrayList<>();
+        List<Integer> players = new ArrayList<>();
+        Random random = new Random(49);
+        MatchRecorder recorder = new MatchRecorder(dir);
+        MatchRecorder.Recording recording = recorder.open("1", board.json());
+        recording.append(0, MatchRecord.Op.START, -1, System.nanoTime());
+        long last = 0;
+        for (int i = 0; i < moves; i++) {
+            int player = 1 + random.nextInt(2);
+            Game game = games[player];
+            int roll = random.nextInt(10);
+            MatchRecord.Op op = roll < 6 ? MatchRecord.Op.TURN : roll < 8 ? MatchRecord.Op.UNDO : MatchRecord.Op.REDO;
+            int cell = -1;
+            switch (op) {
+                case TURN -> {
+                    cell = random.nextInt(25);
+                    game.node(new Position(cell / 5 + 1, cell % 5 + 1)).turn();
+                }
+                case UNDO -> game.undo();
+                default -> game.redo();
+            }
+            // Distinct times, so every move is the last one at its time
+            long at;
+            do {
+                at = System.nanoTime();
+            } while (at == last);
+            last = at;
+            recording.append(player, op, cell, at);
+            expected.add(state(game));
+            players.add(player);
+        }
+        recording.close();
+        recorder.close();
+
+        Path file = recording.file();
+        // A record cut off by a crash is ignored
+        Files.write(file, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        MatchReplay replay = MatchReplay.read(file);
+        assertEquals(5, replay.rows());
+        assertEquals(moves + 1, replay.getRecords().size());
+        assertEquals(MatchRecord.Op.START, replay.getRecords().get(0).op());
+        assertEquals(List.of(1, 2), replay.getPlayerIds());
+        long p1Moves = players.stream().filter(p -> p == 1).count();
+        assertEquals(p1Moves / MatchReplay.KEYFRAME_INTERVAL + 1, replay.getKeyframeCount(1));
+
+        for (int i = 0; i < moves; i += 7) {
+            MatchRecord record = replay.getRecords().get(i + 1);
+            assertEquals(i + 2, record.seq());
+            int player = players.get(i);
+            assertEquals(player, record.playerId());
+            // The other player's board at the same time is its state after its last earlier move
+            int other = 3 - player;
+            int j = i;
+            while (j >= 0 && players.get(j) != other) j--;
+            Game own = replay.getBoard(player, record.nanos());
+            Game others = replay.getBoard(other, record.nanos());
+            assertEquals(expected.get(i), state(own), "Player " + player + " after move " + i);
+            if (j >= 0) assertEquals(expected.get(j), state(others), "Player " + other + " at move " + i);
+            own.close();
+            others.close();
+        }
+        Game initial = replay.getBoard(1, -1);
+        Game fresh = source.newGame();
+        assertEquals(state(fresh), state(initial));
+        initial.close();
+        fresh.close();
+        games[1].close();
+        games[2].close();
+    }
+
+    @Test
+    public void server_recordsTheInterleavedMovesOfARoom() throws Exception {
+        server = new GameServer(8995, ServerMode.SELECTOR);
+        server.getConfig().setRecordingDirectory(dir);
+        ServerTestSupport.start(server);
+
+        GameClient first = new GameClient("localhost", 8995);
+        GameClient second = new GameClient("localhost", 8995);
+        clients.add(first);
+        clients.add(second);
+        first.start();
+        second.start();
+        first.createRoom(5);
+        await(() -> first.getSessionToken() != null, "Room should be created.");
+        second.joinRoom(first.getRoomId());
+        await(() -> second.getSessionToken() != null, "Second player should join.");
+        first.sendStartGame();
+        await(second::isGameStarted, "Game should start.");
+
+        first.sendTurn(new Position(1, 1));
+        first.sendTurn(new Position(1, 2));
+        first.sendUndo();
+        second.sendTurn(new Position(3, 3));
+        second.sendRedo();
+        first.sendWin();
+        String roomId = first.getRoomId();
+        await(() -> server.getWinnerId(roomId) == 1, "The win should be announced.");
+        await(() -> server.getWrittenMatchRecords() == 7, "Every event should be written.");
+
+        MatchReplay replay = MatchReplay.read(server.getRecordingFile(roomId));
+        List<MatchRecord> records = replay.getRecords();
+        assertEquals(7, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(i + 1, records.get(i).seq());
+        }
+        assertEquals(MatchRecord.Op.START, records.get(0).op());
+        assertEquals(new MatchRecord(records.get(6).seq(), 1, MatchRecord.Op.WIN, -1, records.get(6).nanos()), records.get(6));
+        assertEquals(List.of(MatchRecord.Op.TURN, MatchRecord.Op.TURN, MatchRecord.Op.UNDO),
+                records.stream().filter(r -> r.playerId() == 1 && r.op() != MatchRecord.Op.WIN).map(MatchRecord::op).toList());
+        assertEquals(List.of(0, 1, -1),
+                records.stream().filter(r -> r.playerId() == 1 && r.op() != MatchRecord.Op.WIN).map(MatchRecord::cell).toList());
+        assertEquals(List.of(12, -1), records.stream().filter(r -> r.playerId() == 2).map(MatchRecord::cell).toList());
+        assertEquals(1, replay.getWinnerId());
+
+        Game expected = replay.getBoard(1, -1);
+        expected.node(new Position(1, 1)).turn();
+        expected.node(new Position(1, 2)).turn();
+        expected.undo();
+        Game replayed = replay.getBoard(1, replay.getDurationNanos());
+        assertEquals(state(expected), state(replayed));
+        assertEquals(List.of(new Position(1, 2)), replayed.getRedoHistory());
+        expected.close();
+        replayed.close();
+    }
+
+    @Test
+    public void unknownFile_isRejected() throws IOException {
+        Path file = dir.resolve("other.match");
+        Files.write(file, "not a match".getBytes());
+        assertThrows(IOException.class, () -> MatchReplay.read(file));
+    }
+}
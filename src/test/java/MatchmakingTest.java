@@ -0,0 +1,225 @@
+package multiplayer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static multiplayer.ServerTestSupport.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MatchmakingTest {
+    private final List<GameClient> clients = new ArrayList<>();
+    private final List<SocketChannel> channels = new ArrayList<>();
+    private GameServer server;
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        clients.forEach(GameClient::stop);
+        for (SocketChannel c : channels) c.close();
+        if (server != null) server.stop();
+    }
+
+    private void startServer(int port, long matchWaitMillis) throws InterruptedException {
+        server = new GameServer(port, ServerMode.SELECTOR);
+        server.getConfig().setPingIntervalMillis(600_000);
+        server.getConfig().setReadIdleTimeoutMillis(1_200_000);
+        server.getConfig().setMatchTargetWaitMillis(matchWaitMillis);
+        ServerTestSupport.start(server);
+    }
+
+    private GameClient client(int port) throws IOException {
+        GameClient client = new GameClient("localhost", port);
+        clients.add(client);
+        client.start();
+        return client;
+    }
+
+    @Test
+    public void fullRoom_isMatchedAndStartedAtOnce() throws Exception {
+        startServer(8990, 600_000);
+        List<GameClient> players = new ArrayList<>();
+        for (int i = 0; i < Room.MAX_PLAYERS; i++) {
+            GameClient player = client(8990);
+            player.findMatch(6);
+            players.add(player);
+        }
+
+        await(() -> players.stream().allMatch(GameClient::isGameStarted), "The full room should start.");
+        String roomId = players.get(0).getRoomId();
+        Set<Integer> ids = new HashSet<>();
+        for (GameClient player : players) {
+            assertEquals(roomId, player.getRoomId());
+            assertFalse(player.isMatchmaking());
+            assertTrue(player.getMatchWaitMillis() >= 0);
+            ids.add(player.getPlayerId());
+        }
+        assertEquals(Room.MAX_PLAYERS, ids.size());
+        assertEquals(6, server.getGame(roomId).rows());
+        assertEquals(1, server.getMatchCount());
+        assertEquals(0, server.getMatchQueueLength());
+        assertEquals(Room.MAX_PLAYERS, server.getTimeToMatch().getCount());
+    }
+
+    @Test
+    public void withoutPooledBoards_playersAreMatchedOnceTheirBoardIsGenerated() throws Exception {
+        server = new GameServer(8993, ServerMode.SELECTOR);
+        server.getConfig().setPooledBoards(0);
+        server.getConfig().setMatchTargetWaitMillis(600_000);
+        ServerTestSupport.start(server);
+        List<GameClient> players = new ArrayList<>();
+        for (int i = 0; i < Room.MAX_PLAYERS; i++) {
+            GameClient player = client(8993);
+            player.findMatch(5);
+            players.add(player);
+        }
+
+        await(() -> players.stream().allMatch(GameClient::isGameStarted), "The full room should start.");
+        assertEquals(1, server.getMatchCount());
+        assertEquals(5, server.getGame(players.get(0).getRoomId()).rows());
+    }
+
+    @Test
+    public void boardPool_generatesTheBoardsAskedForWithoutPooling() throws Exception {
+        try (BoardPool pool = new BoardPool(0)) {
+            pool.prepare(4);
+            assertNull(pool.poll(4), "No board is pooled ahead of time.");
+            pool.prepare(4, 1);
+            await(() -> pool.getReadyCount(4) == 1, "The board asked for should be generated.");
+            BoardPool.Board board = pool.poll(4);
+            assertNotNull(board);
+            board.game().close();
+            Thread.sleep(200);
+            assertEquals(0, pool.getReadyCount(4), "A taken board is not replaced.");
+        }
+    }
+
+    @Test
+    public void afterTargetWait_nearbySizesAreMatched() throws Exception {
+        startServer(8991, 300);
+        GameClient first = client(8991);
+        first.findMatch(5);
+        await(first::isMatchmaking, "The first player should be queued.");
+        Thread.sleep(600);
+        assertTrue(first.isMatchmaking(), "A player alone stays queued.");
+        assertNull(first.getRoomId());
+
+        GameClient far = client(8991);
+        far.findMatch(12);
+        await(far::isMatchmaking, "The far player should be queued.");
+        far.cancelMatch();
+        await(() -> !far.isMatchmaking(), "The far player should leave the queue.");
+
+        GameClient second = client(8991);
+        second.findMatch(6);
+        await(() -> first.isGameStarted() && second.isGameStarted(), "The nearby sizes should be matched.");
+        assertEquals(first.getRoomId(), second.getRoomId());
+        // The room has the size of the player that has waited longest
+        assertEquals(5, server.getGame(first.getRoomId()).rows());
+        assertTrue(first.getMatchWaitMillis() >= 600);
+        assertNull(far.getRoomId());
+        assertEquals(0, server.getMatchQueueLength());
+    }
+
+    @Test
+    public void simulatedClients_areAllMatched() throws Exception {
+        int clientCount = 400;
+        startServer(0, 200);
+        int port = server.getPort();
+
+        // Players are raw sockets drained by one selector, each counting the start_game lines it receives
+        Selector selector = Selector.open();
+        Random random = new Random(48);
+        for (int i = 0; i < clientCount; i++) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", port));
+            channels.add(channel);
+            int size = 4 + random.nextInt(4);
+            channel.write(ByteBuffer.wrap(("{\"type\":\"find_match\",\"difficulty\":" + size + "}\n")
+                    .getBytes(StandardCharsets.UTF_8)));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, new StringBuilder());
+        }
+        AtomicInteger started = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+            try {
+                while (selector.isOpen()) {
+                    selector.select(100);
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        buf.clear();
+                        int n = ((SocketChannel) key.channel()).read(buf);
+                        if (n < 0) {
+                            key.cancel();
+                            continue;
+                        }
+                        StringBuilder line = (StringBuilder) key.attachment();
+                        line.append(new String(buf.array(), 0, n, StandardCharsets.UTF_8));
+                        int end;
+                        while ((end = line.indexOf("\n")) >= 0) {
+                            if (line.substring(0, end).contains("\"type\":\"start_game\"")) started.incrementAndGet();
+                            line.delete(0, end + 1);
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException | RuntimeException ignored) {
+            }
+        });
+        reader.start();
+
+        try {
+            // Only a player left alone in the queue cannot be matched
+            await(() -> started.get() + server.getMatchQueueLength() == clientCount && server.getMatchQueueLength() <= 1,
+                    "All players should be matched, started " + started.get() + ".", 20_000);
+            LatencyHistogram timeToMatch = server.getTimeToMatch();
+            assertEquals(started.get(), timeToMatch.getCount());
+            assertTrue(server.getMatchCount() >= (clientCount - 1) / Room.MAX_PLAYERS);
+            assertTrue(timeToMatch.getPercentileMicros(99) < 20_000_000);
+        } finally {
+            selector.close();
+            reader.join();
+        }
+    }
+
+    @Test
+    public void matchmaker_waitsForABoard_andRequeuedPlayersKeepTheirWait() {
+        AtomicInteger ready = new AtomicInteger();
+        Matchmaker matchmaker = new Matchmaker(2, 100, d -> ready.get());
+        long wait = TimeUnit.MILLISECONDS.toNanos(100);
+        Room.Member first = new Room.Member(null);
+        Room.Member second = new Room.Member(null);
+        long start = 1_000_000_000L;
+
+        assertNull(matchmaker.enqueue(first, 5, start));
+        assertNull(matchmaker.enqueue(second, 5, start + 1), "Without a board the players stay queued.");
+        assertTrue(matchmaker.poll(start + 2).isEmpty());
+        ready.set(1);
+        List<Matchmaker.Match> matches = matchmaker.poll(start + 3);
+        assertEquals(1, matches.size());
+        assertEquals(0, matchmaker.getQueueLength());
+
+        // A match that could not be started is queued again as it was; here only the first player is left
+        matchmaker.requeue(List.of(matches.get(0).tickets().get(0)));
+        assertEquals(1, matchmaker.getQueueLength(5));
+        Room.Member late = new Room.Member(null);
+        assertNull(matchmaker.enqueue(late, 7, start + 3 * wait));
+        // The first player has waited three target waits, so a player two sizes apart is accepted
+        List<Matchmaker.Match> widened = matchmaker.poll(start + 3 * wait);
+        assertEquals(1, widened.size());
+        assertEquals(List.of(first, late), widened.get(0).tickets().stream().map(Matchmaker.Ticket::member).toList());
+        assertEquals(start, widened.get(0).tickets().get(0).queuedAt());
+    }
+}
@@ -0,0 +1,144 @@
+package multiplayer;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutboundQueueTest {
+    private static final int LIMIT = 64 * 1024;
+    private static final String TEXT = "x".repeat(8 * 1024);
+
+    private final List<RawClient> rawClients = new ArrayList<>();
+    private GameServer server;
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        for (RawClient c : rawClients) c.close();
+        if (server != null) server.stop();
+    }
+
+    private RawClient connect(int port, int receiveBuffer) throws IOException {
+        RawClient client = new RawClient(port, receiveBuffer);
+        rawClients.add(client);
+        return client;
+    }
+
+    /**
+     * Starts a server, lets a client that stops reading create a room, and a sender and a fast reader join it.
+     *
+     * @return the slow client, the sender and the reader
+     */
+    private RawClient[] room(int port, ServerMode mode, SlowConsumerPolicy policy) throws Exception {
+        server = new GameServer(port, mode);
+        server.getConfig().setMaxQueuedBytes(LIMIT);
+        server.getConfig().setSlowConsumerPolicy(policy);
+        ServerTestSupport.start(server);
+
+        RawClient slow = connect(port, 4096);
+        slow.out.println("{\"type\":\"create_room\"}");
+        String roomId = slow.readUntil("room_created").get("roomId").getAsString();
+        RawClient sender = connect(port, 0);
+        RawClient reader = connect(port, 0);
+        for (RawClient c : new RawClient[]{sender, reader}) {
+            c.out.println("{\"type\":\"join_room\",\"roomId\":\"" + roomId + "\"}");
+            c.readUntil("init");
+        }
+        slow.readUntil("init");
+        return new RawClient[]{slow, sender, reader};
+    }
+
+    /**
+     * Sends chat messages one at a time until the condition holds. Each message is relayed to the slow
+     * client before the reader, so the reader receiving it means the slow client's queue has been updated.
+     *
+     * @return the number of messages sent
+     */
+    private static int sendUntil(RawClient sender, RawClient reader, BooleanSupplier condition) throws IOException {
+        int seq = 0;
+        while (!condition.getAsBoolean()) {
+            assertTrue(seq < 5000, "The slow client's queue should overflow.");
+            sender.out.println("{\"type\":\"chat\",\"seq\":" + seq + ",\"text\":\"" + TEXT + "\"}");
+            assertEquals(seq, reader.readUntil("chat").get("seq").getAsInt(), "The reader should not be held back.");
+            seq++;
+        }
+        return seq;
+    }
+
+    @Test
+    public void drop_skipsMessagesAndBoundsTheQueue() throws Exception {
+        RawClient[] c = room(8930, ServerMode.SELECTOR, SlowConsumerPolicy.DROP);
+        OutboundMetrics metrics = server.getOutboundMetrics();
+        int sent = sendUntil(c[1], c[2], () -> metrics.getDroppedMessages() >= 3);
+
+        long dropped = metrics.getDroppedMessages();
+        assertTrue(metrics.getMaxQueueDepth() <= LIMIT, "Queue must stay within the limit: " + metrics);
+        c[1].out.println("{\"type\":\"chat\",\"seq\":" + sent + ",\"text\":\"last\"}");
+        c[2].readUntil("chat");
+
+        int received = 0;
+        int previous = -1;
+        JsonObject msg;
+        do {
+            msg = c[0].readUntil("chat");
+            int seq = msg.get("seq").getAsInt();
+            assertTrue(seq > previous, "Messages stay in order.");
+            previous = seq;
+            received++;
+        } while (previous != sent);
+        assertEquals(sent + 1 - dropped, received, "Exactly the dropped messages are missing.");
+        assertEquals(0, metrics.getDisconnects());
+    }
+
+    @Test
+    public void disconnect_closesTheSlowClient() throws Exception {
+        RawClient[] c = room(8931, ServerMode.SELECTOR, SlowConsumerPolicy.DISCONNECT);
+        OutboundMetrics metrics = server.getOutboundMetrics();
+        sendUntil(c[1], c[2], () -> metrics.getDisconnects() >= 1);
+
+        c[0].socket.setSoTimeout(10_000);
+        while (c[0].in.readLine() != null) {
+            // Drain what was written before the disconnect, possibly ending inside a message
+        }
+        c[1].out.println("{\"type\":\"player_count\"}");
+        assertEquals(2, c[1].readUntil("player_count_response").get("count").getAsInt());
+    }
+
+    @Test
+    public void resync_replaysTheRoom_selector() throws Exception {
+        resync(8932, ServerMode.SELECTOR);
+    }
+
+    @Test
+    public void resync_replaysTheRoom_blocking() throws Exception {
+        resync(8933, ServerMode.BLOCKING);
+    }
+
+    private void resync(int port, ServerMode mode) throws Exception {
+        RawClient[] c = room(port, mode, SlowConsumerPolicy.RESYNC);
+        OutboundMetrics metrics = server.getOutboundMetrics();
+        int sent = sendUntil(c[1], c[2], () -> metrics.getResyncs() >= 1);
+
+        c[0].readUntil("resync");
+        assertEquals("init", c[0].read().get("type").getAsString());
+        for (int seq = 0; seq < sent; seq++) {
+            assertEquals(seq, c[0].readUntil("chat").get("seq").getAsInt(), "The whole history is replayed.");
+        }
+        assertEquals("player_count_response", c[0].read().get("type").getAsString());
+
+        // Having read the state, the client is served normally again
+        c[1].out.println("{\"type\":\"chat\",\"seq\":" + sent + ",\"text\":\"after\"}");
+        assertEquals(sent, c[0].readUntil("chat").get("seq").getAsInt());
+        assertEquals(1, metrics.getResyncs());
+        assertEquals(0, metrics.getDisconnects());
+        assertTrue(metrics.getFlushes() > 0);
+    }
+}
@@ -0,0 +1,198 @@
+package multiplayer;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static multiplayer.ServerTestSupport.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimitTest {
+    private final List<RawClient> rawClients = new ArrayList<>();
+    private GameServer server;
+    private String roomId;
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        for (RawClient c : rawClients) c.close();
+        if (server != null) server.stop();
+    }
+
+    private RawClient connect(int port) throws IOException {
+        RawClient client = new RawClient(port);
+        rawClients.add(client);
+        return client;
+    }
+
+    /**
+     * Starts the configured server and lets a client create a room.
+     *
+     * @return the creator of the room, whose room ID is kept in {@link #roomId}
+     */
+    private RawClient start(int port) throws Exception {
+        ServerTestSupport.start(server);
+        RawClient creator = connect(port);
+        creator.out.println("{\"type\":\"create_room\"}");
+        roomId = creator.readUntil("room_created").get("roomId").getAsString();
+        creator.readUntil("player_count_response");
+        return creator;
+    }
+
+    private static ByteBuffer json(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void limiter_refillsBucketsAndFindsTypesWithoutDecoding() {
+        RateLimiter limiter = new RateLimiter(null, Map.of("player_count", new RateLimiter.Rate(10, 5)), FloodPolicy.DROP);
+        long now = 1_000_000_000L;
+        RateLimiter.Buckets buckets = limiter.newBuckets(now);
+        int type = limiter.typeOf(json("{ \"type\" : \"player_count\" }"), Protocol.JSON);
+        assertEquals(0, type);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.admit(buckets, type, now, false), "Message " + i + " is within the burst.");
+        }
+        long wait = limiter.admit(buckets, type, now, false);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), wait, TimeUnit.MICROSECONDS.toNanos(1));
+        assertEquals(0, limiter.admit(buckets, type, now + wait, false));
+        // Other types are not limited
+        assertEquals(0, limiter.admit(buckets, limiter.typeOf(json("{\"type\":\"turn\"}"), Protocol.JSON), now, false));
+
+        assertEquals(-1, limiter.typeOf(json("{\"type\":\"player_count_all\"}"), Protocol.JSON));
+        assertEquals(-1, limiter.typeOf(json("{\"kind\":\"player_count\"}"), Protocol.JSON));
+        // Only the type of the message counts, not a type key nested in one of its values or inside a string
+        assertEquals(0, limiter.typeOf(json("{\"x\":{\"type\":\"a\"},\"y\":[{\"type\":\"b\"}],\"type\":\"player_count\"}"),
+                Protocol.JSON));
+        assertEquals(-1, limiter.typeOf(json("{\"x\":{\"type\":\"player_count\"},\"type\":\"turn\"}"), Protocol.JSON));
+        assertEquals(0, limiter.typeOf(json("{\"text\":\"\\\"type\\\":\\\"a\\\" }\",\"type\":\"player_count\"}"), Protocol.JSON));
+        // The parser keeps the last duplicate key and decodes escapes, so these are billed as another type than parsed
+        assertEquals(0, limiter.typeIndex("player_count"));
+        assertEquals(-1, limiter.typeIndex("turn"));
+        assertEquals(-1, limiter.typeOf(json("{\"type\":\"chat\",\"type\":\"player_count\"}"), Protocol.JSON));
+        assertEquals(-1, limiter.typeOf(json("{\"t\\u0079pe\":\"player_count\"}"), Protocol.JSON));
+        byte[] nested = "{\"x\":{\"type\":\"a\"},\"type\":\"player_count\"}".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(nested.length + 1).put(BinaryProtocol.OP_JSON).put(nested).flip();
+        assertEquals(0, limiter.typeOf(frame, Protocol.BINARY));
+        assertEquals(0, limiter.typeOf(ByteBuffer.wrap(new byte[]{BinaryProtocol.OP_PLAYER_COUNT}), Protocol.BINARY));
+        assertEquals(-1, limiter.typeOf(ByteBuffer.wrap(new byte[]{BinaryProtocol.OP_TURN, 0, 1, 0, 1}), Protocol.BINARY));
+    }
+
+    @Test
+    public void drop_discardsMessagesBeyondTheLimit() throws Exception {
+        server = new GameServer(8996, ServerMode.SELECTOR);
+        server.getConfig().setRateLimit("player_count", 1, 2);
+        server.getConfig().setFloodPolicy(FloodPolicy.DROP);
+        RawClient client = start(8996);
+
+        for (int i = 0; i < 20; i++) {
+            client.out.println("{\"type\":\"player_count\"}");
+        }
+        await(() -> server.getRateLimitedMessages(FloodPolicy.DROP) == 18, "The flood should be dropped.");
+        client.socket.setSoTimeout(500);
+        int answers = 0;
+        JsonObject msg;
+        try {
+            while ((msg = client.read()) != null) {
+                if ("player_count_response".equals(msg.get("type").getAsString())) answers++;
+            }
+        } catch (SocketTimeoutException e) {
+            // No further answers
+        }
+        assertEquals(2, answers);
+        assertEquals(18, server.getRateLimitedMessages(roomId, FloodPolicy.DROP));
+        assertEquals(0, server.getRateLimitedMessages(FloodPolicy.DISCONNECT));
+    }
+
+    @Test
+    public void delay_relaysEveryMessageInOrderAtTheRate() throws Exception {
+        server = new GameServer(8997, ServerMode.SELECTOR);
+        server.getConfig().setRateLimit("turn", 50, 5);
+        RawClient creator = start(8997);
+        RawClient reader = connect(8997);
+        reader.out.println("{\"type\":\"join_room\",\"roomId\":\"" + roomId + "\"}");
+        reader.readUntil("init");
+
+        long started = System.nanoTime();
+        for (int i = 0; i < 30; i++) {
+            creator.out.println("{\"type\":\"turn\",\"playerId\":1,\"seq\":" + i + ",\"position\":{\"row\":1,\"col\":1}}");
+        }
+        for (int i = 0; i < 30; i++) {
+            assertEquals(i, reader.readUntil("turn").get("seq").getAsInt());
+        }
+        long elapsed = System.nanoTime() - started;
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(450), "25 delayed turns at 50/s take half a second: " + elapsed);
+        // A token may be refilled while the turns are sent
+        long delayed = server.getRateLimitedMessages(roomId, FloodPolicy.DELAY);
+        assertTrue(delayed >= 20 && delayed <= 25, "Delayed turns: " + delayed);
+        assertEquals(0, server.getRateLimitedMessages(FloodPolicy.DISCONNECT));
+    }
+
+    @Test
+    public void typeMismatch_closesAClientHidingTheTypeFromTheLimiter() throws Exception {
+        server = new GameServer(8999, ServerMode.SELECTOR);
+        server.getConfig().setRateLimit("turn", 1, 1);
+        server.getConfig().setFloodPolicy(FloodPolicy.DROP);
+        RawClient creator = start(8999);
+        RawClient reader = connect(8999);
+        reader.out.println("{\"type\":\"join_room\",\"roomId\":\"" + roomId + "\"}");
+        reader.readUntil("init");
+
+        String turn = ",\"playerId\":1,\"position\":{\"row\":1,\"col\":1}}";
+        String[] forged = {"{\"type\":\"chat\",\"type\":\"turn\"" + turn, "{\"t\\u0079pe\":\"turn\"" + turn};
+        for (String message : forged) {
+            RawClient forger = connect(8999);
+            forger.out.println("{\"type\":\"join_room\",\"roomId\":\"" + roomId + "\"}");
+            forger.readUntil("init");
+            forger.out.println(message);
+            forger.socket.setSoTimeout(5000);
+            while (forger.in.readLine() != null) {
+                // Reads until the server closes the connection
+            }
+        }
+        // Neither forged turn was relayed
+        creator.out.println("{\"type\":\"chat\",\"text\":\"end\"}");
+        reader.socket.setSoTimeout(5000);
+        JsonObject msg;
+        while (!"chat".equals((msg = reader.read()).get("type").getAsString())) {
+            assertNotEquals("turn", msg.get("type").getAsString());
+        }
+        assertEquals(0, server.getRateLimitedMessages(FloodPolicy.DROP));
+    }
+
+    @Test
+    public void disconnect_closesAFloodingClient() throws Exception {
+        server = new GameServer(8998, ServerMode.SELECTOR);
+        server.getConfig().setRateLimit(5, 5);
+        server.getConfig().setFloodPolicy(FloodPolicy.DISCONNECT);
+        RawClient creator = start(8998);
+        RawClient flooder = connect(8998);
+        flooder.out.println("{\"type\":\"join_room\",\"roomId\":\"" + roomId + "\"}");
+        flooder.readUntil("init");
+
+        for (int i = 0; i < 20; i++) {
+            flooder.out.println("{\"type\":\"chat\",\"text\":\"" + i + "\"}");
+        }
+        flooder.socket.setSoTimeout(5000);
+        while (flooder.in.readLine() != null) {
+            // Reads the relayed chat until the server closes the connection
+        }
+        assertEquals(1, server.getRateLimitedMessages(roomId, FloodPolicy.DISCONNECT));
+        assertEquals(1, server.getRateLimitedMessages(FloodPolicy.DISCONNECT));
+        // The room's other player is not affected
+        creator.out.println("{\"type\":\"player_count\"}");
+        creator.socket.setSoTimeout(5000);
+        while (creator.readUntil("player_count_response").get("count").getAsInt() != 1) {
+            // Skips the count sent when the flooding client joined
+        }
+    }
+}
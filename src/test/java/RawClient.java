@@ -0,0 +1,75 @@
+package multiplayer;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A test client speaking the JSON protocol over a plain socket, to send exactly what a test needs.
+ */
+final class RawClient implements Closeable {
+    final Socket socket;
+    final PrintWriter out;
+    final BufferedReader in;
+
+    /**
+     * Connects to a local server.
+     *
+     * @param port the server port
+     */
+    RawClient(int port) throws IOException {
+        this(port, 0);
+    }
+
+    /**
+     * Connects to a local server with a small receive buffer, e.g., for a client that stops reading.
+     *
+     * @param port          the server port
+     * @param receiveBuffer the receive buffer size, or 0 for the default
+     */
+    RawClient(int port, int receiveBuffer) throws IOException {
+        socket = new Socket();
+        if (receiveBuffer > 0) socket.setReceiveBufferSize(receiveBuffer);
+        socket.connect(new InetSocketAddress("localhost", port));
+        out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the next message.
+     *
+     * @return the message, or {@code null} if the server closed the connection
+     */
+    JsonObject read() throws IOException {
+        String line = in.readLine();
+        return line != null ? JsonParser.parseString(line).getAsJsonObject() : null;
+    }
+
+    /**
+     * Reads messages until one of the given type.
+     *
+     * @param type the message type
+     * @return the message
+     * @throws IOException if the connection is closed first
+     */
+    JsonObject readUntil(String type) throws IOException {
+        JsonObject msg;
+        while ((msg = read()) != null) {
+            if (type.equals(msg.get("type").getAsString())) return msg;
+        }
+        throw new IOException("Connection closed before " + type);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,99 @@
+package multiplayer;
+
+import common.GameNode;
+import common.Position;
+import game.Game;
+
+import java.lang.management.ThreadMXBean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Helpers shared by the tests of the multiplayer server.
+ */
+public final class ServerTestSupport {
+    /** How long {@link #await(BooleanSupplier, String)} waits. */
+    public static final long TIMEOUT_MILLIS = 10_000;
+
+    private ServerTestSupport() {
+    }
+
+    /**
+     * Waits until a condition holds, failing the test after {@value #TIMEOUT_MILLIS} ms.
+     *
+     * @param condition the condition
+     * @param message   the failure message
+     */
+    public static void await(BooleanSupplier condition, String message) throws InterruptedException {
+        await(condition, message, TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Waits until a condition holds, failing the test after the timeout.
+     *
+     * @param condition     the condition
+     * @param message       the failure message
+     * @param timeoutMillis how long to wait
+     */
+    public static void await(BooleanSupplier condition, String message, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail(message);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Starts a configured server on its own thread and waits until it has bound its port.
+     *
+     * @param server the server
+     */
+    public static void start(GameServer server) throws InterruptedException {
+        new Thread(server::start).start();
+        await(server::isListening, "The server should start listening.");
+    }
+
+    /**
+     * Returns the CPU time used so far by the event-loop threads of the running servers.
+     *
+     * @param threads the thread bean
+     * @return the CPU time in nanoseconds
+     */
+    public static long serverLoopCpu(ThreadMXBean threads) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().startsWith("server-loop-"))
+                .mapToLong(t -> threads.getThreadCpuTime(t.threadId()))
+                .sum();
+    }
+
+    /**
+     * Plays a turn as the GUI does: on the own board, then sent to the server.
+     *
+     * @param client the player
+     * @param pos    the rotated tile
+     */
+    public static void turn(GameClient client, Position pos) {
+        client.getOwnGame().node(pos).turn();
+        client.sendTurn(pos);
+    }
+
+    /**
+     * Returns whether two boards have every tile rotated alike.
+     *
+     * @param expected the board to match
+     * @param actual   the board to check, null while it has not arrived
+     * @return true if the boards match
+     */
+    public static boolean sameBoard(Game expected, Game actual) {
+        if (actual == null) return false;
+        for (int r = 1; r <= expected.rows(); r++) {
+            for (int c = 1; c <= expected.cols(); c++) {
+                GameNode e = expected.node(new Position(r, c));
+                GameNode a = actual.node(new Position(r, c));
+                if (!e.getConnectors().equals(a.getConnectors())) return false;
+            }
+        }
+        return true;
+    }
+}
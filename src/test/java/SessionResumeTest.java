@@ -0,0 +1,177 @@
+package multiplayer;
+
+import common.Position;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static multiplayer.ServerTestSupport.await;
+import static multiplayer.ServerTestSupport.sameBoard;
+import static multiplayer.ServerTestSupport.turn;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionResumeTest {
+    private final List<GameClient> clients = new ArrayList<>();
+    private final List<Socket> sockets = new ArrayList<>();
+    private GameServer server;
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        clients.forEach(GameClient::stop);
+        for (Socket s : sockets) s.close();
+        if (server != null) server.stop();
+    }
+
+    private void startServer(int port, boolean authoritative) throws InterruptedException {
+        server = new GameServer(port, ServerMode.SELECTOR);
+        server.getConfig().setAuthoritative(authoritative);
+        ServerTestSupport.start(server);
+    }
+
+    private GameClient client(int port) throws IOException {
+        GameClient client = new GameClient("localhost", port);
+        clients.add(client);
+        client.start();
+        return client;
+    }
+
+    /**
+     * Connects two clients to a new started room; the first one created the room.
+     */
+    private GameClient[] startedRoom(int port) throws Exception {
+        GameClient first = client(port);
+        GameClient second = client(port);
+        first.createRoom(5);
+        await(() -> first.getSessionToken() != null, "Room should be created.");
+        second.joinRoom(first.getRoomId());
+        await(() -> second.getSessionToken() != null, "Second player should join.");
+        first.sendStartGame();
+        await(() -> first.isGameStarted() && second.isGameStarted(), "Game should start.");
+        return new GameClient[]{first, second};
+    }
+
+    private static void undo(GameClient client) {
+        client.getOwnGame().undo();
+        client.sendUndo();
+    }
+
+    @Test
+    public void droppedPlayer_resumesWithTheMissedMoves() throws Exception {
+        startServer(8950, false);
+        GameClient[] c = startedRoom(8950);
+
+        c[1].disconnect();
+        turn(c[0], new Position(1, 1));
+        turn(c[0], new Position(2, 2));
+        undo(c[0]);
+        turn(c[0], new Position(3, 3));
+        c[1].reconnect();
+
+        await(() -> c[1].getResumeCount() == 1, "The session should be resumed.");
+        assertEquals("delta", c[1].getLastResumeMode(), "A few moves are smaller than the whole state.");
+        assertEquals(2, c[1].getPlayerId());
+        await(() -> c[1].getReceivedMoves().size() == 3, "The missed turns should be sent.");
+        await(() -> sameBoard(c[0].getOwnGame(), c[1].getOpponentGame(1)), "The missed undo should be sent.");
+
+        turn(c[1], new Position(4, 4));
+        await(() -> c[0].getReceivedMoves().size() == 1, "The resumed player should play on.");
+        assertEquals(0, c[1].getGapCount());
+    }
+
+    @Test
+    public void newClient_takesOverASessionFromTheSnapshot() throws Exception {
+        startServer(8951, true);
+        GameClient[] c = startedRoom(8951);
+        for (int i = 1; i <= 5; i++) {
+            turn(c[0], new Position(i, i));
+        }
+        undo(c[0]);
+        turn(c[1], new Position(5, 1));
+        await(() -> c[1].getReceivedMoves().size() == 5 && c[0].getReceivedMoves().size() == 1,
+                "Moves should be relayed.");
+        await(() -> sameBoard(c[0].getOwnGame(), c[1].getOpponentGame(1)), "The undo should be relayed.");
+
+        // A restarted client has only the token; the old connection is closed
+        GameClient crashed = c[0];
+        GameClient restarted = client(8951);
+        restarted.resumeSession(crashed.getRoomId(), crashed.getSessionToken());
+
+        await(() -> restarted.getResumeCount() == 1, "The session should be resumed.");
+        assertEquals("snapshot", restarted.getLastResumeMode(), "A client without state gets the snapshot.");
+        await(restarted::isGameStarted, "The snapshot should restore the started game.");
+        assertEquals(1, restarted.getPlayerId());
+        assertTrue(sameBoard(crashed.getOwnGame(), restarted.getOwnGame()));
+        assertEquals(crashed.getOwnGame().getUndoHistory(), restarted.getOwnGame().getUndoHistory());
+        assertEquals(List.of(new Position(5, 5)), restarted.getOwnGame().getRedoHistory());
+        assertTrue(sameBoard(c[1].getOwnGame(), restarted.getOpponentGame(2)));
+
+        // The restored history is the server's, so the redo is valid there and reaches the other player
+        restarted.getOwnGame().redo();
+        restarted.sendRedo();
+        await(() -> sameBoard(restarted.getOwnGame(), c[1].getOpponentGame(1)), "The redo should be relayed.");
+        assertNull(restarted.getLastError());
+    }
+
+    @Test
+    public void droppedMessages_areDetectedAndResumed() throws Exception {
+        int port = 8952;
+        server = new GameServer(port, ServerMode.SELECTOR);
+        server.getConfig().setMaxQueuedBytes(64 * 1024);
+        server.getConfig().setSlowConsumerPolicy(SlowConsumerPolicy.DROP);
+        ServerTestSupport.start(server);
+        OutboundMetrics metrics = server.getOutboundMetrics();
+
+        GameClient receiver = client(port);
+        CountDownLatch release = new CountDownLatch(1);
+        receiver.setGameUpdateListener(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        receiver.createRoom(5);
+        await(() -> receiver.getSessionToken() != null, "Room should be created.");
+
+        Socket socket = new Socket("localhost", port);
+        sockets.add(socket);
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        out.println("{\"type\":\"join_room\",\"roomId\":\"" + receiver.getRoomId() + "\"}");
+        String line;
+        while ((line = in.readLine()) != null && !line.contains("\"session\"")) {
+            // Skip the initial state
+        }
+
+        // The first turn blocks the receiver's listener, so its queue fills up
+        String turn = "{\"type\":\"turn\",\"playerId\":2,\"position\":{\"row\":1,\"col\":1}}";
+        out.println(turn);
+        String text = "x".repeat(8 * 1024);
+        for (int i = 0; metrics.getDroppedMessages() == 0; i++) {
+            assertTrue(i < 5000, "The receiver's queue should overflow.");
+            out.println("{\"type\":\"chat\",\"text\":\"" + text + "\"}");
+            if (i % 16 == 15) Thread.sleep(5);
+        }
+        for (int i = 0; i < 4; i++) {
+            out.println(turn);
+        }
+        out.println("{\"type\":\"player_count\"}");
+        while ((line = in.readLine()) != null && !line.contains("player_count_response")) {
+            // The turns have been relayed once the answer arrives
+        }
+        release.countDown();
+
+        await(() -> receiver.getReceivedMoves().size() == 5, "Every turn should arrive despite the drops.");
+        assertTrue(receiver.getGapCount() >= 1, "The dropped messages should be detected.");
+        assertEquals("delta", receiver.getLastResumeMode());
+    }
+}
@@ -0,0 +1,242 @@
+package multiplayer;
+
+import common.Position;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static multiplayer.ServerTestSupport.await;
+import static multiplayer.ServerTestSupport.sameBoard;
+import static multiplayer.ServerTestSupport.serverLoopCpu;
+import static multiplayer.ServerTestSupport.turn;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpectatorTest {
+    /** A generous bound on the server CPU of sending a move to one spectator, far above its cost on any machine. */
+    private static final long MAX_CPU_PER_DELIVERY_NANOS = 100_000;
+
+    private final List<GameClient> clients = new ArrayList<>();
+    private final List<Socket> sockets = new ArrayList<>();
+    private GameServer server;
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        clients.forEach(GameClient::stop);
+        for (Socket s : sockets) s.close();
+        if (server != null) server.stop();
+    }
+
+    private void startServer(int port) throws InterruptedException {
+        startServer(port, 10_000);
+    }
+
+    private void startServer(int port, long pingMillis) throws InterruptedException {
+        server = new GameServer(port, ServerMode.SELECTOR);
+        server.getConfig().setPingIntervalMillis(pingMillis);
+        server.getConfig().setReadIdleTimeoutMillis(3 * pingMillis);
+        ServerTestSupport.start(server);
+    }
+
+    private GameClient client(int port) throws IOException {
+        GameClient client = new GameClient("localhost", port);
+        clients.add(client);
+        client.start();
+        return client;
+    }
+
+    @Test
+    public void spectators_watchEveryPlayer_withoutTakingASlot() throws Exception {
+        int port = 8960;
+        startServer(port);
+        GameClient first = client(port);
+        GameClient second = client(port);
+        first.createRoom(5);
+        await(() -> first.getSessionToken() != null, "Room should be created.");
+        second.joinRoom(first.getRoomId());
+        await(() -> second.getSessionToken() != null, "Second player should join.");
+        first.sendStartGame();
+        await(second::isGameStarted, "Game should start.");
+        turn(first, new Position(1, 1));
+        turn(second, new Position(2, 2));
+
+        // More spectators than player slots; the late ones are sent the moves played so far
+        List<GameClient> spectators = new ArrayList<>();
+        for (int i = 0; i < Room.MAX_PLAYERS + 2; i++) {
+            GameClient spectator = client(port);
+            spectator.spectateRoom(first.getRoomId());
+            spectators.add(spectator);
+        }
+        await(() -> server.getSpectatorCount(first.getRoomId()) == spectators.size(), "Spectators should join.");
+        turn(first, new Position(3, 3));
+        turn(second, new Position(4, 4));
+
+        for (GameClient spectator : spectators) {
+            await(() -> spectator.getReceivedMoves().size() == 4, "Spectators should see every move.");
+            assertTrue(spectator.isSpectator());
+            assertTrue(spectator.isGameStarted());
+            await(() -> sameBoard(first.getOwnGame(), spectator.getOpponentGame(1))
+                    && sameBoard(second.getOwnGame(), spectator.getOpponentGame(2)), "Mirrors should match the players.");
+        }
+
+        GameClient spectator = spectators.get(0);
+        spectator.sendTurn(new Position(1, 1));
+        await(() -> spectator.getLastError() != null, "A spectator's move should be rejected.");
+        assertTrue(spectator.getLastError().contains("Spectators cannot play"));
+
+        first.requestRoomList();
+        await(() -> !first.getLatestRooms().isEmpty(), "Room list should arrive.");
+        RoomInfo info = first.getLatestRooms().get(0);
+        assertEquals(2, info.getPlayers());
+        assertEquals(spectators.size(), info.getSpectators());
+    }
+
+    @Test
+    public void laggingSpectator_isCaughtUpOnceInsteadOfEveryMessage() throws Exception {
+        int port = 8961;
+        startServer(port);
+
+        GameClient player = client(port);
+        player.createRoom(5);
+        await(() -> player.getSessionToken() != null, "Room should be created.");
+        String roomId = player.getRoomId();
+
+        GameClient slow = client(port);
+        GameClient fast = client(port);
+        CountDownLatch release = new CountDownLatch(1);
+        slow.setGameUpdateListener(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        slow.spectateRoom(roomId);
+        fast.spectateRoom(roomId);
+        await(() -> server.getSpectatorCount(roomId) == 2, "Spectators should join.");
+
+        // A raw player sends large chat messages once its first turn blocks the slow spectator
+        Socket socket = new Socket("localhost", port);
+        sockets.add(socket);
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        out.println("{\"type\":\"join_room\",\"roomId\":\"" + roomId + "\"}");
+        String line;
+        while ((line = in.readLine()) != null && !line.contains("\"session\"")) {
+            // Skip the initial state
+        }
+        String turn = "{\"type\":\"turn\",\"playerId\":2,\"position\":{\"row\":1,\"col\":1}}";
+        out.println(turn);
+        await(() -> fast.getReceivedMoves().size() == 1, "The first turn should be relayed.");
+
+        String text = "x".repeat(8 * 1024);
+        int turns = 1;
+        for (int i = 0; server.getCoalescedMessages(roomId) < 100; i++) {
+            assertTrue(i < 5000, "The slow spectator should fall behind.");
+            out.println("{\"type\":\"chat\",\"text\":\"" + text + "\"}");
+            if (i % 4 == 3) {
+                // Slow enough for a spectator that reads, but not for the blocked one
+                out.println(turn);
+                turns++;
+                Thread.sleep(5);
+            }
+        }
+        int sent = turns;
+        await(() -> fast.getReceivedMoves().size() == sent, "The fast spectator should not be held back.");
+        release.countDown();
+
+        await(() -> slow.getReceivedMoves().size() == sent, "The slow spectator should catch up.");
+        assertTrue(slow.getResumeCount() >= 1, "Skipped messages should be replaced by a catch-up.");
+        assertEquals(0, slow.getGapCount(), "The client should not see the skipped messages as lost.");
+        assertEquals(0, fast.getResumeCount());
+    }
+
+    @Test
+    public void fanOut_toHundredsOfSpectators() throws Exception {
+        int spectatorCount = 300;
+        int moves = 200;
+        // The spectators' lines are counted exactly, so no pings may come in between
+        startServer(0, 600_000);
+        int port = server.getPort();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        GameClient player = client(port);
+        player.createRoom(5);
+        await(() -> player.getSessionToken() != null, "Room should be created.");
+
+        // Spectators are raw sockets drained by one selector, counting the lines they receive
+        Selector selector = Selector.open();
+        List<SocketChannel> channels = new ArrayList<>();
+        byte[] spectate = ("{\"type\":\"spectate\",\"roomId\":\"" + player.getRoomId() + "\"}\n")
+                .getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < spectatorCount; i++) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", port));
+            sockets.add(channel.socket());
+            channels.add(channel);
+            channel.write(ByteBuffer.wrap(spectate));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+        }
+        AtomicLong lines = new AtomicLong();
+        Thread reader = new Thread(() -> {
+            ByteBuffer buf = ByteBuffer.allocateDirect(64 * 1024);
+            try {
+                while (selector.isOpen()) {
+                    selector.select(100);
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        buf.clear();
+                        int n = ((SocketChannel) key.channel()).read(buf);
+                        if (n < 0) key.cancel();
+                        for (int i = 0; i < n; i++) {
+                            if (buf.get(i) == '\n') lines.incrementAndGet();
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException | RuntimeException ignored) {
+            }
+        });
+        reader.start();
+        try {
+            // Initial state, session and player count
+            await(() -> lines.get() == 3L * spectatorCount, "Every spectator should join.");
+            // The first round warms up the JIT and is not checked
+            for (int round = 0; round < 2; round++) {
+                long before = lines.get();
+                long cpuBefore = serverLoopCpu(threads);
+                for (int i = 0; i < moves; i++) {
+                    player.sendTurn(new Position(1 + i % 5, 1 + (i / 5) % 5));
+                }
+                await(() -> lines.get() == before + (long) moves * spectatorCount, "Every spectator should see every move.");
+                long cpu = serverLoopCpu(threads) - cpuBefore;
+                if (round == 1) {
+                    long perDelivery = cpu / moves / spectatorCount;
+                    assertTrue(perDelivery < MAX_CPU_PER_DELIVERY_NANOS,
+                            "A delivery took " + perDelivery + " ns server CPU.");
+                }
+            }
+            assertEquals(spectatorCount, server.getSpectatorCount(player.getRoomId()));
+            assertEquals(0, server.getCoalescedMessages(player.getRoomId()));
+        } finally {
+            selector.close();
+            reader.join();
+        }
+    }
+
+}
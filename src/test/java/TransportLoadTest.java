@@ -0,0 +1,239 @@
+package multiplayer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Load test of the transports with an echo handler.
+ * <p>
+ * The number of connections is set by {@code -Dlightbulb.loadtest.connections} (1000 by default).
+ * The test opens both ends of every connection in one process, so 10k connections need
+ * a descriptor limit above 20k. The test of all server modes uses
+ * {@code -Dlightbulb.benchmark.connections} (500) and {@code -Dlightbulb.benchmark.messages} (20 per connection).
+ * </p>
+ */
+public class TransportLoadTest {
+    private static final int CONNECTIONS = Integer.getInteger("lightbulb.loadtest.connections", 1000);
+    private static final int BENCHMARK_CONNECTIONS = Integer.getInteger("lightbulb.benchmark.connections", 500);
+    private static final int BENCHMARK_MESSAGES = Integer.getInteger("lightbulb.benchmark.messages", 20);
+
+    private final List<SocketChannel> clients = new ArrayList<>();
+    private Transport transport;
+
+    /**
+     * Handler echoing every message back to its sender.
+     */
+    private static class EchoHandler implements ConnectionHandler {
+        final AtomicInteger open = new AtomicInteger();
+        final AtomicInteger closed = new AtomicInteger();
+
+        @Override
+        public void onOpen(Connection connection) {
+            open.incrementAndGet();
+        }
+
+        @Override
+        public void onMessage(Connection connection, ByteBuffer message) {
+            connection.send(ConnectionHandler.text(message));
+        }
+
+        @Override
+        public void onClose(Connection connection) {
+            closed.incrementAndGet();
+        }
+    }
+
+    private int startServer(ConnectionHandler handler) throws IOException {
+        return startServer(new SelectorTransport(), handler);
+    }
+
+    private int startServer(Transport t, ConnectionHandler handler) throws IOException {
+        transport = t;
+        transport.bind(0);
+        Thread acceptor = new Thread(() -> {
+            try {
+                transport.serve(handler);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return transport.getLocalPort();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        closeAll();
+    }
+
+    private void closeAll() throws IOException {
+        for (SocketChannel c : clients) c.close();
+        clients.clear();
+        if (transport != null) transport.close();
+        transport = null;
+    }
+
+    @Test
+    public void selectorTransport_echoesOnAllConnections() throws Exception {
+        EchoHandler handler = new EchoHandler();
+        int port = startServer(handler);
+
+        Selector selector = Selector.open();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            SocketChannel c = SocketChannel.open(new InetSocketAddress("localhost", port));
+            c.configureBlocking(false);
+            c.register(selector, SelectionKey.OP_READ, new StringBuilder());
+            clients.add(c);
+        }
+
+        for (int i = 0; i < CONNECTIONS; i++) {
+            ByteBuffer msg = ByteBuffer.wrap(("{\"type\":\"ping\",\"id\":" + i + "}\n").getBytes(StandardCharsets.UTF_8));
+            while (msg.hasRemaining()) clients.get(i).write(msg);
+        }
+
+        int received = 0;
+        ByteBuffer buf = ByteBuffer.allocate(256);
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (received < CONNECTIONS && System.currentTimeMillis() < deadline) {
+            selector.select(1000);
+            for (SelectionKey key : selector.selectedKeys()) {
+                buf.clear();
+                ((SocketChannel) key.channel()).read(buf);
+                buf.flip();
+                StringBuilder sb = (StringBuilder) key.attachment();
+                sb.append(StandardCharsets.UTF_8.decode(buf));
+                if (sb.indexOf("\n") >= 0) {
+                    received++;
+                    key.cancel();
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+        selector.close();
+
+        assertEquals(CONNECTIONS, handler.open.get());
+        assertEquals(CONNECTIONS, received, "Every client should receive its echo.");
+        assertTrue(Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().startsWith("server-loop-")).count() <= 4,
+                "The server should use a few event-loop threads, not one per client.");
+    }
+
+    @Test
+    public void selectorTransport_joinsMessagesSplitAcrossReads() throws Exception {
+        List<String> messages = new ArrayList<>();
+        int port = startServer(new EchoHandler() {
+            @Override
+            public void onMessage(Connection connection, ByteBuffer message) {
+                synchronized (messages) {
+                    messages.add(ConnectionHandler.text(message));
+                    messages.notifyAll();
+                }
+            }
+        });
+
+        SocketChannel c = SocketChannel.open(new InetSocketAddress("localhost", port));
+        clients.add(c);
+        c.write(ByteBuffer.wrap("{\"type\":\"mo".getBytes(StandardCharsets.UTF_8)));
+        Thread.sleep(100);
+        c.write(ByteBuffer.wrap("ve\"}\r\n{\"type\":\"undo\"}\n{\"ty".getBytes(StandardCharsets.UTF_8)));
+
+        synchronized (messages) {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (messages.size() < 2 && System.currentTimeMillis() < deadline) {
+                messages.wait(100);
+            }
+        }
+        assertEquals(List.of("{\"type\":\"move\"}", "{\"type\":\"undo\"}"), messages);
+    }
+
+    @Test
+    public void selectorTransport_reportsClosedConnections() throws Exception {
+        EchoHandler handler = new EchoHandler();
+        int port = startServer(handler);
+
+        SocketChannel c = SocketChannel.open(new InetSocketAddress("localhost", port));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (handler.open.get() == 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        c.close();
+        while (handler.closed.get() == 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+
+        assertEquals(1, handler.closed.get());
+    }
+
+    @Test
+    public void serverModes_echoEveryMessage() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int idleThreads = threads.getThreadCount();
+        for (ServerMode mode : ServerMode.values()) {
+            EchoHandler handler = new EchoHandler();
+            for (int i = 0; i < 200 && threads.getThreadCount() > idleThreads; i++) {
+                Thread.sleep(10);
+            }
+            int baseThreads = threads.getThreadCount();
+            int port = startServer(mode.createTransport(), handler);
+
+            Selector selector = Selector.open();
+            for (int i = 0; i < BENCHMARK_CONNECTIONS; i++) {
+                SocketChannel c = SocketChannel.open(new InetSocketAddress("localhost", port));
+                c.configureBlocking(false);
+                c.register(selector, SelectionKey.OP_READ, new int[1]);
+                clients.add(c);
+            }
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (handler.open.get() < BENCHMARK_CONNECTIONS && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            int platformThreads = threads.getThreadCount() - baseThreads;
+
+            ByteBuffer batch = ByteBuffer.wrap("{\"type\":\"turn\",\"playerId\":1,\"position\":{\"row\":2,\"col\":3}}\n"
+                    .repeat(BENCHMARK_MESSAGES).getBytes(StandardCharsets.UTF_8));
+            for (SocketChannel c : clients) {
+                ByteBuffer msg = batch.duplicate();
+                while (msg.hasRemaining()) c.write(msg);
+            }
+
+            int done = 0;
+            ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+            while (done < BENCHMARK_CONNECTIONS && System.currentTimeMillis() < deadline) {
+                selector.select(1000);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    buf.clear();
+                    ((SocketChannel) key.channel()).read(buf);
+                    int[] lines = (int[]) key.attachment();
+                    for (int i = 0; i < buf.position(); i++) {
+                        if (buf.get(i) == '\n') lines[0]++;
+                    }
+                    if (lines[0] == BENCHMARK_MESSAGES) {
+                        done++;
+                        key.cancel();
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+            selector.close();
+            closeAll();
+
+            assertEquals(BENCHMARK_CONNECTIONS, done, mode + ": every connection should get all echoes.");
+            if (mode != ServerMode.BLOCKING) {
+                assertTrue(platformThreads < BENCHMARK_CONNECTIONS / 2,
+                        mode + " should not hold a platform thread per client, started " + platformThreads);
+            }
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package multiplayer;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static multiplayer.ServerTestSupport.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WinAdjudicationTest {
+    private static final long DELAY_MILLIS = 50;
+
+    private final List<GameClient> clients = new ArrayList<>();
+    private final List<Closeable> resources = new ArrayList<>();
+    private GameServer server;
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        clients.forEach(GameClient::stop);
+        for (Closeable c : resources) c.close();
+        if (server != null) server.stop();
+    }
+
+    /**
+     * Forwards one TCP connection with a fixed delay in both directions, like a distant network.
+     */
+    private static final class DelayProxy implements Closeable {
+        private final ServerSocket listener;
+        private final List<Socket> sockets = new ArrayList<>();
+
+        DelayProxy(int port, int targetPort, long delayMillis) throws IOException {
+            listener = new ServerSocket(port);
+            Thread acceptor = new Thread(() -> {
+                try {
+                    Socket client = listener.accept();
+                    Socket target = new Socket("localhost", targetPort);
+                    synchronized (sockets) {
+                        sockets.add(client);
+                        sockets.add(target);
+                    }
+                    pump(client.getInputStream(), target.getOutputStream(), delayMillis);
+                    pump(target.getInputStream(), client.getOutputStream(), delayMillis);
+                } catch (IOException ignored) {
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private static void pump(InputStream in, OutputStream out, long delayMillis) {
+            BlockingQueue<Object[]> queue = new LinkedBlockingQueue<>();
+            Thread reader = new Thread(() -> {
+                byte[] buffer = new byte[8192];
+                try {
+                    int n;
+                    while ((n = in.read(buffer)) >= 0) {
+                        long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+                        queue.add(new Object[]{due, Arrays.copyOf(buffer, n)});
+                    }
+                } catch (IOException ignored) {
+                }
+            });
+            Thread writer = new Thread(() -> {
+                try {
+                    while (true) {
+                        Object[] chunk = queue.take();
+                        long wait = (long) chunk[0] - System.nanoTime();
+                        if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                        out.write((byte[]) chunk[1]);
+                        out.flush();
+                    }
+                } catch (IOException | InterruptedException ignored) {
+                }
+            });
+            reader.setDaemon(true);
+            writer.setDaemon(true);
+            reader.start();
+            writer.start();
+        }
+
+        @Override
+        public void close() throws IOException {
+            listener.close();
+            synchronized (sockets) {
+                for (Socket s : sockets) s.close();
+            }
+        }
+    }
+
+    /**
+     * Starts a relay server and a started room whose first player connects over a slow network.
+     *
+     * @return the distant player, the creator of the room
+     */
+    private GameClient roomWithDistantPlayer(int port, int proxyPort) throws Exception {
+        server = new GameServer(port, ServerMode.SELECTOR);
+        server.getConfig().setPingIntervalMillis(50);
+        server.getConfig().setReadIdleTimeoutMillis(5000);
+        server.getConfig().setWinWindowMillis(400);
+        ServerTestSupport.start(server);
+        resources.add(new DelayProxy(proxyPort, port, DELAY_MILLIS));
+
+        GameClient distant = new GameClient("localhost", proxyPort);
+        clients.add(distant);
+        distant.start();
+        distant.createRoom(5);
+        await(() -> distant.getSessionToken() != null, "Room should be created.");
+        return distant;
+    }
+
+    /**
+     * Waits until the pings have measured a player several times.
+     */
+    private void awaitMeasured(String roomId, int playerId) throws InterruptedException {
+        await(() -> {
+            LatencyHistogram h = server.getLatencyHistogram(roomId, playerId);
+            return h != null && h.getCount() >= 5;
+        }, "Player " + playerId + " should be pinged.");
+    }
+
+    @Test
+    public void latencyHistogram_percentilesWithinTheBucketError() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int ms = 1; ms <= 1000; ms++) {
+            h.record(TimeUnit.MILLISECONDS.toNanos(ms));
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(1000, h.getMinMicros());
+        assertEquals(1_000_000, h.getMaxMicros());
+        assertEquals(500_500, h.getMeanMicros());
+        for (double p : new double[]{50, 90, 99}) {
+            long exact = (long) (p * 10_000);
+            long estimate = h.getPercentileMicros(p);
+            assertTrue(estimate >= exact && estimate <= exact + exact / 8, "p" + p + " was " + estimate);
+        }
+        assertEquals(1_000_000, h.getPercentileMicros(100));
+        LatencyHistogram copy = h.copy();
+        h.record(0);
+        assertEquals(1000, copy.getCount());
+    }
+
+    @Test
+    public void distantPlayerThatFinishedFirst_winsAlthoughItsClaimArrivesLater() throws Exception {
+        GameClient distant = roomWithDistantPlayer(8980, 8981);
+        GameClient near = new GameClient("localhost", 8980);
+        clients.add(near);
+        near.start();
+        near.joinRoom(distant.getRoomId());
+        await(() -> near.getSessionToken() != null, "Second player should join.");
+        distant.sendStartGame();
+        await(() -> distant.isGameStarted() && near.isGameStarted(), "Game should start.");
+        awaitMeasured(distant.getRoomId(), 1);
+        awaitMeasured(distant.getRoomId(), 2);
+
+        AtomicInteger distantSees = new AtomicInteger();
+        AtomicInteger nearSees = new AtomicInteger();
+        distant.setGameWinListener(distantSees::set);
+        near.setGameWinListener(nearSees::set);
+
+        // The near player's claim is read first, though it finished 20 ms later
+        distant.sendWin();
+        Thread.sleep(20);
+        near.sendWin();
+
+        await(() -> distantSees.get() != 0 && nearSees.get() != 0, "The winner should be announced to both players.");
+        assertEquals(1, server.getWinnerId(distant.getRoomId()));
+        assertEquals(1, distantSees.get());
+        assertEquals(1, nearSees.get());
+
+        LatencyHistogram latency = server.getLatencyHistogram(distant.getRoomId(), 1);
+        assertTrue(latency.getPercentileMicros(50) >= TimeUnit.MILLISECONDS.toMicros(2 * DELAY_MILLIS));
+        assertTrue(server.getLatencyHistogram(distant.getRoomId(), 2).getPercentileMicros(50)
+                < TimeUnit.MILLISECONDS.toMicros(DELAY_MILLIS));
+    }
+
+    @Test
+    public void claimCannotPredateTheClientsLatency() throws Exception {
+        GameClient distant = roomWithDistantPlayer(8982, 8983);
+
+        // A near client that answers pings correctly but backdates its claim by half a second
+        Socket socket = new Socket("localhost", 8982);
+        resources.add(socket);
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        Thread answering = new Thread(() -> {
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    JsonObject msg = JsonParser.parseString(line).getAsJsonObject();
+                    if ("ping".equals(msg.get("type").getAsString())) {
+                        out.println("{\"type\":\"pong\",\"t\":" + msg.get("t").getAsLong()
+                                + ",\"clientTime\":" + System.nanoTime() + "}");
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        });
+        answering.setDaemon(true);
+        answering.start();
+        out.println("{\"type\":\"join_room\",\"roomId\":\"" + distant.getRoomId() + "\"}");
+        distant.requestPlayerCount();
+        await(() -> distant.getLatestPlayerCount() == 2, "The near client should join.");
+        distant.sendStartGame();
+        await(distant::isGameStarted, "Game should start.");
+        awaitMeasured(distant.getRoomId(), 1);
+        awaitMeasured(distant.getRoomId(), 2);
+
+        AtomicInteger announced = new AtomicInteger();
+        distant.setGameWinListener(announced::set);
+        distant.sendWin();
+        Thread.sleep(20);
+        out.println("{\"type\":\"win\",\"winnerId\":2,\"clientTime\":"
+                + (System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(500)) + "}");
+
+        await(() -> announced.get() != 0, "The winner should be announced.");
+        assertEquals(1, announced.get(), "A backdated claim must not beat an earlier finish.");
+        assertEquals(1, server.getWinnerId(distant.getRoomId()));
+    }
+
+    @Test
+    public void forgedPongs_cannotInflateTheRoundTripTime() throws Exception {
+        GameClient distant = roomWithDistantPlayer(8984, 8985);
+
+        // A near client that answers every ping, then echoes a timestamp two seconds older and the same one again
+        Socket socket = new Socket("localhost", 8984);
+        resources.add(socket);
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        Thread forging = new Thread(() -> {
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    JsonObject msg = JsonParser.parseString(line).getAsJsonObject();
+                    if ("ping".equals(msg.get("type").getAsString())) {
+                        long t = msg.get("t").getAsLong();
+                        for (long echoed : new long[]{t, t - TimeUnit.SECONDS.toNanos(2), t}) {
+                            out.println("{\"type\":\"pong\",\"t\":" + echoed + ",\"clientTime\":" + System.nanoTime() + "}");
+                        }
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        });
+        forging.setDaemon(true);
+        forging.start();
+        out.println("{\"type\":\"join_room\",\"roomId\":\"" + distant.getRoomId() + "\"}");
+        distant.requestPlayerCount();
+        await(() -> distant.getLatestPlayerCount() == 2, "The near client should join.");
+        distant.sendStartGame();
+        await(distant::isGameStarted, "Game should start.");
+        awaitMeasured(distant.getRoomId(), 1);
+        awaitMeasured(distant.getRoomId(), 2);
+
+        LatencyHistogram latency = server.getLatencyHistogram(distant.getRoomId(), 2);
+        assertTrue(latency.getMaxMicros() < TimeUnit.MILLISECONDS.toMicros(DELAY_MILLIS),
+                "Only the first pong of each ping may be measured: " + latency);
+
+        AtomicInteger announced = new AtomicInteger();
+        distant.setGameWinListener(announced::set);
+        distant.sendWin();
+        Thread.sleep(20);
+        out.println("{\"type\":\"win\",\"winnerId\":2,\"clientTime\":"
+                + (System.nanoTime() - TimeUnit.SECONDS.toNanos(1)) + "}");
+
+        await(() -> announced.get() != 0, "The winner should be announced.");
+        assertEquals(1, announced.get(), "Forged pongs must not let a claim be backdated.");
+    }
+
+    @Test
+    public void delayedPongs_cannotInflateTheBackdating() throws Exception {
+        GameClient distant = roomWithDistantPlayer(8986, 8987);
+
+        // A near client that answers its first pings at once and then holds its genuine pongs back
+        Socket socket = new Socket("localhost", 8986);
+        resources.add(socket);
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        ScheduledExecutorService delayed = Executors.newSingleThreadScheduledExecutor();
+        resources.add(delayed::shutdownNow);
+        AtomicLong holdMillis = new AtomicLong();
+        Thread answering = new Thread(() -> {
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    JsonObject msg = JsonParser.parseString(line).getAsJsonObject();
+                    if ("ping".equals(msg.get("type").getAsString())) {
+                        long t = msg.get("t").getAsLong();
+                        delayed.schedule(() -> out.println("{\"type\":\"pong\",\"t\":" + t
+                                + ",\"clientTime\":" + System.nanoTime() + "}"), holdMillis.get(), TimeUnit.MILLISECONDS);
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        });
+        answering.setDaemon(true);
+        answering.start();
+        out.println("{\"type\":\"join_room\",\"roomId\":\"" + distant.getRoomId() + "\"}");
+        distant.requestPlayerCount();
+        await(() -> distant.getLatestPlayerCount() == 2, "The near client should join.");
+        distant.sendStartGame();
+        await(distant::isGameStarted, "Game should start.");
+        awaitMeasured(distant.getRoomId(), 1);
+        awaitMeasured(distant.getRoomId(), 2);
+
+        holdMillis.set(150);
+        await(() -> server.getRttMicros(distant.getRoomId(), 2) >= TimeUnit.MILLISECONDS.toMicros(100),
+                "The held back pongs should inflate the smoothed round trip.");
+
+        AtomicInteger announced = new AtomicInteger();
+        distant.setGameWinListener(announced::set);
+        distant.sendWin();
+        Thread.sleep(20);
+        out.println("{\"type\":\"win\",\"winnerId\":2,\"clientTime\":"
+                + (System.nanoTime() - TimeUnit.SECONDS.toNanos(1)) + "}");
+
+        await(() -> announced.get() != 0, "The winner should be announced.");
+        assertEquals(1, announced.get(), "Held back pongs must not let a claim be backdated.");
+    }
+}